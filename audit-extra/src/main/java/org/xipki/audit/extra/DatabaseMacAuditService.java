@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.*;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Database-based MAC protected audit service.
@@ -110,6 +111,73 @@ public class DatabaseMacAuditService extends MacAuditService {
     }
   }
 
+  /**
+   * Stores the audit entries and the integrity text in one transaction. Throws
+   * {@link IllegalStateException} if the transaction could not be committed.
+   */
+  @Override
+  protected void storeLogs(List<LogEntry> entries, String integrityText) {
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      throw new IllegalStateException("could not get connection", ex);
+    }
+
+    PreparedStatement ps = null;
+    PreparedStatement integrityPs = null;
+    boolean origAutoCommit = true;
+    String sql = SQL_ADD_AUDIT;
+    try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      ps = datasource.prepareStatement(conn, SQL_ADD_AUDIT);
+      for (LogEntry m : entries) {
+        int idx = 1;
+        ps.setInt   (idx++, shardId);
+        ps.setLong  (idx++, m.getId());
+        ps.setString(idx++, formatDate(m.getDate()));
+        ps.setString(idx++, m.getLevelText());
+        ps.setInt   (idx++, m.getEventType());
+        ps.setLong  (idx++, m.getPreviousId());
+        ps.setString(idx++, m.getMessage());
+        ps.setString(idx++, m.getTag());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+
+      if (integrityText != null) {
+        sql = SQL_UPDATE_INTEGRITY;
+        integrityPs = datasource.prepareStatement(conn, SQL_UPDATE_INTEGRITY);
+        integrityPs.setString(1, integrityText);
+        integrityPs.executeUpdate();
+      }
+
+      conn.commit();
+    } catch (Exception ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LogUtil.warn(LOG, ex2, "could not rollback the transaction");
+      }
+
+      Exception ex3 = (ex instanceof SQLException)
+          ? datasource.translate(sql, (SQLException) ex) : ex;
+      throw new IllegalStateException(
+          "could not store " + entries.size() + " audit entries", ex3);
+    } finally {
+      try {
+        conn.setAutoCommit(origAutoCommit);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not reset the auto-commit mode");
+      }
+      datasource.releaseResources(integrityPs, null, false);
+      datasource.releaseResources(ps, null, false);
+      datasource.returnConnection(conn);
+    }
+  } // method storeLogs
+
   @Override
   protected void doExtraInit(ConfPairs confPairs, PasswordResolver passwordResolver)
           throws PasswordResolverException {
@@ -23,12 +23,17 @@ import org.xipki.password.PasswordResolver;
 import org.xipki.util.*;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 
@@ -53,6 +58,10 @@ public class FileMacAuditService extends MacAuditService {
 
   private long lastMsOfToday;
 
+  private File currentLogFile;
+
+  private FileOutputStream fileOut;
+
   private OutputStreamWriter writer;
 
   private Path integrityFilePath;
@@ -67,6 +76,17 @@ public class FileMacAuditService extends MacAuditService {
   protected void storeLog(
           Instant date, long thisId, int eventType, String levelText,
           long previousId, String message, String thisTag) {
+    try {
+      writeLine(date, buildLine(date, thisId, eventType, levelText, previousId, message,
+          thisTag), null);
+    } catch (Exception ex) {
+      LogUtil.error(LOG, ex);
+    }
+  }
+
+  private String buildLine(
+          Instant date, long thisId, int eventType, String levelText,
+          long previousId, String message, String thisTag) {
     StringBuilder sb = new StringBuilder(message.length());
     sb.append(formatDate(date))
             .append(DELIM).append(levelText)
@@ -76,26 +96,35 @@ public class FileMacAuditService extends MacAuditService {
             .append(DELIM).append(previousId)
             .append(DELIM).append(thisTag)
             .append(DELIM).append(message);
+    return sb.toString();
+  }
 
-    String logLine = sb.toString();
-
+  /**
+   * Writes the line to the file of its day.
+   * @param offsets
+   *          If not {@code null}, the size of each file before its first line is written
+   *          will be added.
+   */
+  private void writeLine(Instant date, String logLine, Map<File, Long> offsets)
+      throws IOException {
     long ms = date.toEpochMilli();
-    try {
-      if (ms > lastMsOfToday) {
-        Calendar now = Calendar.getInstance(TimeZone.getDefault());
-        now.setTimeInMillis(ms);
-        int yyyyMMddNow = DateUtil.getYyyyMMdd(now);
-        lastMsOfToday = DateUtil.getLastMsOfDay(now);
-        writer.close();
-        writer = buildWriter(yyyyMMddNow);
-      }
+    if (ms > lastMsOfToday) {
+      Calendar now = Calendar.getInstance(TimeZone.getDefault());
+      now.setTimeInMillis(ms);
+      int yyyyMMddNow = DateUtil.getYyyyMMdd(now);
+      lastMsOfToday = DateUtil.getLastMsOfDay(now);
+      writer.close();
+      openWriter(yyyyMMddNow);
+    }
 
-      writer.write(logLine);
-      writer.write('\n');
-    } catch (Exception ex) {
-      LogUtil.error(LOG, ex);
+    if (offsets != null && !offsets.containsKey(currentLogFile)) {
+      writer.flush();
+      offsets.put(currentLogFile, fileOut.getChannel().size());
     }
-  }
+
+    writer.write(logLine);
+    writer.write('\n');
+  } // method writeLine
 
   @Override
   protected void storeIntegrity(String integrityText) {
@@ -110,6 +139,66 @@ public class FileMacAuditService extends MacAuditService {
     }
   }
 
+  /**
+   * Writes the entries, and the integrity text if not {@code null}. If any write fails,
+   * the files are truncated to their sizes before this batch. If this fails too, the
+   * service is marked as broken.
+   */
+  @Override
+  protected void storeLogs(List<LogEntry> entries, String integrityText) {
+    Map<File, Long> offsets = new LinkedHashMap<>(2);
+    try {
+      for (LogEntry m : entries) {
+        writeLine(m.getDate(), buildLine(m.getDate(), m.getId(), m.getEventType(),
+            m.getLevelText(), m.getPreviousId(), m.getMessage(), m.getTag()), offsets);
+      }
+
+      writer.flush();
+      storeIntegrity(integrityText);
+    } catch (IOException | RuntimeException ex) {
+      rollback(offsets);
+      throw new IllegalStateException("could not write " + entries.size() + " audit entries", ex);
+    }
+  } // method storeLogs
+
+  private void rollback(Map<File, Long> offsets) {
+    // the buffered characters of the writer are discarded.
+    closeQuietly(writer);
+    closeQuietly(fileOut);
+    writer = null;
+    fileOut = null;
+
+    try {
+      for (Map.Entry<File, Long> m : offsets.entrySet()) {
+        try (FileChannel channel = FileChannel.open(m.getKey().toPath(),
+            StandardOpenOption.WRITE)) {
+          channel.truncate(m.getValue());
+        }
+      }
+    } catch (IOException ex) {
+      LogUtil.error(LOG, ex, "could not remove the partially written audit entries");
+      markBroken("could not remove the partially written audit entries: " + ex.getMessage());
+      return;
+    }
+
+    try {
+      openWriter(currentLogFile);
+    } catch (IOException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not reopen the audit file");
+      markBroken("could not reopen the audit file " + currentLogFile.getPath());
+    }
+  } // method rollback
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ex) {
+        LOG.debug("could not close the audit file: {}", ex.getMessage());
+      }
+    }
+  }
+
   @Override
   protected void doExtraInit(ConfPairs confPairs, PasswordResolver passwordResolver) {
     String str = confPairs.value(KEY_FILE);
@@ -206,19 +295,34 @@ public class FileMacAuditService extends MacAuditService {
     }
 
     verify(id.get(), previousTag, integrityText, confPairs);
-    this.writer = buildWriter(yyyyMMddNow);
+    openWriter(yyyyMMddNow);
   }
 
-  private OutputStreamWriter buildWriter(int yyyyMMdd) {
-    File currentLogFile = new File(logDir, buildFilename(yyyyMMdd));
-    OutputStream fw;
+  private void openWriter(int yyyyMMdd) {
+    File file = new File(logDir, buildFilename(yyyyMMdd));
     try {
-      fw = new FileOutputStream(currentLogFile, true);
+      openWriter(file);
     } catch (IOException ex) {
-      throw new IllegalStateException("error opening file " + currentLogFile.getPath());
+      throw new IllegalStateException("error opening file " + file.getPath());
     }
+  }
+
+  private void openWriter(File file) throws IOException {
+    fileOut = openOutputStream(file);
+    currentLogFile = file;
+    writer = new OutputStreamWriter(fileOut, StandardCharsets.UTF_8);
+  }
 
-    return new OutputStreamWriter(fw);
+  /**
+   * Opens the audit file to append the entries.
+   * @param file
+   *          The audit file.
+   * @return the output stream.
+   * @throws IOException
+   *           If the file could not be opened.
+   */
+  protected FileOutputStream openOutputStream(File file) throws IOException {
+    return new FileOutputStream(file, true);
   }
 
   private String buildFilename(int yyyyMMdd) {
@@ -232,8 +336,10 @@ public class FileMacAuditService extends MacAuditService {
 
   @Override
   public void doClose() throws Exception {
-    writer.flush();
-    writer.close();
+    if (writer != null) {
+      writer.flush();
+      writer.close();
+    }
   }
 
 }
@@ -0,0 +1,687 @@
+/*
+ *
+ * Copyright (c) 2013 - 2022 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.Base64;
+import org.xipki.util.ConfPairs;
+import org.xipki.util.StringUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Verifier of the chained MACs in the audit files written by {@link FileMacAuditService}.
+ * The files are split into segments at line boundaries. The segments are memory-mapped and
+ * their MACs are verified in parallel, the links between the segments are verified afterwards.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class FileMacAuditVerifier {
+
+  /**
+   * Result of the verification.
+   */
+  public static final class Result {
+
+    private long numEntries;
+
+    private long firstId;
+
+    private long lastId;
+
+    private File brokenFile;
+
+    private long brokenOffset = -1;
+
+    private long brokenId;
+
+    private String message;
+
+    public boolean isValid() {
+      return message == null;
+    }
+
+    public long getNumEntries() {
+      return numEntries;
+    }
+
+    public long getFirstId() {
+      return firstId;
+    }
+
+    public long getLastId() {
+      return lastId;
+    }
+
+    /**
+     * Gets the file containing the first broken entry.
+     * @return the file containing the first broken entry, {@code null} if valid.
+     */
+    public File getBrokenFile() {
+      return brokenFile;
+    }
+
+    /**
+     * Gets the offset of the first broken entry in its file.
+     * @return the offset of the first broken entry, -1 if valid.
+     */
+    public long getBrokenOffset() {
+      return brokenOffset;
+    }
+
+    public long getBrokenId() {
+      return brokenId;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      String str = "entries: " + numEntries + ", first ID: " + firstId + ", last ID: " + lastId;
+      if (isValid()) {
+        return "valid, " + str;
+      }
+
+      return "invalid, " + str + "\n  first broken entry: ID " + brokenId + " at offset "
+          + brokenOffset + " of file " + brokenFile.getPath() + "\n  reason: " + message;
+    }
+
+  } // class Result
+
+  private static final class Segment {
+
+    private final File file;
+
+    private final long offset;
+
+    private final long length;
+
+    private Segment(File file, long offset, long length) {
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+    }
+
+  } // class Segment
+
+  private static final class SegmentResult {
+
+    private long numEntries;
+
+    // first entry, its link to the previous segment is verified after all segments.
+    private byte[] firstLine;
+
+    private long firstOffset;
+
+    private long lastId;
+
+    private byte[] lastTag;
+
+    private long errorOffset = -1;
+
+    private long errorId;
+
+    private String errorMessage;
+
+  } // class SegmentResult
+
+  /**
+   * Parsed audit line. The fields are separated by ';' as follows:
+   * date;level;eventType;shardId;id;previousId;tag;message.
+   */
+  private static final class Line {
+
+    private static final int NUM_DELIMS = 7;
+
+    private final byte[] buf;
+
+    private final int len;
+
+    private final int[] delims = new int[NUM_DELIMS];
+
+    private long id;
+
+    private long previousId;
+
+    private Line(byte[] buf, int len) {
+      this.buf = buf;
+      this.len = len;
+    }
+
+    private String parse() {
+      int n = 0;
+      for (int i = 0; i < len && n < NUM_DELIMS; i++) {
+        if (buf[i] == ';') {
+          delims[n++] = i;
+        }
+      }
+
+      if (n < NUM_DELIMS) {
+        return "invalid audit entry";
+      }
+
+      try {
+        id = parseLong(delims[3] + 1, delims[4]);
+        previousId = parseLong(delims[4] + 1, delims[5]);
+      } catch (NumberFormatException ex) {
+        return "invalid ID or previous ID";
+      }
+      return null;
+    } // method parse
+
+    private long parseLong(int from, int to) {
+      return Long.parseLong(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    private byte[] tag() {
+      return Arrays.copyOfRange(buf, delims[5] + 1, delims[6]);
+    }
+
+  } // class Line
+
+  private class SegmentVerifier implements Callable<SegmentResult> {
+
+    private final Segment segment;
+
+    private final Map<String, Mac> macs = new HashMap<>();
+
+    private SegmentVerifier(Segment segment) {
+      this.segment = segment;
+    }
+
+    @Override
+    public SegmentResult call() throws IOException {
+      SegmentResult result = new SegmentResult();
+      if (segment.length == 0) {
+        return result;
+      }
+
+      MappedByteBuffer mapped;
+      try (RandomAccessFile raf = new RandomAccessFile(segment.file, "r")) {
+        mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+            segment.offset, segment.length);
+      }
+
+      byte[] buf = new byte[4096];
+      int len = 0;
+      long lineOffset = segment.offset;
+      int size = (int) segment.length;
+      for (int i = 0; i <= size; i++) {
+        byte b = (i == size) ? (byte) '\n' : mapped.get();
+        if (b != '\n') {
+          if (len == buf.length) {
+            buf = Arrays.copyOf(buf, len << 1);
+          }
+          buf[len++] = b;
+          continue;
+        }
+
+        if (len > 0 && buf[len - 1] == '\r') {
+          len--;
+        }
+
+        if (len > 0 && !processLine(result, new Line(buf, len), lineOffset)) {
+          return result;
+        }
+
+        lineOffset = segment.offset + i + 1;
+        len = 0;
+      }
+
+      return result;
+    } // method call
+
+    private boolean processLine(SegmentResult result, Line line, long offset) {
+      String error = line.parse();
+      if (error == null) {
+        if (result.numEntries == 0) {
+          // verified while linking the segments
+          result.firstLine = Arrays.copyOf(line.buf, line.len);
+          result.firstOffset = offset;
+        } else {
+          error = verifyLink(line, result.lastId, result.lastTag, macs);
+        }
+      }
+
+      if (error != null) {
+        result.errorOffset = offset;
+        result.errorId = line.id;
+        result.errorMessage = error;
+        return false;
+      }
+
+      result.numEntries++;
+      result.lastId = line.id;
+      result.lastTag = line.tag();
+      return true;
+    } // method processLine
+
+  } // class SegmentVerifier
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileMacAuditVerifier.class);
+
+  private static final int DFLT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+  private final Map<String, SecretKey> keys = new HashMap<>();
+
+  private final File logDir;
+
+  private final String logFileNamePrefix;
+
+  private final String logFileNameSuffix;
+
+  private int segmentSize = DFLT_SEGMENT_SIZE;
+
+  /**
+   * Constructor.
+   * @param conf
+   *          Configuration of the {@link FileMacAuditService}. The properties {@code file},
+   *          {@code keyid}, {@code password}, and optional {@code shard-id},
+   *          {@code old-keyid} and {@code old-password} are used.
+   */
+  public FileMacAuditVerifier(String conf) {
+    ConfPairs confPairs = new ConfPairs(notNull(conf, "conf"));
+    String str = confPairs.value(MacAuditService.KEY_SHARD_ID);
+    int shardId = StringUtil.isBlank(str) ? 0 : Integer.parseInt(str);
+
+    str = confPairs.value(FileMacAuditService.KEY_FILE);
+    if (StringUtil.isBlank(str)) {
+      throw new IllegalArgumentException(
+          "property " + FileMacAuditService.KEY_FILE + " not defined");
+    }
+
+    File logFile = new File(str).getAbsoluteFile();
+    this.logDir = logFile.getParentFile();
+    String fileName = logFile.getName();
+    int idx = fileName.lastIndexOf('.');
+    this.logFileNameSuffix = idx == -1 ? "" : fileName.substring(idx);
+    String prefix = idx == -1 ? fileName : fileName.substring(0, idx);
+    if (shardId != 0) {
+      prefix += "-" + shardId;
+    }
+    this.logFileNamePrefix = prefix + "_";
+
+    addKey(confPairs.value(MacAuditService.KEY_KEYID),
+        confPairs.value(MacAuditService.KEY_PASSWORD));
+    String oldKeyId = confPairs.value(MacAuditService.KEY_OLD_KEYID);
+    if (oldKeyId != null) {
+      addKey(oldKeyId, confPairs.value(MacAuditService.KEY_OLD_PASSWORD));
+    }
+  } // constructor
+
+  private void addKey(String keyId, String password) {
+    if (StringUtil.isBlank(keyId) || StringUtil.isBlank(password)) {
+      throw new IllegalArgumentException("key id or password is not defined");
+    }
+
+    try {
+      keys.put(keyId, MacAuditService.deriveMacKey(password));
+    } catch (Exception ex) {
+      throw new IllegalStateException("error deriving key", ex);
+    }
+  } // method addKey
+
+  public void setSegmentSize(int segmentSize) {
+    this.segmentSize = positive(segmentSize, "segmentSize");
+  }
+
+  /**
+   * Lists the audit files in the order of their dates.
+   * @return the audit files.
+   */
+  public List<File> listLogFiles() {
+    List<File> files = new ArrayList<>();
+    File[] candidates = logDir.listFiles();
+    if (candidates != null) {
+      for (File f : candidates) {
+        String name = f.getName();
+        if (f.isFile() && name.startsWith(logFileNamePrefix) && name.endsWith(logFileNameSuffix)
+            && name.length() == logFileNamePrefix.length() + 10 + logFileNameSuffix.length()) {
+          files.add(f);
+        }
+      }
+    }
+
+    // the date yyyy.MM.dd in the file name is sortable.
+    files.sort((a, b) -> a.getName().compareTo(b.getName()));
+    return files;
+  } // method listLogFiles
+
+  /**
+   * Verifies the chained MACs of all audit files.
+   * @param pool
+   *          Pool to verify the segments.
+   * @return the verification result.
+   * @throws IOException
+   *           If error occurs while reading the files.
+   */
+  public Result verify(ForkJoinPool pool)
+      throws IOException {
+    return verify(listLogFiles(), pool);
+  }
+
+  /**
+   * Verifies the chained MACs of the given audit files.
+   * @param files
+   *          Audit files in the order of their dates.
+   * @param pool
+   *          Pool to verify the segments.
+   * @return the verification result.
+   * @throws IOException
+   *           If error occurs while reading the files.
+   */
+  public Result verify(List<File> files, ForkJoinPool pool)
+      throws IOException {
+    notNull(files, "files");
+    notNull(pool, "pool");
+
+    List<Segment> segments = new ArrayList<>();
+    for (File file : files) {
+      split(file, segments);
+    }
+    LOG.info("verifying {} segments of {} audit files", segments.size(), files.size());
+
+    List<Future<SegmentResult>> futures = new ArrayList<>(segments.size());
+    for (Segment segment : segments) {
+      futures.add(pool.submit(new SegmentVerifier(segment)));
+    }
+
+    Result result = new Result();
+    Map<String, Mac> macs = new HashMap<>();
+    boolean first = true;
+    long lastId = 0;
+    byte[] lastTag = null;
+
+    try {
+      for (int i = 0; i < segments.size(); i++) {
+        SegmentResult sr = getResult(futures.get(i));
+        Segment segment = segments.get(i);
+
+        if (sr.firstLine != null) {
+          Line line = new Line(sr.firstLine, sr.firstLine.length);
+          line.parse();
+
+          String error;
+          if (first) {
+            result.firstId = line.id;
+            if (line.previousId == 0) {
+              error = verifyLink(line, 0, new byte[0], macs);
+            } else {
+              // the previous entries are not available, the chain starts here.
+              LOG.warn("entry {} links to the unavailable entry {}", line.id, line.previousId);
+              error = null;
+            }
+          } else {
+            error = verifyLink(line, lastId, lastTag, macs);
+          }
+
+          if (error != null) {
+            setBroken(result, segment.file, sr.firstOffset, line.id, error);
+            break;
+          }
+          first = false;
+        }
+
+        result.numEntries += sr.numEntries;
+        if (sr.numEntries > 0) {
+          lastId = sr.lastId;
+          lastTag = sr.lastTag;
+          result.lastId = lastId;
+        }
+
+        if (sr.errorMessage != null) {
+          setBroken(result, segment.file, sr.errorOffset, sr.errorId, sr.errorMessage);
+          break;
+        }
+      }
+    } finally {
+      for (Future<SegmentResult> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    return result;
+  } // method verify
+
+  private static SegmentResult getResult(Future<SegmentResult> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+    }
+  } // method getResult
+
+  private static void setBroken(Result result, File file, long offset, long id, String message) {
+    result.brokenFile = file;
+    result.brokenOffset = offset;
+    result.brokenId = id;
+    result.message = message;
+  }
+
+  /**
+   * Splits the file into segments of about {@code segmentSize} bytes, each ends with a
+   * complete line.
+   */
+  private void split(File file, List<Segment> segments)
+      throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long size = raf.length();
+      long offset = 0;
+      while (offset < size) {
+        long end = Math.min(offset + segmentSize, size);
+        if (end < size) {
+          raf.seek(end);
+          int b;
+          while ((b = raf.read()) != -1 && b != '\n') {
+            end++;
+          }
+          // include the '\n'
+          end = Math.min(end + 1, size);
+        }
+
+        segments.add(new Segment(file, offset, end - offset));
+        offset = end;
+      }
+    }
+  } // method split
+
+  /**
+   * Verifies the link to the previous entry and the MAC of the entry.
+   * @return the error message, or {@code null} if valid.
+   */
+  private String verifyLink(Line line, long previousId, byte[] previousTag,
+      Map<String, Mac> macs) {
+    if (line.previousId != previousId) {
+      return "previous ID " + line.previousId + " != ID of the previous entry " + previousId;
+    }
+
+    if (line.id != previousId + 1) {
+      return "ID " + line.id + " does not follow the previous ID " + previousId;
+    }
+
+    // tag: <version>:<algo id>:<key id>:<base64 encoded MAC>
+    byte[] buf = line.buf;
+    int tagStart = line.delims[5] + 1;
+    int tagEnd = line.delims[6];
+    int[] colons = new int[3];
+    int n = 0;
+    for (int i = tagStart; i < tagEnd && n < 3; i++) {
+      if (buf[i] == ':') {
+        colons[n++] = i;
+      }
+    }
+
+    if (n < 3) {
+      return "invalid tag";
+    }
+
+    String version = new String(buf, tagStart, colons[0] - tagStart, StandardCharsets.US_ASCII);
+    String algoId = new String(buf, colons[0] + 1, colons[1] - colons[0] - 1,
+        StandardCharsets.US_ASCII);
+    if (!MacAuditService.VERSION_V1.equalsIgnoreCase(version)
+        || !Integer.toString(MacAuditService.ALGO_ID_HMAC_SHA256).equals(algoId)) {
+      return "unsupported tag version or algorithm";
+    }
+
+    String keyId = new String(buf, colons[1] + 1, colons[2] - colons[1] - 1,
+        StandardCharsets.UTF_8);
+    Mac mac = getMac(keyId, macs);
+    if (mac == null) {
+      return "unknown key id " + keyId;
+    }
+
+    // MAC payload: <tag prefix><date;level;eventType;shardId;id;previousId>:<previous tag>
+    //   ;<message>
+    mac.update(buf, tagStart, colons[2] + 1 - tagStart);
+    mac.update(buf, 0, line.delims[5]);
+    mac.update((byte) ':');
+    mac.update(previousTag);
+    mac.update((byte) ';');
+    int msgStart = line.delims[6] + 1;
+    mac.update(buf, msgStart, line.len - msgStart);
+    byte[] computed = mac.doFinal();
+
+    byte[] expected;
+    try {
+      expected = Base64.decodeFast(
+          new String(buf, colons[2] + 1, tagEnd - colons[2] - 1, StandardCharsets.US_ASCII));
+    } catch (RuntimeException ex) {
+      return "invalid tag";
+    }
+
+    return MessageDigest.isEqual(computed, expected) ? null : "MAC does not match";
+  } // method verifyLink
+
+  private Mac getMac(String keyId, Map<String, Mac> macs) {
+    Mac mac = macs.get(keyId);
+    if (mac == null) {
+      SecretKey key = keys.get(keyId);
+      if (key == null) {
+        return null;
+      }
+
+      try {
+        mac = Mac.getInstance(key.getAlgorithm());
+        mac.init(key);
+      } catch (Exception ex) {
+        throw new IllegalStateException("could not initialize Mac", ex);
+      }
+      macs.put(keyId, mac);
+    }
+    return mac;
+  } // method getMac
+
+  public static void main(String[] args) {
+    if (args == null || args.length < 2 || "--help".equals(args[0])) {
+      printUsage(null);
+      return;
+    }
+
+    String conf = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    final int argSize = args.length;
+    for (int i = 0; i < argSize; i++) {
+      String name = args[i];
+      switch (name) {
+        case "--conf":
+          if (i < argSize - 1) {
+            conf = args[++i];
+          }
+          break;
+        case "--threads":
+          if (i < argSize - 1) {
+            threads = Integer.parseInt(args[++i]);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (conf == null) {
+      printUsage("conf is not specified");
+      return;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      long start = System.currentTimeMillis();
+      Result result = new FileMacAuditVerifier(conf).verify(pool);
+      System.out.println(result);
+      System.out.println("verified in " + (System.currentTimeMillis() - start) + " ms");
+    } catch (Exception ex) {
+      System.err.println("Error while verifying audit files: " + ex.getMessage());
+      LOG.error("Error while verifying audit files", ex);
+    } finally {
+      pool.shutdown();
+    }
+  } // method main
+
+  private static void printUsage(String prefix) {
+    StringBuilder sb = new StringBuilder();
+    if (prefix != null) {
+      sb.append(prefix).append("\n");
+    }
+
+    sb.append("DESCRIPTION\n");
+    sb.append("\tverify-audit [options]\n");
+    sb.append("\tVerify the chained MACs of the file-mac audit files\n");
+    sb.append("OPTIONS\n");
+    sb.append("\t--conf\n");
+    sb.append("\t\tconf of the file-mac audit\n");
+    sb.append("\t\t(required)\n");
+    sb.append("\t--threads\n");
+    sb.append("\t\tnumber of threads, default to the number of processors\n");
+    sb.append("\t--help\n");
+    sb.append("\t\tDisplay this help message");
+
+    System.out.println(sb.toString());
+  } // method printUsage
+
+}
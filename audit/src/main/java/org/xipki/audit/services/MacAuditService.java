@@ -27,6 +27,8 @@ import org.xipki.password.PasswordResolver;
 import org.xipki.password.PasswordResolverException;
 import org.xipki.util.Base64;
 import org.xipki.util.ConfPairs;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
 import javax.crypto.Cipher;
@@ -44,11 +46,26 @@ import java.security.spec.KeySpec;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The Mac protected audit service.
+ * <p>
+ * If the property {@code queue-size} is set to a positive value, the events are queued by
+ * the calling threads, and a single sequencer thread computes the chained tags and stores
+ * the events in batches. With durability {@code sync} (default) the caller returns only after
+ * its event has been stored, with {@code async} immediately after the event has been queued.
+ * With durability {@code sync}, an {@link IllegalStateException} is thrown if the event could
+ * not be stored.
  *
  * @author Lijun Liao
  * @since 5.4.0
@@ -56,6 +73,147 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class MacAuditService implements AuditService {
 
+  /**
+   * Audit entry with its chained tag.
+   */
+  protected static final class LogEntry {
+
+    private final Instant date;
+
+    private final long id;
+
+    private final int eventType;
+
+    private final String levelText;
+
+    private final long previousId;
+
+    private final String message;
+
+    private final String tag;
+
+    private LogEntry(Instant date, long id, int eventType, String levelText,
+        long previousId, String message, String tag) {
+      this.date = date;
+      this.id = id;
+      this.eventType = eventType;
+      this.levelText = levelText;
+      this.previousId = previousId;
+      this.message = message;
+      this.tag = tag;
+    }
+
+    public Instant getDate() {
+      return date;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public int getEventType() {
+      return eventType;
+    }
+
+    public String getLevelText() {
+      return levelText;
+    }
+
+    public long getPreviousId() {
+      return previousId;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public String getTag() {
+      return tag;
+    }
+
+  } // class LogEntry
+
+  private static final class PendingEvent {
+
+    private final Instant date;
+
+    private final int eventType;
+
+    private final String levelText;
+
+    private final String message;
+
+    // null if not processed yet, otherwise whether the event has been stored.
+    private Boolean stored;
+
+    private PendingEvent(Instant date, int eventType, String levelText, String message) {
+      this.date = date;
+      this.eventType = eventType;
+      this.levelText = levelText;
+      this.message = message;
+    }
+
+    private synchronized void processed(boolean successful) {
+      stored = successful;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the event has been processed, at most {@code timeoutMs} milliseconds.
+     * @param timeoutMs
+     *          Maximal time to wait in milliseconds.
+     * @return whether the event has been stored.
+     */
+    private synchronized boolean awaitStored(long timeoutMs) {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      while (stored == null) {
+        long waitMs = deadline - System.currentTimeMillis();
+        if (waitMs <= 0) {
+          return false;
+        }
+
+        try {
+          wait(waitMs);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return stored;
+    } // method awaitStored
+
+  } // class PendingEvent
+
+  private class Sequencer implements Runnable {
+
+    @Override
+    public void run() {
+      List<PendingEvent> batch = new ArrayList<>(batchSize);
+      while (true) {
+        PendingEvent event;
+        try {
+          event = queue.poll(100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+          LOG.warn("interrupted, {} queued audit events are not stored", queue.size());
+          return;
+        }
+
+        if (event == null) {
+          if (closed) {
+            return;
+          }
+          continue;
+        }
+
+        batch.add(event);
+        queue.drainTo(batch, batchSize - 1);
+        storeBatch(batch);
+        batch.clear();
+      }
+    } // method run
+
+  } // class Sequencer
+
   public static final String KEY_SHARD_ID = "shard-id";
 
   public static final String KEY_ALGO = "algo";
@@ -70,13 +228,31 @@ public abstract class MacAuditService implements AuditService {
 
   public static final String KEY_ENC_INTERVAL = "enc-interval";
 
-  private static final int ALGO_ID_HMAC_SHA256 = 1;
+  public static final String KEY_QUEUE_SIZE = "queue-size";
+
+  public static final String KEY_BATCH_SIZE = "batch-size";
+
+  public static final String KEY_DURABILITY = "durability";
+
+  private static final String DURABILITY_SYNC = "sync";
+
+  private static final String DURABILITY_ASYNC = "async";
+
+  private static final int DFLT_BATCH_SIZE = 100;
+
+  // maximal time to wait for the queued events to be stored while closing.
+  private static final long MS_CLOSE_TIMEOUT = 10000;
+
+  // maximal time to wait for an event to be queued, and to be stored with durability sync.
+  private static final long MS_STORE_TIMEOUT = 60000;
+
+  static final int ALGO_ID_HMAC_SHA256 = 1;
 
-  private static final String VERSION_V1 = "v1";
+  static final String VERSION_V1 = "v1";
 
   protected static final String DELIM = ";";
 
-  private static final String INNER_DELIM = ":";
+  static final String INNER_DELIM = ":";
 
   private static final Logger LOG = LoggerFactory.getLogger(MacAuditService.class);
 
@@ -111,9 +287,44 @@ public abstract class MacAuditService implements AuditService {
 
   private int encInterval;
 
+  private BlockingQueue<PendingEvent> queue;
+
+  private int batchSize;
+
+  private boolean syncDurability;
+
+  private Thread sequencerThread;
+
+  private volatile boolean closed;
+
+  // set if stored entries could not be removed after a failure. The stored chain then
+  // differs from the one in memory, and no further events are stored.
+  private volatile String brokenReason;
+
+  // the events are queued with the read lock, the service is closed with the write lock.
+  private final ReadWriteLock admissionLock = new ReentrantReadWriteLock();
+
+  private final AtomicLong failed = new AtomicLong(0);
+
+  private final AtomicLong stored = new AtomicLong(0);
+
+  private final AtomicLong batches = new AtomicLong(0);
+
+  private final AtomicLong totalFlushLatency = new AtomicLong(0);
+
+  private volatile long lastFlushLatency;
+
   public MacAuditService() {
   }
 
+  static SecretKey deriveMacKey(String password)
+      throws NoSuchAlgorithmException, InvalidKeySpecException {
+    SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+    KeySpec spec = new PBEKeySpec(password.toCharArray(),
+                    "MAC".getBytes(StandardCharsets.UTF_8), 10000, 256);
+    return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "HmacSHA256");
+  }
+
   protected String formatDate(Instant date) {
     return DTF.format(date.atZone(timeZone));
   }
@@ -139,8 +350,46 @@ public abstract class MacAuditService implements AuditService {
 
   protected abstract void storeIntegrity(String integrityText);
 
+  /**
+   * Stores the audit entries, and the integrity text if not {@code null}. Overwrite this
+   * method to store them with one write or in one transaction. If the entries could not be
+   * stored, a {@link RuntimeException} must be thrown, and none of the entries should have
+   * been stored, since the following entries will reuse their IDs. If some entries may have
+   * been stored and could not be removed, {@link #markBroken(String)} must be called before
+   * throwing the exception.
+   *
+   * @param entries
+   *          Audit entries in the order of their IDs.
+   * @param integrityText
+   *          Integrity text after the last entry, may be {@code null}.
+   */
+  protected void storeLogs(List<LogEntry> entries, String integrityText) {
+    for (LogEntry m : entries) {
+      storeLog(m.date, m.id, m.eventType, m.levelText, m.previousId, m.message, m.tag);
+    }
+
+    if (integrityText != null) {
+      storeIntegrity(integrityText);
+    }
+  } // method storeLogs
+
   protected abstract void doClose() throws Exception;
 
+  /**
+   * Marks the service as broken: the stored entries do not match the chain in memory, and
+   * no further events will be stored.
+   * @param reason
+   *          Reason why the service is broken.
+   */
+  protected final void markBroken(String reason) {
+    brokenReason = reason;
+    LOG.error("audit service is broken, no further events will be stored: {}", reason);
+  }
+
+  public boolean isBroken() {
+    return brokenReason != null;
+  }
+
   protected void doExtraInit(ConfPairs confPairs, PasswordResolver passwordResolver)
           throws PasswordResolverException {
   }
@@ -271,13 +520,12 @@ public abstract class MacAuditService implements AuditService {
     }
 
     try {
+      macKey = deriveMacKey(password);
+
       SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
       char[] passwordChars = password.toCharArray();
-      KeySpec spec = new PBEKeySpec(passwordChars, "MAC".getBytes(StandardCharsets.UTF_8),
-                    10000, 256);
-      macKey = factory.generateSecret(spec);
-
-      spec = new PBEKeySpec(passwordChars, "ENC".getBytes(StandardCharsets.UTF_8), 10000, 256);
+      KeySpec spec =
+          new PBEKeySpec(passwordChars, "ENC".getBytes(StandardCharsets.UTF_8), 10000, 256);
       encKey = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
 
       mac = Mac.getInstance(algo);
@@ -290,7 +538,31 @@ public abstract class MacAuditService implements AuditService {
 
     this.rnd = new SecureRandom();
     doExtraInit(new ConfPairs(conf), passwordResolver);
-  }
+
+    str = confPairs.value(KEY_QUEUE_SIZE);
+    int queueSize = (str == null) ? 0 : Integer.parseInt(str);
+    if (queueSize > 0) {
+      str = confPairs.value(KEY_BATCH_SIZE);
+      batchSize = (str == null) ? DFLT_BATCH_SIZE : Integer.parseInt(str);
+      if (batchSize < 1) {
+        throw new IllegalArgumentException("invalid " + KEY_BATCH_SIZE + " " + batchSize);
+      }
+
+      str = confPairs.value(KEY_DURABILITY);
+      if (str == null || DURABILITY_SYNC.equalsIgnoreCase(str)) {
+        syncDurability = true;
+      } else if (DURABILITY_ASYNC.equalsIgnoreCase(str)) {
+        syncDurability = false;
+      } else {
+        throw new IllegalArgumentException("invalid " + KEY_DURABILITY + " " + str);
+      }
+
+      queue = new ArrayBlockingQueue<>(queueSize);
+      sequencerThread = new Thread(new Sequencer(), "audit-sequencer");
+      sequencerThread.setDaemon(true);
+      sequencerThread.start();
+    }
+  } // method init
 
   @Override
   public void logEvent(AuditEvent event) {
@@ -302,11 +574,102 @@ public abstract class MacAuditService implements AuditService {
     log(AuditService.PCI_AUDIT_EVENT, event.getLevel(), event.toTextMessage());
   }
 
-  private synchronized void log(int eventType, AuditLevel level, String message) {
-    Instant date = Instant.now();
+  private void log(int eventType, AuditLevel level, String message) {
+    if (queue == null) {
+      logNow(eventType, level.getText(), message);
+      return;
+    }
+
+    PendingEvent event = new PendingEvent(Instant.now(), eventType, level.getText(), message);
+    admissionLock.readLock().lock();
+    try {
+      if (closed) {
+        LOG.error("audit service is closed, could not store audit event: {}", message);
+        return;
+      }
+
+      if (!queue.offer(event, MS_STORE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        throw new IllegalStateException("timeout, could not queue audit event: " + message);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.error("interrupted, could not queue audit event: {}", message);
+      return;
+    } finally {
+      admissionLock.readLock().unlock();
+    }
+
+    if (syncDurability && !event.awaitStored(MS_STORE_TIMEOUT)) {
+      throw new IllegalStateException("could not store audit event: " + message);
+    }
+  } // method log
+
+  private synchronized void logNow(int eventType, String levelText, String message) {
+    long start = System.nanoTime();
+    LogEntry entry = chain(Instant.now(), eventType, levelText, message);
+
+    storeLog(entry.date, entry.id, eventType, levelText, entry.previousId, message, entry.tag);
+    if (encInterval <= 1 || entry.id % encInterval == 0) {
+      String integrityText = buildIntegrityText();
+      storeIntegrity(integrityText);
+    }
+
+    updateStatistics(1, start);
+  } // method logNow
+
+  private synchronized void storeBatch(List<PendingEvent> events) {
+    if (brokenReason != null) {
+      failed.addAndGet(events.size());
+      LOG.error("audit service is broken, could not store {} audit events", events.size());
+      for (PendingEvent m : events) {
+        m.processed(false);
+      }
+      return;
+    }
+
+    long start = System.nanoTime();
+    long prevId = id.get();
+    String prevTag = previousTag;
+    boolean succ = false;
+    try {
+      long firstId = id.get() + 1;
+      List<LogEntry> entries = new ArrayList<>(events.size());
+      for (PendingEvent m : events) {
+        entries.add(chain(m.date, m.eventType, m.levelText, m.message));
+      }
+
+      // integrity text is required if at least one entry ID is a multiple of encInterval.
+      long lastId = id.get();
+      String integrityText = null;
+      if (encInterval <= 1 || lastId / encInterval != (firstId - 1) / encInterval) {
+        integrityText = buildIntegrityText();
+      }
+
+      storeLogs(entries, integrityText);
+      succ = true;
+    } catch (RuntimeException ex) {
+      if (brokenReason == null) {
+        // none of the entries is stored, roll back the chain, so that the next events
+        // are chained to the last stored one.
+        id.set(prevId);
+        previousTag = prevTag;
+      }
+      failed.addAndGet(events.size());
+      LogUtil.error(LOG, ex, "could not store " + events.size() + " audit events");
+    } finally {
+      for (PendingEvent m : events) {
+        m.processed(succ);
+      }
+    }
+
+    if (succ) {
+      updateStatistics(events.size(), start);
+    }
+  } // method storeBatch
+
+  private LogEntry chain(Instant date, int eventType, String levelText, String message) {
     long previousId = id.get();
     long thisId = id.incrementAndGet();
-    String levelText = level.getText();
 
     String payload = buildMacPayload(
                       date, thisId, eventType, levelText, previousId, previousTag, message);
@@ -318,12 +681,42 @@ public abstract class MacAuditService implements AuditService {
     String tagWithMeta = tagPrefix + Base64.encodeToString(tag);
     this.previousTag = tagWithMeta;
 
-    storeLog(date, thisId, eventType, levelText, previousId, message, tagWithMeta);
-    if (encInterval <= 1 || thisId % encInterval == 0) {
-      String integrityText = buildIntegrityText();
-      storeIntegrity(integrityText);
+    return new LogEntry(date, thisId, eventType, levelText, previousId, message, tagWithMeta);
+  } // method chain
+
+  private void updateStatistics(int numEvents, long startNanos) {
+    long latency = (System.nanoTime() - startNanos) / 1000000;
+    lastFlushLatency = latency;
+    totalFlushLatency.addAndGet(latency);
+    batches.incrementAndGet();
+    stored.addAndGet(numEvents);
+  } // method updateStatistics
+
+  public HealthCheckResult healthCheck() {
+    long numBatches = batches.get();
+
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("MacAuditService");
+    result.setHealthy(!closed && brokenReason == null
+        && (sequencerThread == null || sequencerThread.isAlive()));
+    Map<String, Object> statuses = result.getStatuses();
+    if (queue == null) {
+      statuses.put("mode", "direct");
+    } else {
+      statuses.put("mode", syncDurability ? DURABILITY_SYNC : DURABILITY_ASYNC);
+      statuses.put("queueSize", queue.size() + queue.remainingCapacity());
+      statuses.put("queueDepth", queue.size());
     }
-  }
+    if (brokenReason != null) {
+      statuses.put("broken", brokenReason);
+    }
+    statuses.put("stored", stored.get());
+    statuses.put("failed", failed.get());
+    statuses.put("batches", numBatches);
+    statuses.put("lastFlushLatency", lastFlushLatency);
+    statuses.put("avgFlushLatency", numBatches == 0 ? 0 : totalFlushLatency.get() / numBatches);
+    return result;
+  } // method healthCheck
 
   private String buildIntegrityText() {
     byte[] plaintext =
@@ -346,7 +739,32 @@ public abstract class MacAuditService implements AuditService {
 
   @Override
   public final void close() throws Exception {
-    if (!(encInterval <= 1 | id.get() % encInterval == 0)) {
+    // wait for the events being queued, no event will be queued afterwards.
+    admissionLock.writeLock().lock();
+    try {
+      closed = true;
+    } finally {
+      admissionLock.writeLock().unlock();
+    }
+
+    if (sequencerThread != null) {
+      sequencerThread.join(MS_CLOSE_TIMEOUT);
+      if (sequencerThread.isAlive()) {
+        LOG.warn("audit sequencer not terminated, {} queued events", queue.size());
+        sequencerThread.interrupt();
+        sequencerThread.join(MS_CLOSE_TIMEOUT);
+      }
+      sequencerThread = null;
+
+      // store the events queued after the sequencer has terminated.
+      List<PendingEvent> remaining = new ArrayList<>();
+      queue.drainTo(remaining);
+      if (!remaining.isEmpty()) {
+        storeBatch(remaining);
+      }
+    }
+
+    if (brokenReason == null && !(encInterval <= 1 | id.get() % encInterval == 0)) {
       String integrityText = buildIntegrityText();
       storeIntegrity(integrityText);
     }
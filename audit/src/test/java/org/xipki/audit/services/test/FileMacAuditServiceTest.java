@@ -0,0 +1,197 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.services.FileMacAuditService;
+import org.xipki.audit.services.FileMacAuditVerifier;
+import org.xipki.util.ConfPairs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FileMacAuditService test with failing writes.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class FileMacAuditServiceTest {
+
+  private enum Failure {
+    NONE,
+    // half of the bytes are written, then the write fails.
+    PARTIAL_WRITE,
+    // writes fail, and the file cannot be opened again.
+    WRITE_AND_OPEN
+  }
+
+  private static class FailingFileMacAuditService extends FileMacAuditService {
+
+    private volatile Failure failure = Failure.NONE;
+
+    @Override
+    protected FileOutputStream openOutputStream(File file) throws IOException {
+      if (failure == Failure.WRITE_AND_OPEN) {
+        throw new IOException("could not open file");
+      }
+
+      return new FileOutputStream(file, true) {
+
+        @Override
+        public void write(int b) throws IOException {
+          if (failure != Failure.NONE) {
+            throw new IOException("could not write");
+          }
+          super.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+          if (failure != Failure.NONE) {
+            super.write(bytes, off, len / 2);
+            throw new IOException("could not write");
+          }
+          super.write(bytes, off, len);
+        }
+
+      };
+    }
+
+  } // class FailingFileMacAuditService
+
+  private File logDir;
+
+  private String conf;
+
+  private ForkJoinPool pool;
+
+  @Before
+  public void init() throws IOException {
+    logDir = Files.createTempDirectory("xipki-audit-").toFile();
+    pool = new ForkJoinPool(2);
+
+    ConfPairs pairs = new ConfPairs("file", new File(logDir, "audit.log").getPath());
+    pairs.putPair("keyid", "key1");
+    pairs.putPair("password", "password1");
+    conf = pairs.getEncoded();
+  }
+
+  @After
+  public void cleanup() {
+    pool.shutdownNow();
+    File[] files = logDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    logDir.delete();
+  }
+
+  @Test
+  public void testPartialWrite() throws Exception {
+    FailingFileMacAuditService service = newService();
+    try {
+      logEvents(service, 1, 10);
+
+      service.failure = Failure.PARTIAL_WRITE;
+      Assert.assertFalse("event acknowledged although not written", logEvent(service, 11));
+
+      // the partially written entry has been removed, and the chain continues.
+      service.failure = Failure.NONE;
+      logEvents(service, 12, 20);
+      Assert.assertFalse("service broken", service.isBroken());
+    } finally {
+      service.close();
+    }
+
+    FileMacAuditVerifier.Result result = verify();
+    Assert.assertTrue(result.toString(), result.isValid());
+    Assert.assertEquals("numEntries", 19, result.getNumEntries());
+    Assert.assertEquals("lastId", 19, result.getLastId());
+  }
+
+  @Test
+  public void testBroken() throws Exception {
+    FailingFileMacAuditService service = newService();
+    try {
+      logEvents(service, 1, 10);
+
+      service.failure = Failure.WRITE_AND_OPEN;
+      Assert.assertFalse("event acknowledged although not written", logEvent(service, 11));
+      Assert.assertTrue("service not broken", service.isBroken());
+
+      // no events are stored in the broken service.
+      service.failure = Failure.NONE;
+      Assert.assertFalse("event acknowledged by broken service", logEvent(service, 12));
+    } finally {
+      service.close();
+    }
+
+    FileMacAuditVerifier.Result result = verify();
+    Assert.assertTrue(result.toString(), result.isValid());
+    Assert.assertEquals("numEntries", 10, result.getNumEntries());
+  }
+
+  private FailingFileMacAuditService newService() {
+    ConfPairs pairs = new ConfPairs(conf);
+    pairs.putPair("queue-size", "10");
+    pairs.putPair("durability", "sync");
+
+    FailingFileMacAuditService service = new FailingFileMacAuditService();
+    service.init(pairs.getEncoded());
+    return service;
+  }
+
+  private static void logEvents(FileMacAuditService service, int from, int to) {
+    for (int i = from; i <= to; i++) {
+      Assert.assertTrue("event " + i + " not acknowledged", logEvent(service, i));
+    }
+  }
+
+  private static boolean logEvent(FileMacAuditService service, int index) {
+    AuditEvent event = new AuditEvent(new Date());
+    event.setApplicationName("test");
+    event.setName("event-" + index);
+    event.setLevel(AuditLevel.INFO);
+    event.setStatus(AuditStatus.SUCCESSFUL);
+    try {
+      service.logEvent(event);
+      return true;
+    } catch (IllegalStateException ex) {
+      return false;
+    }
+  }
+
+  private FileMacAuditVerifier.Result verify() throws IOException {
+    return new FileMacAuditVerifier(conf).verify(pool);
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.services.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditLevel;
+import org.xipki.audit.AuditStatus;
+import org.xipki.audit.services.FileMacAuditService;
+import org.xipki.audit.services.FileMacAuditVerifier;
+import org.xipki.util.ConfPairs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FileMacAuditVerifier test. The audit files are written by the {@link FileMacAuditService}.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class FileMacAuditVerifierTest {
+
+  private static final int NUM_EVENTS = 200;
+
+  // small segments, so that the links between the segments are verified.
+  private static final int SEGMENT_SIZE = 1024;
+
+  private File logDir;
+
+  private ForkJoinPool pool;
+
+  @Before
+  public void init() throws IOException {
+    logDir = Files.createTempDirectory("xipki-audit-").toFile();
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void cleanup() {
+    pool.shutdownNow();
+    File[] files = logDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    logDir.delete();
+  }
+
+  @Test
+  public void testValidChain() throws Exception {
+    String conf = conf("password1", null);
+    writeEvents(conf);
+
+    FileMacAuditVerifier.Result result = verify(conf);
+    Assert.assertTrue(result.toString(), result.isValid());
+    Assert.assertEquals("numEntries", NUM_EVENTS, result.getNumEntries());
+    Assert.assertEquals("firstId", 1, result.getFirstId());
+    Assert.assertEquals("lastId", NUM_EVENTS, result.getLastId());
+  }
+
+  @Test
+  public void testValidChainQueued() throws Exception {
+    String conf = conf("password1", null);
+    ConfPairs queuedConf = new ConfPairs(conf);
+    queuedConf.putPair("queue-size", "50");
+    queuedConf.putPair("batch-size", "7");
+    writeEvents(queuedConf.getEncoded());
+
+    FileMacAuditVerifier.Result result = verify(conf);
+    Assert.assertTrue(result.toString(), result.isValid());
+    Assert.assertEquals("numEntries", NUM_EVENTS, result.getNumEntries());
+  }
+
+  @Test
+  public void testModifiedMessage() throws Exception {
+    String conf = conf("password1", null);
+    writeEvents(conf);
+
+    File file = logFile();
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    int index = NUM_EVENTS / 2;
+    lines.set(index, lines.get(index).replace("event-" + (index + 1), "event-x"));
+    Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+    FileMacAuditVerifier.Result result = verify(conf);
+    Assert.assertFalse("modified entry is not detected", result.isValid());
+    Assert.assertEquals("brokenId", index + 1, result.getBrokenId());
+    Assert.assertEquals("brokenOffset", offsetOfLine(lines, index), result.getBrokenOffset());
+    Assert.assertEquals("brokenFile", file, result.getBrokenFile());
+  }
+
+  @Test
+  public void testRemovedEntry() throws Exception {
+    String conf = conf("password1", null);
+    writeEvents(conf);
+
+    File file = logFile();
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    // remove the entry with ID 21
+    lines.remove(20);
+    Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+    FileMacAuditVerifier.Result result = verify(conf);
+    Assert.assertFalse("removed entry is not detected", result.isValid());
+    Assert.assertEquals("brokenId", 22, result.getBrokenId());
+    Assert.assertEquals("numEntries", 20, result.getNumEntries());
+  }
+
+  @Test
+  public void testWrongKey() throws Exception {
+    writeEvents(conf("password1", null));
+
+    FileMacAuditVerifier.Result result = verify(conf("password2", null));
+    Assert.assertFalse("wrong key is not detected", result.isValid());
+    Assert.assertEquals("brokenId", 1, result.getBrokenId());
+  }
+
+  @Test
+  public void testOldKey() throws Exception {
+    writeEvents(conf("password1", null));
+
+    FileMacAuditVerifier.Result result = verify(conf("password2", "password1"));
+    Assert.assertTrue(result.toString(), result.isValid());
+    Assert.assertEquals("numEntries", NUM_EVENTS, result.getNumEntries());
+  }
+
+  private String conf(String password, String oldPassword) {
+    ConfPairs pairs = new ConfPairs("file", new File(logDir, "audit.log").getPath());
+    if (oldPassword == null) {
+      pairs.putPair("keyid", "key1");
+      pairs.putPair("password", password);
+    } else {
+      pairs.putPair("keyid", "key2");
+      pairs.putPair("password", password);
+      pairs.putPair("old-keyid", "key1");
+      pairs.putPair("old-password", oldPassword);
+    }
+    return pairs.getEncoded();
+  }
+
+  private static void writeEvents(String conf) throws Exception {
+    FileMacAuditService service = new FileMacAuditService();
+    service.init(conf);
+    try {
+      for (int i = 1; i <= NUM_EVENTS; i++) {
+        AuditEvent event = new AuditEvent(new Date());
+        event.setApplicationName("test");
+        event.setName("event-" + i);
+        event.setLevel(AuditLevel.INFO);
+        event.setStatus(AuditStatus.SUCCESSFUL);
+        service.logEvent(event);
+      }
+    } finally {
+      service.close();
+    }
+  }
+
+  private FileMacAuditVerifier.Result verify(String conf) throws IOException {
+    FileMacAuditVerifier verifier = new FileMacAuditVerifier(conf);
+    verifier.setSegmentSize(SEGMENT_SIZE);
+    return verifier.verify(pool);
+  }
+
+  private File logFile() {
+    List<File> files = new ArrayList<>();
+    for (File file : logDir.listFiles()) {
+      if (file.getName().endsWith(".log")) {
+        files.add(file);
+      }
+    }
+    // the events of a test are written in one day, except around midnight.
+    Assert.assertEquals("number of audit files", 1, files.size());
+    return files.get(0);
+  }
+
+  private static long offsetOfLine(List<String> lines, int index) {
+    long offset = 0;
+    for (int i = 0; i < index; i++) {
+      offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+    return offset;
+  }
+
+}
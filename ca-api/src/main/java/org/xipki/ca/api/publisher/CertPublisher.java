@@ -26,8 +26,13 @@ import org.xipki.security.X509Cert;
 import org.xipki.util.FileOrValue;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
+import static org.xipki.util.Args.notNull;
+
 /**
  * Defines how to publish the certificates and CRLs. All CertPublisher classes must extend this
  * class.
@@ -38,6 +43,37 @@ import java.util.Map;
 
 public abstract class CertPublisher implements Closeable {
 
+  /**
+   * Revoked certificate with its revocation information.
+   */
+  public static class RevokedCert {
+
+    private final CertWithDbId cert;
+
+    private final String certprofile;
+
+    private final CertRevocationInfo revInfo;
+
+    public RevokedCert(CertWithDbId cert, String certprofile, CertRevocationInfo revInfo) {
+      this.cert = notNull(cert, "cert");
+      this.certprofile = certprofile;
+      this.revInfo = notNull(revInfo, "revInfo");
+    }
+
+    public CertWithDbId getCert() {
+      return cert;
+    }
+
+    public String getCertprofile() {
+      return certprofile;
+    }
+
+    public CertRevocationInfo getRevInfo() {
+      return revInfo;
+    }
+
+  } // class RevokedCert
+
   protected CertPublisher() {
   }
 
@@ -89,6 +125,28 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean certificateAdded(CertificateInfo certInfo);
 
+  /**
+   * Publishes certificates. The default implementation calls
+   * {@link #certificateAdded(CertificateInfo)} for each certificate, publishers which can
+   * write several certificates at once should overwrite it.
+   *
+   * @param certInfos
+   *          Certificates to be published. Must not be {@code null}.
+   * @return the certificates which could not be published, empty if all are published.
+   */
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    List<CertificateInfo> failed = null;
+    for (CertificateInfo certInfo : certInfos) {
+      if (!certificateAdded(certInfo)) {
+        if (failed == null) {
+          failed = new LinkedList<>();
+        }
+        failed.add(certInfo);
+      }
+    }
+    return failed == null ? Collections.emptyList() : failed;
+  } // method certificatesAdded
+
   /**
    * Publishes the revocation of a certificate.
    *
@@ -105,6 +163,32 @@ public abstract class CertPublisher implements Closeable {
   public abstract boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo);
 
+  /**
+   * Publishes the revocation of certificates. The default implementation calls
+   * {@link #certificateRevoked(X509Cert, CertWithDbId, String, CertRevocationInfo)} for each
+   * certificate, publishers which can write several revocations at once should overwrite it.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param revokedCerts
+   *          Revoked certificates. Must not be {@code null}.
+   * @return the certificates whose revocation could not be published, empty if all are
+   *     published.
+   */
+  public List<RevokedCert> certificatesRevoked(X509Cert caCert, List<RevokedCert> revokedCerts) {
+    List<RevokedCert> failed = null;
+    for (RevokedCert revokedCert : revokedCerts) {
+      if (!certificateRevoked(caCert, revokedCert.getCert(), revokedCert.getCertprofile(),
+          revokedCert.getRevInfo())) {
+        if (failed == null) {
+          failed = new LinkedList<>();
+        }
+        failed.add(revokedCert);
+      }
+    }
+    return failed == null ? Collections.emptyList() : failed;
+  } // method certificatesRevoked
+
   /**
    * Publishes the unrevocation of a certificate.
    *
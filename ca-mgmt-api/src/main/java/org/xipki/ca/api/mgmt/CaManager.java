@@ -85,12 +85,16 @@ public interface CaManager {
    *          Publisher names. Could be {@code null}.
    * @param numThreads
    *          Number of threads
+   * @param resume
+   *          Whether to resume an interrupted republishing to the same publishers from its
+   *          checkpoint. If {@code false}, the checkpoint is discarded and all certificates
+   *          are republished.
    * @throws CaMgmtException
    *          if error occurs.
    *
    */
-  void republishCertificates(String caName, List<String> publisherNames, int numThreads)
-      throws CaMgmtException;
+  void republishCertificates(String caName, List<String> publisherNames, int numThreads,
+      boolean resume) throws CaMgmtException;
 
   /**
    * Clear the publish queue for the CA {@code caName} and publishers {@code publisherNames}.
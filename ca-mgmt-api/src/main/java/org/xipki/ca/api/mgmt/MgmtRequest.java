@@ -668,6 +668,9 @@ public abstract class MgmtRequest extends MgmtMessage {
 
     private int numThreads;
 
+    // true by default, as the requests of the older clients without this field.
+    private boolean resume = true;
+
     public List<String> getPublisherNames() {
       return publisherNames;
     }
@@ -684,6 +687,14 @@ public abstract class MgmtRequest extends MgmtMessage {
       this.numThreads = numThreads;
     }
 
+    public boolean isResume() {
+      return resume;
+    }
+
+    public void setResume(boolean resume) {
+      this.resume = resume;
+    }
+
   } // class RepublishCertificates
 
   public static class RevokeCa extends CaNameRequest {
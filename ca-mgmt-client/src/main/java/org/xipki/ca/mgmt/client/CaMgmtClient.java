@@ -164,12 +164,13 @@ public class CaMgmtClient implements CaManager {
   }
 
   @Override
-  public void republishCertificates(String caName, List<String> publisherNames, int numThreads)
-      throws CaMgmtException {
+  public void republishCertificates(String caName, List<String> publisherNames, int numThreads,
+      boolean resume) throws CaMgmtException {
     MgmtRequest.RepublishCertificates req = new MgmtRequest.RepublishCertificates();
     req.setCaName(caName);
     req.setPublisherNames(publisherNames);
     req.setNumThreads(numThreads);
+    req.setResume(resume);
     voidTransmit(MgmtAction.republishCertificates, req);
   } // method republishCertificates
 
@@ -138,6 +138,14 @@ public class CaIdNameMap {
     return ident;
   } // method removeCertprofile
 
+  public NameId removePublisher(int id) {
+    NameId ident = idPublisherMap.remove(id);
+    if (ident != null) {
+      namePublisherMap.remove(ident.getName());
+    }
+    return ident;
+  } // method removePublisher
+
   public NameId removeRequestor(int id) {
     NameId ident = idRequestorMap.remove(id);
     if (ident != null) {
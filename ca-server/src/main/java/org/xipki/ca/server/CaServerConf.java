@@ -144,6 +144,25 @@ public class CaServerConf extends ValidatableConf {
    */
   private int shardId = 0;
 
+  /**
+   * number of threads to sign the certificates of a request with multiple certificate
+   * templates in parallel. The default is 1, namely the certificates are generated
+   * sequentially.
+   */
+  private int enrollmentParallelism = 1;
+
+  /**
+   * maximal number of pending events of the asynchronous publishing of the certificates.
+   * The default is 0, namely the certificates are published synchronously. If the queue is
+   * full, the certificates are added to the table PUBLISHQUEUE.
+   */
+  private int asyncPublishingQueueSize = 0;
+
+  /**
+   * maximal number of events passed to the publishers at once.
+   */
+  private int asyncPublishingBatchSize = 100;
+
   private List<DataSourceConf> datasources;
 
   private List<SslContext> sslContexts;
@@ -185,6 +204,30 @@ public class CaServerConf extends ValidatableConf {
     this.shardId = shardId;
   }
 
+  public int getEnrollmentParallelism() {
+    return enrollmentParallelism;
+  }
+
+  public void setEnrollmentParallelism(int enrollmentParallelism) {
+    this.enrollmentParallelism = enrollmentParallelism;
+  }
+
+  public int getAsyncPublishingQueueSize() {
+    return asyncPublishingQueueSize;
+  }
+
+  public void setAsyncPublishingQueueSize(int asyncPublishingQueueSize) {
+    this.asyncPublishingQueueSize = asyncPublishingQueueSize;
+  }
+
+  public int getAsyncPublishingBatchSize() {
+    return asyncPublishingBatchSize;
+  }
+
+  public void setAsyncPublishingBatchSize(int asyncPublishingBatchSize) {
+    this.asyncPublishingBatchSize = asyncPublishingBatchSize;
+  }
+
   public List<DataSourceConf> getDatasources() {
     return datasources;
   }
@@ -283,6 +326,18 @@ public class CaServerConf extends ValidatableConf {
       throw new InvalidConfException("shardId is not in [0, 127]");
     }
 
+    if (enrollmentParallelism < 1) {
+      throw new InvalidConfException("enrollmentParallelism must not be less than 1");
+    }
+
+    if (asyncPublishingQueueSize < 0) {
+      throw new InvalidConfException("asyncPublishingQueueSize must not be negative");
+    }
+
+    if (asyncPublishingBatchSize < 1) {
+      throw new InvalidConfException("asyncPublishingBatchSize must not be less than 1");
+    }
+
     notEmpty(datasources, "datasources");
     validate(remoteMgmt);
     validate(security);
@@ -24,51 +24,51 @@ import org.xipki.ca.api.NameId;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.server.db.CertStore;
 import org.xipki.ca.server.db.CertStore.SerialWithId;
+import org.xipki.ca.server.db.CertStore.SystemEvent;
+import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.util.Args;
+import org.xipki.util.ConfPairs;
 import org.xipki.util.LogUtil;
 import org.xipki.util.ProcessLog;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Publish certificates.
  *
+ * <p>The producer cuts the certificates into chunks of consecutive IDs, and the consumers
+ * read each chunk with one query and pass it to the publishers at once. The largest ID up to
+ * which all chunks are published is saved periodically in the table SYSTEM_EVENT, so that an
+ * interrupted republishing to the same publishers can be resumed there. If not resumed, the
+ * checkpoint is discarded and all certificates are republished.
+ *
  * @author Lijun Liao
  * @since 2.1.0
  */
 
 class CertRepublisher {
 
-  private interface QueueEntry {
-
-    EndOfQueue END_OF_QUEUE = new EndOfQueue();
-
-    class EndOfQueue implements QueueEntry {
-
-      private EndOfQueue() {
-      }
-
-    }
+  private static final class Chunk {
 
-  } // class QueueEntry
+    private static final Chunk END_OF_QUEUE = new Chunk(-1, 0, 0);
 
-  private static class SerialWithIdQueueEntry implements QueueEntry {
+    private final long index;
 
-    private final SerialWithId serialWithId;
+    private final long fromId;
 
-    public SerialWithIdQueueEntry(SerialWithId serialWithId) {
-      this.serialWithId = Args.notNull(serialWithId, "serialWithId");
-    }
+    private final long toId;
 
-    public SerialWithId serialWithId() {
-      return serialWithId;
+    private Chunk(long index, long fromId, long toId) {
+      this.index = index;
+      this.fromId = fromId;
+      this.toId = toId;
     }
 
-  } // class SerialWithIdQueueEntry
+  } // class Chunk
 
   private class CertRepublishProducer implements Runnable {
 
@@ -79,39 +79,48 @@ class CertRepublisher {
 
     @Override
     public void run() {
-      final int numEntries = 100;
-      long startId = 1;
+      long startId = resumeId;
+      long index = 0;
 
       try {
         List<SerialWithId> serials;
         do {
-          serials = certstore.getSerialNumbers(ca, startId, numEntries, onlyRevokedCerts);
-          long maxId = 1;
-          for (SerialWithId sid : serials) {
-            if (sid.getId() > maxId) {
-              maxId = sid.getId();
-            }
-            queue.put(new SerialWithIdQueueEntry(sid));
+          serials = certstore.getSerialNumbers(ca, startId, CHUNK_SIZE, onlyRevokedCerts);
+          if (serials.isEmpty()) {
+            break;
           }
 
-          startId = maxId + 1;
-        } while (serials.size() >= numEntries && !failed && !stopMe.get());
+          // ordered by ID ASC
+          long fromId = serials.get(0).getId();
+          long toId = serials.get(serials.size() - 1).getId();
+          if (!put(new Chunk(index++, fromId, toId))) {
+            return;
+          }
 
-        queue.put(QueueEntry.END_OF_QUEUE);
+          startId = toId + 1;
+        } while (serials.size() >= CHUNK_SIZE && !stopMe.get());
       } catch (OperationException | InterruptedException ex) {
         LogUtil.error(LOG, ex, "error in RepublishProducer");
         failed = true;
       }
 
-      if (!queue.contains(QueueEntry.END_OF_QUEUE)) {
-        try {
-          queue.put(QueueEntry.END_OF_QUEUE);
-        } catch (InterruptedException ex) {
-          LogUtil.error(LOG, ex, "error in RepublishProducer");
-          failed = true;
-        }
+      try {
+        put(Chunk.END_OF_QUEUE);
+      } catch (InterruptedException ex) {
+        LogUtil.error(LOG, ex, "error in RepublishProducer");
+        failed = true;
       }
     } // method run
+
+    private boolean put(Chunk chunk) throws InterruptedException {
+      while (!queue.offer(chunk, 1, TimeUnit.SECONDS)) {
+        if (stopMe.get()) {
+          return false;
+        }
+      }
+      return true;
+    } // method put
+
   } // class CertRepublishProducer
 
   private class CertRepublishConsumer implements Runnable {
@@ -123,56 +132,72 @@ class CertRepublisher {
 
     @Override
     public void run() {
-      while (!failed) {
-        QueueEntry entry;
+      while (!failed && !stopMe.get()) {
+        Chunk chunk;
         try {
-          entry = queue.take();
+          chunk = queue.poll(1, TimeUnit.SECONDS);
         } catch (InterruptedException ex) {
           LogUtil.error(LOG, ex, "could not take from queue");
           failed = true;
           break;
         }
 
-        if (entry instanceof QueueEntry.EndOfQueue) {
+        if (chunk == null) {
+          continue;
+        }
+
+        if (chunk == Chunk.END_OF_QUEUE) {
           // re-add it to queue so that other consumers know it
           try {
-            queue.put(entry);
+            queue.put(chunk);
           } catch (InterruptedException ex) {
             LogUtil.warn(LOG, ex, "could not re-add EndOfQueue to queue");
           }
           break;
         }
 
-        SerialWithId sid = ((SerialWithIdQueueEntry) entry).serialWithId();
-
-        CertificateInfo certInfo;
-
+        List<CertificateInfo> certInfos;
         try {
-          certInfo = certstore.getCertForId(ca, caCert, sid.getId(), caIdNameMap);
+          certInfos = certstore.getCertsForIdRange(ca, caCert, chunk.fromId, chunk.toId,
+              onlyRevokedCerts, caIdNameMap);
         } catch (OperationException ex) {
           LogUtil.error(LOG, ex);
           failed = true;
           break;
         }
 
-        boolean allSucc = true;
         for (IdentifiedCertPublisher publisher : publishers) {
-          if (!certInfo.isRevoked() && !publisher.publishsGoodCert()) {
+          List<CertificateInfo> toPublish = certInfos;
+          if (!publisher.publishsGoodCert()) {
+            toPublish = new ArrayList<>(certInfos.size());
+            for (CertificateInfo certInfo : certInfos) {
+              if (certInfo.isRevoked()) {
+                toPublish.add(certInfo);
+              }
+            }
+          }
+
+          if (toPublish.isEmpty()) {
             continue;
           }
 
-          boolean successful = publisher.certificateAdded(certInfo);
-          if (!successful) {
-            LOG.error("republish certificate serial={} to publisher {} failed",
-                LogUtil.formatCsn(sid.getSerial()), publisher.getIdent());
-            allSucc = false;
+          List<CertificateInfo> failedCertInfos = publisher.certificatesAdded(toPublish);
+          if (!failedCertInfos.isEmpty()) {
+            LOG.error("republish {} certificates (first serial={}) to publisher {} failed",
+                failedCertInfos.size(),
+                LogUtil.formatCsn(failedCertInfos.get(0).getCert().getCert().getSerialNumber()),
+                publisher.getIdent());
+            failed = true;
+            break;
           }
         }
 
-        if (!allSucc) {
+        if (failed) {
           break;
         }
-        processLog.addNumProcessed(1);
+
+        processLog.addNumProcessed(certInfos.size());
+        chunkPublished(chunk);
       }
     } // method run
 
@@ -180,6 +205,12 @@ class CertRepublisher {
 
   private static final Logger LOG = LoggerFactory.getLogger(CertRepublisher.class);
 
+  // number of certificates in one chunk.
+  private static final int CHUNK_SIZE = 1000;
+
+  // minimal interval to save the checkpoint.
+  private static final long MS_CHECKPOINT_INTERVAL = 10000;
+
   private final NameId ca;
 
   private final X509Cert caCert;
@@ -194,14 +225,31 @@ class CertRepublisher {
 
   private final int numThreads;
 
-  private final BlockingQueue<QueueEntry> queue = new ArrayBlockingQueue<>(1000);
+  private final boolean resume;
+
+  private final BlockingQueue<Chunk> queue;
 
   private final AtomicBoolean stopMe = new AtomicBoolean(false);
 
+  private final String checkpointName;
+
+  private final String publishersText;
+
+  // published chunks which are waiting for their predecessors, keyed by the index.
+  private final TreeMap<Long, Chunk> publishedChunks = new TreeMap<>();
+
+  private long nextChunkIndex;
+
+  // all certificates with ID less than it have been published.
+  private long resumeId = 1;
+
+  private long lastCheckpointTime;
+
   private ProcessLog processLog;
 
   CertRepublisher(NameId ca, X509Cert caCert, CaIdNameMap caIdNameMap, CertStore certstore,
-      List<IdentifiedCertPublisher> publishers, boolean onlyRevokedCerts, int numThreads) {
+      List<IdentifiedCertPublisher> publishers, boolean onlyRevokedCerts, int numThreads,
+      boolean resume) {
     this.ca = Args.notNull(ca, "ca");
     this.caCert = Args.notNull(caCert, "caCert");
     this.caIdNameMap = Args.notNull(caIdNameMap, "caIdNameMap");
@@ -209,6 +257,21 @@ class CertRepublisher {
     this.publishers = Args.notEmpty(publishers, "publishers");
     this.onlyRevokedCerts = onlyRevokedCerts;
     this.numThreads = Args.positive(numThreads, "numThreads");
+    this.resume = resume;
+    this.queue = new ArrayBlockingQueue<>(2 * numThreads);
+
+    this.checkpointName = "REPUBLISH_CA_" + ca.getId();
+
+    List<String> names = new ArrayList<>(publishers.size());
+    for (IdentifiedCertPublisher publisher : publishers) {
+      names.add(publisher.getIdent().getName());
+    }
+    Collections.sort(names);
+    String text = String.join(":", names);
+    if (text.length() > 150) {
+      text = HashAlgo.SHA1.hexHash(text.getBytes(StandardCharsets.UTF_8));
+    }
+    this.publishersText = text;
   } // constructor
 
   boolean republish() {
@@ -218,24 +281,33 @@ class CertRepublisher {
       if (processLog != null) {
         processLog.finish();
         processLog.printTrailer();
+        LOG.info("republished {} certificates of CA {} in {} ms, {} certificates/s",
+            processLog.numProcessed(), ca.getName(), processLog.totalElapsedTime(),
+            processLog.totalAverageSpeed());
       }
     }
   } // method republish
 
   private boolean republish0() {
+    if (resume) {
+      loadCheckpoint();
+    } else {
+      discardCheckpoint();
+    }
+
     long total;
     try {
-      total = certstore.getCountOfCerts(ca, onlyRevokedCerts);
+      total = certstore.getCountOfCerts(ca, onlyRevokedCerts, resumeId);
     } catch (OperationException ex) {
       LogUtil.error(LOG, ex, "could not getCountOfCerts");
       return false;
     }
     processLog = new ProcessLog(total);
     processLog.printHeader();
+    lastCheckpointTime = System.currentTimeMillis();
 
     ExecutorService executor = Executors.newFixedThreadPool(numThreads + 1);
     List<CertRepublishConsumer> consumers = new ArrayList<>(numThreads);
-    AtomicBoolean stopMe = new AtomicBoolean(false);
     for (int i = 0; i < numThreads; i++) {
       CertRepublishConsumer consumer = new CertRepublishConsumer();
       consumers.add(consumer);
@@ -249,29 +321,13 @@ class CertRepublisher {
     }
 
     executor.shutdown();
-    boolean successful = true;
 
     while (true) {
       processLog.printStatus();
 
-      if (successful) {
-        if (producer.failed) {
-          successful = false;
-        }
-
-        if (successful) {
-          for (CertRepublishConsumer consumer : consumers) {
-            if (consumer.failed) {
-              successful = false;
-              break;
-            }
-          }
-        }
-
-        if (!successful) {
-          stopMe.set(true);
-          LOG.warn("failed");
-        }
+      if (!stopMe.get() && !isSuccessful(producer, consumers)) {
+        stopMe.set(true);
+        LOG.warn("failed");
       }
 
       try {
@@ -285,26 +341,107 @@ class CertRepublisher {
       }
     }
 
+    boolean successful = !stopMe.get() && isSuccessful(producer, consumers);
     if (successful) {
-      if (producer.failed) {
-        successful = false;
+      try {
+        certstore.deleteSystemEvent(checkpointName);
+      } catch (OperationException ex) {
+        LogUtil.warn(LOG, ex, "could not delete the checkpoint " + checkpointName);
       }
+    } else {
+      LOG.warn("failed");
+      saveCheckpoint();
+    }
 
-      if (successful) {
-        for (CertRepublishConsumer consumer : consumers) {
-          if (consumer.failed) {
-            successful = false;
-            break;
-          }
-        }
+    return successful;
+  } // method republish0
+
+  private static boolean isSuccessful(CertRepublishProducer producer,
+      List<CertRepublishConsumer> consumers) {
+    if (producer.failed) {
+      return false;
+    }
+
+    for (CertRepublishConsumer consumer : consumers) {
+      if (consumer.failed) {
+        return false;
       }
+    }
+    return true;
+  } // method isSuccessful
 
-      if (!successful) {
-        LOG.warn("failed");
+  private void loadCheckpoint() {
+    SystemEvent event;
+    try {
+      event = certstore.getSystemEvent(checkpointName);
+    } catch (OperationException ex) {
+      LogUtil.warn(LOG, ex, "could not read the checkpoint " + checkpointName + ", ignore it");
+      return;
+    }
+
+    if (event == null) {
+      return;
+    }
+
+    ConfPairs pairs = new ConfPairs(event.getOwner());
+    if (!publishersText.equals(pairs.value("publishers"))
+        || onlyRevokedCerts != Boolean.parseBoolean(pairs.value("onlyrevoked"))) {
+      LOG.info("ignore the checkpoint of republishing to other publishers: {}",
+          event.getOwner());
+      return;
+    }
+
+    try {
+      resumeId = Long.parseLong(pairs.value("nextid"));
+      LOG.warn("resume republishing certificates of CA {} from ID {}, checkpoint saved at {}",
+          ca.getName(), resumeId, new Date(event.getEventTime() * 1000));
+    } catch (NumberFormatException ex) {
+      LOG.warn("invalid checkpoint {}, ignore it: {}", checkpointName, event.getOwner());
+    }
+  } // method loadCheckpoint
+
+  private void discardCheckpoint() {
+    try {
+      if (certstore.getSystemEvent(checkpointName) != null) {
+        certstore.deleteSystemEvent(checkpointName);
+        LOG.info("discarded the checkpoint {}, republish all certificates of CA {}",
+            checkpointName, ca.getName());
       }
+    } catch (OperationException ex) {
+      LogUtil.warn(LOG, ex, "could not discard the checkpoint " + checkpointName);
     }
+  } // method discardCheckpoint
 
-    return successful;
-  } // method republish0
+  private synchronized void chunkPublished(Chunk chunk) {
+    publishedChunks.put(chunk.index, chunk);
+
+    // advance over the contiguous published chunks
+    Map.Entry<Long, Chunk> first;
+    while ((first = publishedChunks.firstEntry()) != null && first.getKey() == nextChunkIndex) {
+      publishedChunks.pollFirstEntry();
+      resumeId = first.getValue().toId + 1;
+      nextChunkIndex++;
+    }
+
+    if (System.currentTimeMillis() - lastCheckpointTime >= MS_CHECKPOINT_INTERVAL) {
+      saveCheckpoint();
+    }
+  } // method chunkPublished
+
+  private synchronized void saveCheckpoint() {
+    lastCheckpointTime = System.currentTimeMillis();
+
+    ConfPairs pairs = new ConfPairs();
+    pairs.putPair("nextid", Long.toString(resumeId));
+    pairs.putPair("onlyrevoked", Boolean.toString(onlyRevokedCerts));
+    pairs.putPair("publishers", publishersText);
+
+    try {
+      certstore.changeSystemEvent(
+          new SystemEvent(checkpointName, pairs.getEncoded(), lastCheckpointTime / 1000));
+    } catch (OperationException ex) {
+      LogUtil.warn(LOG, ex, "could not save the checkpoint " + checkpointName);
+    }
+  } // method saveCheckpoint
 
 }
@@ -0,0 +1,168 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.util.X509Util;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Cache of the DER-encoded CRLs of a CA. The current CRL and the recently requested CRLs
+ * are kept in memory, so that they are neither read from the database nor parsed again for
+ * each download.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class CrlCache {
+
+  /**
+   * Immutable DER-encoded CRL with the information required to answer the HTTP conditional
+   * requests. The encoded CRL is shared by all requests and must not be modified.
+   */
+  static final class Entry {
+
+    private final byte[] encoded;
+
+    private final BigInteger crlNumber;
+
+    private final long thisUpdate;
+
+    private final Long nextUpdate;
+
+    private final String etag;
+
+    Entry(byte[] encoded) {
+      this.encoded = notNull(encoded, "encoded");
+
+      CertificateList crl = CertificateList.getInstance(encoded);
+      Extensions extns = crl.getTBSCertList().getExtensions();
+      byte[] extnValue = X509Util.getCoreExtValue(extns, Extension.cRLNumber);
+      if (extnValue == null) {
+        throw new IllegalArgumentException("CRL does not contain the extension cRLNumber");
+      }
+
+      this.crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
+      this.thisUpdate = crl.getThisUpdate().getDate().getTime();
+      Time time = crl.getNextUpdate();
+      this.nextUpdate = (time == null) ? null : time.getDate().getTime();
+      this.etag = "\"" + HashAlgo.SHA1.hexHash(encoded) + "\"";
+    }
+
+    /**
+     * Constructor for the CRL generated by this CA, whose header fields are known without
+     * parsing the encoded CRL.
+     */
+    Entry(EncodedCrl crl) {
+      this.encoded = crl.getEncoded();
+      this.crlNumber = crl.getCrlNumber();
+      this.thisUpdate = crl.getThisUpdate().getTime();
+      this.nextUpdate = (crl.getNextUpdate() == null) ? null : crl.getNextUpdate().getTime();
+      this.etag = "\"" + HashAlgo.SHA1.hexHash(encoded) + "\"";
+    }
+
+    byte[] getEncoded() {
+      return encoded;
+    }
+
+    BigInteger getCrlNumber() {
+      return crlNumber;
+    }
+
+    long getThisUpdate() {
+      return thisUpdate;
+    }
+
+    Long getNextUpdate() {
+      return nextUpdate;
+    }
+
+    /**
+     * Gets the HTTP entity tag, the quoted ASCII HEX representation of the SHA1 hash of
+     * the CRL.
+     * @return the entity tag.
+     */
+    String getETag() {
+      return etag;
+    }
+
+  } // class Entry
+
+  private final Map<BigInteger, Entry> entries;
+
+  private volatile Entry current;
+
+  CrlCache(int maxSize) {
+    positive(maxSize, "maxSize");
+    this.entries = new LinkedHashMap<BigInteger, Entry>(maxSize * 2, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<BigInteger, Entry> eldest) {
+        return size() > maxSize;
+      }
+
+    };
+  } // constructor
+
+  Entry getCurrent() {
+    return current;
+  }
+
+  /**
+   * Sets the current CRL. The CRL is ignored if the cached current CRL has a greater CRL
+   * number, e.g. if a new CRL has been generated while the given one was read from the
+   * database.
+   * @param entry
+   *          The current CRL.
+   */
+  synchronized void setCurrent(Entry entry) {
+    notNull(entry, "entry");
+    entries.put(entry.getCrlNumber(), entry);
+    if (current == null || current.getCrlNumber().compareTo(entry.getCrlNumber()) <= 0) {
+      current = entry;
+    }
+  } // method setCurrent
+
+  synchronized Entry get(BigInteger crlNumber) {
+    return entries.get(crlNumber);
+  }
+
+  synchronized void put(Entry entry) {
+    entries.put(entry.getCrlNumber(), entry);
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    current = null;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.bouncycastle.cert.X509CRLHolder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Date;
+
+import static org.xipki.util.Args.notNull;
+
+/**
+ * DER-encoded CRL generated by the CA, with the header fields taken from the inputs of the
+ * CRL generator. The {@link X509CRLHolder} is parsed only on demand, and at most once.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class EncodedCrl {
+
+  private final byte[] encoded;
+
+  private final BigInteger crlNumber;
+
+  private final BigInteger baseCrlNumber;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private X509CRLHolder holder;
+
+  EncodedCrl(byte[] encoded, BigInteger crlNumber, BigInteger baseCrlNumber, Date thisUpdate,
+      Date nextUpdate) {
+    this.encoded = notNull(encoded, "encoded");
+    this.crlNumber = notNull(crlNumber, "crlNumber");
+    this.baseCrlNumber = baseCrlNumber;
+    this.thisUpdate = notNull(thisUpdate, "thisUpdate");
+    this.nextUpdate = nextUpdate;
+  }
+
+  byte[] getEncoded() {
+    return encoded;
+  }
+
+  BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  /**
+   * Gets the CRL number of the base CRL.
+   * @return the base CRL number for a delta CRL, {@code null} for a full CRL.
+   */
+  BigInteger getBaseCrlNumber() {
+    return baseCrlNumber;
+  }
+
+  Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  /**
+   * Gets the parsed CRL, parsing it on the first call.
+   * @return the parsed CRL.
+   * @throws IOException
+   *           if the CRL could not be parsed.
+   */
+  synchronized X509CRLHolder getHolder() throws IOException {
+    if (holder == null) {
+      holder = new X509CRLHolder(encoded);
+    }
+    return holder;
+  }
+
+}
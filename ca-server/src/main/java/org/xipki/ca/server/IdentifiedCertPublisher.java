@@ -23,6 +23,7 @@ import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.NameId;
 import org.xipki.ca.api.mgmt.entry.PublisherEntry;
 import org.xipki.ca.api.publisher.CertPublisher;
+import org.xipki.ca.api.publisher.CertPublisher.RevokedCert;
 import org.xipki.ca.api.publisher.CertPublisherException;
 import org.xipki.password.PasswordResolver;
 import org.xipki.security.CertRevocationInfo;
@@ -30,6 +31,7 @@ import org.xipki.security.X509Cert;
 import org.xipki.util.FileOrValue;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.Map;
 
 import static org.xipki.util.Args.notNull;
@@ -66,11 +68,19 @@ public class IdentifiedCertPublisher implements Closeable {
     return certPublisher.certificateAdded(certInfo);
   }
 
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    return certPublisher.certificatesAdded(certInfos);
+  }
+
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert, String certprofile,
       CertRevocationInfo revInfo) {
     return certPublisher.certificateRevoked(caCert, cert, certprofile, revInfo);
   }
 
+  public List<RevokedCert> certificatesRevoked(X509Cert caCert, List<RevokedCert> revokedCerts) {
+    return certPublisher.certificatesRevoked(caCert, revokedCerts);
+  }
+
   public boolean crlAdded(X509Cert caCert, X509CRLHolder crl) {
     return certPublisher.crlAdded(caCert, crl);
   }
@@ -43,9 +43,11 @@ import org.xipki.util.ConfPairs;
 import org.xipki.util.Validity;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.xipki.ca.server.CertprofileUtil.*;
 import static org.xipki.util.Args.notNull;
@@ -59,15 +61,95 @@ import static org.xipki.util.Args.notNull;
 
 public class IdentifiedCertprofile implements Closeable {
 
+  /**
+   * The extensions whose values depend only on the profile and on the CA.
+   */
+  private static final class StaticExtensions {
+
+    private final PublicCaInfo publicCaInfo;
+
+    private final X509Cert crlSignerCert;
+
+    private final ExtensionValues values;
+
+    StaticExtensions(PublicCaInfo publicCaInfo, X509Cert crlSignerCert, ExtensionValues values) {
+      this.publicCaInfo = publicCaInfo;
+      this.crlSignerCert = crlSignerCert;
+      this.values = values;
+    }
+
+    boolean matches(PublicCaInfo publicCaInfo, X509Cert crlSignerCert) {
+      if (this.publicCaInfo != publicCaInfo) {
+        return false;
+      }
+
+      return (this.crlSignerCert == null) ? crlSignerCert == null
+          : this.crlSignerCert.equals(crlSignerCert);
+    }
+
+  } // class StaticExtensions
+
   private final CertprofileEntry dbEntry;
   private final Certprofile certprofile;
 
+  // the extension controls, without the CTLog extension which will be processed by the CA.
+  private final Map<ASN1ObjectIdentifier, ExtensionControl> extnControls;
+
+  // types of the extensions whose values depend only on the profile and on the CA.
+  private final Set<ASN1ObjectIdentifier> staticExtnTypes;
+
+  // controls of the extensions whose values may differ from certificate to certificate.
+  private final Map<ASN1ObjectIdentifier, ExtensionControl> dynamicExtnControls;
+
+  // static extensions, the key is the canonicalized subject of the CA.
+  private final Map<String, StaticExtensions> staticExtensions = new ConcurrentHashMap<>();
+
   public IdentifiedCertprofile(CertprofileEntry dbEntry, Certprofile certprofile)
       throws CertprofileException {
     this.dbEntry = notNull(dbEntry, "dbEntry");
     this.certprofile = notNull(certprofile, "certprofile");
 
     this.certprofile.initialize(dbEntry.getConf());
+
+    Map<ASN1ObjectIdentifier, ExtensionControl> controls =
+        new HashMap<>(certprofile.getExtensionControls());
+    // CTLog extension will be processed by the CA
+    controls.remove(Extn.id_SCTs);
+    this.extnControls = Collections.unmodifiableMap(controls);
+
+    Set<ASN1ObjectIdentifier> types = new HashSet<>(Arrays.asList(
+        Extension.authorityKeyIdentifier, Extension.issuerAlternativeName,
+        Extension.authorityInfoAccess, Extension.cRLDistributionPoints, Extension.freshestCRL,
+        Extension.basicConstraints, Extn.id_extension_pkix_ocsp_nocheck,
+        Extension.certificatePolicies));
+
+    // the KeyUsage and ExtendedKeyUsage are static if no optional usage may be requested.
+    boolean staticUsages = true;
+    if (certprofile.getKeyUsage() != null) {
+      for (KeyUsageControl m : certprofile.getKeyUsage()) {
+        staticUsages &= m.isRequired();
+      }
+    }
+    if (staticUsages) {
+      types.add(Extension.keyUsage);
+    }
+
+    staticUsages = true;
+    if (certprofile.getExtendedKeyUsages() != null) {
+      for (ExtKeyUsageControl m : certprofile.getExtendedKeyUsages()) {
+        staticUsages &= m.isRequired();
+      }
+    }
+    if (staticUsages) {
+      types.add(Extension.extendedKeyUsage);
+    }
+
+    types.retainAll(controls.keySet());
+    this.staticExtnTypes = Collections.unmodifiableSet(types);
+
+    Map<ASN1ObjectIdentifier, ExtensionControl> dynamicControls = new HashMap<>(controls);
+    dynamicControls.keySet().removeAll(types);
+    this.dynamicExtnControls = Collections.unmodifiableMap(dynamicControls);
   } // constructor
 
   public NameId getIdent() {
@@ -311,24 +393,199 @@ public class IdentifiedCertprofile implements Closeable {
     notNull(publicKeyInfo, "publicKeyInfo");
     ExtensionValues values = new ExtensionValues();
 
-    Map<ASN1ObjectIdentifier, ExtensionControl> controls
-        = new HashMap<>(certprofile.getExtensionControls());
+    // the static extensions are shared by all certificates issued by the CA
+    ExtensionValues staticValues = getStaticExtensions(publicCaInfo, crlSignerCert);
+    for (ASN1ObjectIdentifier type : staticValues.getExtensionTypes()) {
+      values.addExtension(type, staticValues.getExtensionValue(type));
+    }
 
-    // CTLog extension will be processed by the CA
-    controls.remove(Extn.id_SCTs);
+    Map<ASN1ObjectIdentifier, ExtensionControl> controls = new HashMap<>(dynamicExtnControls);
 
     Map<ASN1ObjectIdentifier, Extension> requestedExtns = new HashMap<>();
     // remove the request extensions which are not permitted in the request
     if (requestedExtensions != null) {
       ASN1ObjectIdentifier[] oids = requestedExtensions.getExtensionOIDs();
       for (ASN1ObjectIdentifier m : oids) {
-        ExtensionControl control = controls.get(m);
+        ExtensionControl control = extnControls.get(m);
         if (control == null || control.isRequest()) {
           requestedExtns.put(m, requestedExtensions.getExtension(m));
         }
       }
     }
 
+    addExtensions(values, controls, requestedExtns, publicKeyInfo, publicCaInfo, crlSignerCert);
+
+    ExtensionValues subvalues = certprofile.getExtensions(Collections.unmodifiableMap(controls),
+        requestedSubject, grantedSubject, requestedExtns, notBefore, notAfter, publicCaInfo);
+
+    Set<ASN1ObjectIdentifier> extTypes = new HashSet<>(controls.keySet());
+    for (ASN1ObjectIdentifier type : extTypes) {
+      ExtensionControl extControl = controls.get(type);
+      ExtensionValue value = subvalues.getExtensionValue(type);
+      if (value == null && extControl.isRequest()) {
+        Extension reqExt = requestedExtns.get(type);
+        if (reqExt != null) {
+          value = new ExtensionValue(extControl.isCritical(), reqExt.getParsedValue());
+        }
+      }
+
+      if (value != null) {
+        addExtension(values, type, value, extControl);
+        controls.remove(type);
+      }
+    }
+
+    Set<ASN1ObjectIdentifier> unprocessedExtTypes = new HashSet<>();
+    for (Entry<ASN1ObjectIdentifier, ExtensionControl> entry : controls.entrySet()) {
+      if (entry.getValue().isRequired()) {
+        unprocessedExtTypes.add(entry.getKey());
+      }
+    }
+
+    if (CollectionUtil.isNotEmpty(unprocessedExtTypes)) {
+      throw new CertprofileException(
+          "could not add required extensions "
+          + CertprofileUtil.toString(unprocessedExtTypes));
+    }
+
+    // Check the SubjectAltNames
+    if (certprofile.getCertDomain() == CertDomain.CABForumBR
+        && getCertLevel() == CertLevel.EndEntity) {
+      // Make sure that the commonName included in SubjectAltName
+      String commonName = X509Util.getCommonName(grantedSubject);
+      boolean commonNameInSan = commonName == null;
+
+      // No private IP address is permitted
+      GeneralName[] genNames = GeneralNames.getInstance(
+              values.getExtensionValue(Extension.subjectAlternativeName).getValue()).getNames();
+      for (GeneralName m : genNames) {
+        if (GeneralName.dNSName == m.getTagNo()) {
+          String domain = DERIA5String.getInstance(m.getName()).getString();
+          if (!commonNameInSan && domain.equals(commonName)) {
+            commonNameInSan = true;
+          }
+
+          if (domain.indexOf('_') != -1) {
+            throw new BadCertTemplateException("invalid DNSName " + domain);
+          }
+
+          if (!ExtensionSpec.isValidPublicDomain(domain)) {
+            throw new BadCertTemplateException("invalid DNSName " + domain);
+          }
+        } else if (GeneralName.iPAddress == m.getTagNo()) {
+          byte[] octets = DEROctetString.getInstance(m.getName()).getOctets();
+          if (octets.length == 4) { // IPv4 address
+            if (!commonNameInSan) {
+              String ipAddressText = (0xFF & octets[0]) + "." + (0xFF & octets[1]) + "."
+                  + (0xFF & octets[2]) + "." + (0xFF & octets[3]);
+              if (ipAddressText.equals(commonName)) {
+                commonNameInSan = true;
+              }
+            }
+
+            //if (!ExtensionSpec.isValidPublicIPv4Address(octets)) {
+            //  throw new BadCertTemplateException(
+            //      "invalid IPv4Address " + ipAddressText);
+            //}
+          } else if (octets.length == 8) { // IPv6 address
+            if (!commonNameInSan) {
+              // get the number of ":"
+              List<Integer> positions = new ArrayList<>(7);
+              int n = commonName.length();
+
+              for (int i = 0; i < n; i++) {
+                if (commonName.charAt(i) == ':') {
+                  positions.add(i);
+                }
+              }
+
+              if (positions.size() == 7) {
+                String[] blocks = new String[8];
+                blocks[0] = commonName.substring(0, positions.get(0));
+                for (int i = 0; i < 6; i++) {
+                  blocks[i + 1] = commonName.substring(positions.get(i) + 1, positions.get(i + 1));
+                }
+                blocks[7] = commonName.substring(positions.get(6) + 1);
+
+                byte[] commonNameBytes = new byte[16];
+                for (int i = 0; i < 8; i++) {
+                  String block = blocks[i];
+                  int blen = block.length();
+                  if (blen == 1 | blen == 2) {
+                    commonNameBytes[i * 2 + 1] = (byte) Integer.parseInt(block, 16);
+                  } else if (blen == 3 | blen == 4) {
+                    commonNameBytes[i * 2] =
+                        (byte) Integer.parseInt(block.substring(0, blen - 2), 16);
+                    commonNameBytes[i * 2 + 1] =
+                        (byte) Integer.parseInt(block.substring(blen - 2), 16);
+                  } else if(blen != 0) {
+                    throw new BadCertTemplateException(
+                        "invalid IP address in commonName " + commonName);
+                  }
+                }
+
+                if (Arrays.equals(commonNameBytes, octets)) {
+                  commonNameInSan = true;
+                }
+              }
+            }
+          } else {
+            throw new BadCertTemplateException(
+                "invalid IP address " + Hex.toHexString(octets));
+          }
+        }
+      }
+
+      if (!commonNameInSan) {
+        throw new BadCertTemplateException(
+            "content of subject:commonName is not included in extension:SubjectAlternativeNames");
+      }
+    }
+
+    return values;
+  } // method getExtensions
+
+  /**
+   * Gets the extensions whose values depend only on this profile and on the CA. They are
+   * built and encoded once per CA, and built again only if the CA information or the CRL
+   * signer has been changed.
+   */
+  private ExtensionValues getStaticExtensions(PublicCaInfo publicCaInfo, X509Cert crlSignerCert)
+      throws CertprofileException, BadCertTemplateException {
+    notNull(publicCaInfo, "publicCaInfo");
+
+    String key = publicCaInfo.getC14nSubject();
+    StaticExtensions cached = staticExtensions.get(key);
+    if (cached != null && cached.matches(publicCaInfo, crlSignerCert)) {
+      return cached.values;
+    }
+
+    Map<ASN1ObjectIdentifier, ExtensionControl> controls = new HashMap<>();
+    for (ASN1ObjectIdentifier type : staticExtnTypes) {
+      controls.put(type, extnControls.get(type));
+    }
+
+    ExtensionValues values = new ExtensionValues();
+    addExtensions(values, controls, Collections.emptyMap(), null, publicCaInfo, crlSignerCert);
+
+    // encode the values now, instead of for the first certificate
+    for (ASN1ObjectIdentifier type : values.getExtensionTypes()) {
+      try {
+        values.getExtensionValue(type).getEncodedValue();
+      } catch (IOException ex) {
+        throw new CertprofileException("could not encode extension " + type.getId(), ex);
+      }
+    }
+
+    staticExtensions.put(key, new StaticExtensions(publicCaInfo, crlSignerCert, values));
+    return values;
+  } // method getStaticExtensions
+
+  private void addExtensions(ExtensionValues values,
+      Map<ASN1ObjectIdentifier, ExtensionControl> controls,
+      Map<ASN1ObjectIdentifier, Extension> requestedExtns, SubjectPublicKeyInfo publicKeyInfo,
+      PublicCaInfo publicCaInfo, X509Cert crlSignerCert)
+      throws CertprofileException, BadCertTemplateException {
     // SubjectKeyIdentifier
     ASN1ObjectIdentifier extType = Extension.subjectKeyIdentifier;
     ExtensionControl extControl = controls.remove(extType);
@@ -511,136 +768,7 @@ public class IdentifiedCertprofile implements Closeable {
       ASN1Encodable value = certprofile.getCertificatePolicies();
       addExtension(values, extType, value, extControl);
     }
-
-    ExtensionValues subvalues = certprofile.getExtensions(Collections.unmodifiableMap(controls),
-        requestedSubject, grantedSubject, requestedExtns, notBefore, notAfter, publicCaInfo);
-
-    Set<ASN1ObjectIdentifier> extTypes = new HashSet<>(controls.keySet());
-    for (ASN1ObjectIdentifier type : extTypes) {
-      extControl = controls.get(type);
-      ExtensionValue value = subvalues.getExtensionValue(type);
-      if (value == null && extControl.isRequest()) {
-        Extension reqExt = requestedExtns.get(type);
-        if (reqExt != null) {
-          value = new ExtensionValue(extControl.isCritical(), reqExt.getParsedValue());
-        }
-      }
-
-      if (value != null) {
-        addExtension(values, type, value, extControl);
-        controls.remove(type);
-      }
-    }
-
-    Set<ASN1ObjectIdentifier> unprocessedExtTypes = new HashSet<>();
-    for (Entry<ASN1ObjectIdentifier, ExtensionControl> entry : controls.entrySet()) {
-      if (entry.getValue().isRequired()) {
-        unprocessedExtTypes.add(entry.getKey());
-      }
-    }
-
-    if (CollectionUtil.isNotEmpty(unprocessedExtTypes)) {
-      throw new CertprofileException(
-          "could not add required extensions "
-          + CertprofileUtil.toString(unprocessedExtTypes));
-    }
-
-    // Check the SubjectAltNames
-    if (certprofile.getCertDomain() == CertDomain.CABForumBR
-        && getCertLevel() == CertLevel.EndEntity) {
-      // Make sure that the commonName included in SubjectAltName
-      String commonName = X509Util.getCommonName(grantedSubject);
-      boolean commonNameInSan = commonName == null;
-
-      // No private IP address is permitted
-      GeneralName[] genNames = GeneralNames.getInstance(
-              values.getExtensionValue(Extension.subjectAlternativeName).getValue()).getNames();
-      for (GeneralName m : genNames) {
-        if (GeneralName.dNSName == m.getTagNo()) {
-          String domain = DERIA5String.getInstance(m.getName()).getString();
-          if (!commonNameInSan && domain.equals(commonName)) {
-            commonNameInSan = true;
-          }
-
-          if (domain.indexOf('_') != -1) {
-            throw new BadCertTemplateException("invalid DNSName " + domain);
-          }
-
-          if (!ExtensionSpec.isValidPublicDomain(domain)) {
-            throw new BadCertTemplateException("invalid DNSName " + domain);
-          }
-        } else if (GeneralName.iPAddress == m.getTagNo()) {
-          byte[] octets = DEROctetString.getInstance(m.getName()).getOctets();
-          if (octets.length == 4) { // IPv4 address
-            if (!commonNameInSan) {
-              String ipAddressText = (0xFF & octets[0]) + "." + (0xFF & octets[1]) + "."
-                  + (0xFF & octets[2]) + "." + (0xFF & octets[3]);
-              if (ipAddressText.equals(commonName)) {
-                commonNameInSan = true;
-              }
-            }
-
-            //if (!ExtensionSpec.isValidPublicIPv4Address(octets)) {
-            //  throw new BadCertTemplateException(
-            //      "invalid IPv4Address " + ipAddressText);
-            //}
-          } else if (octets.length == 8) { // IPv6 address
-            if (!commonNameInSan) {
-              // get the number of ":"
-              List<Integer> positions = new ArrayList<>(7);
-              int n = commonName.length();
-
-              for (int i = 0; i < n; i++) {
-                if (commonName.charAt(i) == ':') {
-                  positions.add(i);
-                }
-              }
-
-              if (positions.size() == 7) {
-                String[] blocks = new String[8];
-                blocks[0] = commonName.substring(0, positions.get(0));
-                for (int i = 0; i < 6; i++) {
-                  blocks[i + 1] = commonName.substring(positions.get(i) + 1, positions.get(i + 1));
-                }
-                blocks[7] = commonName.substring(positions.get(6) + 1);
-
-                byte[] commonNameBytes = new byte[16];
-                for (int i = 0; i < 8; i++) {
-                  String block = blocks[i];
-                  int blen = block.length();
-                  if (blen == 1 | blen == 2) {
-                    commonNameBytes[i * 2 + 1] = (byte) Integer.parseInt(block, 16);
-                  } else if (blen == 3 | blen == 4) {
-                    commonNameBytes[i * 2] =
-                        (byte) Integer.parseInt(block.substring(0, blen - 2), 16);
-                    commonNameBytes[i * 2 + 1] =
-                        (byte) Integer.parseInt(block.substring(blen - 2), 16);
-                  } else if(blen != 0) {
-                    throw new BadCertTemplateException(
-                        "invalid IP address in commonName " + commonName);
-                  }
-                }
-
-                if (Arrays.equals(commonNameBytes, octets)) {
-                  commonNameInSan = true;
-                }
-              }
-            }
-          } else {
-            throw new BadCertTemplateException(
-                "invalid IP address " + Hex.toHexString(octets));
-          }
-        }
-      }
-
-      if (!commonNameInSan) {
-        throw new BadCertTemplateException(
-            "content of subject:commonName is not included in extension:SubjectAlternativeNames");
-      }
-    }
-
-    return values;
-  } // method getExtensions
+  } // method addExtensions
 
   private static void assertAllUrisHasProtocol(List<String> uris, Set<String> protocols)
           throws CertprofileException {
@@ -17,14 +17,18 @@
 
 package org.xipki.ca.server;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.mgmt.entry.KeypairGenEntry;
 import org.xipki.ca.server.keypool.KeypoolKeypairGenerator;
 import org.xipki.security.KeypairGenerator;
 import org.xipki.security.SecurityFactory;
 import org.xipki.security.XiSecurityException;
 import org.xipki.util.FileOrValue;
+import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 
+import java.io.IOException;
 import java.util.Map;
 
 import static org.xipki.util.Args.notNull;
@@ -37,6 +41,8 @@ import static org.xipki.util.Args.notNull;
  */
 public class KeypairGenEntryWrapper {
 
+  private static final Logger LOG = LoggerFactory.getLogger(KeypairGenEntryWrapper.class);
+
   private KeypairGenEntry dbEntry;
 
   private KeypairGenerator generator;
@@ -86,4 +92,16 @@ public class KeypairGenEntryWrapper {
     return generator != null && generator.isHealthy();
   }
 
+  public void close() {
+    if (generator == null) {
+      return;
+    }
+
+    try {
+      generator.close();
+    } catch (IOException ex) {
+      LogUtil.warn(LOG, ex, "could not close keypair generator " + dbEntry.getName());
+    }
+  } // method close
+
 }
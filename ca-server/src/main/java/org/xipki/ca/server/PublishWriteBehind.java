@@ -0,0 +1,388 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.publisher.CertPublisher.RevokedCert;
+import org.xipki.ca.server.db.CertStore;
+import org.xipki.security.X509Cert;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Asynchronous publishing stage of the {@link X509PublisherModule}. The events are passed to
+ * the publishers by a dedicated thread in batches, consecutive events of the same publisher
+ * and type with one call of {@code certificatesAdded} or {@code certificatesRevoked}. The
+ * events are processed in the order they are offered. Events which could not be published,
+ * and events left over while closing, are added to the table PUBLISHQUEUE.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class PublishWriteBehind implements Runnable, Closeable {
+
+  enum EventType {
+    ADDED,
+    REVOKED,
+    UNREVOKED
+  }
+
+  static final class Event {
+
+    private final EventType type;
+
+    private final IdentifiedCertPublisher publisher;
+
+    private final CertificateInfo certInfo;
+
+    private final RevokedCert revokedCert;
+
+    private final CertWithDbId cert;
+
+    private Event(EventType type, IdentifiedCertPublisher publisher, CertificateInfo certInfo,
+        RevokedCert revokedCert, CertWithDbId cert) {
+      this.type = type;
+      this.publisher = notNull(publisher, "publisher");
+      this.certInfo = certInfo;
+      this.revokedCert = revokedCert;
+      this.cert = cert;
+    }
+
+    static Event added(IdentifiedCertPublisher publisher, CertificateInfo certInfo) {
+      return new Event(EventType.ADDED, publisher, notNull(certInfo, "certInfo"), null, null);
+    }
+
+    static Event revoked(IdentifiedCertPublisher publisher, RevokedCert revokedCert) {
+      return new Event(EventType.REVOKED, publisher, null,
+          notNull(revokedCert, "revokedCert"), null);
+    }
+
+    static Event unrevoked(IdentifiedCertPublisher publisher, CertWithDbId cert) {
+      return new Event(EventType.UNREVOKED, publisher, null, null, notNull(cert, "cert"));
+    }
+
+    long getCertId() {
+      switch (type) {
+        case ADDED:
+          return certInfo.getCert().getCertId();
+        case REVOKED:
+          return revokedCert.getCert().getCertId();
+        default:
+          return cert.getCertId();
+      }
+    }
+
+  } // class Event
+
+  private static final Logger LOG = LoggerFactory.getLogger(PublishWriteBehind.class);
+
+  // maximal time to wait for the pending events to be published while closing.
+  private static final long MS_CLOSE_TIMEOUT = 10000;
+
+  private final NameId caIdent;
+
+  private final X509Cert caCert;
+
+  private final CertStore certstore;
+
+  private final int queueSize;
+
+  private final int batchSize;
+
+  private final ArrayDeque<Event> pending = new ArrayDeque<>();
+
+  // whether a batch is being published.
+  private boolean inProcess;
+
+  private final AtomicLong published = new AtomicLong(0);
+
+  private final AtomicLong failed = new AtomicLong(0);
+
+  private final AtomicLong overflowed = new AtomicLong(0);
+
+  private final AtomicLong batches = new AtomicLong(0);
+
+  private final AtomicLong totalBatchLatency = new AtomicLong(0);
+
+  private volatile boolean closed;
+
+  private Thread publisherThread;
+
+  PublishWriteBehind(NameId caIdent, X509Cert caCert, CertStore certstore, int queueSize,
+      int batchSize) {
+    this.caIdent = notNull(caIdent, "caIdent");
+    this.caCert = notNull(caCert, "caCert");
+    this.certstore = notNull(certstore, "certstore");
+    this.queueSize = positive(queueSize, "queueSize");
+    this.batchSize = positive(batchSize, "batchSize");
+  }
+
+  void start() {
+    publisherThread = new Thread(this, "ca-publisher-" + caIdent.getName());
+    publisherThread.setDaemon(true);
+    publisherThread.start();
+  }
+
+  /**
+   * Adds the event to the queue.
+   * @param event
+   *          Event to be published.
+   * @return whether the event has been accepted. If not, the caller is responsible to add
+   *     the certificate to the table PUBLISHQUEUE.
+   */
+  boolean offer(Event event) {
+    synchronized (pending) {
+      if (closed || pending.size() >= queueSize) {
+        overflowed.incrementAndGet();
+        return false;
+      }
+
+      pending.addLast(event);
+      pending.notifyAll();
+      return true;
+    }
+  } // method offer
+
+  @Override
+  public void run() {
+    while (true) {
+      List<Event> batch;
+      try {
+        batch = takeBatch();
+      } catch (InterruptedException ex) {
+        LOG.warn("interrupted, {} pending events are not published", pendingSize());
+        return;
+      }
+
+      if (batch == null) {
+        // closed and all pending events have been published.
+        return;
+      }
+
+      long start = System.nanoTime();
+      try {
+        publishBatch(batch);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not publish " + batch.size() + " events");
+      } finally {
+        totalBatchLatency.addAndGet((System.nanoTime() - start) / 1000000);
+        batches.incrementAndGet();
+
+        synchronized (pending) {
+          inProcess = false;
+          pending.notifyAll();
+        }
+      }
+    }
+  } // method run
+
+  private List<Event> takeBatch()
+      throws InterruptedException {
+    synchronized (pending) {
+      while (pending.isEmpty()) {
+        if (closed) {
+          return null;
+        }
+        pending.wait();
+      }
+
+      List<Event> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+      while (!pending.isEmpty() && batch.size() < batchSize) {
+        batch.add(pending.pollFirst());
+      }
+      inProcess = true;
+      return batch;
+    }
+  } // method takeBatch
+
+  private void publishBatch(List<Event> batch) {
+    int size = batch.size();
+    int runStart = 0;
+    for (int i = 1; i <= size; i++) {
+      Event first = batch.get(runStart);
+      if (i < size) {
+        Event event = batch.get(i);
+        if (first.type != EventType.UNREVOKED && event.type == first.type
+            && event.publisher == first.publisher) {
+          continue;
+        }
+      }
+
+      // publish the events [runStart, i)
+      publishRun(first.publisher, first.type, batch.subList(runStart, i));
+      runStart = i;
+    }
+  } // method publishBatch
+
+  private void publishRun(IdentifiedCertPublisher publisher, EventType type, List<Event> run) {
+    int numFailed = 0;
+    try {
+      if (type == EventType.ADDED) {
+        List<CertificateInfo> certInfos = new ArrayList<>(run.size());
+        for (Event event : run) {
+          certInfos.add(event.certInfo);
+        }
+
+        for (CertificateInfo certInfo : publisher.certificatesAdded(certInfos)) {
+          numFailed++;
+          addToPublishQueue(publisher, certInfo.getCert().getCertId());
+        }
+      } else if (type == EventType.REVOKED) {
+        List<RevokedCert> revokedCerts = new ArrayList<>(run.size());
+        for (Event event : run) {
+          revokedCerts.add(event.revokedCert);
+        }
+
+        for (RevokedCert revokedCert : publisher.certificatesRevoked(caCert, revokedCerts)) {
+          numFailed++;
+          addToPublishQueue(publisher, revokedCert.getCert().getCertId());
+        }
+      } else {
+        for (Event event : run) {
+          if (!publisher.certificateUnrevoked(caCert, event.cert)) {
+            numFailed++;
+            addToPublishQueue(publisher, event.getCertId());
+          }
+        }
+      }
+    } catch (RuntimeException ex) {
+      LogUtil.warn(LOG, ex, "could not publish " + run.size() + " events to the publisher "
+          + publisher.getIdent());
+      numFailed = run.size();
+      for (Event event : run) {
+        addToPublishQueue(publisher, event.getCertId());
+      }
+    }
+
+    failed.addAndGet(numFailed);
+    published.addAndGet(run.size() - numFailed);
+  } // method publishRun
+
+  private void addToPublishQueue(IdentifiedCertPublisher publisher, long certId) {
+    try {
+      certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+    }
+  } // method addToPublishQueue
+
+  int pendingSize() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * Waits until all pending events are published, at most {@link #MS_CLOSE_TIMEOUT}
+   * milliseconds.
+   * @return whether all pending events have been published.
+   */
+  boolean awaitPublished() {
+    long deadline = System.currentTimeMillis() + MS_CLOSE_TIMEOUT;
+    synchronized (pending) {
+      while (!pending.isEmpty() || inProcess) {
+        long waitMs = deadline - System.currentTimeMillis();
+        if (waitMs <= 0 || publisherThread == null || !publisherThread.isAlive()) {
+          return false;
+        }
+
+        try {
+          pending.wait(waitMs);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return true;
+    }
+  } // method awaitPublished
+
+  /**
+   * Stops accepting new events, and waits until the pending events are published. The
+   * events which are still pending afterwards are added to the table PUBLISHQUEUE.
+   */
+  @Override
+  public void close() {
+    synchronized (pending) {
+      closed = true;
+      pending.notifyAll();
+    }
+
+    if (publisherThread != null) {
+      try {
+        publisherThread.join(MS_CLOSE_TIMEOUT);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (publisherThread.isAlive()) {
+        LOG.warn("{} pending events are not published", pendingSize());
+        publisherThread.interrupt();
+      }
+      publisherThread = null;
+    }
+
+    List<Event> leftEvents;
+    synchronized (pending) {
+      leftEvents = new ArrayList<>(pending);
+      pending.clear();
+    }
+
+    for (Event event : leftEvents) {
+      addToPublishQueue(event.publisher, event.getCertId());
+    }
+
+    if (!leftEvents.isEmpty()) {
+      LOG.info("added {} pending events of CA {} to PUBLISHQUEUE", leftEvents.size(),
+          caIdent.getName());
+    }
+  } // method close
+
+  HealthCheckResult healthCheck() {
+    long numBatches = batches.get();
+
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("PublishWriteBehind");
+    result.setHealthy(!closed);
+    Map<String, Object> statuses = result.getStatuses();
+    statuses.put("queueSize", queueSize);
+    statuses.put("queueDepth", pendingSize());
+    statuses.put("published", published.get());
+    statuses.put("failed", failed.get());
+    statuses.put("overflowed", overflowed.get());
+    statuses.put("batches", numBatches);
+    statuses.put("avgBatchLatency", numBatches == 0 ? 0 : totalBatchLatency.get() / numBatches);
+    return result;
+  } // method healthCheck
+
+}
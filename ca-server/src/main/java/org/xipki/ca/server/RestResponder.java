@@ -46,6 +46,11 @@ import org.xipki.util.PemEncoder.PemLabel;
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.math.BigInteger;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 import static org.xipki.audit.AuditLevel.ERROR;
@@ -156,6 +161,8 @@ public class RestResponder {
 
   private static final int OK = 200;
 
+  private static final int NOT_MODIFIED = 304;
+
   private static final int BAD_REQUEST = 400;
 
   private static final int UNAUTHORIZED = 401;
@@ -172,6 +179,10 @@ public class RestResponder {
 
   private static final Logger LOG = LoggerFactory.getLogger(RestResponder.class);
 
+  private static final DateTimeFormatter HTTP_DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+        .withZone(ZoneOffset.UTC);
+
   private final CaManagerImpl responderManager;
 
   public RestResponder(CaManagerImpl responderManager) {
@@ -542,16 +553,27 @@ public class RestResponder {
             }
           }
 
-          X509CRLHolder crl = ca.getCrl(crlNumber, msgId);
+          CrlCache.Entry crl = ca.getEncodedCrl(crlNumber, msgId);
           if (crl == null) {
             String message = "could not get CRL";
             LOG.warn(message);
             throw new HttpRespAuditException(INTERNAL_SERVER_ERROR, message, INFO, FAILED);
           }
 
-          respCt = CT_pkix_crl;
-          respBytes = crl.getEncoded();
-          break;
+          Map<String, String> headers = new HashMap<>();
+          headers.put(HEADER_PKISTATUS, PKISTATUS_accepted);
+          headers.put("ETag", crl.getETag());
+          headers.put("Last-Modified", formatHttpDate(crl.getThisUpdate()));
+          if (crl.getNextUpdate() != null) {
+            headers.put("Expires", formatHttpDate(crl.getNextUpdate()));
+          }
+
+          if (isNotModified(crl, httpRetriever)) {
+            return new RestResponse(NOT_MODIFIED, null, headers, null);
+          }
+
+          // the cached CRL is returned as it is, without being parsed and encoded again.
+          return new RestResponse(OK, CT_pkix_crl, headers, crl.getEncoded());
         }
         case CMD_new_crl: {
           try {
@@ -696,4 +718,45 @@ public class RestResponder {
     return new BigInteger(tmpStr);
   } // method toBigInt
 
+  private static String formatHttpDate(long millis) {
+    return HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(millis));
+  }
+
+  private static boolean isNotModified(CrlCache.Entry crl,
+      HttpRequestMetadataRetriever httpRetriever) {
+    String ifNoneMatch = httpRetriever.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      // RFC 7232 3.2: If-None-Match uses the weak comparison, and takes precedence over
+      // If-Modified-Since.
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || crl.getETag().equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String ifModifiedSince = httpRetriever.getHeader("If-Modified-Since");
+    if (ifModifiedSince == null) {
+      return false;
+    }
+
+    long since;
+    try {
+      since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toInstant().toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      // RFC 7232 3.3: invalid dates are ignored
+      return false;
+    }
+
+    // HTTP dates have the precision of seconds
+    return crl.getThisUpdate() / 1000 <= since / 1000;
+  } // method isNotModified
+
 }
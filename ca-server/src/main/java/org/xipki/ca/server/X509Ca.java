@@ -34,6 +34,8 @@ import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.services.MacAuditService;
 import org.xipki.ca.api.*;
 import org.xipki.ca.api.mgmt.*;
 import org.xipki.ca.api.mgmt.entry.CaHasRequestorEntry;
@@ -58,6 +60,9 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import static org.xipki.ca.api.OperationException.ErrorCode.*;
@@ -293,6 +298,10 @@ public class X509Ca extends X509CaModule implements Closeable {
     return crlModule.getCrl(crlNumber, msgId);
   } // method getCrl
 
+  CrlCache.Entry getEncodedCrl(BigInteger crlNumber, String msgId) throws OperationException {
+    return crlModule.getEncodedCrl(crlNumber, msgId);
+  } // method getEncodedCrl
+
   public CertificateList getBcCurrentCrl(String msgId) throws OperationException {
     return crlModule.getBcCurrentCrl(msgId);
   }
@@ -317,8 +326,8 @@ public class X509Ca extends X509CaModule implements Closeable {
     return generateCerts(certTemplates, requestor, true, reqType, transactionId, msgId);
   }
 
-  public boolean republishCerts(List<String> publisherNames, int numThreads) {
-    return publisherModule.republishCerts(publisherNames, numThreads);
+  public boolean republishCerts(List<String> publisherNames, int numThreads, boolean resume) {
+    return publisherModule.republishCerts(publisherNames, numThreads, resume);
   }
 
   public void clearPublishQueue(List<String> publisherNames) throws CaMgmtException {
@@ -412,6 +421,12 @@ public class X509Ca extends X509CaModule implements Closeable {
       }
     }
 
+    ExecutorService enrollmentExecutor = caManager.getEnrollmentExecutor();
+    if (n > 1 && enrollmentExecutor != null) {
+      return generateCertsInParallel(enrollmentExecutor, gcts, license, requestor, reqType,
+          transactionId, msgId);
+    }
+
     List<CertificateInfo> certInfos = new ArrayList<>(n);
     OperationExceptionWithIndex exception = null;
 
@@ -427,40 +442,14 @@ public class X509Ca extends X509CaModule implements Closeable {
 
       boolean successful = false;
       try {
-        //-----begin license-----
-        // check CA
-        String caSubject = caInfo.getCert().getSubjectRfc4519Text();
-        if (!(license.grantAllCAs() || license.grant(caSubject))) {
-          LOG.error("Not granted for CA {}, need new license", caSubject);
-          throw new OperationException(SYSTEM_FAILURE, "new license needed");
-        }
-
-        // check number of certificate
-        long maxNumOfCerts = license.getMaxNumberOfCerts();
-        if (maxNumOfCerts >= 0) {
-          long numOfCerts = certstore.getCountOfCerts(0);
-          if (numOfCerts >= maxNumOfCerts) {
-            LOG.error("Maximal {} certificates is allowed, {} already issued, need new license",
-                maxNumOfCerts, numOfCerts);
-            throw new OperationException(SYSTEM_FAILURE, "new license needed");
-          }
-        }
-
+        checkLicense(license, 1);
         // regulate speed
         license.regulateSpeed();
-        //-----end license-----
 
         CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
         successful = true;
         certInfos.add(certInfo);
-
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(),
-              cert.getCert().getSubjectRfc4519Text(), cert.getCert().getSerialNumberHex());
-        }
+        logSuccessfulGeneration(certInfo, certprofilIdent);
       } catch (OperationException ex) {
         exception = new OperationExceptionWithIndex(i, ex);
       } catch (Throwable th) {
@@ -491,7 +480,119 @@ public class X509Ca extends X509CaModule implements Closeable {
     }
 
     return certInfos;
-  }
+  } // method generateCerts
+
+  /**
+   * Signs the certificates in parallel, and saves them in the database in one transaction.
+   * Either all or none of the certificates are saved.
+   */
+  private List<CertificateInfo> generateCertsInParallel(ExecutorService executor,
+      List<GrantedCertTemplate> gcts, CmLicense license, RequestorInfo requestor,
+      RequestType reqType, byte[] transactionId, String msgId)
+          throws OperationExceptionWithIndex {
+    final int n = gcts.size();
+    try {
+      checkLicense(license, n);
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(0, ex);
+    }
+
+    List<AuditEvent> events = new ArrayList<>(n);
+    List<Future<CertificateInfo>> futures = new ArrayList<>(n);
+    for (GrantedCertTemplate gct : gcts) {
+      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+          caIdent.getName(), gct.certprofile.getIdent().getName(), gct.grantedSubjectText);
+
+      // regulate speed
+      license.regulateSpeed();
+
+      AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
+      events.add(event);
+      futures.add(executor.submit(
+          () -> generateCert0(gct, requestor, reqType, transactionId, event, false)));
+    }
+
+    // wait for all tasks, also if one of them failed.
+    List<CertificateInfo> certInfos = new ArrayList<>(n);
+    OperationExceptionWithIndex exception = null;
+    for (int i = 0; i < n; i++) {
+      OperationException ex = null;
+      try {
+        certInfos.add(futures.get(i).get());
+      } catch (ExecutionException ex2) {
+        Throwable cause = ex2.getCause();
+        ex = (cause instanceof OperationException) ? (OperationException) cause
+            : new OperationException(SYSTEM_FAILURE, cause);
+      } catch (InterruptedException ex2) {
+        Thread.currentThread().interrupt();
+        for (Future<CertificateInfo> future : futures) {
+          future.cancel(true);
+        }
+        ex = new OperationException(SYSTEM_FAILURE, "interrupted");
+      }
+
+      if (ex != null) {
+        LOG.error("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), gcts.get(i).certprofile.getIdent().getName(),
+            gcts.get(i).grantedSubjectText);
+        if (exception == null) {
+          exception = new OperationExceptionWithIndex(i, ex);
+        }
+      }
+    }
+
+    if (exception == null && saveCert
+        && publisherModule.publishCerts(certInfos, saveKeypair) == 1) {
+      exception = new OperationExceptionWithIndex(0,
+          new OperationException(SYSTEM_FAILURE, "could not save certificates"));
+    }
+
+    for (AuditEvent event : events) {
+      finish(event, exception == null);
+    }
+
+    if (exception != null) {
+      LOG.error("could not generate certificate for request[{}], none of the certificates"
+          + " has been saved", exception.getIndex());
+      LogUtil.warn(LOG, exception);
+      throw exception;
+    }
+
+    for (int i = 0; i < n; i++) {
+      logSuccessfulGeneration(certInfos.get(i), gcts.get(i).certprofile.getIdent());
+    }
+    return certInfos;
+  } // method generateCertsInParallel
+
+  private void checkLicense(CmLicense license, int numNewCerts) throws OperationException {
+    // check CA
+    String caSubject = caInfo.getCert().getSubjectRfc4519Text();
+    if (!(license.grantAllCAs() || license.grant(caSubject))) {
+      LOG.error("Not granted for CA {}, need new license", caSubject);
+      throw new OperationException(SYSTEM_FAILURE, "new license needed");
+    }
+
+    // check number of certificate
+    long maxNumOfCerts = license.getMaxNumberOfCerts();
+    if (maxNumOfCerts >= 0) {
+      long numOfCerts = certstore.getCachedCountOfCerts();
+      if (numOfCerts + numNewCerts > maxNumOfCerts) {
+        LOG.error("Maximal {} certificates is allowed, {} already issued, need new license",
+            maxNumOfCerts, numOfCerts);
+        throw new OperationException(SYSTEM_FAILURE, "new license needed");
+      }
+    }
+  } // method checkLicense
+
+  private void logSuccessfulGeneration(CertificateInfo certInfo, NameId certprofileIdent) {
+    if (LOG.isInfoEnabled()) {
+      String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+      CertWithDbId cert = certInfo.getCert();
+      LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+          prefix, caIdent.getName(), certprofileIdent.getName(),
+          cert.getCert().getSubjectRfc4519Text(), cert.getCert().getSerialNumberHex());
+    }
+  } // method logSuccessfulGeneration
 
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, String msgId) throws OperationException {
@@ -506,7 +607,7 @@ public class X509Ca extends X509CaModule implements Closeable {
 
     boolean successful = false;
     try {
-      CertificateInfo ret = generateCert0(gct, requestor, reqType, transactionId, event);
+      CertificateInfo ret = generateCert0(gct, requestor, reqType, transactionId, event, true);
       successful = (ret != null);
       return ret;
     } finally {
@@ -515,7 +616,8 @@ public class X509Ca extends X509CaModule implements Closeable {
   }
 
   private CertificateInfo generateCert0(GrantedCertTemplate gct, RequestorInfo requestor,
-      RequestType reqType, byte[] transactionId, AuditEvent event) throws OperationException {
+      RequestType reqType, byte[] transactionId, AuditEvent event, boolean publish)
+          throws OperationException {
     notNull(gct, "gct");
 
     event.addEventData(CaAuditConstants.NAME_req_subject,
@@ -595,7 +697,9 @@ public class X509Ca extends X509CaModule implements Closeable {
       if (extensionTuples != null) {
         for (ASN1ObjectIdentifier extensionType : extensionTuples.getExtensionTypes()) {
           ExtensionValue extValue = extensionTuples.getExtensionValue(extensionType);
-          certBuilder.addExtension(extensionType, extValue.isCritical(), extValue.getValue());
+          // the static extension values are encoded only once
+          certBuilder.addExtension(new Extension(extensionType, extValue.isCritical(),
+              extValue.getEncodedValue()));
         }
       }
 
@@ -683,7 +787,7 @@ public class X509Ca extends X509CaModule implements Closeable {
       ret.setTransactionId(transactionId);
       ret.setRequestedSubject(gct.requestedSubject);
 
-      if (saveCert && publisherModule.publishCert(ret, saveKeypair) == 1) {
+      if (publish && saveCert && publisherModule.publishCert(ret, saveKeypair) == 1) {
         throw new OperationException(SYSTEM_FAILURE, "could not save certificate");
       }
     } catch (BadCertTemplateException ex) {
@@ -808,9 +912,21 @@ public class X509Ca extends X509CaModule implements Closeable {
     databaseHealth.setHealthy(databaseHealthy);
     result.addChildCheck(databaseHealth);
 
+    HealthCheckResult statementCacheHealth = certstore.getStatementCacheHealth();
+    if (statementCacheHealth != null) {
+      databaseHealth.addChildCheck(statementCacheHealth);
+    }
+
     healthy &= crlModule.healthCheck(result);
     healthy &= publisherModule.healthCheck(result);
 
+    AuditService audit = auditService();
+    if (audit instanceof MacAuditService) {
+      HealthCheckResult auditHealth = ((MacAuditService) audit).healthCheck();
+      healthy &= auditHealth.isHealthy();
+      result.addChildCheck(auditHealth);
+    }
+
     result.setHealthy(healthy);
 
     return result;
@@ -824,6 +940,7 @@ public class X509Ca extends X509CaModule implements Closeable {
   public void close() {
     crlModule.close();
     revokerModule.close();
+    publisherModule.close();
 
     ScheduledThreadPoolExecutor executor = caManager.getScheduledThreadPoolExecutor();
     if (executor != null) {
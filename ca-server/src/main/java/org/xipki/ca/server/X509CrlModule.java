@@ -22,9 +22,7 @@ import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.*;
-import org.bouncycastle.cert.CertIOException;
 import org.bouncycastle.cert.X509CRLHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.xipki.audit.AuditEvent;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.PublicCaInfo;
@@ -153,6 +151,12 @@ public class X509CrlModule extends X509CaModule implements Closeable {
 
   } // class CrlGenerationService
 
+  // number of the revoked certificates read from the database in one query.
+  private static final int CRL_ENTRIES_PAGE_SIZE = 1000;
+
+  // number of the CRLs cached in memory, including the current one.
+  private static final int NUM_CACHED_CRLS = 5;
+
   private final X509Cert caCert;
 
   private final CertStore certstore;
@@ -165,6 +169,8 @@ public class X509CrlModule extends X509CaModule implements Closeable {
 
   private final X509PublisherModule publisher;
 
+  private final CrlCache crlCache = new CrlCache(NUM_CACHED_CRLS);
+
   public X509CrlModule(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore,
       X509PublisherModule publisher) throws OperationException {
     super(caInfo);
@@ -224,13 +230,13 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
+      CrlCache.Entry cachedCrl = getCachedCrl(crlNumber);
+      if (cachedCrl == null) {
         return null;
       }
 
       try {
-        X509CRLHolder crl = X509Util.parseCrl(encodedCrl);
+        X509CRLHolder crl = X509Util.parseCrl(cachedCrl.getEncoded());
         successful = true;
         if (LOG.isInfoEnabled()) {
           LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
@@ -263,13 +269,13 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
 
     try {
-      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
-      if (encodedCrl == null) {
+      CrlCache.Entry cachedCrl = getCachedCrl(crlNumber);
+      if (cachedCrl == null) {
         return null;
       }
 
       try {
-        CertificateList crl = CertificateList.getInstance(encodedCrl);
+        CertificateList crl = CertificateList.getInstance(cachedCrl.getEncoded());
         successful = true;
         if (LOG.isInfoEnabled()) {
           LOG.info("SUCCESSFUL getCrl: ca={}, thisUpdate={}", caIdent.getName(),
@@ -287,6 +293,83 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   } // method getCrl
 
+  /**
+   * Gets the DER-encoded CRL from the cache, the CRL is read from the database only
+   * if it is not cached.
+   * @param crlNumber
+   *          CRL number. {@code null} for the current CRL.
+   * @param msgId
+   *          Message id.
+   * @return the cached CRL, or {@code null} if not available.
+   * @throws OperationException
+   *           if error occurs.
+   */
+  CrlCache.Entry getEncodedCrl(BigInteger crlNumber, String msgId) throws OperationException {
+    LOG.info("     START getEncodedCrl: ca={}, crlNumber={}", caIdent.getName(), crlNumber);
+    boolean successful = false;
+
+    AuditEvent event0 = newPerfAuditEvent(
+            crlNumber == null ? TYPE_download_crl : TYPE_downlaod_crl4number, msgId);
+    if (crlNumber != null) {
+      event0.addEventData(NAME_crl_number, crlNumber);
+    }
+
+    try {
+      CrlCache.Entry cachedCrl = getCachedCrl(crlNumber);
+      successful = cachedCrl != null;
+      if (successful) {
+        LOG.info("SUCCESSFUL getEncodedCrl: ca={}, crlNumber={}", caIdent.getName(),
+            cachedCrl.getCrlNumber());
+      }
+      return cachedCrl;
+    } finally {
+      if (!successful) {
+        LOG.info("    FAILED getEncodedCrl: ca={}", caIdent.getName());
+      }
+      finish(event0, successful);
+    }
+  } // method getEncodedCrl
+
+  private CrlCache.Entry getCachedCrl(BigInteger crlNumber) throws OperationException {
+    boolean currentCrl = crlNumber == null;
+    if (currentCrl) {
+      // In master mode the CRLs are generated by this instance, and the cached current CRL
+      // is replaced on generation. Otherwise the number of the current CRL is read from the
+      // database, which is much cheaper than reading the CRL itself.
+      CrlCache.Entry current = crlCache.getCurrent();
+      if (current != null && caManager.isMasterMode()) {
+        return current;
+      }
+
+      Long currentCrlNumber = certstore.getCurrentCrlNumber(caIdent);
+      if (currentCrlNumber == null) {
+        return null;
+      }
+      crlNumber = BigInteger.valueOf(currentCrlNumber);
+    }
+
+    CrlCache.Entry entry = crlCache.get(crlNumber);
+    if (entry == null) {
+      byte[] encodedCrl = certstore.getEncodedCrl(caIdent, crlNumber);
+      if (encodedCrl == null) {
+        return null;
+      }
+
+      try {
+        entry = new CrlCache.Entry(encodedCrl);
+      } catch (RuntimeException ex) {
+        throw new OperationException(SYSTEM_FAILURE, ex);
+      }
+    }
+
+    if (currentCrl) {
+      crlCache.setCurrent(entry);
+    } else {
+      crlCache.put(entry);
+    }
+    return entry;
+  } // method getCachedCrl
+
   private void cleanupCrlsWithoutException(String msgId) {
     try {
       int numCrls = caInfo.getNumCrls();
@@ -340,18 +423,23 @@ public class X509CrlModule extends X509CaModule implements Closeable {
       // add overlap
       nextUpdate = control.getOverlap().add(nextUpdate);
 
-      return generateCrl(false, thisUpdate, nextUpdate, msgId);
+      EncodedCrl crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
+      try {
+        return crl.getHolder();
+      } catch (IOException ex) {
+        throw new OperationException(CRL_FAILURE, ex);
+      }
     } finally {
       crlGenInProcess.set(false);
     }
   } // method generateCrlOnDemand
 
-  private X509CRLHolder generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+  private EncodedCrl generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
       String msgId) throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(TYPE_gen_crl, msgId);
     try {
-      X509CRLHolder crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
+      EncodedCrl crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
       successful = true;
       return crl;
     } finally {
@@ -359,7 +447,7 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     }
   }
 
-  private X509CRLHolder generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+  private EncodedCrl generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
       AuditEvent event, String msgId) throws OperationException {
     CrlControl control = caInfo.getCrlControl();
     if (control == null) {
@@ -399,194 +487,161 @@ public class X509CrlModule extends X509CaModule implements Closeable {
       boolean indirectCrl = (crlSigner != null);
       X500Name crlIssuer = indirectCrl ? crlSigner.getSubject() : pci.getSubject();
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
-      }
-
-      final int numEntries = 100;
-
-      CrlControl crlControl = caInfo.getCrlControl();
+      BigInteger crlNumber;
+      EncodedCrl crl;
 
-      boolean withExpiredCerts = crlControl.isIncludeExpiredcerts();
+      X509CrlStreamBuilder crlBuilder = new X509CrlStreamBuilder(crlIssuer, thisUpdate);
+      crlBuilder.setNextUpdate(nextUpdate);
 
-      // 10 minutes buffer
-      Date notExpiredAt = withExpiredCerts
-                          ? new Date(0) : new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
+      try {
+        CrlControl crlControl = caInfo.getCrlControl();
 
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
+        boolean withExpiredCerts = crlControl.isIncludeExpiredcerts();
 
-      if (deltaCrl) {
-        allRevInfos = certstore.getCertsForDeltaCrl(caIdent, baseCrlNumber, notExpiredAt);
-      } else {
-        long startId = 1;
+        // 10 minutes buffer
+        Date notExpiredAt = withExpiredCerts
+                            ? new Date(0) : new Date(thisUpdate.getTime() - 600L * MS_PER_SECOND);
 
-        List<CertRevInfoWithSerial> revInfos;
-        do {
-          revInfos = certstore.getRevokedCerts(caIdent, notExpiredAt, startId, numEntries);
-          allRevInfos.addAll(revInfos);
+        boolean[] isFirstCrlEntry = {true};
 
-          long maxId = 1;
-          for (CertRevInfoWithSerial revInfo : revInfos) {
-            if (revInfo.getId() > maxId) {
-              maxId = revInfo.getId();
+        try {
+          if (deltaCrl) {
+            List<CertRevInfoWithSerial> revInfos =
+                certstore.getCertsForDeltaCrl(caIdent, baseCrlNumber, notExpiredAt);
+            // sort the list by SerialNumber ASC
+            Collections.sort(revInfos);
+            for (CertRevInfoWithSerial revInfo : revInfos) {
+              addCrlEntry(crlBuilder, revInfo, crlControl, indirectCrl, isFirstCrlEntry);
             }
-          } // end for
-          startId = maxId + 1;
-        } while (revInfos.size() >= numEntries); // end do
+          } else {
+            // the entries are written in the order of the database ID, one page at a time,
+            // so that only one page is held in memory.
+            long startId = 1;
+
+            List<CertRevInfoWithSerial> revInfos;
+            do {
+              revInfos = certstore.getRevokedCerts(caIdent, notExpiredAt, startId,
+                  CRL_ENTRIES_PAGE_SIZE);
+
+              long maxId = 1;
+              for (CertRevInfoWithSerial revInfo : revInfos) {
+                if (revInfo.getId() > maxId) {
+                  maxId = revInfo.getId();
+                }
+                addCrlEntry(crlBuilder, revInfo, crlControl, indirectCrl, isFirstCrlEntry);
+              } // end for
+              startId = maxId + 1;
+            } while (revInfos.size() >= CRL_ENTRIES_PAGE_SIZE); // end do
+          }
 
-        revInfos.clear();
-      }
+          if (indirectCrl && crlBuilder.getNumEntries() == 0) {
+            // add dummy entry, see https://github.com/xipki/xipki/issues/189
+            Extensions extensions =
+                new Extensions(createCertificateIssuerExtension(pci.getSubject()));
+            crlBuilder.addEntry(BigInteger.ZERO, new Date(0), extensions);
+            LOG.debug("added cert ca={} serial=0 to the indirect CRL", caIdent);
+          }
+        } catch (IOException ex) {
+          LogUtil.error(LOG, ex, "crlBuilder.addEntry");
+          throw new OperationException(CRL_FAILURE, ex);
+        }
 
-      if (indirectCrl && allRevInfos.isEmpty()) {
-        // add dummy entry, see https://github.com/xipki/xipki/issues/189
-        Extensions extensions = new Extensions(createCertificateIssuerExtension(pci.getSubject()));
-        crlBuilder.addCRLEntry(BigInteger.ZERO, new Date(0), extensions);
-        LOG.debug("added cert ca={} serial=0 to the indirect CRL", caIdent);
-      } else {
-        // sort the list by SerialNumber ASC
-        Collections.sort(allRevInfos);
+        LOG.info("added {} entries to the CRL of ca={}", crlBuilder.getNumEntries(),
+            caIdent.getName());
 
-        boolean isFirstCrlEntry = true;
+        crlNumber = caInfo.nextCrlNumber();
+        event.addEventData(NAME_crl_number, crlNumber);
+        if (baseCrlNumber != null) {
+          event.addEventData(NAME_basecrl_number, baseCrlNumber);
+        }
 
-        for (CertRevInfoWithSerial revInfo : allRevInfos) {
-          CrlReason reason = revInfo.getReason();
-          if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-            reason = CrlReason.UNSPECIFIED;
+        try {
+          // AuthorityKeyIdentifier
+          byte[] akiValues = indirectCrl
+              ? crlSigner.getSigner().getCertificate().getSubjectKeyId()
+              : pci.getSubjectKeyIdentifer();
+          AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
+          crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
+
+          // add extension CRL Number
+          crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+
+          // IssuingDistributionPoint
+          if (indirectCrl) {
+            IssuingDistributionPoint idp = new IssuingDistributionPoint(
+                null, // distributionPoint,
+                false, // onlyContainsUserCerts,
+                false, // onlyContainsCACerts,
+                null, // onlySomeReasons,
+                true, // indirectCRL,
+                false); // onlyContainsAttributeCerts
+
+            crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
           }
 
-          Date revocationTime = revInfo.getRevocationTime();
-          Date invalidityTime = revInfo.getInvalidityTime();
-
-          switch (crlControl.getInvalidityDateMode()) {
-            case forbidden:
-              invalidityTime = null;
-              break;
-            case optional:
-              break;
-            case required:
-              if (invalidityTime == null) {
-                invalidityTime = revocationTime;
-              }
-              break;
-            default:
-              throw new IllegalStateException(
-                  "unknown TripleState " + crlControl.getInvalidityDateMode());
+          // Delta CRL Indicator
+          if (deltaCrl) {
+            crlBuilder.addExtension(Extension.deltaCRLIndicator, true,
+                new ASN1Integer(baseCrlNumber));
           }
 
-          BigInteger serial = revInfo.getSerial();
-          LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
-
-          if (!indirectCrl || !isFirstCrlEntry) {
-            if (invalidityTime != null) {
-              crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                  invalidityTime);
-            } else {
-              crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
-            }
-            continue;
+          // freshestCRL
+          List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
+          if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNotEmpty(deltaCrlUris)) {
+            CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris,
+                pci.getSubject(), crlIssuer);
+            crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
           }
 
-          List<Extension> extensions = new ArrayList<>(3);
-          if (reason != CrlReason.UNSPECIFIED) {
-            Extension ext = createReasonExtension(reason.getCode());
-            extensions.add(ext);
-          }
-          if (invalidityTime != null) {
-            Extension ext = createInvalidityDateExtension(invalidityTime);
-            extensions.add(ext);
+          if (withExpiredCerts) {
+            DERGeneralizedTime statusSince = new DERGeneralizedTime(caCert.getNotBefore());
+            crlBuilder.addExtension(Extension.expiredCertsOnCRL, false, statusSince);
           }
-
-          Extension ext = createCertificateIssuerExtension(pci.getSubject());
-          extensions.add(ext);
-
-          crlBuilder.addCRLEntry(serial, revocationTime,
-              new Extensions(extensions.toArray(new Extension[0])));
-          isFirstCrlEntry = false;
-        }
-
-        allRevInfos.clear(); // free the memory
-      }
-
-      BigInteger crlNumber = caInfo.nextCrlNumber();
-      event.addEventData(NAME_crl_number, crlNumber);
-      if (baseCrlNumber != null) {
-        event.addEventData(NAME_basecrl_number, baseCrlNumber);
-      }
-
-      try {
-        // AuthorityKeyIdentifier
-        byte[] akiValues = indirectCrl
-            ? crlSigner.getSigner().getCertificate().getSubjectKeyId()
-            : pci.getSubjectKeyIdentifer();
-        AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(akiValues);
-        crlBuilder.addExtension(Extension.authorityKeyIdentifier, false, aki);
-
-        // add extension CRL Number
-        crlBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
-
-        // IssuingDistributionPoint
-        if (indirectCrl) {
-          IssuingDistributionPoint idp = new IssuingDistributionPoint(
-              null, // distributionPoint,
-              false, // onlyContainsUserCerts,
-              false, // onlyContainsCACerts,
-              null, // onlySomeReasons,
-              true, // indirectCRL,
-              false); // onlyContainsAttributeCerts
-
-          crlBuilder.addExtension(Extension.issuingDistributionPoint, true, idp);
+        } catch (IOException ex) {
+          LogUtil.error(LOG, ex, "crlBuilder.addExtension");
+          throw new OperationException(INVALID_EXTENSION, ex);
         }
 
-        // Delta CRL Indicator
-        if (deltaCrl) {
-          crlBuilder.addExtension(Extension.deltaCRLIndicator, true,
-              new ASN1Integer(baseCrlNumber));
-        }
+        @SuppressWarnings("resource")
+        ConcurrentContentSigner concurrentSigner = (crlSigner == null)
+            ? caInfo.getSigner(null) : crlSigner.getSigner();
 
-        // freshestCRL
-        List<String> deltaCrlUris = pci.getCaUris().getDeltaCrlUris();
-        if (control.getDeltaCrlIntervals() > 0 && CollectionUtil.isNotEmpty(deltaCrlUris)) {
-          CRLDistPoint cdp = CaUtil.createCrlDistributionPoints(deltaCrlUris, pci.getSubject(),
-              crlIssuer);
-          crlBuilder.addExtension(Extension.freshestCRL, false, cdp);
+        ConcurrentBagEntrySigner signer0;
+        try {
+          signer0 = concurrentSigner.borrowSigner();
+        } catch (NoIdleSignerException ex) {
+          throw new OperationException(SYSTEM_FAILURE,
+              "NoIdleSignerException: " + ex.getMessage());
         }
 
-        if (withExpiredCerts) {
-          DERGeneralizedTime statusSince = new DERGeneralizedTime(caCert.getNotBefore());
-          crlBuilder.addExtension(Extension.expiredCertsOnCRL, false, statusSince);
+        try {
+          crl = new EncodedCrl(crlBuilder.build(signer0.value()), crlNumber, baseCrlNumber,
+              thisUpdate, nextUpdate);
+        } catch (IOException ex) {
+          LogUtil.error(LOG, ex, "crlBuilder.build");
+          throw new OperationException(CRL_FAILURE, ex);
+        } finally {
+          concurrentSigner.requiteSigner(signer0);
         }
-      } catch (CertIOException ex) {
-        LogUtil.error(LOG, ex, "crlBuilder.addExtension");
-        throw new OperationException(INVALID_EXTENSION, ex);
-      }
-
-      @SuppressWarnings("resource")
-      ConcurrentContentSigner concurrentSigner = (crlSigner == null)
-          ? caInfo.getSigner(null) : crlSigner.getSigner();
-
-      ConcurrentBagEntrySigner signer0;
-      try {
-        signer0 = concurrentSigner.borrowSigner();
-      } catch (NoIdleSignerException ex) {
-        throw new OperationException(SYSTEM_FAILURE, "NoIdleSignerException: " + ex.getMessage());
-      }
-
-      X509CRLHolder crl;
-      try {
-        crl = crlBuilder.build(signer0.value());
       } finally {
-        concurrentSigner.requiteSigner(signer0);
+        crlBuilder.close();
       }
 
       caInfo.setNextCrlNumber(crlNumber.longValue() + 1);
       caManager.commitNextCrlNo(caIdent, caInfo.getNextCrlNumber());
-      publisher.publishCrl(crl);
+      if (publisher.publishCrl(crl)) {
+        try {
+          crlCache.setCurrent(new CrlCache.Entry(crl));
+        } catch (RuntimeException ex) {
+          // the current CRL will be read from the database
+          LogUtil.warn(LOG, ex, "could not cache the CRL " + crlNumber);
+          crlCache.clear();
+        }
+      }
 
       successful = true;
       LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent.getName(),
-          crlNumber, crl.getThisUpdate());
+          crlNumber, thisUpdate);
 
       if (!deltaCrl) {
         // clean up the CRL
@@ -662,6 +717,53 @@ public class X509CrlModule extends X509CaModule implements Closeable {
     return healthy;
   }
 
+  private void addCrlEntry(X509CrlStreamBuilder crlBuilder, CertRevInfoWithSerial revInfo,
+      CrlControl crlControl, boolean indirectCrl, boolean[] isFirstCrlEntry)
+          throws IOException {
+    CrlReason reason = revInfo.getReason();
+    if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+      reason = CrlReason.UNSPECIFIED;
+    }
+
+    Date revocationTime = revInfo.getRevocationTime();
+    Date invalidityTime = revInfo.getInvalidityTime();
+
+    switch (crlControl.getInvalidityDateMode()) {
+      case forbidden:
+        invalidityTime = null;
+        break;
+      case optional:
+        break;
+      case required:
+        if (invalidityTime == null) {
+          invalidityTime = revocationTime;
+        }
+        break;
+      default:
+        throw new IllegalStateException(
+            "unknown TripleState " + crlControl.getInvalidityDateMode());
+    }
+
+    BigInteger serial = revInfo.getSerial();
+    LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
+
+    List<Extension> extensions = new ArrayList<>(3);
+    if (reason != CrlReason.UNSPECIFIED) {
+      extensions.add(createReasonExtension(reason.getCode()));
+    }
+    if (invalidityTime != null) {
+      extensions.add(createInvalidityDateExtension(invalidityTime));
+    }
+
+    if (indirectCrl && isFirstCrlEntry[0]) {
+      extensions.add(createCertificateIssuerExtension(caInfo.getPublicCaInfo().getSubject()));
+      isFirstCrlEntry[0] = false;
+    }
+
+    crlBuilder.addEntry(serial, revocationTime, extensions.isEmpty() ? null
+        : new Extensions(extensions.toArray(new Extension[0])));
+  } // method addCrlEntry
+
   private static Extension createReasonExtension(int reasonCode) {
     CRLReason crlReason = CRLReason.lookup(reasonCode);
     try {
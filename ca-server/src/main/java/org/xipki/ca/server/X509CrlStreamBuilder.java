@@ -0,0 +1,303 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.bouncycastle.asn1.*;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.xipki.util.Args.notNull;
+
+/**
+ * Builder of X.509 CRL which encodes the revoked certificates incrementally.
+ *
+ * <p>Each CRL entry is DER-encoded once it is added, and appended to a buffer, which
+ * is moved to a temporary file if it grows above {@link #MAX_IN_MEMORY_ENTRIES_SIZE}.
+ * While building the CRL, the buffered entries are streamed to the signer, and then
+ * copied into the encoded CRL. In contrast to the {@code X509v2CRLBuilder}, no ASN.1
+ * objects are held for the entries, and the entries are written in the order they are
+ * added.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class X509CrlStreamBuilder implements Closeable {
+
+  /**
+   * Output stream to write into a byte array of known size, without copying it.
+   */
+  private static final class FixedArrayOutputStream extends OutputStream {
+
+    private final byte[] buf;
+
+    private int count;
+
+    FixedArrayOutputStream(int size) {
+      this.buf = new byte[size];
+    }
+
+    @Override
+    public void write(int b) {
+      buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+      System.arraycopy(bytes, off, buf, count, len);
+      count += len;
+    }
+
+  } // class FixedArrayOutputStream
+
+  private static final Logger LOG = LoggerFactory.getLogger(X509CrlStreamBuilder.class);
+
+  private static final int MAX_IN_MEMORY_ENTRIES_SIZE = 1024 * 1024;
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private Date nextUpdate;
+
+  private final List<Extension> extensions = new ArrayList<>(8);
+
+  private ByteArrayOutputStream memEntries = new ByteArrayOutputStream(4096);
+
+  private File fileEntries;
+
+  private OutputStream fileEntriesOut;
+
+  private long entriesSize;
+
+  private int numEntries;
+
+  X509CrlStreamBuilder(X500Name issuer, Date thisUpdate) {
+    this.issuer = notNull(issuer, "issuer");
+    this.thisUpdate = notNull(thisUpdate, "thisUpdate");
+  }
+
+  void setNextUpdate(Date nextUpdate) {
+    this.nextUpdate = nextUpdate;
+  }
+
+  void addExtension(ASN1ObjectIdentifier type, boolean critical, ASN1Encodable value)
+      throws IOException {
+    extensions.add(new Extension(type, critical, value.toASN1Primitive().getEncoded()));
+  }
+
+  int getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Adds a CRL entry.
+   * @param serial
+   *          Serial number of the revoked certificate.
+   * @param revocationTime
+   *          Revocation time.
+   * @param entryExtensions
+   *          Extensions of the entry. May be {@code null}.
+   * @throws IOException
+   *           if the entry could not be buffered.
+   */
+  void addEntry(BigInteger serial, Date revocationTime, Extensions entryExtensions)
+      throws IOException {
+    ASN1EncodableVector vec = new ASN1EncodableVector(3);
+    vec.add(new ASN1Integer(serial));
+    vec.add(new Time(revocationTime));
+    if (entryExtensions != null) {
+      vec.add(entryExtensions);
+    }
+
+    byte[] encoded = new DERSequence(vec).getEncoded();
+    if (memEntries != null && memEntries.size() + encoded.length > MAX_IN_MEMORY_ENTRIES_SIZE) {
+      spillToFile();
+    }
+
+    if (memEntries != null) {
+      memEntries.write(encoded);
+    } else {
+      fileEntriesOut.write(encoded);
+    }
+
+    entriesSize += encoded.length;
+    numEntries++;
+  } // method addEntry
+
+  private void spillToFile() throws IOException {
+    fileEntries = File.createTempFile("xipki-crl-", ".tmp");
+    fileEntriesOut = new BufferedOutputStream(
+        Files.newOutputStream(fileEntries.toPath()), COPY_BUFFER_SIZE);
+    memEntries.writeTo(fileEntriesOut);
+    memEntries = null;
+    LOG.debug("moved the CRL entries to the temporary file {}", fileEntries.getPath());
+  } // method spillToFile
+
+  /**
+   * Signs and encodes the CRL.
+   * @param signer
+   *          Signer to sign the TBSCertList.
+   * @return the DER-encoded signed CRL.
+   * @throws IOException
+   *           if error occurs while encoding or signing the CRL.
+   */
+  byte[] build(ContentSigner signer) throws IOException {
+    notNull(signer, "signer");
+
+    if (fileEntriesOut != null) {
+      fileEntriesOut.close();
+      fileEntriesOut = null;
+    }
+
+    byte[] encodedSigAlg = signer.getAlgorithmIdentifier().getEncoded();
+
+    // version, signature, issuer, thisUpdate, nextUpdate
+    ByteArrayOutputStream headBuf = new ByteArrayOutputStream(512);
+    headBuf.write(new ASN1Integer(1).getEncoded());
+    headBuf.write(encodedSigAlg);
+    headBuf.write(issuer.getEncoded());
+    headBuf.write(new Time(thisUpdate).getEncoded());
+    if (nextUpdate != null) {
+      headBuf.write(new Time(nextUpdate).getEncoded());
+    }
+    if (numEntries > 0) {
+      writeHeader(headBuf, 0x30, entriesSize);
+    }
+    byte[] head = headBuf.toByteArray();
+
+    byte[] tail = extensions.isEmpty() ? new byte[0]
+        : new DERTaggedObject(true, 0,
+            new Extensions(extensions.toArray(new Extension[0]))).getEncoded();
+
+    long tbsBodyLen = head.length + (numEntries > 0 ? entriesSize : 0) + tail.length;
+    byte[] tbsHeader = header(0x30, tbsBodyLen);
+
+    try (OutputStream sigOut = signer.getOutputStream()) {
+      sigOut.write(tbsHeader);
+      sigOut.write(head);
+      writeEntries(sigOut);
+      sigOut.write(tail);
+    }
+
+    byte[] encodedSig = new DERBitString(signer.getSignature()).getEncoded();
+
+    long tbsLen = tbsHeader.length + tbsBodyLen;
+    long crlBodyLen = tbsLen + encodedSigAlg.length + encodedSig.length;
+    byte[] crlHeader = header(0x30, crlBodyLen);
+    if (crlHeader.length + crlBodyLen > Integer.MAX_VALUE - 8) {
+      throw new IOException("CRL too large: " + (crlHeader.length + crlBodyLen) + " bytes");
+    }
+
+    FixedArrayOutputStream crlOut =
+        new FixedArrayOutputStream((int) (crlHeader.length + crlBodyLen));
+    crlOut.write(crlHeader);
+    crlOut.write(tbsHeader);
+    crlOut.write(head);
+    writeEntries(crlOut);
+    crlOut.write(tail);
+    crlOut.write(encodedSigAlg);
+    crlOut.write(encodedSig);
+
+    return crlOut.buf;
+  } // method build
+
+  private void writeEntries(OutputStream out) throws IOException {
+    if (numEntries == 0) {
+      return;
+    }
+
+    if (memEntries != null) {
+      memEntries.writeTo(out);
+      return;
+    }
+
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(fileEntries.toPath())) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+  } // method writeEntries
+
+  private static byte[] header(int tag, long bodyLen) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(6);
+    writeHeader(out, tag, bodyLen);
+    return out.toByteArray();
+  }
+
+  private static void writeHeader(OutputStream out, int tag, long bodyLen) throws IOException {
+    if (bodyLen > Integer.MAX_VALUE) {
+      throw new IOException("length too large: " + bodyLen);
+    }
+
+    out.write(tag);
+    if (bodyLen <= 0x7F) {
+      out.write((int) bodyLen);
+    } else {
+      int numBytes = 1;
+      while ((bodyLen >> (8 * numBytes)) != 0) {
+        numBytes++;
+      }
+
+      out.write(0x80 | numBytes);
+      for (int i = numBytes - 1; i >= 0; i--) {
+        out.write((int) (0xFF & (bodyLen >> (8 * i))));
+      }
+    }
+  } // method writeHeader
+
+  /**
+   * Deletes the temporary file, if any.
+   */
+  @Override
+  public void close() {
+    memEntries = null;
+    if (fileEntriesOut != null) {
+      try {
+        fileEntriesOut.close();
+      } catch (IOException ex) {
+        LOG.warn("could not close the temporary file {}", fileEntries.getPath());
+      }
+      fileEntriesOut = null;
+    }
+
+    if (fileEntries != null) {
+      if (!fileEntries.delete()) {
+        LOG.warn("could not delete the temporary file {}", fileEntries.getPath());
+      }
+      fileEntries = null;
+    }
+  } // method close
+
+}
@@ -25,6 +25,7 @@ import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.mgmt.CaMgmtException;
 import org.xipki.ca.api.mgmt.CaStatus;
 import org.xipki.ca.api.mgmt.CertWithRevocationInfo;
+import org.xipki.ca.api.publisher.CertPublisher.RevokedCert;
 import org.xipki.ca.server.db.CertStore;
 import org.xipki.ca.server.mgmt.CaManagerImpl;
 import org.xipki.security.CertRevocationInfo;
@@ -33,6 +34,9 @@ import org.xipki.util.CollectionUtil;
 import org.xipki.util.HealthCheckResult;
 import org.xipki.util.LogUtil;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,7 +48,7 @@ import static org.xipki.util.Args.notNull;
  * @author Lijun Liao
  */
 
-class X509PublisherModule extends X509CaModule {
+class X509PublisherModule extends X509CaModule implements Closeable {
 
   private final CertStore certstore;
 
@@ -52,6 +56,9 @@ class X509PublisherModule extends X509CaModule {
 
   private final CaManagerImpl caManager;
 
+  // asynchronous publishing stage, null if the certificates are published synchronously.
+  private final PublishWriteBehind writeBehind;
+
   X509PublisherModule(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore) {
     super(caInfo);
 
@@ -62,6 +69,15 @@ class X509PublisherModule extends X509CaModule {
     for (IdentifiedCertPublisher publisher : publishers()) {
       publisher.caAdded(caCert);
     }
+
+    int queueSize = caManager.getAsyncPublishingQueueSize();
+    if (queueSize > 0) {
+      writeBehind = new PublishWriteBehind(caIdent, caCert, certstore, queueSize,
+          caManager.getAsyncPublishingBatchSize());
+      writeBehind.start();
+    } else {
+      writeBehind = null;
+    }
   } // constructor
 
   /**
@@ -81,33 +97,102 @@ class X509PublisherModule extends X509CaModule {
       return 1;
     }
 
+    return publishToPublishers(certInfo);
+  } // method publishCert
+
+  /**
+   * Publish certificates. The certificates are saved in the CA certstore in one transaction.
+   *
+   * @param certInfos certificates to be published.
+   * @return 0 for published successfully, 1 if could not be published to CA certstore and
+   *     any publishers, 2 if could be published to CA certstore but not to all publishers.
+   */
+  int publishCerts(List<CertificateInfo> certInfos, boolean saveKeypair) {
+    notNull(certInfos, "certInfos");
+    List<CertificateInfo> newCertInfos = new ArrayList<>(certInfos.size());
+    for (CertificateInfo certInfo : certInfos) {
+      if (!certInfo.isAlreadyIssued()) {
+        newCertInfos.add(certInfo);
+      }
+    }
+
+    if (newCertInfos.isEmpty()) {
+      return 0;
+    }
+
+    if (!certstore.addCerts(newCertInfos, saveKeypair)) {
+      return 1;
+    }
+
+    if (writeBehind != null) {
+      int ret = 0;
+      for (CertificateInfo certInfo : newCertInfos) {
+        if (publishToPublishers(certInfo) != 0) {
+          ret = 2;
+        }
+      }
+      return ret;
+    }
+
+    int ret = 0;
     for (IdentifiedCertPublisher publisher : publishers()) {
-      boolean successful;
+      List<CertificateInfo> failedCertInfos;
       try {
-        successful = publisher.certificateAdded(certInfo);
+        failedCertInfos = publisher.certificatesAdded(newCertInfos);
       } catch (RuntimeException ex) {
-        successful = false;
-        LogUtil.warn(LOG, ex, "could not publish certificate to the publisher "
-                + publisher.getIdent());
+        failedCertInfos = newCertInfos;
+        LogUtil.warn(LOG, ex, "could not publish certificates to the publisher "
+            + publisher.getIdent());
+      }
+
+      for (CertificateInfo certInfo : failedCertInfos) {
+        if (!addToPublishQueue(publisher, certInfo.getCert().getCertId())) {
+          ret = 2;
+        }
+      }
+    } // end for
+
+    return ret;
+  } // method publishCerts
+
+  private int publishToPublishers(CertificateInfo certInfo) {
+    for (IdentifiedCertPublisher publisher : publishers()) {
+      boolean successful;
+      if (writeBehind != null) {
+        successful = writeBehind.offer(PublishWriteBehind.Event.added(publisher, certInfo));
+      } else {
+        try {
+          successful = publisher.certificateAdded(certInfo);
+        } catch (RuntimeException ex) {
+          successful = false;
+          LogUtil.warn(LOG, ex, "could not publish certificate to the publisher "
+              + publisher.getIdent());
+        }
       }
 
       if (successful) {
         continue;
       }
 
-      Long certId = certInfo.getCert().getCertId();
-      try {
-        certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+      if (!addToPublishQueue(publisher, certInfo.getCert().getCertId())) {
         return 2;
       }
     } // end for
 
     return 0;
-  } // method publishCert0
+  } // method publishToPublishers
 
-  boolean republishCerts(List<String> publisherNames, int numThreads) {
+  private boolean addToPublishQueue(IdentifiedCertPublisher publisher, Long certId) {
+    try {
+      certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
+      return true;
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+      return false;
+    }
+  } // method addToPublishQueue
+
+  boolean republishCerts(List<String> publisherNames, int numThreads, boolean resume) {
     List<IdentifiedCertPublisher> publishers;
     if (publisherNames == null) {
       publishers = publishers();
@@ -178,7 +263,7 @@ class X509PublisherModule extends X509CaModule {
       } // end if
 
       CertRepublisher republisher = new CertRepublisher(caIdent, caCert,
-          caIdNameMap, certstore, publishers, onlyRevokedCerts, numThreads);
+          caIdNameMap, certstore, publishers, onlyRevokedCerts, numThreads, resume);
       return republisher.republish();
     } finally {
       caInfo.setStatus(status);
@@ -210,6 +295,13 @@ class X509PublisherModule extends X509CaModule {
   } // method clearPublishQueue
 
   boolean publishCertsInQueue() {
+    if (writeBehind != null && !writeBehind.awaitPublished()) {
+      // the pending events may overwrite the republished certificates.
+      LOG.warn("asynchronous publishing of CA {} is still in process, try it later",
+          caIdent.getName());
+      return false;
+    }
+
     boolean allSuccessful = true;
     for (IdentifiedCertPublisher publisher : publishers()) {
       if (!publishCertsInQueue(publisher)) {
@@ -265,26 +357,56 @@ class X509PublisherModule extends X509CaModule {
     return true;
   } // method publishCertsInQueue
 
-  void publishCrl(X509CRLHolder crl) {
+  /**
+   * Saves the CRL in the database, and publishes it.
+   * @param crl
+   *          CRL to be published. It is parsed only if there are publishers.
+   * @return whether the CRL has been saved in the database.
+   */
+  boolean publishCrl(EncodedCrl crl) {
     try {
-      certstore.addCrl(caIdent, crl);
+      BigInteger baseCrlNumber = crl.getBaseCrlNumber();
+      certstore.addCrl(caIdent, crl.getEncoded(), crl.getCrlNumber().longValue(),
+          baseCrlNumber == null ? null : baseCrlNumber.longValue(),
+          crl.getThisUpdate(), crl.getNextUpdate());
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
           caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
       LOG.debug("Exception", ex);
-      return;
+      return false;
     }
 
-    for (IdentifiedCertPublisher publisher : publishers()) {
+    List<IdentifiedCertPublisher> publishers = publishers();
+    if (publishers.isEmpty()) {
+      return true;
+    }
+
+    X509CRLHolder crlHolder;
+    try {
+      crlHolder = crl.getHolder();
+    } catch (IOException ex) {
+      LogUtil.error(LOG, ex, "could not parse CRL " + crl.getCrlNumber());
+      return true;
+    }
+
+    for (IdentifiedCertPublisher publisher : publishers) {
       try {
-        publisher.crlAdded(caCert, crl);
+        publisher.crlAdded(caCert, crlHolder);
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
     } // end for
+    return true;
   } // method publishCrl
 
   boolean publishCertRemoved(CertWithDbId certToRemove) {
+    if (writeBehind != null && !writeBehind.awaitPublished()) {
+      // the pending events may re-publish the removed certificate.
+      LOG.warn("asynchronous publishing of CA {} is still in process, try it later",
+          caIdent.getName());
+      return false;
+    }
+
     boolean successful = true;
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean singleSuccessful;
@@ -315,24 +437,23 @@ class X509PublisherModule extends X509CaModule {
   void publishCertRevoked(CertWithRevocationInfo revokedCert) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean successful;
-      try {
-        successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
-                revokedCert.getCertprofile(), revokedCert.getRevInfo());
-      } catch (RuntimeException ex) {
-        successful = false;
-        LogUtil.error(LOG, ex, "could not publish revocation of certificate to the publisher "
-                + publisher.getIdent());
-      }
-
-      if (successful) {
-        continue;
+      if (writeBehind != null) {
+        successful = writeBehind.offer(PublishWriteBehind.Event.revoked(publisher,
+            new RevokedCert(revokedCert.getCert(), revokedCert.getCertprofile(),
+                revokedCert.getRevInfo())));
+      } else {
+        try {
+          successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
+                  revokedCert.getCertprofile(), revokedCert.getRevInfo());
+        } catch (RuntimeException ex) {
+          successful = false;
+          LogUtil.error(LOG, ex, "could not publish revocation of certificate to the publisher "
+                  + publisher.getIdent());
+        }
       }
 
-      Long certId = revokedCert.getCert().getCertId();
-      try {
-        certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+      if (!successful) {
+        addToPublishQueue(publisher, revokedCert.getCert().getCertId());
       }
     } // end for
   }
@@ -340,23 +461,21 @@ class X509PublisherModule extends X509CaModule {
   void publishCertUnrevoked(CertWithDbId unrevokedCert) {
     for (IdentifiedCertPublisher publisher : publishers()) {
       boolean successful;
-      try {
-        successful = publisher.certificateUnrevoked(caCert, unrevokedCert);
-      } catch (RuntimeException ex) {
-        successful = false;
-        LogUtil.error(LOG, ex, "could not publish unrevocation of certificate to the publisher "
-                + publisher.getIdent().getName());
-      }
-
-      if (successful) {
-        continue;
+      if (writeBehind != null) {
+        successful = writeBehind.offer(PublishWriteBehind.Event.unrevoked(publisher,
+            unrevokedCert));
+      } else {
+        try {
+          successful = publisher.certificateUnrevoked(caCert, unrevokedCert);
+        } catch (RuntimeException ex) {
+          successful = false;
+          LogUtil.error(LOG, ex, "could not publish unrevocation of certificate to the publisher "
+                  + publisher.getIdent().getName());
+        }
       }
 
-      Long certId = unrevokedCert.getCertId();
-      try {
-        certstore.addToPublishQueue(publisher.getIdent(), certId, caIdent);
-      } catch (Throwable th) {
-        LogUtil.error(LOG, th, "could not add entry to PublishQueue");
+      if (!successful) {
+        addToPublishQueue(publisher, unrevokedCert.getCertId());
       }
     }
   }
@@ -408,9 +527,20 @@ class X509PublisherModule extends X509CaModule {
       publisherHealth.setHealthy(publisher.isHealthy());
       parentResult.addChildCheck(publisherHealth);
     }
+
+    if (writeBehind != null) {
+      parentResult.addChildCheck(writeBehind.healthCheck());
+    }
     return healthy;
   }
 
+  @Override
+  public void close() {
+    if (writeBehind != null) {
+      writeBehind.close();
+    }
+  }
+
   private List<IdentifiedCertPublisher> publishers() {
     return caManager.getIdentifiedPublishersForCa(caIdent.getName());
   }
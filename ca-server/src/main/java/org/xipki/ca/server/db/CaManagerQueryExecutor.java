@@ -39,7 +39,6 @@ import org.xipki.util.*;
 
 import java.io.IOException;
 import java.security.cert.CertificateException;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -69,7 +68,6 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
   private final String sqlSelectCaId;
   private final String sqlSelectCa;
   private final String sqlNextSelectCrlNo;
-  private final String sqlSelectSystemEvent;
   private final String sqlSelectUserId;
   private final String sqlSelectUser;
 
@@ -104,9 +102,6 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
 
     this.sqlNextSelectCrlNo = buildSelectFirstSql("NEXT_CRLNO FROM CA WHERE ID=?");
 
-    this.sqlSelectSystemEvent = buildSelectFirstSql(
-        "EVENT_TIME,EVENT_OWNER FROM SYSTEM_EVENT WHERE NAME=?");
-
     this.sqlSelectUser = buildSelectFirstSql("ID,ACTIVE,PASSWORD FROM TUSER WHERE NAME=?");
   } // constructor
 
@@ -118,43 +113,32 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
    *            If error occurs.
    */
   public SystemEvent getSystemEvent(String eventName) throws CaMgmtException {
-    ResultRow rs = execQuery1PrepStmt0(sqlSelectSystemEvent, col2Str(eventName));
-    return (rs == null) ? null
-              : new SystemEvent(eventName, rs.getString("EVENT_OWNER"), getLong(rs, "EVENT_TIME"));
+    try {
+      return execSelectSystemEvent(eventName);
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
   } // method getSystemEvent
 
-  private void deleteSystemEvent(String eventName) throws CaMgmtException {
-    execUpdatePrepStmt0("DELETE FROM SYSTEM_EVENT WHERE NAME=?", col2Str(eventName));
-  } // method deleteSystemEvent
-
-  private void addSystemEvent(SystemEvent systemEvent) throws CaMgmtException {
-    final String sql =
-        "INSERT INTO SYSTEM_EVENT (NAME,EVENT_TIME,EVENT_TIME2,EVENT_OWNER) VALUES (?,?,?,?)";
-
-    int num = execUpdatePrepStmt0(sql,
-        col2Str(systemEvent.getName()), col2Long(systemEvent.getEventTime()),
-        col2Timestamp(new Timestamp(systemEvent.getEventTime() * 1000L)),
-        col2Str(systemEvent.getOwner()));
+  public void changeSystemEvent(SystemEvent systemEvent) throws CaMgmtException {
+    int num;
+    try {
+      num = execChangeSystemEvent(systemEvent);
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
 
     if (num == 0) {
       throw new CaMgmtException("could not add system event " + systemEvent.getName());
     }
 
     LOG.info("added system event {}", systemEvent.getName());
-  } // method addSystemEvent
-
-  public void changeSystemEvent(SystemEvent systemEvent) throws CaMgmtException {
-    deleteSystemEvent(systemEvent.getName());
-    addSystemEvent(systemEvent);
   } // method changeSystemEvent
 
   public Map<String, Integer> createCaAliases() throws CaMgmtException {
     Map<String, Integer> map = new HashMap<>();
 
-    List<ResultRow> rows = execQueryStmt0("SELECT NAME,CA_ID FROM CAALIAS");
-    for (ResultRow m : rows) {
-      map.put(m.getString("NAME"), getInt(m, "CA_ID"));
-    }
+    forEachRow0(rs -> map.put(rs.getString(1), rs.getInt(2)), "SELECT NAME,CA_ID FROM CAALIAS");
     return map;
   } // method createCaAliases
 
@@ -351,24 +335,21 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
     final String sql =
         "SELECT REQUESTOR_ID,RA,PERMISSION,PROFILES FROM CA_HAS_REQUESTOR WHERE CA_ID=?";
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, col2Int(ca.getId()));
-
-    Set<CaHasRequestorEntry> ret = new HashSet<>();
-    for (ResultRow rs : rows) {
-      int id = getInt(rs, "REQUESTOR_ID");
+    // columns REQUESTOR_ID,RA,PERMISSION,PROFILES
+    List<CaHasRequestorEntry> rows = execQueryPrepStmt0(rs -> {
+      int id = rs.getInt(1);
       String name = idNameMap.get(id);
 
-      List<String> list = StringUtil.split(rs.getString("PROFILES"), ",");
+      List<String> list = StringUtil.split(rs.getString(4), ",");
       Set<String> profiles = (list == null) ? null : new HashSet<>(list);
       CaHasRequestorEntry entry = new CaHasRequestorEntry(new NameId(id, name));
-      entry.setRa(getBoolean(rs, "RA"));
-      entry.setPermission(getInt(rs, "PERMISSION"));
+      entry.setRa(rs.getBoolean(2));
+      entry.setPermission(rs.getInt(3));
       entry.setProfiles(profiles);
+      return entry;
+    }, sql, col2Int(ca.getId()));
 
-      ret.add(entry);
-    }
-
-    return ret;
+    return new HashSet<>(rows);
   } // method createCaHasRequestors
 
   public Set<Integer> createCaHasProfiles(NameId ca) throws CaMgmtException {
@@ -383,14 +364,7 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
       throws CaMgmtException {
     final String sql = "SELECT " + column + " FROM " + table + " WHERE CA_ID=?";
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, col2Int(ca.getId()));
-
-    Set<Integer> ret = new HashSet<>();
-    for (ResultRow rs : rows) {
-      ret.add(getInt(rs, column));
-    }
-
-    return ret;
+    return new HashSet<>(execQueryPrepStmt0(rs -> rs.getInt(1), sql, col2Int(ca.getId())));
   } // method createCaHasEntities
 
   private long getNextId(Table table) throws CaMgmtException {
@@ -1129,21 +1103,18 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
 
     final String sql = "SELECT CA_ID,PERMISSION,PROFILES FROM CA_HAS_USER WHERE USER_ID=?";
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, col2Int(existingId));
-
     Map<String, CaHasUserEntry> ret = new HashMap<>();
-    for (ResultRow rs : rows) {
-      List<String> list = StringUtil.split(rs.getString("PROFILES"), ",");
+    // columns CA_ID,PERMISSION,PROFILES
+    forEachRow0(rs -> {
+      List<String> list = StringUtil.split(rs.getString(3), ",");
       Set<String> profiles = (list == null) ? null : new HashSet<>(list);
       CaHasUserEntry caHasUser = new CaHasUserEntry(new NameId(existingId, user));
-      caHasUser.setPermission(getInt(rs, "PERMISSION"));
+      caHasUser.setPermission(rs.getInt(2));
       caHasUser.setProfiles(profiles);
 
-      int caId = getInt(rs, "CA_ID");
-      String caName = idNameMap.getCaName(caId);
-
+      String caName = idNameMap.getCaName(rs.getInt(1));
       ret.put(caName, caHasUser);
-    }
+    }, sql, col2Int(existingId));
 
     return ret;
   }  // method getCaHasUsersForUser
@@ -1158,19 +1129,15 @@ public class CaManagerQueryExecutor extends CaManagerQueryExecutorBase {
     final String sql = "SELECT NAME,PERMISSION,PROFILES FROM CA_HAS_USER INNER JOIN TUSER"
         + " ON CA_ID=? AND TUSER.ID=CA_HAS_USER.USER_ID";
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, col2Int(caIdent.getId()));
-
-    List<CaHasUserEntry> ret = new LinkedList<>();
-    for (ResultRow rs : rows) {
-      List<String> list = StringUtil.split(rs.getString("PROFILES"), ",");
+    // columns NAME,PERMISSION,PROFILES
+    return execQueryPrepStmt0(rs -> {
+      List<String> list = StringUtil.split(rs.getString(3), ",");
       Set<String> profiles = (list == null) ? null : new HashSet<>(list);
-      CaHasUserEntry caHasUser = new CaHasUserEntry(new NameId(null, rs.getString("NAME")));
-      caHasUser.setPermission(getInt(rs, "PERMISSION"));
+      CaHasUserEntry caHasUser = new CaHasUserEntry(new NameId(null, rs.getString(1)));
+      caHasUser.setPermission(rs.getInt(2));
       caHasUser.setProfiles(profiles);
-
-      ret.add(caHasUser);
-    }
-    return ret;
+      return caHasUser;
+    }, sql, col2Int(caIdent.getId()));
   } // method getCaHasUsersForCa
 
   public void addDbSchema(String name, String value) throws CaMgmtException {
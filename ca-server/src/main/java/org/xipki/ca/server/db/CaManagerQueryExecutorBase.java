@@ -81,11 +81,10 @@ class CaManagerQueryExecutorBase extends QueryExecutor {
 
   public List<String> namesFromTable(String table) throws CaMgmtException {
     final String sql = concat("SELECT NAME FROM ", table);
-    List<ResultRow> rows = execQueryStmt0(sql);
+    List<String> rows = execQueryPrepStmt0(rs -> rs.getString(1), sql);
 
     List<String> names = new LinkedList<>();
-    for (ResultRow rs : rows) {
-      String name = rs.getString("NAME");
+    for (String name : rows) {
       if (StringUtil.isNotBlank(name)) {
         names.add(name);
       }
@@ -147,6 +146,33 @@ class CaManagerQueryExecutorBase extends QueryExecutor {
     }
   }
 
+  protected <T> T execQuery1PrepStmt0(RowMapper<T> mapper, String sql, SqlColumn2... params)
+      throws CaMgmtException {
+    try {
+      return execQuery1PrepStmt(mapper, sql, params);
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
+  }
+
+  protected <T> List<T> execQueryPrepStmt0(RowMapper<T> mapper, String sql,
+      SqlColumn2... params) throws CaMgmtException {
+    try {
+      return execQueryPrepStmt(mapper, sql, params);
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
+  }
+
+  protected void forEachRow0(RowCallback callback, String sql, SqlColumn2... params)
+      throws CaMgmtException {
+    try {
+      forEachRow(callback, sql, params);
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
+  }
+
   protected PreparedStatement buildPrepStmt0(String sql, SqlColumn2... columns)
       throws CaMgmtException {
     try {
@@ -17,14 +17,10 @@
 
 package org.xipki.ca.server.db;
 
-import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.CertificateList;
-import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
-import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.util.Pack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +43,7 @@ import org.xipki.security.HashAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Base64;
+import org.xipki.util.HealthCheckResult;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
@@ -55,12 +52,13 @@ import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.cert.CRLException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.xipki.ca.api.OperationException.ErrorCode.*;
 import static org.xipki.util.Args.*;
@@ -154,14 +152,74 @@ public class CertStore extends CertStoreBase {
 
   }
 
+  /**
+   * Columns of a certificate read from the table CERT.
+   */
+  private static final class CertRow {
+
+    private long id;
+
+    private int pid;
+
+    private int rid;
+
+    private CertRevocationInfo revInfo;
+
+    private String b64Cert;
+
+  } // class CertRow
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
+  // mapper of the columns PID,RID,REV,RR,RT,RIT,CERT
+  private static final RowMapper<CertRow> CERT_INFO_MAPPER = rs -> {
+    CertRow row = new CertRow();
+    row.pid = rs.getInt(1);
+    row.rid = rs.getInt(2);
+    row.revInfo = buildCertRevInfo(rs, 3);
+    row.b64Cert = rs.getString(7);
+    return row;
+  };
+
+  // mapper of the columns ID,REV,RR,RT,RIT,PID,CERT
+  private static final RowMapper<CertRow> CERT_REVINFO_MAPPER = rs -> {
+    CertRow row = new CertRow();
+    row.id = rs.getLong(1);
+    row.revInfo = buildCertRevInfo(rs, 2);
+    row.pid = rs.getInt(6);
+    row.b64Cert = rs.getString(7);
+    return row;
+  };
+
+  // mapper of the columns ID,PID,RID,REV,RR,RT,RIT,CERT
+  private static final RowMapper<CertRow> CERT_WITH_ID_MAPPER = rs -> {
+    CertRow row = new CertRow();
+    row.id = rs.getLong(1);
+    row.pid = rs.getInt(2);
+    row.rid = rs.getInt(3);
+    row.revInfo = buildCertRevInfo(rs, 4);
+    row.b64Cert = rs.getString(8);
+    return row;
+  };
+
+  private static final String SQL_CERTS_FOR_ID_RANGE =
+      "SELECT ID,PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE ID>=? AND ID<=? AND CA_ID=?";
+
+  private static final String SQL_REVOKED_CERTS_FOR_ID_RANGE =
+      SQL_CERTS_FOR_ID_RANGE + " AND REV=1";
+
+  // mapper of the columns ID,SN
+  private static final RowMapper<SerialWithId> SERIAL_WITH_ID_MAPPER =
+      rs -> new SerialWithId(rs.getLong(1), new BigInteger(rs.getString(2), 16));
+
   private final String sqlCertForId;
 
   private final String sqlCertWithRevInfo;
 
   private final String sqlCertInfo;
 
+  private final String sqlCertId;
+
   private final String sqlActiveUserInfoForName;
 
   private final String sqlActiveUserNameForId;
@@ -176,6 +234,8 @@ public class CertStore extends CertStoreBase {
 
   private final String sqlCrlWithNo;
 
+  private final String sqlCurrentCrlNo;
+
   private final String sqlReqIdForSerial;
 
   private final String sqlReqForId;
@@ -202,6 +262,9 @@ public class CertStore extends CertStoreBase {
 
   private long earliestNotBefore = 0;
 
+  // number of certificates in the table CERT, -1 if not counted yet.
+  private final AtomicLong numCerts = new AtomicLong(-1);
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator,
                    PasswordResolver passwordResolver)
       throws DataAccessException, CaMgmtException {
@@ -214,6 +277,7 @@ public class CertStore extends CertStoreBase {
         "ID,REV,RR,RT,RIT,PID,CERT FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlCertInfo = buildSelectFirstSql(
         "PID,RID,REV,RR,RT,RIT,CERT FROM CERT WHERE CA_ID=? AND SN=?");
+    this.sqlCertId = buildSelectFirstSql("ID FROM CERT WHERE CA_ID=? AND SN=?");
     this.sqlActiveUserInfoForName = buildSelectFirstSql(
         "ID,PASSWORD FROM TUSER WHERE NAME=? AND ACTIVE=1");
     this.sqlActiveUserNameForId = buildSelectFirstSql("NAME FROM TUSER WHERE ID=? AND ACTIVE=1");
@@ -227,6 +291,8 @@ public class CertStore extends CertStoreBase {
     this.sqlCrl = buildSelectFirstSql("THISUPDATE DESC", "THISUPDATE,CRL FROM CRL WHERE CA_ID=?");
     this.sqlCrlWithNo = buildSelectFirstSql("THISUPDATE DESC",
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
+    this.sqlCurrentCrlNo = buildSelectFirstSql("THISUPDATE DESC",
+        "CRL_NO FROM CRL WHERE CA_ID=?");
 
     this.sqlSelectUnrevokedSn = buildSelectFirstSql("LUPDATE FROM CERT WHERE REV=0 AND SN=?");
     final String prefix = "SN,LUPDATE FROM CERT WHERE REV=0 AND SN";
@@ -245,75 +311,159 @@ public class CertStore extends CertStoreBase {
 
     notNull(certInfo, "certInfo");
 
-    byte[] encodedCert = null;
-
     try {
-      String privateKeyInfo = null;
-      CertWithDbId cert = certInfo.getCert();
-      byte[] transactionId = certInfo.getTransactionId();
-      X500Name reqSubject = certInfo.getRequestedSubject();
-
       final long certId = idGenerator.nextId();
-      if (saveKeypair && certInfo.getPrivateKey() != null) {
-        // we use certId as the nonce
-        byte[] nonce = new byte[12];
-        Pack.longToBigEndian(certId, nonce, 4);
-        byte[] encodedPrivateKey = certInfo.getPrivateKey().getEncoded();
-        Cipher cipher = Cipher.getInstance(keypairEncAlg, keypairEncProvider);
-        GCMParameterSpec spec = new GCMParameterSpec(96, nonce);
-        cipher.init(Cipher.ENCRYPT_MODE, keypairEncKey, spec);
-        byte[] encrypted = cipher.doFinal(encodedPrivateKey);
-        privateKeyInfo = keypairEncAlgId + ":" + keypairEncKeyId + ":"
-                + Base64.encodeToString(nonce) + ":" + Base64.encodeToString(encrypted);
-      }
+      execUpdatePrepStmt0(SQL_ADD_CERT, buildAddCertParams(certInfo, certId, saveKeypair));
+      certInfo.getCert().setCertId(certId);
+      numCerts.updateAndGet(n -> n < 0 ? n : n + 1);
+    } catch (Exception ex) {
+      logAddCertError(certInfo, ex);
+      return false;
+    }
 
-      String subjectText = X509Util.cutText(cert.getCert().getSubjectRfc4519Text(), maxX500nameLen);
-      long fpSubject = X509Util.fpCanonicalizedName(cert.getCert().getSubject());
+    return true;
+  } // method addCert
 
-      String reqSubjectText = null;
-      Long fpReqSubject = null;
-      if (reqSubject != null) {
-        fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
-        if (fpSubject == fpReqSubject) {
-          fpReqSubject = null;
-        } else {
-          reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
+  /**
+   * Adds the certificates in one transaction with a JDBC batch. Either all or none of the
+   * certificates are added.
+   *
+   * @param certInfos
+   *          Certificates to be added.
+   * @param saveKeypair
+   *          Whether to save the keypair.
+   * @return whether the certificates have been added.
+   */
+  public boolean addCerts(List<CertificateInfo> certInfos, boolean saveKeypair) {
+    notNull(certInfos, "certInfos");
+    if (saveKeypair && keypairEncKey == null) {
+      for (CertificateInfo certInfo : certInfos) {
+        if (certInfo.getPrivateKey() != null) {
+          LOG.error("no keypair encryption key is configured");
+          return false;
         }
       }
+    }
+
+    long[] certIds = new long[certInfos.size()];
+    Connection conn;
+    try {
+      conn = datasource.getConnection();
+    } catch (DataAccessException ex) {
+      LogUtil.error(LOG, ex, "could not get connection");
+      return false;
+    }
 
-      encodedCert = cert.getCert().getEncoded();
-      String b64FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
-      String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
-
-      X509Cert cert0 = cert.getCert();
-      boolean isEeCert = cert0.getBasicConstraints() == -1;
-
-      execUpdatePrepStmt0(SQL_ADD_CERT,
-          col2Long(certId), col2Long(System.currentTimeMillis() / 1000), // currentTimeSeconds
-          col2Str(cert0.getSerialNumber().toString(16)),
-          col2Str(subjectText),  col2Long(fpSubject), col2Long(fpReqSubject),
-          col2Long(cert0.getNotBefore().getTime() / 1000), // notBeforeSeconds
-          col2Long(cert0.getNotAfter().getTime() / 1000), // notAfterSeconds
-          col2Bool(false), col2Int(certInfo.getProfile().getId()),
-          col2Int(certInfo.getIssuer().getId()), col2Int(certInfo.getRequestor().getId()),
-          col2Int(certInfo.getUser()), col2Int(isEeCert ? 1 : 0),
-          col2Int(certInfo.getReqType().getCode()),
-          col2Str(tid), col2Str(b64FpCert), col2Str(reqSubjectText),
-          col2Int(0), // in this version we set CRL_SCOPE to fixed value 0
-          col2Str(Base64.encodeToString(encodedCert)),
-          col2Str(privateKeyInfo));
-
-      cert.setCertId(certId);
+    PreparedStatement ps = null;
+    boolean origAutoCommit = true;
+    CertificateInfo currentCertInfo = null;
+    try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      ps = datasource.prepareStatement(conn, SQL_ADD_CERT);
+      for (int i = 0; i < certIds.length; i++) {
+        currentCertInfo = certInfos.get(i);
+        certIds[i] = idGenerator.nextId();
+        setParams(SQL_ADD_CERT, ps, buildAddCertParams(currentCertInfo, certIds[i], saveKeypair));
+        ps.addBatch();
+      }
+
+      currentCertInfo = null;
+      ps.executeBatch();
+      conn.commit();
     } catch (Exception ex) {
-      LOG.error("could not save certificate {}: {}. Message: {}",
-          certInfo.getCert().getCert().getSubject(),
-          encodedCert == null ? "null" : Base64.encodeToString(encodedCert, true), ex.getMessage());
-      LOG.debug("error", ex);
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LogUtil.warn(LOG, ex2, "could not rollback the transaction");
+      }
+
+      if (currentCertInfo != null) {
+        logAddCertError(currentCertInfo, ex);
+      } else {
+        LogUtil.error(LOG, ex, "could not save " + certIds.length + " certificates");
+      }
       return false;
+    } finally {
+      try {
+        conn.setAutoCommit(origAutoCommit);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not reset the auto-commit mode");
+      }
+      datasource.releaseResources(ps, null, true);
     }
 
+    for (int i = 0; i < certIds.length; i++) {
+      certInfos.get(i).getCert().setCertId(certIds[i]);
+    }
+    numCerts.updateAndGet(n -> n < 0 ? n : n + certIds.length);
     return true;
-  } // method addCert
+  } // method addCerts
+
+  private SqlColumn2[] buildAddCertParams(CertificateInfo certInfo, long certId,
+      boolean saveKeypair) throws Exception {
+    String privateKeyInfo = null;
+    CertWithDbId cert = certInfo.getCert();
+    byte[] transactionId = certInfo.getTransactionId();
+    X500Name reqSubject = certInfo.getRequestedSubject();
+
+    if (saveKeypair && certInfo.getPrivateKey() != null) {
+      // we use certId as the nonce
+      byte[] nonce = new byte[12];
+      Pack.longToBigEndian(certId, nonce, 4);
+      byte[] encodedPrivateKey = certInfo.getPrivateKey().getEncoded();
+      Cipher cipher = Cipher.getInstance(keypairEncAlg, keypairEncProvider);
+      GCMParameterSpec spec = new GCMParameterSpec(96, nonce);
+      cipher.init(Cipher.ENCRYPT_MODE, keypairEncKey, spec);
+      byte[] encrypted = cipher.doFinal(encodedPrivateKey);
+      privateKeyInfo = keypairEncAlgId + ":" + keypairEncKeyId + ":"
+              + Base64.encodeToString(nonce) + ":" + Base64.encodeToString(encrypted);
+    }
+
+    String subjectText = X509Util.cutText(cert.getCert().getSubjectRfc4519Text(), maxX500nameLen);
+    long fpSubject = X509Util.fpCanonicalizedName(cert.getCert().getSubject());
+
+    String reqSubjectText = null;
+    Long fpReqSubject = null;
+    if (reqSubject != null) {
+      fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
+      if (fpSubject == fpReqSubject) {
+        fpReqSubject = null;
+      } else {
+        reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
+      }
+    }
+
+    byte[] encodedCert = cert.getCert().getEncoded();
+    String b64FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
+    String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
+
+    X509Cert cert0 = cert.getCert();
+    boolean isEeCert = cert0.getBasicConstraints() == -1;
+
+    return new SqlColumn2[] {
+        col2Long(certId), col2Long(System.currentTimeMillis() / 1000), // currentTimeSeconds
+        col2Str(cert0.getSerialNumber().toString(16)),
+        col2Str(subjectText),  col2Long(fpSubject), col2Long(fpReqSubject),
+        col2Long(cert0.getNotBefore().getTime() / 1000), // notBeforeSeconds
+        col2Long(cert0.getNotAfter().getTime() / 1000), // notAfterSeconds
+        col2Bool(false), col2Int(certInfo.getProfile().getId()),
+        col2Int(certInfo.getIssuer().getId()), col2Int(certInfo.getRequestor().getId()),
+        col2Int(certInfo.getUser()), col2Int(isEeCert ? 1 : 0),
+        col2Int(certInfo.getReqType().getCode()),
+        col2Str(tid), col2Str(b64FpCert), col2Str(reqSubjectText),
+        col2Int(0), // in this version we set CRL_SCOPE to fixed value 0
+        col2Str(Base64.encodeToString(encodedCert)),
+        col2Str(privateKeyInfo)};
+  } // method buildAddCertParams
+
+  private static void logAddCertError(CertificateInfo certInfo, Exception ex) {
+    byte[] encodedCert = certInfo.getCert().getCert().getEncoded();
+    LOG.error("could not save certificate {}: {}. Message: {}",
+        certInfo.getCert().getCert().getSubject(),
+        encodedCert == null ? "null" : Base64.encodeToString(encodedCert, true), ex.getMessage());
+    LOG.debug("error", ex);
+  } // method logAddCertError
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -372,38 +522,37 @@ public class CertStore extends CertStoreBase {
         col2Int(ca.getId()), col2Int(deltaCrl ? 1 : 0));
   } // method getThisUpdateOfCurrentCrl
 
-  public void addCrl(NameId ca, X509CRLHolder crl) throws OperationException, CRLException {
-    notNulls(ca, "ca", crl, "crl");
-
-    Extensions extns = crl.getExtensions();
-    byte[] extnValue = X509Util.getCoreExtValue(extns, Extension.cRLNumber);
-    // CHECKSTYLE:SKIP
-    Long crlNumber = (extnValue == null) ? null
-                      : ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-
-    extnValue = X509Util.getCoreExtValue(extns, Extension.deltaCRLIndicator);
-    Long baseCrlNumber = null;
-    if (extnValue != null) {
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
+  /**
+   * Adds the CRL.
+   * @param ca
+   *          CA of the CRL.
+   * @param encodedCrl
+   *          DER-encoded CRL.
+   * @param crlNumber
+   *          CRL number of the CRL.
+   * @param baseCrlNumber
+   *          CRL number of the base CRL for a delta CRL, {@code null} for a full CRL.
+   * @param thisUpdate
+   *          thisUpdate of the CRL.
+   * @param nextUpdate
+   *          nextUpdate of the CRL, may be {@code null}.
+   * @throws OperationException
+   *          if the CRL could not be saved.
+   */
+  public void addCrl(NameId ca, byte[] encodedCrl, long crlNumber, Long baseCrlNumber,
+      Date thisUpdate, Date nextUpdate) throws OperationException {
+    notNulls(ca, "ca", encodedCrl, "encodedCrl", thisUpdate, "thisUpdate");
 
     int currentMaxCrlId = (int) getMax("CRL", "ID");
     int crlId = Math.max(cachedCrlId.get(), currentMaxCrlId) + 1;
     cachedCrlId.set(crlId);
 
-    byte[] encodedCrl;
-    try {
-      encodedCrl = crl.getEncoded();
-    } catch (IOException ex) {
-      throw new CRLException(ex.getMessage(), ex);
-    }
-
     String b64Sha1 = HashAlgo.SHA1.base64Hash(encodedCrl);
     String b64Crl = Base64.encodeToString(encodedCrl);
 
     execUpdatePrepStmt0(SQL_ADD_CRL, col2Int(crlId), col2Int(ca.getId()), col2Long(crlNumber),
-        col2Long(crl.getThisUpdate().getTime() / 1000),
-        col2Long(getDateSeconds(crl.getNextUpdate())), col2Bool((baseCrlNumber != null)),
+        col2Long(thisUpdate.getTime() / 1000),
+        col2Long(getDateSeconds(nextUpdate)), col2Bool((baseCrlNumber != null)),
         // in this version we set CRL_SCOPE to fixed value 0
         col2Long(baseCrlNumber), col2Int(0), col2Str(b64Sha1), col2Str(b64Crl));
   } // method addCrl
@@ -548,8 +697,10 @@ public class CertStore extends CertStoreBase {
   } // method removeCert
 
   public void removeCert(long id) throws OperationException {
-    execUpdatePrepStmt0(SQL_REMOVE_CERT_FOR_ID, col2Long(id));
-  }
+    if (execUpdatePrepStmt0(SQL_REMOVE_CERT_FOR_ID, col2Long(id)) > 0) {
+      numCerts.updateAndGet(n -> n < 1 ? n : n - 1);
+    }
+  } // method removeCert
 
   public List<Long> getPublishQueueEntries(NameId ca, NameId publisher, int numEntries)
       throws OperationException {
@@ -560,11 +711,11 @@ public class CertStore extends CertStoreBase {
       cacheSqlCidFromPublishQueue.put(numEntries, sql);
     }
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, col2Int(publisher.getId()), col2Int(ca.getId()));
+    List<Long> certIds = execQueryPrepStmt0(rs -> rs.getLong(1), sql,
+        col2Int(publisher.getId()), col2Int(ca.getId()));
 
-    List<Long> ret = new ArrayList<>();
-    for (ResultRow rs : rows) {
-      long certId = rs.getLong("CID");
+    List<Long> ret = new ArrayList<>(certIds.size());
+    for (Long certId : certIds) {
       if (!ret.contains(certId)) {
         ret.add(certId);
       }
@@ -582,6 +733,15 @@ public class CertStore extends CertStoreBase {
     return execQueryLongPrepStmt(sql, col2Int(ca.getId()));
   } // method getCountOfCerts
 
+  public long getCountOfCerts(NameId ca, boolean onlyRevoked, long minId)
+      throws OperationException {
+    final String sql = onlyRevoked
+        ? "SELECT COUNT(*) FROM CERT WHERE ID>=? AND CA_ID=? AND REV=1"
+        : "SELECT COUNT(*) FROM CERT WHERE ID>=? AND CA_ID=?";
+
+    return execQueryLongPrepStmt(sql, col2Long(minId), col2Int(ca.getId()));
+  } // method getCountOfCerts
+
   public long getCountOfCerts(long notBeforeSince) throws OperationException {
     if (notBeforeSince <= earliestNotBefore) {
       final String sql = "SELECT COUNT(*) FROM CERT";
@@ -592,6 +752,54 @@ public class CertStore extends CertStoreBase {
     }
   } // method getCountOfCerts
 
+  /**
+   * Gets the number of all certificates. The number is counted in the database only once,
+   * and then maintained in memory by {@link #addCert(CertificateInfo, boolean)} and
+   * {@link #removeCert(long)}. Certificates added or removed by other instances are
+   * considered in {@link #reconcileCountOfCerts()}.
+   *
+   * @return the number of all certificates.
+   * @throws OperationException
+   *           If error occurs while counting the certificates.
+   */
+  public long getCachedCountOfCerts() throws OperationException {
+    long num = numCerts.get();
+    if (num >= 0) {
+      return num;
+    }
+
+    synchronized (numCerts) {
+      num = numCerts.get();
+      if (num < 0) {
+        num = getCountOfCerts(0);
+        numCerts.set(num);
+      }
+    }
+    return num;
+  } // method getCachedCountOfCerts
+
+  /**
+   * Recounts the certificates in the database, if the number has been counted before.
+   *
+   * @throws OperationException
+   *           If error occurs while counting the certificates.
+   */
+  public void reconcileCountOfCerts() throws OperationException {
+    long oldNum = numCerts.get();
+    if (oldNum < 0) {
+      return;
+    }
+
+    long num = getCountOfCerts(0);
+    // apply only the difference, so that the certificates added or removed by this instance
+    // while counting are not lost.
+    long diff = num - oldNum;
+    if (diff != 0) {
+      long newNum = numCerts.updateAndGet(n -> n < 0 ? n : Math.max(0, n + diff));
+      LOG.info("reconciled number of certificates from {} to {}", oldNum, newNum);
+    }
+  } // method reconcileCountOfCerts
+
   public List<SerialWithId> getSerialNumbers(NameId ca,  long startId, int numEntries,
       boolean onlyRevoked) throws OperationException {
     notNulls(ca, "ca", numEntries, "numEntries");
@@ -612,17 +820,8 @@ public class CertStore extends CertStoreBase {
 
   private List<SerialWithId> getSerialWithIds(String sql, int numEntries, SqlColumn2... params)
       throws OperationException {
-    List<ResultRow> rows = execQueryPrepStmt0(sql, params);
-
-    List<SerialWithId> ret = new ArrayList<>();
-    for (ResultRow rs : rows) {
-      ret.add(new SerialWithId(rs.getLong("ID"), new BigInteger(rs.getString("SN"), 16)));
-      if (ret.size() >= numEntries) {
-        break;
-      }
-    }
-
-    return ret;
+    List<SerialWithId> ret = execQueryPrepStmt0(SERIAL_WITH_ID_MAPPER, sql, params);
+    return (ret.size() > numEntries) ? new ArrayList<>(ret.subList(0, numEntries)) : ret;
   }
 
   public List<SerialWithId> getExpiredUnrevokedSerialNumbers(
@@ -659,33 +858,14 @@ public class CertStore extends CertStoreBase {
 
   private List<SerialWithId> getSerialNumbers0(String sql, int numEntries, SqlColumn2... params)
       throws OperationException {
-    List<ResultRow> rows = execQueryPrepStmt0(sql, params);
-    List<SerialWithId> ret = new ArrayList<>();
-    for (ResultRow row : rows) {
-      ret.add(new SerialWithId(row.getLong("ID"), new BigInteger(row.getString("SN"), 16)));
-      if (ret.size() >= numEntries) {
-        break;
-      }
-    }
-    return ret;
+    return getSerialWithIds(sql, numEntries, params);
   } // method getExpiredSerialNumbers
 
   private byte[] getEncodedCrl(NameId ca) throws OperationException {
     notNull(ca, "ca");
 
-    List<ResultRow> rows = execQueryPrepStmt0(sqlCrl, col2Int(ca.getId()));
-    long currentThisUpdate = 0;
-
-    String b64Crl = null;
-    // iterate all entries to make sure that the latest CRL will be returned
-    for (ResultRow rs : rows) {
-      long thisUpdate = rs.getLong("THISUPDATE");
-      if (thisUpdate >= currentThisUpdate) {
-        b64Crl = rs.getString("CRL");
-        currentThisUpdate = thisUpdate;
-      }
-    }
-
+    // the CRLs are ordered by THISUPDATE descending, the first one is the latest CRL.
+    String b64Crl = execQuery1PrepStmt0(rs -> rs.getString(2), sqlCrl, col2Int(ca.getId()));
     return (b64Crl == null) ? null : Base64.decodeFast(b64Crl);
   } // method getEncodedCrl
 
@@ -696,23 +876,34 @@ public class CertStore extends CertStoreBase {
       return getEncodedCrl(ca);
     }
 
-    ResultRow rs = execQuery1PrepStmt0(sqlCrlWithNo,
+    String b64Crl = execQuery1PrepStmt0(rs -> rs.getString(2), sqlCrlWithNo,
         col2Int(ca.getId()), col2Long(crlNumber.longValue()));
 
-    return rs == null ? null : Base64.decodeFast(rs.getString("CRL"));
+    return b64Crl == null ? null : Base64.decodeFast(b64Crl);
   } // method getEncodedCrl
 
+  /**
+   * Gets the number of the current CRL, namely the latest one, without reading the CRL itself.
+   * @param ca
+   *          CA identifier.
+   * @return the CRL number, or {@code null} if the CA has not any CRL.
+   * @throws OperationException
+   *           if database error occurs.
+   */
+  public Long getCurrentCrlNumber(NameId ca) throws OperationException {
+    notNull(ca, "ca");
+
+    // the CRLs are ordered by THISUPDATE descending, the first one is the latest CRL.
+    return execQuery1PrepStmt0(rs -> rs.getLong(1), sqlCurrentCrlNo, col2Int(ca.getId()));
+  } // method getCurrentCrlNumber
+
   public int cleanupCrls(NameId ca, int numCrls) throws OperationException {
     notNull(ca, "ca");
     positive(numCrls, "numCrls");
 
-    List<Long> crlNumbers = new LinkedList<>();
-
-    List<ResultRow> rows = execQueryPrepStmt0("SELECT CRL_NO FROM CRL WHERE CA_ID=? AND DELTACRL=?",
+    List<Long> crlNumbers = execQueryPrepStmt0(rs -> rs.getLong(1),
+        "SELECT CRL_NO FROM CRL WHERE CA_ID=? AND DELTACRL=?",
         col2Int(ca.getId()), col2Bool(false));
-    for (ResultRow rs : rows) {
-      crlNumbers.add(rs.getLong("CRL_NO"));
-    }
 
     int size = crlNumbers.size();
     Collections.sort(crlNumbers);
@@ -733,84 +924,137 @@ public class CertStore extends CertStoreBase {
       CaIdNameMap idNameMap) throws OperationException {
     notNulls(ca, "ca", caCert, "caCert", idNameMap, "idNameMap");
 
-    ResultRow rs = execQuery1PrepStmt0(sqlCertForId, col2Long(certId));
-    if (rs == null) {
+    CertRow row = execQuery1PrepStmt0(CERT_INFO_MAPPER, sqlCertForId, col2Long(certId));
+    if (row == null) {
       return null;
     }
 
-    X509Cert cert = parseCert(Base64.decodeFast(rs.getString("CERT")));
+    X509Cert cert = parseCert(Base64.decodeFast(row.b64Cert));
     CertWithDbId certWithMeta = new CertWithDbId(cert);
     certWithMeta.setCertId(certId);
     CertificateInfo certInfo = new CertificateInfo(certWithMeta, null, ca, caCert,
-        idNameMap.getCertprofile(rs.getInt("PID")), idNameMap.getRequestor(rs.getInt("RID")));
-    certInfo.setRevocationInfo(buildCertRevInfo(rs));
+        idNameMap.getCertprofile(row.pid), idNameMap.getRequestor(row.rid));
+    certInfo.setRevocationInfo(row.revInfo);
     return certInfo;
   } // method getCertForId
 
+  /**
+   * Gets the certificates of the given CA with one query.
+   *
+   * @param ca CA identifier.
+   * @param caCert CA certificate.
+   * @param fromId the smallest certificate ID, inclusive.
+   * @param toId the largest certificate ID, inclusive.
+   * @param onlyRevoked whether only the revoked certificates are returned.
+   * @param idNameMap map of the profile and requestor identifiers.
+   * @return the certificates, not ordered.
+   * @throws OperationException if error occurs.
+   */
+  public List<CertificateInfo> getCertsForIdRange(NameId ca, X509Cert caCert, long fromId,
+      long toId, boolean onlyRevoked, CaIdNameMap idNameMap) throws OperationException {
+    notNulls(ca, "ca", caCert, "caCert", idNameMap, "idNameMap");
+
+    String sql = onlyRevoked ? SQL_REVOKED_CERTS_FOR_ID_RANGE : SQL_CERTS_FOR_ID_RANGE;
+    List<CertRow> rows = execQueryPrepStmt0(CERT_WITH_ID_MAPPER, sql,
+        col2Long(fromId), col2Long(toId), col2Int(ca.getId()));
+
+    List<CertificateInfo> ret = new ArrayList<>(rows.size());
+    for (CertRow row : rows) {
+      X509Cert cert = parseCert(Base64.decodeFast(row.b64Cert));
+      CertWithDbId certWithMeta = new CertWithDbId(cert);
+      certWithMeta.setCertId(row.id);
+      CertificateInfo certInfo = new CertificateInfo(certWithMeta, null, ca, caCert,
+          idNameMap.getCertprofile(row.pid), idNameMap.getRequestor(row.rid));
+      certInfo.setRevocationInfo(row.revInfo);
+      ret.add(certInfo);
+    }
+    return ret;
+  } // method getCertsForIdRange
+
   public CertWithRevocationInfo getCertWithRevocationInfo(long certId, CaIdNameMap idNameMap)
       throws OperationException {
-    ResultRow rs = execQuery1PrepStmt0(sqlCertForId, col2Long(certId));
-    if (rs == null) {
+    CertRow row = execQuery1PrepStmt0(CERT_INFO_MAPPER, sqlCertForId, col2Long(certId));
+    if (row == null) {
       return null;
     }
-    return buildCertWithRevInfo(certId, rs, idNameMap);
+    return buildCertWithRevInfo(certId, row, idNameMap);
   }
 
   public CertWithRevocationInfo getCertWithRevocationInfo(int caId, BigInteger serial,
       CaIdNameMap idNameMap) throws OperationException {
     notNulls(serial, "serial", idNameMap, "idNameMap");
 
-    ResultRow rs = execQuery1PrepStmt0(sqlCertWithRevInfo,
+    CertRow row = execQuery1PrepStmt0(CERT_REVINFO_MAPPER, sqlCertWithRevInfo,
         col2Int(caId), col2Str(serial.toString(16)));
-    if (rs == null) {
+    if (row == null) {
       return null;
     }
 
-    return buildCertWithRevInfo(rs.getLong("ID"), rs, idNameMap);
+    return buildCertWithRevInfo(row.id, row, idNameMap);
   } // method getCertWithRevocationInfo
 
-  private CertWithRevocationInfo buildCertWithRevInfo(long certId, ResultRow rs,
+  private CertWithRevocationInfo buildCertWithRevInfo(long certId, CertRow row,
       CaIdNameMap idNameMap) throws OperationException {
-    X509Cert cert = parseCert(Base64.decodeFast(rs.getString("CERT")));
+    X509Cert cert = parseCert(Base64.decodeFast(row.b64Cert));
     CertWithDbId certWithMeta = new CertWithDbId(cert);
     certWithMeta.setCertId(certId);
 
     CertWithRevocationInfo ret = new CertWithRevocationInfo();
-    ret.setCertprofile(idNameMap.getCertprofileName(rs.getInt("PID")));
+    ret.setCertprofile(idNameMap.getCertprofileName(row.pid));
     ret.setCert(certWithMeta);
-    ret.setRevInfo(buildCertRevInfo(rs));
+    ret.setRevInfo(row.revInfo);
     return ret;
   } // method getCertWithRevocationInfo
 
+  public SystemEvent getSystemEvent(String eventName) throws OperationException {
+    try {
+      return execSelectSystemEvent(eventName);
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex);
+    }
+  } // method getSystemEvent
+
+  public void deleteSystemEvent(String eventName) throws OperationException {
+    try {
+      execDeleteSystemEvent(eventName);
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex);
+    }
+  } // method deleteSystemEvent
+
+  public void changeSystemEvent(SystemEvent systemEvent) throws OperationException {
+    try {
+      execChangeSystemEvent(systemEvent);
+    } catch (DataAccessException ex) {
+      throw new OperationException(DATABASE_FAILURE, ex);
+    }
+  } // method changeSystemEvent
+
   public long getCertId(NameId ca, BigInteger serial) throws OperationException {
     notNulls(ca, "ca", serial, "serial");
 
-    ResultRow rs = execQuery1PrepStmt0(sqlCertInfo,
+    Long certId = execQuery1PrepStmt0(rs -> rs.getLong(1), sqlCertId,
         col2Int(ca.getId()), col2Str(serial.toString(16)));
-    if (rs == null) {
-      return 0;
-    }
-    return rs.getLong("ID");
+    return certId == null ? 0 : certId;
   }
 
   public CertificateInfo getCertInfo(NameId ca, X509Cert caCert, BigInteger serial,
       CaIdNameMap idNameMap) throws OperationException {
     notNulls(ca, "ca", caCert, "caCert", idNameMap, "idNameMap", serial, "serial");
 
-    ResultRow rs = execQuery1PrepStmt0(sqlCertInfo,
+    CertRow row = execQuery1PrepStmt0(CERT_INFO_MAPPER, sqlCertInfo,
         col2Int(ca.getId()), col2Str(serial.toString(16)));
-    if (rs == null) {
+    if (row == null) {
       return null;
     }
 
-    byte[] encodedCert = Base64.decodeFast(rs.getString("CERT"));
+    byte[] encodedCert = Base64.decodeFast(row.b64Cert);
     CertWithDbId certWithMeta = new CertWithDbId(parseCert(encodedCert));
 
     CertificateInfo certInfo = new CertificateInfo(certWithMeta, null, ca, caCert,
-        idNameMap.getCertprofile(rs.getInt("PID")),
-        idNameMap.getRequestor(rs.getInt("RID")));
+        idNameMap.getCertprofile(row.pid), idNameMap.getRequestor(row.rid));
 
-    certInfo.setRevocationInfo(buildCertRevInfo(rs));
+    certInfo.setRevocationInfo(row.revInfo);
     return certInfo;
   } // method getCertInfo
 
@@ -841,9 +1085,9 @@ public class CertStore extends CertStoreBase {
     params[idx++] = col2Long(fpSubject);
     params[idx] = col2Long(fpSubject);
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql, params);
-    for (ResultRow rs : rows) {
-      certs.add(parseCert(Base64.decodeFast(rs.getString("CERT"))));
+    List<String> b64Certs = execQueryPrepStmt0(rs -> rs.getString(1), sql, params);
+    for (String b64Cert : b64Certs) {
+      certs.add(parseCert(Base64.decodeFast(b64Cert)));
     }
     return certs;
   } // method getCert
@@ -851,15 +1095,15 @@ public class CertStore extends CertStoreBase {
   public byte[] getCertRequest(NameId ca, BigInteger serialNumber) throws OperationException {
     notNulls(ca, "ca", serialNumber, "serialNumber");
 
-    ResultRow row = execQuery1PrepStmt0(sqlReqIdForSerial,
+    Long reqId = execQuery1PrepStmt0(rs -> rs.getLong(1), sqlReqIdForSerial,
         col2Int(ca.getId()), col2Str(serialNumber.toString(16)));
 
-    if (row == null) {
+    if (reqId == null) {
       return null;
     }
 
-    row = execQuery1PrepStmt0(sqlReqForId, col2Long(row.getLong("REQ_ID")));
-    return (row == null) ? null : Base64.decodeFast(row.getString("DATA"));
+    String b64Req = execQuery1PrepStmt0(rs -> rs.getString(1), sqlReqForId, col2Long(reqId));
+    return (b64Req == null) ? null : Base64.decodeFast(b64Req);
   } // method getCertRequest
 
   public List<CertListInfo> listCerts(NameId ca, X500Name subjectPattern, Date validFrom,
@@ -924,16 +1168,10 @@ public class CertStore extends CertStoreBase {
     }
 
     final String sql = datasource.buildSelectFirstSql(numEntries, sortByStr, sb.toString());
-    List<ResultRow> rows = execQueryPrepStmt0(sql, params.toArray(new SqlColumn2[0]));
-
-    List<CertListInfo> ret = new LinkedList<>();
-    for (ResultRow rs : rows) {
-      CertListInfo info = new CertListInfo(new BigInteger(rs.getString("SN"), 16),
-          rs.getString("SUBJECT"), new Date(rs.getLong("NBEFORE") * 1000),
-          new Date(rs.getLong("NAFTER") * 1000));
-      ret.add(info);
-    }
-    return ret;
+    // columns SN,NBEFORE,NAFTER,SUBJECT
+    return execQueryPrepStmt0(rs -> new CertListInfo(new BigInteger(rs.getString(1), 16),
+            rs.getString(4), new Date(rs.getLong(2) * 1000), new Date(rs.getLong(3) * 1000)),
+        sql, params.toArray(new SqlColumn2[0]));
   } // method listCerts
 
   public NameId authenticateUser(String user, byte[] password) throws OperationException {
@@ -954,8 +1192,7 @@ public class CertStore extends CertStoreBase {
   } // method authenticateUser
 
   public String getUsername(int id) throws OperationException {
-    ResultRow rs = execQuery1PrepStmt0(sqlActiveUserNameForId, col2Int(id));
-    return rs == null ? null : rs.getString("NAME");
+    return execQuery1PrepStmt0(rs -> rs.getString(1), sqlActiveUserNameForId, col2Int(id));
   } // method getUsername
 
   public CaHasUserEntry getCaHasUser(NameId ca, NameId user) throws OperationException {
@@ -976,9 +1213,9 @@ public class CertStore extends CertStoreBase {
   public KnowCertResult knowsCertForSerial(NameId ca, BigInteger serial) throws OperationException {
     notNull(serial, "serial");
 
-    ResultRow rs = execQuery1PrepStmt0(sqlKnowsCertForSerial,
+    Integer userId = execQuery1PrepStmt0(rs -> rs.getInt(1), sqlKnowsCertForSerial,
                     col2Str(serial.toString(16)), col2Int(ca.getId()));
-    return rs == null ? KnowCertResult.UNKNOWN : new KnowCertResult(true, rs.getInt("UID"));
+    return userId == null ? KnowCertResult.UNKNOWN : new KnowCertResult(true, userId);
   } // method knowsCertForSerial
 
   public List<CertRevInfoWithSerial> getRevokedCerts(NameId ca, Date notExpiredAt, long startId,
@@ -993,20 +1230,14 @@ public class CertStore extends CertStoreBase {
       cacheSqlRevokedCerts.put(numEntries, sql);
     }
 
-    List<ResultRow> rows = execQueryPrepStmt0(sql,
-        col2Long(startId - 1), col2Int(ca.getId()), col2Long(notExpiredAt.getTime() / 1000 + 1));
-
-    List<CertRevInfoWithSerial> ret = new LinkedList<>();
-    for (ResultRow rs : rows) {
-      long revInvalidityTime = rs.getLong("RIT");
+    // columns ID,SN,RR,RT,RIT
+    return execQueryPrepStmt0(rs -> {
+      long revInvalidityTime = rs.getLong(5);
       Date invalidityTime = (revInvalidityTime == 0) ? null : new Date(1000 * revInvalidityTime);
-      CertRevInfoWithSerial revInfo = new CertRevInfoWithSerial(rs.getLong("ID"),
-          new BigInteger(rs.getString("SN"), 16), rs.getInt("RR"), // revReason
-          new Date(1000 * rs.getLong("RT")), invalidityTime);
-      ret.add(revInfo);
-    }
-
-    return ret;
+      return new CertRevInfoWithSerial(rs.getLong(1),
+          new BigInteger(rs.getString(2), 16), rs.getInt(3), // revReason
+          new Date(1000 * rs.getLong(4)), invalidityTime);
+    }, sql, col2Long(startId - 1), col2Int(ca.getId()), col2Long(notExpiredAt.getTime() / 1000 + 1));
   } // method getRevokedCerts
 
   public List<CertRevInfoWithSerial> getCertsForDeltaCrl(NameId ca, BigInteger baseCrlNumber,
@@ -1169,10 +1400,10 @@ public class CertStore extends CertStoreBase {
 
   public CertStatus getCertStatusForSubject(NameId ca, X500Name subject) throws OperationException {
     long subjectFp = X509Util.fpCanonicalizedName(subject);
-    ResultRow rs = execQuery1PrepStmt0(sqlCertStatusForSubjectFp,
+    Boolean revoked = execQuery1PrepStmt0(rs -> rs.getBoolean(1), sqlCertStatusForSubjectFp,
                     col2Long(subjectFp), col2Int(ca.getId()));
-    return (rs == null) ? CertStatus.UNKNOWN
-                        : rs.getBoolean("REV") ? CertStatus.REVOKED : CertStatus.GOOD;
+    return (revoked == null) ? CertStatus.UNKNOWN
+                        : revoked ? CertStatus.REVOKED : CertStatus.GOOD;
   } // method getCertStatusForSubjectFp
 
   public boolean isHealthy() {
@@ -1186,6 +1417,14 @@ public class CertStore extends CertStoreBase {
     }
   } // method isHealthy
 
+  /**
+   * Gets the statistics of the prepared statement cache of the database.
+   * @return the statistics, or {@code null} if the statement cache is not enabled.
+   */
+  public HealthCheckResult getStatementCacheHealth() {
+    return datasource.getStatementCacheHealth();
+  }
+
   public void deleteUnreferencedRequests() throws OperationException {
     execUpdateStmt0(SQL_DELETE_UNREFERENCED_REQUEST);
   } // method deleteUnreferencedRequests
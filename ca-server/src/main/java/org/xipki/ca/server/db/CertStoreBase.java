@@ -160,18 +160,30 @@ public class CertStoreBase extends QueryExecutor {
     }
   }
 
-  protected static CertRevocationInfo buildCertRevInfo(ResultRow rs) {
-    boolean revoked = rs.getBoolean("REV");
+  /**
+   * Builds the revocation information from the columns REV,RR,RT,RIT.
+   * @param rs
+   *          Result set.
+   * @param revIndex
+   *          Index of the column REV, the columns RR, RT and RIT must follow it.
+   * @return the revocation information, or {@code null} if not revoked.
+   * @throws SQLException
+   *           if database error occurs.
+   */
+  protected static CertRevocationInfo buildCertRevInfo(ResultSet rs, int revIndex)
+      throws SQLException {
+    boolean revoked = rs.getBoolean(revIndex);
     if (!revoked) {
       return null;
     }
 
-    long revTime    = rs.getLong("RT");
-    long revInvTime = rs.getLong("RIT");
+    int revReason   = rs.getInt(revIndex + 1);
+    long revTime    = rs.getLong(revIndex + 2);
+    long revInvTime = rs.getLong(revIndex + 3);
 
     Date invalidityTime = (revInvTime == 0) ? null : new Date(revInvTime * 1000);
-    return new CertRevocationInfo(rs.getInt("RR"), new Date(revTime * 1000), invalidityTime);
-  }
+    return new CertRevocationInfo(revReason, new Date(revTime * 1000), invalidityTime);
+  } // method buildCertRevInfo
 
   protected long getMax(String table, String column) throws OperationException {
     try {
@@ -226,6 +238,33 @@ public class CertStoreBase extends QueryExecutor {
     }
   }
 
+  protected <T> T execQuery1PrepStmt0(RowMapper<T> mapper, String sql, SqlColumn2... params)
+      throws OperationException {
+    try {
+      return execQuery1PrepStmt(mapper, sql, params);
+    } catch (DataAccessException ex) {
+      throw new OperationException(ErrorCode.DATABASE_FAILURE, ex);
+    }
+  }
+
+  protected <T> List<T> execQueryPrepStmt0(RowMapper<T> mapper, String sql,
+      SqlColumn2... params) throws OperationException {
+    try {
+      return execQueryPrepStmt(mapper, sql, params);
+    } catch (DataAccessException ex) {
+      throw new OperationException(ErrorCode.DATABASE_FAILURE, ex);
+    }
+  }
+
+  protected void forEachRow0(RowCallback callback, String sql, SqlColumn2... params)
+      throws OperationException {
+    try {
+      forEachRow(callback, sql, params);
+    } catch (DataAccessException ex) {
+      throw new OperationException(ErrorCode.DATABASE_FAILURE, ex);
+    }
+  }
+
   protected PreparedStatement buildPrepStmt0(String sql, SqlColumn2... columns)
       throws OperationException {
     try {
@@ -17,8 +17,10 @@
 
 package org.xipki.ca.server.db;
 
+import org.xipki.ca.server.db.CertStore.SystemEvent;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.util.LruCache;
 
 import java.sql.*;
 import java.util.*;
@@ -41,6 +43,28 @@ class QueryExecutor {
     TIMESTAMP,
   } // class ColumnType
 
+  /**
+   * Maps the current row of a {@link ResultSet} to an object. The columns should be read by
+   * their indexes, which are given by the order in the SELECT clause.
+   *
+   * @param <T> type of the mapped object.
+   */
+  protected interface RowMapper<T> {
+
+    T mapRow(ResultSet rs) throws SQLException;
+
+  } // interface RowMapper
+
+  /**
+   * Processes the current row of a {@link ResultSet}. The columns should be read by their
+   * indexes, which are given by the order in the SELECT clause.
+   */
+  protected interface RowCallback {
+
+    void processRow(ResultSet rs) throws SQLException;
+
+  } // interface RowCallback
+
   protected static class SqlColumn {
 
     private final ColumnType type;
@@ -146,8 +170,15 @@ class QueryExecutor {
 
   protected final DataSourceWrapper datasource;
 
+  // labels and types of the columns, keyed by the SQL query.
+  private final LruCache<String, ResultRow.Columns> columnsCache = new LruCache<>(1000);
+
+  private final String sqlSelectSystemEvent;
+
   QueryExecutor(DataSourceWrapper datasource) {
     this.datasource = notNull(datasource, "datasource");
+    this.sqlSelectSystemEvent = buildSelectFirstSql(
+        "EVENT_TIME,EVENT_OWNER FROM SYSTEM_EVENT WHERE NAME=?");
   } // constructor
 
   protected String buildSelectFirstSql(String coreSql) {
@@ -199,6 +230,47 @@ class QueryExecutor {
     return new SqlColumn2(ColumnType.TIMESTAMP, value);
   }
 
+  /**
+   * Retrieves the system event.
+   * @param eventName
+   *          Event name.
+   * @return the system event, may be {@code null}.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  protected SystemEvent execSelectSystemEvent(String eventName)
+      throws DataAccessException {
+    ResultRow rs = execQuery1PrepStmt(sqlSelectSystemEvent, col2Str(eventName));
+    return (rs == null) ? null
+        : new SystemEvent(eventName, rs.getString("EVENT_OWNER"), rs.getLong("EVENT_TIME"));
+  } // method execSelectSystemEvent
+
+  protected void execDeleteSystemEvent(String eventName)
+      throws DataAccessException {
+    execUpdatePrepStmt("DELETE FROM SYSTEM_EVENT WHERE NAME=?", col2Str(eventName));
+  } // method execDeleteSystemEvent
+
+  /**
+   * Replaces the system event with the same name.
+   * @param systemEvent
+   *          The new system event.
+   * @return the number of the added rows.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  protected int execChangeSystemEvent(SystemEvent systemEvent)
+      throws DataAccessException {
+    notNull(systemEvent, "systemEvent");
+    execDeleteSystemEvent(systemEvent.getName());
+
+    final String sql =
+        "INSERT INTO SYSTEM_EVENT (NAME,EVENT_TIME,EVENT_TIME2,EVENT_OWNER) VALUES (?,?,?,?)";
+    return execUpdatePrepStmt(sql, col2Str(systemEvent.getName()),
+        col2Long(systemEvent.getEventTime()),
+        col2Timestamp(new Timestamp(systemEvent.getEventTime() * 1000L)),
+        col2Str(systemEvent.getOwner()));
+  } // method execChangeSystemEvent
+
   protected int execUpdateStmt(String sql)
       throws DataAccessException {
     Statement ps = datasource.createStatement();
@@ -224,23 +296,12 @@ class QueryExecutor {
   }
 
   protected List<ResultRow> execQueryStmt(String sql) throws DataAccessException {
-    return execQueryStmt(false, sql);
-  }
-
-  private List<ResultRow> execQueryStmt(boolean single, String sql) throws DataAccessException {
     Statement stmt = datasource.createStatement();
     ResultSet rs = null;
 
     try {
       rs = stmt.executeQuery(sql);
-      List<ResultRow> rows = new LinkedList<>();
-      while (rs.next()) {
-        rows.add(new ResultRow(rs));
-        if (single) {
-          break;
-        }
-      }
-      return rows;
+      return mapRows(false, resultRowMapper(sql), rs);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -250,29 +311,83 @@ class QueryExecutor {
 
   protected ResultRow execQuery1PrepStmt(String sql, SqlColumn2... params)
       throws DataAccessException {
-    List<ResultRow> rows = execQueryPrepStmt(true, sql, params);
-    return rows.isEmpty() ? null : rows.get(0);
+    return execQuery1PrepStmt(resultRowMapper(sql), sql, params);
   }
 
   protected List<ResultRow> execQueryPrepStmt(String sql, SqlColumn2... params)
       throws DataAccessException {
-    return execQueryPrepStmt(false, sql, params);
+    return execQueryPrepStmt(resultRowMapper(sql), sql, params);
+  }
+
+  /**
+   * Executes the query and maps the first row.
+   * @param mapper
+   *          Mapper to map the row.
+   * @param sql
+   *          SQL query.
+   * @param params
+   *          Parameters of the query.
+   * @return the mapped object of the first row, or {@code null} if no row is found.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  protected <T> T execQuery1PrepStmt(RowMapper<T> mapper, String sql, SqlColumn2... params)
+      throws DataAccessException {
+    List<T> rows = execQueryPrepStmt(true, mapper, sql, params);
+    return rows.isEmpty() ? null : rows.get(0);
   }
 
-  private List<ResultRow> execQueryPrepStmt(boolean single, String sql, SqlColumn2... params)
+  /**
+   * Executes the query and maps all rows.
+   * @param mapper
+   *          Mapper to map the rows.
+   * @param sql
+   *          SQL query.
+   * @param params
+   *          Parameters of the query.
+   * @return the mapped objects in the order of the rows.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  protected <T> List<T> execQueryPrepStmt(RowMapper<T> mapper, String sql, SqlColumn2... params)
+      throws DataAccessException {
+    return execQueryPrepStmt(false, mapper, sql, params);
+  }
+
+  /**
+   * Executes the query and passes each row to the callback, without collecting the rows.
+   * @param callback
+   *          Callback to process the rows.
+   * @param sql
+   *          SQL query.
+   * @param params
+   *          Parameters of the query.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  protected void forEachRow(RowCallback callback, String sql, SqlColumn2... params)
       throws DataAccessException {
     PreparedStatement ps = buildPrepStmt(sql, params);
     ResultSet rs = null;
     try {
       rs = ps.executeQuery();
-      List<ResultRow> rows = new LinkedList<>();
       while (rs.next()) {
-        rows.add(new ResultRow(rs));
-        if (single) {
-          break;
-        }
+        callback.processRow(rs);
       }
-      return rows;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method forEachRow
+
+  private <T> List<T> execQueryPrepStmt(boolean single, RowMapper<T> mapper, String sql,
+      SqlColumn2... params) throws DataAccessException {
+    PreparedStatement ps = buildPrepStmt(sql, params);
+    ResultSet rs = null;
+    try {
+      rs = ps.executeQuery();
+      return mapRows(single, mapper, rs);
     } catch (SQLException ex) {
       throw datasource.translate(sql, ex);
     } finally {
@@ -280,55 +395,46 @@ class QueryExecutor {
     }
   }
 
+  private static <T> List<T> mapRows(boolean single, RowMapper<T> mapper, ResultSet rs)
+      throws SQLException {
+    if (single) {
+      return rs.next() ? Collections.singletonList(mapper.mapRow(rs)) : Collections.emptyList();
+    }
+
+    List<T> rows = new ArrayList<>();
+    while (rs.next()) {
+      rows.add(mapper.mapRow(rs));
+    }
+    return rows;
+  } // method mapRows
+
+  private RowMapper<ResultRow> resultRowMapper(String sql) {
+    return new RowMapper<ResultRow>() {
+
+      private ResultRow.Columns columns;
+
+      @Override
+      public ResultRow mapRow(ResultSet rs) throws SQLException {
+        if (columns == null) {
+          columns = columnsCache.get(sql);
+          if (columns == null) {
+            columns = new ResultRow.Columns(rs.getMetaData());
+            columnsCache.put(sql, columns);
+          }
+        }
+        return new ResultRow(rs, columns);
+      }
+
+    };
+  } // method resultRowMapper
+
   protected PreparedStatement buildPrepStmt(String sql,  SqlColumn2... columns)
       throws DataAccessException {
     PreparedStatement ps = null;
     boolean succ = false;
     try {
       ps = datasource.prepareStatement(sql);
-
-      int index = 0;
-      for (SqlColumn2 col : columns) {
-        index++;
-
-        ColumnType type = col.type();
-        Object value = col.value();
-
-        try {
-          if (type == ColumnType.STRING) {
-            ps.setString(index, (String) value);
-          } else if (type == ColumnType.INT) {
-            if (value == null) {
-              ps.setNull(index, Types.INTEGER);
-            } else {
-              ps.setInt(index, (Integer) value);
-            }
-          } else if (type == ColumnType.LONG) {
-            if (value == null) {
-              ps.setNull(index, Types.BIGINT);
-            } else {
-              ps.setLong(index, (Long) value);
-            }
-          } else if (type == ColumnType.BOOL) {
-            if (value == null) {
-              ps.setNull(index, Types.INTEGER);
-            } else {
-              ps.setInt(index, (Boolean) value ? 1 : 0);
-            }
-          } else if (type == ColumnType.TIMESTAMP) {
-            if (value == null) {
-              ps.setNull(index, Types.TIMESTAMP);
-            } else {
-              ps.setTimestamp(index, (Timestamp) value);
-            }
-          } else {
-            throw new IllegalStateException("should not reach here, unknown type " + type);
-          }
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
-      }
-
+      setParams(sql, ps, columns);
       succ = true;
       return ps;
     } finally {
@@ -338,6 +444,51 @@ class QueryExecutor {
     }
   }
 
+  protected void setParams(String sql, PreparedStatement ps, SqlColumn2... columns)
+      throws DataAccessException {
+    int index = 0;
+    for (SqlColumn2 col : columns) {
+      index++;
+
+      ColumnType type = col.type();
+      Object value = col.value();
+
+      try {
+        if (type == ColumnType.STRING) {
+          ps.setString(index, (String) value);
+        } else if (type == ColumnType.INT) {
+          if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+          } else {
+            ps.setInt(index, (Integer) value);
+          }
+        } else if (type == ColumnType.LONG) {
+          if (value == null) {
+            ps.setNull(index, Types.BIGINT);
+          } else {
+            ps.setLong(index, (Long) value);
+          }
+        } else if (type == ColumnType.BOOL) {
+          if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+          } else {
+            ps.setInt(index, (Boolean) value ? 1 : 0);
+          }
+        } else if (type == ColumnType.TIMESTAMP) {
+          if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+          } else {
+            ps.setTimestamp(index, (Timestamp) value);
+          }
+        } else {
+          throw new IllegalStateException("should not reach here, unknown type " + type);
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      }
+    }
+  } // method setParams
+
   protected void notNulls(Object param1, String name1, Object param2, String name2) {
     notNull(param1, name1);
     notNull(param2, name2);
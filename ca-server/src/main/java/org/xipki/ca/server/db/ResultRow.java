@@ -29,15 +29,40 @@ import java.util.Map;
  */
 class ResultRow {
 
-  private final Map<String, Object> columns = new HashMap<>();
+  /**
+   * Labels and types of the columns of a query. It is shared by all rows of the same query.
+   */
+  static final class Columns {
 
-  ResultRow(ResultSet rs) throws SQLException {
-    ResultSetMetaData metaData = rs.getMetaData();
-    int count = metaData.getColumnCount();
+    // upper-cased label to the index in the row (starting with 0).
+    private final Map<String, Integer> indexes;
 
-    for (int index = 1; index <= count; index++) {
-      String label = metaData.getColumnLabel(index);
-      int itype = metaData.getColumnType(index);
+    private final int[] types;
+
+    Columns(ResultSetMetaData metaData) throws SQLException {
+      int count = metaData.getColumnCount();
+      this.indexes = new HashMap<>(count * 2);
+      this.types = new int[count];
+      for (int i = 0; i < count; i++) {
+        indexes.put(metaData.getColumnLabel(i + 1).toUpperCase(), i);
+        types[i] = metaData.getColumnType(i + 1);
+      }
+    }
+
+  } // class Columns
+
+  private final Columns columns;
+
+  private final Object[] values;
+
+  ResultRow(ResultSet rs, Columns columns) throws SQLException {
+    this.columns = columns;
+    int count = columns.types.length;
+    this.values = new Object[count];
+
+    for (int i = 0; i < count; i++) {
+      int index = i + 1;
+      int itype = columns.types[i];
 
       Object value;
       switch (itype) {
@@ -100,12 +125,20 @@ class ResultRow {
           throw new SQLException("unknown data type " + itype);
       }
 
-      columns.put(label.toUpperCase(), value);
+      values[i] = value;
+    }
+  }
+
+  private Object value(String label) {
+    Integer index = columns.indexes.get(label);
+    if (index == null) {
+      index = columns.indexes.get(label.toUpperCase());
     }
+    return index == null ? null : values[index];
   }
 
   int getInt(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return 0;
     }
@@ -123,7 +156,7 @@ class ResultRow {
   }
 
   boolean getBoolean(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return false;
     }
@@ -141,7 +174,7 @@ class ResultRow {
   }
 
   long getLong(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return 0;
     }
@@ -159,7 +192,7 @@ class ResultRow {
   }
 
   String getString(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -174,7 +207,7 @@ class ResultRow {
   }
 
   Timestamp getTimestamp(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -188,7 +221,7 @@ class ResultRow {
   }
 
   byte[] getBytes(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -202,7 +235,7 @@ class ResultRow {
   }
 
   Time getTime(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -216,7 +249,7 @@ class ResultRow {
   }
 
   Date getDate(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -230,7 +263,7 @@ class ResultRow {
   }
 
   float getFloat(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return 0;
     }
@@ -246,7 +279,7 @@ class ResultRow {
   }
 
   double getDouble(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return 0;
     }
@@ -262,7 +295,7 @@ class ResultRow {
   }
 
   BigDecimal getBigDecimal(String label) {
-    Object obj = columns.get(label.toUpperCase());
+    Object obj = value(label);
     if (obj == null) {
       return null;
     }
@@ -13,6 +13,7 @@ import org.xipki.security.XiSecurityException;
 import org.xipki.util.Args;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.FileOrValue;
+import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
 import javax.crypto.*;
@@ -23,16 +24,30 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 import java.security.spec.KeySpec;
 import java.sql.Connection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Keypool based keypair generator.
  *
+ * <p>If the property prefetch-size is positive, the keypairs of each requested keyspec are
+ * claimed from the keypool in batches by a background thread, and buffered in decrypted form.
+ * The buffer of a keyspec is refilled once the number of buffered keypairs is not greater than
+ * the property low-watermark. If the buffer is empty, the keypair is claimed directly from the
+ * keypool. If a fetch finds no keypair, the buffer is not refilled in the next 10 seconds.
+ * Note that the buffered keypairs have already been deleted from the keypool and are
+ * discarded while closing.
+ *
  * @since 5.4.0
  * @author Lijun Liao
  */
@@ -45,8 +60,90 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
     byte[] cipherText;
   }
 
+  private static class KeyBuffer {
+
+    private final String keyspec;
+
+    private final int keyspecId;
+
+    private final BlockingQueue<PrivateKeyInfo> keys;
+
+    // whether the keypool has been detected to run dry.
+    private volatile boolean dry;
+
+    // no refill before this time (in ms) after a fetch has found no keypair.
+    private volatile long retryAfter;
+
+    KeyBuffer(String keyspec, int keyspecId, int capacity) {
+      this.keyspec = keyspec;
+      this.keyspecId = keyspecId;
+      this.keys = new LinkedBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    private boolean canRefill() {
+      return retryAfter == 0 || System.currentTimeMillis() >= retryAfter;
+    }
+
+    private void fetched(boolean empty) {
+      if (empty) {
+        retryAfter = System.currentTimeMillis() + MS_DRY_RETRY_INTERVAL;
+      } else if (retryAfter != 0) {
+        retryAfter = 0;
+      }
+    }
+
+  } // class KeyBuffer
+
+  private class Prefetcher implements Runnable {
+
+    @Override
+    public void run() {
+      while (!closed) {
+        for (KeyBuffer buffer : buffers.values()) {
+          if (closed) {
+            return;
+          }
+
+          int num = prefetchSize - buffer.keys.size();
+          if (buffer.keys.size() > lowWatermark || num < 1 || !buffer.canRefill()) {
+            continue;
+          }
+
+          try {
+            refill(buffer, num);
+          } catch (Throwable th) {
+            LogUtil.error(LOG, th, "could not prefetch keypairs of keyspec " + buffer.keyspec);
+          }
+        }
+
+        synchronized (prefetchLock) {
+          if (!closed && !refillRequested) {
+            try {
+              prefetchLock.wait(MS_PREFETCH_INTERVAL);
+            } catch (InterruptedException ex) {
+              return;
+            }
+          }
+          refillRequested = false;
+        }
+      }
+    } // method run
+
+  } // class Prefetcher
+
   private static final Logger LOG = LoggerFactory.getLogger(KeypoolKeypairGenerator.class);
 
+  private static final String CIPHER_ALGO = "AES/GCM/NoPadding";
+
+  // maximal time to wait before checking the buffers again.
+  private static final long MS_PREFETCH_INTERVAL = 1000;
+
+  // maximal time to wait for the prefetch thread to terminate while closing.
+  private static final long MS_CLOSE_TIMEOUT = 10000;
+
+  // time to wait before the next refill after a fetch has found no keypair.
+  private static final long MS_DRY_RETRY_INTERVAL = 10000;
+
   private int shardId;
 
   private KeypoolQueryExecutor queryExecutor;
@@ -57,12 +154,28 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
   private SecretKey aes256key;
 
-  private Cipher cipher;
-
   private Map<String, FileOrValue> datasourceConfs;
 
   private Map<String, Integer> keyspecToId = new HashMap<>();
 
+  private final ConcurrentHashMap<String, KeyBuffer> buffers = new ConcurrentHashMap<>();
+
+  private int prefetchSize;
+
+  private int lowWatermark;
+
+  private final Object prefetchLock = new Object();
+
+  private boolean refillRequested;
+
+  private volatile boolean closed;
+
+  private Thread prefetchThread;
+
+  private final AtomicLong bufferHits = new AtomicLong(0);
+
+  private final AtomicLong bufferMisses = new AtomicLong(0);
+
   public void setShardId(int shardId) {
     this.shardId = shardId;
   }
@@ -145,35 +258,119 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
         }
       }
 
-      cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      // check whether the cipher is supported
+      Cipher.getInstance(CIPHER_ALGO);
     } catch (Exception ex) {
       throw new IllegalStateException("could not initialize Cipher", ex);
     }
 
-  }
+    String str = conf.value("prefetch-size");
+    prefetchSize = StringUtil.isBlank(str) ? 0 : Integer.parseInt(str);
+    if (prefetchSize > 0) {
+      str = conf.value("low-watermark");
+      lowWatermark = StringUtil.isBlank(str) ? prefetchSize / 2 : Integer.parseInt(str);
+      if (lowWatermark < 0 || lowWatermark >= prefetchSize) {
+        throw new XiSecurityException(
+            "low-watermark must be in the range [0, prefetch-size): " + lowWatermark);
+      }
+
+      closed = false;
+      prefetchThread = new Thread(new Prefetcher(), "keypool-prefetch-" + shardId);
+      prefetchThread.setDaemon(true);
+      prefetchThread.start();
+      LOG.info("prefetch keypairs from the keypool: prefetch-size={}, low-watermark={}",
+          prefetchSize, lowWatermark);
+    }
+  } // method initialize0
 
   @Override
-  public synchronized PrivateKeyInfo generateKeypair(String keyspec)
+  public PrivateKeyInfo generateKeypair(String keyspec)
       throws XiSecurityException {
     Integer keyspecId = keyspecToId.get(keyspec);
     if (keyspecId == null) {
       return null;
     }
 
-    CipherData cd ;
-    synchronized (keyspecId) {
+    KeyBuffer buffer = buffers.computeIfAbsent(keyspec,
+        k -> new KeyBuffer(keyspec, keyspecId, prefetchSize));
+
+    if (prefetchSize > 0) {
+      PrivateKeyInfo key = buffer.keys.poll();
+      // do not request the refill of an empty keypool for each keypair
+      if (buffer.keys.size() <= lowWatermark && buffer.canRefill()) {
+        requestRefill();
+      }
+
+      if (key != null) {
+        bufferHits.incrementAndGet();
+        return key;
+      }
+      bufferMisses.incrementAndGet();
+    }
+
+    CipherData cd;
+    synchronized (buffer) {
       // need to synchronize to prevent from the reuse of the same keypair.
+      List<CipherData> cds;
       try {
-        cd = queryExecutor.nextKeyData(keyspecId);
+        cds = queryExecutor.nextKeyData(keyspecId, 1);
       } catch (DataAccessException ex) {
         throw new XiSecurityException(ex);
       }
+      cd = cds.isEmpty() ? null : cds.get(0);
     }
+    buffer.fetched(cd == null);
 
     if (cd == null) {
-      throw new XiSecurityException("found no keypair of spec " + keyspec + "in the keypool");
+      if (!buffer.dry) {
+        buffer.dry = true;
+        LOG.warn("keypool has run dry for the keyspec {}", keyspec);
+      }
+      throw new XiSecurityException("found no keypair of spec " + keyspec + " in the keypool");
     }
 
+    return decrypt(cd);
+  } // method generateKeypair
+
+  private void requestRefill() {
+    synchronized (prefetchLock) {
+      refillRequested = true;
+      prefetchLock.notifyAll();
+    }
+  }
+
+  private void refill(KeyBuffer buffer, int num)
+      throws DataAccessException {
+    List<CipherData> cds;
+    synchronized (buffer) {
+      cds = queryExecutor.nextKeyData(buffer.keyspecId, num);
+    }
+    buffer.fetched(cds.isEmpty());
+
+    for (CipherData cd : cds) {
+      try {
+        if (!buffer.keys.offer(decrypt(cd))) {
+          LOG.warn("buffer of keyspec {} is full, discard the keypair", buffer.keyspec);
+        }
+      } catch (XiSecurityException ex) {
+        LogUtil.error(LOG, ex, "could not decrypt keypair of keyspec " + buffer.keyspec);
+      }
+    }
+
+    if (cds.size() < num) {
+      if (!buffer.dry) {
+        buffer.dry = true;
+        LOG.warn("keypool is running dry for the keyspec {}: requested {} keypairs, got {}",
+            buffer.keyspec, num, cds.size());
+      }
+    } else if (buffer.dry) {
+      buffer.dry = false;
+      LOG.info("keypool has been refilled for the keyspec {}", buffer.keyspec);
+    }
+  } // method refill
+
+  private PrivateKeyInfo decrypt(CipherData cd)
+      throws XiSecurityException {
     GCMParameterSpec spec = new GCMParameterSpec(128, cd.encMeta);
     SecretKey key;
     if (cd.encAlg == 1) {
@@ -188,14 +385,15 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
     byte[] plain;
     try {
+      Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
       cipher.init(Cipher.DECRYPT_MODE, key, spec);
       plain = cipher.doFinal(cd.cipherText);
-    } catch (IllegalBlockSizeException | BadPaddingException | InvalidKeyException
-        | InvalidAlgorithmParameterException ex) {
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException
+        | BadPaddingException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
       throw new XiSecurityException("error decrypting ciphertext", ex);
     }
     return PrivateKeyInfo.getInstance(plain);
-  }
+  } // method decrypt
 
   @Override
   public boolean isHealthy() {
@@ -204,8 +402,37 @@ public class KeypoolKeypairGenerator extends KeypairGenerator {
 
   @Override
   public void close() throws IOException {
+    synchronized (prefetchLock) {
+      closed = true;
+      prefetchLock.notifyAll();
+    }
+
+    if (prefetchThread != null) {
+      try {
+        prefetchThread.join(MS_CLOSE_TIMEOUT);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (prefetchThread.isAlive()) {
+        prefetchThread.interrupt();
+      }
+      prefetchThread = null;
+    }
+
+    int numBuffered = 0;
+    for (KeyBuffer buffer : buffers.values()) {
+      numBuffered += buffer.keys.size();
+      buffer.keys.clear();
+    }
+
+    if (prefetchSize > 0) {
+      LOG.info("keypool prefetch: {} hits, {} misses, {} unused keypairs discarded",
+          bufferHits.get(), bufferMisses.get(), numBuffered);
+    }
+
     queryExecutor.close();
-  }
+  } // method close
 
   private static DataSourceWrapper loadDatasource(
       String datasourceName, FileOrValue datasourceConf, PasswordResolver passwordResolver)
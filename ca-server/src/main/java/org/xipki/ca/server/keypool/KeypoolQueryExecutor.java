@@ -24,11 +24,14 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.util.Base64;
 import org.xipki.util.LogUtil;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -47,6 +50,8 @@ class KeypoolQueryExecutor {
 
   private final DataSourceWrapper datasource;
 
+  private final int shardId;
+
   private final String sqlGetKeyData;
 
   private final String sqlDeleteKeyData = "DELETE FROM KEYPOOL WHERE ID=?";
@@ -54,6 +59,7 @@ class KeypoolQueryExecutor {
   KeypoolQueryExecutor(DataSourceWrapper datasource, int shardId)
       throws DataAccessException {
     this.datasource = notNull(datasource, "datasource");
+    this.shardId = shardId;
     this.sqlGetKeyData = datasource.buildSelectFirstSql(1,
         "ID,ENC_ALG,ENC_META,DATA FROM KEYPOOL WHERE SHARD_ID=" + shardId + " AND KID=?");
   } // constructor
@@ -86,36 +92,93 @@ class KeypoolQueryExecutor {
     }
   } // method initIssuerStore
 
-  KeypoolKeypairGenerator.CipherData nextKeyData(int keyspecId)
+  /**
+   * Claims up to {@code num} keypairs of the given keyspec. The keypairs are selected and
+   * deleted in one transaction, keypairs deleted concurrently by others are skipped.
+   * @param keyspecId
+   *          ID of the keyspec.
+   * @param num
+   *          Maximal number of keypairs to be claimed.
+   * @return the claimed keypairs, may be empty but never {@code null}.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  List<KeypoolKeypairGenerator.CipherData> nextKeyData(int keyspecId, int num)
       throws DataAccessException {
-    final String sql = sqlGetKeyData;
-    PreparedStatement ps = datasource.prepareStatement(sql);
+    final String sql = (num == 1) ? sqlGetKeyData : datasource.buildSelectFirstSql(num,
+        "ID,ENC_ALG,ENC_META,DATA FROM KEYPOOL WHERE SHARD_ID=" + shardId + " AND KID=?");
+
+    List<Integer> ids = new ArrayList<>(num);
+    List<KeypoolKeypairGenerator.CipherData> cds = new ArrayList<>(num);
 
+    Connection conn = datasource.getConnection();
+    PreparedStatement ps = null;
     ResultSet rs = null;
+    boolean origAutoCommit = true;
+    String currentSql = sql;
     try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      ps = datasource.prepareStatement(conn, sql);
       ps.setInt(1, keyspecId);
       rs = ps.executeQuery();
-      if (!rs.next()) {
-        return null;
+      while (rs.next()) {
+        ids.add(rs.getInt("ID"));
+        KeypoolKeypairGenerator.CipherData cd = new KeypoolKeypairGenerator.CipherData();
+        cd.encAlg = rs.getInt("ENC_ALG");
+        cd.encMeta = Base64.decodeFast(rs.getString("ENC_META"));
+        cd.cipherText = Base64.decodeFast(rs.getString("DATA"));
+        cds.add(cd);
       }
-
-      int id = rs.getInt("ID");
-      KeypoolKeypairGenerator.CipherData cd = new KeypoolKeypairGenerator.CipherData();
-      cd.encAlg = rs.getInt("ENC_ALG");
-      cd.encMeta = Base64.decodeFast(rs.getString("ENC_META"));
-      cd.cipherText = Base64.decodeFast(rs.getString("DATA"));
-      datasource.releaseResources(ps, rs);
+      datasource.releaseResources(ps, rs, false);
       ps = null;
       rs = null;
 
-      ps = datasource.prepareStatement(sqlDeleteKeyData);
-      ps.setInt(1, id);
-      ps.executeUpdate();
-      return cd;
+      if (ids.isEmpty()) {
+        conn.commit();
+        return cds;
+      }
+
+      currentSql = sqlDeleteKeyData;
+      ps = datasource.prepareStatement(conn, sqlDeleteKeyData);
+      for (Integer id : ids) {
+        ps.setInt(1, id);
+        ps.addBatch();
+      }
+
+      int[] counts = ps.executeBatch();
+      conn.commit();
+
+      if (counts.length == cds.size()) {
+        List<KeypoolKeypairGenerator.CipherData> claimed = new ArrayList<>(cds.size());
+        for (int i = 0; i < counts.length; i++) {
+          // the keypair has been deleted (claimed) by others if 0 rows are deleted.
+          // If the driver does not report the count (SUCCESS_NO_INFO), the keypair is
+          // assumed to be claimed. This holds since the claims of a keyspec are serialized
+          // within an instance, and the instances sharing a keypool use distinct shard IDs.
+          if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+            claimed.add(cds.get(i));
+          }
+        }
+        cds = claimed;
+      }
+      return cds;
     } catch (SQLException ex) {
-      throw datasource.translate(sql, ex);
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LogUtil.warn(LOG, ex2, "could not rollback the transaction");
+      }
+      throw datasource.translate(currentSql, ex);
     } finally {
-      datasource.releaseResources(ps, rs);
+      try {
+        conn.setAutoCommit(origAutoCommit);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not reset the auto-commit mode");
+      }
+      datasource.releaseResources(ps, rs, false);
+      datasource.returnConnection(conn);
     }
   } // method nextKeyData
 
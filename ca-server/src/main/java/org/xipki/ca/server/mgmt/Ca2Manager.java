@@ -278,24 +278,156 @@ class Ca2Manager {
       LOG.info("CA {} is associated requestors:{}", name, sb);
     }
 
-    Set<Integer> profileIds = queryExecutor.createCaHasProfiles(ca.getIdent());
+    Set<String> profileNames = createCaHasProfiles(ca.getIdent());
+    manager.caHasProfiles.put(name, profileNames);
+    LOG.info("CA {} is associated with profiles: {}", name, profileNames);
+
+    Set<String> publisherNames = createCaHasPublishers(ca.getIdent());
+    manager.caHasPublishers.put(name, publisherNames);
+    LOG.info("CA {} is associated with publishers: {}", name, publisherNames);
+
+    return true;
+  } // method createCa
+
+  private Set<String> createCaHasProfiles(NameId caIdent) throws CaMgmtException {
+    Set<Integer> profileIds = manager.queryExecutor.createCaHasProfiles(caIdent);
     Set<String> profileNames = new HashSet<>();
     for (Integer id : profileIds) {
       profileNames.add(manager.idNameMap.getCertprofileName(id));
     }
-    manager.caHasProfiles.put(name, profileNames);
-    LOG.info("CA {} is associated with profiles: {}", name, profileNames);
+    return profileNames;
+  } // method createCaHasProfiles
 
-    Set<Integer> publisherIds = queryExecutor.createCaHasPublishers(ca.getIdent());
+  private Set<String> createCaHasPublishers(NameId caIdent) throws CaMgmtException {
+    Set<Integer> publisherIds = manager.queryExecutor.createCaHasPublishers(caIdent);
     Set<String> publisherNames = new HashSet<>();
     for (Integer id : publisherIds) {
       publisherNames.add(manager.idNameMap.getPublisherName(id));
     }
-    manager.caHasPublishers.put(name, publisherNames);
-    LOG.info("CA {} is associated with publishers: {}", name, publisherNames);
+    return publisherNames;
+  } // method createCaHasPublishers
 
-    return true;
-  } // method createCa
+  void reloadCaAliases() throws CaMgmtException {
+    Map<String, Integer> map = manager.queryExecutor.createCaAliases();
+    if (map.equals(manager.caAliases)) {
+      return;
+    }
+
+    manager.caAliases.putAll(map);
+    manager.caAliases.keySet().retainAll(map.keySet());
+    LOG.info("caAliases: {}", manager.caAliases);
+  } // method reloadCaAliases
+
+  /**
+   * Reloads the CAs from the database. Only the CAs whose entry has been changed are
+   * restarted, the new CA replaces the old one after it has been started. The associations
+   * of the CAs with profiles, publishers and requestors are looked up by the CAs for each
+   * request, and are replaced without restarting the CAs.
+   * @return names of the added, restarted and removed CAs.
+   * @throws CaMgmtException
+   *           if error occurs while reading the CAs.
+   */
+  Set<String> reloadCas() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+    CaManagerQueryExecutor queryExecutor = manager.queryExecutor;
+
+    List<String> names = queryExecutor.namesFromTable("CA");
+    for (String name : names) {
+      CaInfo ca = queryExecutor.createCaInfo(name, manager.certstore);
+      CaInfo oldCa = manager.caInfos.get(name);
+      // the CRL number is changed by the master while generating CRLs
+      boolean caChanged = oldCa == null
+          || !ca.getCaEntry().equals(oldCa.getCaEntry(), true, false);
+      if (caChanged) {
+        if (oldCa != null && !oldCa.getIdent().getId().equals(ca.getIdent().getId())) {
+          manager.idNameMap.removeCa(name);
+        }
+        manager.caInfos.put(name, ca);
+        manager.idNameMap.addCa(ca.getIdent());
+        LOG.info("reloaded CA {}: {}", name, ca.toString(false));
+      } else {
+        ca = oldCa;
+      }
+
+      Set<CaHasRequestorEntry> requestorEntries =
+          queryExecutor.createCaHasRequestors(ca.getIdent());
+      Set<String> profileNames = createCaHasProfiles(ca.getIdent());
+      Set<String> publisherNames = createCaHasPublishers(ca.getIdent());
+      if (!requestorEntries.equals(manager.caHasRequestors.put(name, requestorEntries))) {
+        LOG.info("CA {} is associated requestors: {}", name, requestorEntries);
+      }
+
+      if (!profileNames.equals(manager.caHasProfiles.put(name, profileNames))) {
+        LOG.info("CA {} is associated with profiles: {}", name, profileNames);
+      }
+
+      if (!publisherNames.equals(manager.caHasPublishers.put(name, publisherNames))) {
+        LOG.info("CA {} is associated with publishers: {}", name, publisherNames);
+      }
+
+      if (caChanged) {
+        replaceCa(name, ca);
+        changed.add(name);
+      }
+    }
+
+    for (String name : manager.caInfos.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.idNameMap.removeCa(name);
+      manager.caHasProfiles.remove(name);
+      manager.caHasPublishers.remove(name);
+      manager.caHasRequestors.remove(name);
+      replaceCa(name, null);
+      manager.caInfos.remove(name);
+      changed.add(name);
+      LOG.info("removed CA {}", name);
+    }
+
+    return changed;
+  } // method reloadCas
+
+  /**
+   * Replaces the running CA with a new one started with the given {@code caInfo}. The old
+   * CA is closed after it has been replaced.
+   * @param name
+   *          CA name.
+   * @param caInfo
+   *          the new CA information. {@code null} to stop the CA without replacement.
+   */
+  private void replaceCa(String name, CaInfo caInfo) {
+    X509Ca oldCa = manager.x509cas.get(name);
+
+    if (caInfo != null && CaStatus.ACTIVE == caInfo.getStatus()) {
+      if (startCa(name)) {
+        if (caInfo.getScepResponderName() == null) {
+          manager.scepResponders.remove(name);
+        }
+        LOG.info("started CA {}", name);
+      } else {
+        LOG.error("could not start CA {}", name);
+        caInfo = null;
+      }
+    } else {
+      caInfo = null;
+    }
+
+    if (caInfo == null) {
+      X509Ca ca = manager.x509cas.remove(name);
+      manager.cmpResponders.remove(name);
+      manager.scepResponders.remove(name);
+      if (ca != null && ca != oldCa) {
+        // started partially
+        ca.close();
+      }
+    }
+
+    if (oldCa != null && oldCa != manager.x509cas.get(name)) {
+      oldCa.close();
+    }
+  } // method replaceCa
 
   void addCa(CaEntry caEntry) throws CaMgmtException {
     assertMasterMode();
@@ -57,6 +57,8 @@ import java.sql.Connection;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -117,6 +119,30 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   } // class UnreferencedRequestCleaner
 
+  private class CertsCountReconciler implements Runnable {
+
+    private boolean inProcess;
+
+    @Override
+    public void run() {
+      if (inProcess) {
+        return;
+      }
+
+      inProcess = true;
+      try {
+        try {
+          certstore.reconcileCountOfCerts();
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not reconcile the number of certificates");
+        }
+      } finally {
+        inProcess = false;
+      }
+    } // method run
+
+  } // class CertsCountReconciler
+
   private class CaRestarter implements Runnable {
 
     private boolean inProcess;
@@ -136,8 +162,18 @@ public class CaManagerImpl implements CaManager, Closeable {
             new Date(caChangedTime * 1000L), lastStartTime);
 
         if (caChangedTime > lastStartTime.getTime() / 1000L) {
-          LOG.info("received event to restart CA");
-          restartCaSystem();
+          if (caSystemSetuped) {
+            LOG.info("received event to reload CA");
+            try {
+              reloadCaSystem();
+            } catch (Throwable th) {
+              LogUtil.error(LOG, th, "could not reload CA system, restart it");
+              restartCaSystem();
+            }
+          } else {
+            LOG.info("received event to restart CA");
+            restartCaSystem();
+          }
         } else {
           LOG.debug("received no event to restart CA");
         }
@@ -235,6 +271,14 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  // executor to sign the certificates of one request in parallel, null if not enabled.
+  private ExecutorService enrollmentExecutor;
+
+  // queue size of the asynchronous publishing, 0 if not enabled.
+  private int asyncPublishingQueueSize;
+
+  private int asyncPublishingBatchSize;
+
   private final DataSourceFactory datasourceFactory;
 
   private CtLogPublicKeyFinder ctLogPublicKeyFinder;
@@ -378,6 +422,17 @@ public class CaManagerImpl implements CaManager, Closeable {
     shardId = caServerConf.getShardId();
     LOG.info("ca.shardId: {}", shardId);
 
+    int enrollmentParallelism = caServerConf.getEnrollmentParallelism();
+    LOG.info("ca.enrollmentParallelism: {}", enrollmentParallelism);
+    if (enrollmentParallelism > 1 && enrollmentExecutor == null) {
+      enrollmentExecutor = Executors.newFixedThreadPool(enrollmentParallelism);
+    }
+
+    asyncPublishingQueueSize = caServerConf.getAsyncPublishingQueueSize();
+    asyncPublishingBatchSize = caServerConf.getAsyncPublishingBatchSize();
+    LOG.info("ca.asyncPublishingQueueSize: {}, ca.asyncPublishingBatchSize: {}",
+        asyncPublishingQueueSize, asyncPublishingBatchSize);
+
     if (caServerConf.getCtLog() != null) {
       try {
         ctLogPublicKeyFinder = new CtLogPublicKeyFinder(caServerConf.getCtLog());
@@ -599,6 +654,37 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
   } // method restartCaSystem
 
+  /**
+   * Reloads the changed configuration of the CA system. In contrast to
+   * {@link #restartCaSystem()}, only the changed signers, requestors, profiles, publishers,
+   * keypair generations and CAs are recreated. The changes are detected by comparing the
+   * configuration in the database with the loaded one.
+   * @throws CaMgmtException
+   *           if error occurs while reloading the configuration.
+   */
+  private void reloadCaSystem() throws CaMgmtException {
+    // changes after this time will be detected by the next check.
+    Date reloadTime = new Date();
+    boolean succ = false;
+    try {
+      ca2Manager.reloadCaAliases();
+      Set<String> changedProfiles = certprofileManager.reloadCertprofiles();
+      Set<String> changedPublishers = publisherManager.reloadPublishers();
+      Set<String> changedRequestors = requestorManager.reloadRequestors();
+      Set<String> changedSigners = signerManager.reloadSigners();
+      Set<String> changedKeypairGens = keypairGenManager.reloadKeypairGens();
+      Set<String> changedCas = ca2Manager.reloadCas();
+
+      this.lastStartTime = reloadTime;
+      LOG.info("reloaded CA system, changed profiles: {}, publishers: {}, requestors: {}, "
+          + "signers: {}, keypair generations: {}, CAs: {}", changedProfiles, changedPublishers,
+          changedRequestors, changedSigners, changedKeypairGens, changedCas);
+      succ = true;
+    } finally {
+      auditLogPciEvent(succ, "CA_CHANGE");
+    }
+  } // method reloadCaSystem
+
   @Override
   public void notifyCaChange() throws CaMgmtException {
     try {
@@ -756,6 +842,8 @@ public class CaManagerImpl implements CaManager, Closeable {
             new CertsInQueuePublisher(), 120, 120, SECONDS);
         scheduledThreadPoolExecutor.scheduleAtFixedRate(
             new UnreferencedRequestCleaner(), 60, 24L * 60 * 60, SECONDS); // 1 DAY
+        scheduledThreadPoolExecutor.scheduleAtFixedRate(
+            new CertsCountReconciler(), 600, 600, SECONDS);
       } else {
         sb.append(": no CA is configured");
       }
@@ -808,6 +896,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       persistentScheduledThreadPoolExecutor = null;
     }
 
+    if (enrollmentExecutor != null) {
+      enrollmentExecutor.shutdownNow();
+      enrollmentExecutor = null;
+    }
+
     ca2Manager.close();
 
     if (caLockedByMe) {
@@ -830,6 +923,8 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     certprofileManager.close();
 
+    keypairGenManager.close();
+
     File caLockFile = new File("calock");
     if (caLockFile.exists()) {
       caLockFile.delete();
@@ -847,6 +942,26 @@ public class CaManagerImpl implements CaManager, Closeable {
     return scheduledThreadPoolExecutor;
   }
 
+  /**
+   * Gets the executor to sign the certificates of one request in parallel.
+   * @return the executor, or {@code null} if the parallel signing is not enabled.
+   */
+  public ExecutorService getEnrollmentExecutor() {
+    return enrollmentExecutor;
+  }
+
+  /**
+   * Gets the queue size of the asynchronous publishing of the certificates.
+   * @return the queue size, or 0 if the asynchronous publishing is not enabled.
+   */
+  public int getAsyncPublishingQueueSize() {
+    return asyncPublishingQueueSize;
+  }
+
+  public int getAsyncPublishingBatchSize() {
+    return asyncPublishingBatchSize;
+  }
+
   @Override
   public Set<String> getCertprofileNames() {
     return certprofileDbEntries.keySet();
@@ -1154,9 +1269,9 @@ public class CaManagerImpl implements CaManager, Closeable {
   }
 
   @Override
-  public void republishCertificates(String caName, List<String> publisherNames, int numThreads)
-      throws CaMgmtException {
-    publisherManager.republishCertificates(caName, publisherNames, numThreads);
+  public void republishCertificates(String caName, List<String> publisherNames, int numThreads,
+      boolean resume) throws CaMgmtException {
+    publisherManager.republishCertificates(caName, publisherNames, numThreads, resume);
   }
 
   @Override
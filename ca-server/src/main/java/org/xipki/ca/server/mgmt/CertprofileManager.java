@@ -94,6 +94,50 @@ class CertprofileManager {
     certprofilesInitialized = true;
   } // method initCertprofiles
 
+  /**
+   * Reloads the certificate profiles from the database. Only the added and changed profiles
+   * are created, each new profile replaces the old one after it has been created.
+   * @return names of the added, changed and removed profiles.
+   * @throws CaMgmtException
+   *           if error occurs while reading or creating the profiles.
+   */
+  Set<String> reloadCertprofiles() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+
+    List<String> names = manager.queryExecutor.namesFromTable("PROFILE");
+    for (String name : names) {
+      CertprofileEntry dbEntry = manager.queryExecutor.createCertprofile(name);
+      CertprofileEntry oldEntry = manager.certprofileDbEntries.get(name);
+      if (dbEntry.equals(oldEntry)) {
+        continue;
+      }
+
+      IdentifiedCertprofile profile = createCertprofile(dbEntry);
+      if (oldEntry != null && !oldEntry.getIdent().getId().equals(dbEntry.getIdent().getId())) {
+        manager.idNameMap.removeCertprofile(oldEntry.getIdent().getId());
+      }
+      manager.idNameMap.addCertprofile(dbEntry.getIdent());
+      manager.certprofileDbEntries.put(name, dbEntry);
+      shutdownCertprofile(manager.certprofiles.put(name, profile));
+      changed.add(name);
+      LOG.info("reloaded certprofile {}", name);
+    }
+
+    for (String name : manager.certprofileDbEntries.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.idNameMap.removeCertprofile(
+          manager.certprofileDbEntries.remove(name).getIdent().getId());
+      shutdownCertprofile(manager.certprofiles.remove(name));
+      changed.add(name);
+      LOG.info("removed certprofile {}", name);
+    }
+
+    return changed;
+  } // method reloadCertprofiles
+
   void removeCertprofileFromCa(String profileName, String caName) throws CaMgmtException {
     manager.assertMasterMode();
 
@@ -27,7 +27,9 @@ import org.xipki.ca.server.KeypairGenEntryWrapper;
 import org.xipki.util.ObjectCreationException;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.xipki.util.Args.notNull;
 import static org.xipki.util.Args.toNonBlankLower;
@@ -56,12 +58,19 @@ class KeypairGenManager {
     keypairGenInitialized = false;
   }
 
+  void close() {
+    for (KeypairGenEntryWrapper gen : manager.keypairGens.values()) {
+      gen.close();
+    }
+  }
+
   void initKeypairGens() throws CaMgmtException {
     if (keypairGenInitialized) {
       return;
     }
 
     manager.keypairGenDbEntries.clear();
+    close();
     manager.keypairGens.clear();
 
     List<String> names = manager.queryExecutor.namesFromTable("KEYPAIR_GEN");
@@ -76,6 +85,50 @@ class KeypairGenManager {
     keypairGenInitialized = true;
   } // method initSigners
 
+  /**
+   * Reloads the keypair generations from the database. Only the added and changed keypair
+   * generations are created, each new one replaces the old one after it has been created.
+   * @return names of the added, changed and removed keypair generations.
+   * @throws CaMgmtException
+   *           if error occurs while reading or creating the keypair generations.
+   */
+  Set<String> reloadKeypairGens() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+
+    List<String> names = manager.queryExecutor.namesFromTable("KEYPAIR_GEN");
+    for (String name : names) {
+      KeypairGenEntry entry = manager.queryExecutor.createKeypairGen(name);
+      if (entry.equals(manager.keypairGenDbEntries.get(name))) {
+        continue;
+      }
+
+      KeypairGenEntryWrapper gen = createKeypairGen(entry);
+      manager.keypairGenDbEntries.put(name, entry);
+      KeypairGenEntryWrapper oldGen = manager.keypairGens.put(name, gen);
+      if (oldGen != null) {
+        oldGen.close();
+      }
+      changed.add(name);
+      LOG.info("reloaded keypair generation {}", name);
+    }
+
+    for (String name : manager.keypairGenDbEntries.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.keypairGenDbEntries.remove(name);
+      KeypairGenEntryWrapper oldGen = manager.keypairGens.remove(name);
+      if (oldGen != null) {
+        oldGen.close();
+      }
+      changed.add(name);
+      LOG.info("removed keypair generation {}", name);
+    }
+
+    return changed;
+  } // method reloadKeypairGens
+
   void addKeypairGen(KeypairGenEntry keypairGenEntry) throws CaMgmtException {
     notNull(keypairGenEntry, "keypairGenEntry");
     if ("software".equalsIgnoreCase(keypairGenEntry.getName())) {
@@ -120,7 +173,10 @@ class KeypairGenManager {
     }
 
     manager.keypairGenDbEntries.remove(name);
-    manager.keypairGens.remove(name);
+    KeypairGenEntryWrapper gen = manager.keypairGens.remove(name);
+    if (gen != null) {
+      gen.close();
+    }
     LOG.info("removed keypair generation '{}'", name);
   } // method removeKeypairGen
 
@@ -140,7 +196,10 @@ class KeypairGenManager {
     KeypairGenEntryWrapper newKeypairGen = manager.queryExecutor.changeKeypairGen(name, type, conf,
         manager, manager.securityFactory);
 
-    manager.keypairGens.remove(name);
+    KeypairGenEntryWrapper oldKeypairGen = manager.keypairGens.remove(name);
+    if (oldKeypairGen != null) {
+      oldKeypairGen.close();
+    }
     manager.keypairGenDbEntries.remove(name);
 
     manager.keypairGenDbEntries.put(name, newKeypairGen.getDbEntry());
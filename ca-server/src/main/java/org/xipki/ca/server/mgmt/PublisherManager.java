@@ -102,6 +102,50 @@ class PublisherManager {
     publishersInitialized = true;
   } // method initPublishers
 
+  /**
+   * Reloads the publishers from the database. Only the added and changed publishers are
+   * created, each new publisher replaces the old one after it has been created.
+   * @return names of the added, changed and removed publishers.
+   * @throws CaMgmtException
+   *           if error occurs while reading or creating the publishers.
+   */
+  Set<String> reloadPublishers() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+
+    List<String> names = manager.queryExecutor.namesFromTable("PUBLISHER");
+    for (String name : names) {
+      PublisherEntry dbEntry = manager.queryExecutor.createPublisher(name);
+      PublisherEntry oldEntry = manager.publisherDbEntries.get(name);
+      if (dbEntry.equals(oldEntry)) {
+        continue;
+      }
+
+      IdentifiedCertPublisher publisher = createPublisher(dbEntry);
+      if (oldEntry != null && !oldEntry.getIdent().getId().equals(dbEntry.getIdent().getId())) {
+        manager.idNameMap.removePublisher(oldEntry.getIdent().getId());
+      }
+      manager.idNameMap.addPublisher(dbEntry.getIdent());
+      manager.publisherDbEntries.put(name, dbEntry);
+      shutdownPublisher(manager.publishers.put(name, publisher));
+      changed.add(name);
+      LOG.info("reloaded publisher {}", name);
+    }
+
+    for (String name : manager.publisherDbEntries.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.idNameMap.removePublisher(
+          manager.publisherDbEntries.remove(name).getIdent().getId());
+      shutdownPublisher(manager.publishers.remove(name));
+      changed.add(name);
+      LOG.info("removed publisher {}", name);
+    }
+
+    return changed;
+  } // method reloadPublishers
+
   void removePublisherFromCa(String publisherName, String caName) throws CaMgmtException {
     manager.assertMasterMode();
 
@@ -242,8 +286,8 @@ class PublisherManager {
     manager.publishers.put(name, publisher);
   } // method changePublisher
 
-  void republishCertificates(String caName, List<String> publisherNames, int numThreads)
-      throws CaMgmtException {
+  void republishCertificates(String caName, List<String> publisherNames, int numThreads,
+      boolean resume) throws CaMgmtException {
     manager.assertMasterMode();
 
     caName = toNonBlankLower(caName, "caName");
@@ -255,7 +299,7 @@ class PublisherManager {
     }
 
     publisherNames = CollectionUtil.toLowerCaseList(publisherNames);
-    if (!ca.republishCerts(publisherNames, numThreads)) {
+    if (!ca.republishCerts(publisherNames, numThreads, resume)) {
       throw new CaMgmtException(concat("republishing certificates of CA ", caName, " failed"));
     }
   } // method republishCertificates
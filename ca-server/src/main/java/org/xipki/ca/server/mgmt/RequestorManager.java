@@ -92,6 +92,57 @@ class RequestorManager {
     requestorsInitialized = true;
   } // method initRequestors
 
+  /**
+   * Reloads the requestors from the database. Only the added and changed requestors are
+   * created, the reserved requestors {@link RequestorInfo#NAME_BY_CA} and
+   * {@link RequestorInfo#NAME_BY_USER} are kept.
+   * @return names of the added, changed and removed requestors.
+   * @throws CaMgmtException
+   *           if error occurs while reading the requestors.
+   */
+  Set<String> reloadRequestors() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+
+    List<String> names = manager.queryExecutor.namesFromTable("REQUESTOR");
+    for (String name : names) {
+      if (RequestorInfo.NAME_BY_CA.equalsIgnoreCase(name)
+          || RequestorInfo.NAME_BY_USER.equalsIgnoreCase(name)) {
+        continue;
+      }
+
+      RequestorEntry dbEntry = manager.queryExecutor.createRequestor(name);
+      RequestorEntry oldEntry = manager.requestorDbEntries.get(name);
+      if (dbEntry.equals(oldEntry)) {
+        continue;
+      }
+
+      RequestorEntryWrapper requestor = new RequestorEntryWrapper();
+      requestor.setDbEntry(dbEntry, manager.securityFactory.getPasswordResolver());
+      if (oldEntry != null && !oldEntry.getIdent().getId().equals(dbEntry.getIdent().getId())) {
+        manager.idNameMap.removeRequestor(oldEntry.getIdent().getId());
+      }
+      manager.idNameMap.addRequestor(dbEntry.getIdent());
+      manager.requestorDbEntries.put(name, dbEntry);
+      manager.requestors.put(name, requestor);
+      changed.add(name);
+      LOG.info("reloaded requestor {}", name);
+    }
+
+    for (String name : manager.requestorDbEntries.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.idNameMap.removeRequestor(
+          manager.requestorDbEntries.remove(name).getIdent().getId());
+      manager.requestors.remove(name);
+      changed.add(name);
+      LOG.info("removed requestor {}", name);
+    }
+
+    return changed;
+  } // method reloadRequestors
+
   void addRequestor(RequestorEntry requestorEntry) throws CaMgmtException {
     manager.assertMasterMode();
 
@@ -25,12 +25,15 @@ import org.xipki.ca.server.CaInfo;
 import org.xipki.ca.server.SignerEntryWrapper;
 import org.xipki.security.XiSecurityException;
 import org.xipki.security.pkcs11.*;
+import org.xipki.util.CompareUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.xipki.ca.server.CaUtil.canonicalizeSignerConf;
 import static org.xipki.util.Args.notNull;
@@ -81,6 +84,62 @@ class SignerManager {
     signerInitialized = true;
   } // method initSigners
 
+  /**
+   * Reloads the signers from the database. Only the added and changed signers are created,
+   * each new signer replaces the old one after it has been initialized. The SCEP responders
+   * using a changed signer are updated.
+   * @return names of the added, changed and removed signers.
+   * @throws CaMgmtException
+   *           if error occurs while reading or creating the signers.
+   */
+  Set<String> reloadSigners() throws CaMgmtException {
+    Set<String> changed = new HashSet<>();
+
+    List<String> names = manager.queryExecutor.namesFromTable("SIGNER");
+    for (String name : names) {
+      SignerEntry entry = manager.queryExecutor.createSigner(name);
+      SignerEntry oldEntry = manager.signerDbEntries.get(name);
+      boolean unchanged;
+      if (oldEntry != null && entry.getBase64Cert() == null) {
+        // the certificate of the loaded signer has been retrieved from the signer
+        unchanged = entry.getType().equals(oldEntry.getType())
+            && CompareUtil.equalsObject(entry.getConf(), oldEntry.getConf());
+      } else {
+        unchanged = entry.equals(oldEntry);
+      }
+
+      if (unchanged) {
+        continue;
+      }
+
+      SignerEntryWrapper signer = createSigner(entry);
+      manager.signerDbEntries.put(name, entry);
+      manager.signers.put(name, signer);
+
+      for (String caName : manager.scepResponders.keySet()) {
+        if (name.equals(manager.caInfos.get(caName).getScepResponderName())) {
+          manager.scepResponders.get(caName).setResponder(signer);
+        }
+      }
+
+      changed.add(name);
+      LOG.info("reloaded signer {}", name);
+    }
+
+    for (String name : manager.signerDbEntries.keySet()) {
+      if (names.contains(name)) {
+        continue;
+      }
+
+      manager.signerDbEntries.remove(name);
+      manager.signers.remove(name);
+      changed.add(name);
+      LOG.info("removed signer {}", name);
+    }
+
+    return changed;
+  } // method reloadSigners
+
   void addSigner(SignerEntry signerEntry) throws CaMgmtException {
     manager.assertMasterMode();
 
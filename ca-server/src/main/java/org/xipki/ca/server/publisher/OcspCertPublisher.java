@@ -42,7 +42,9 @@ import org.xipki.util.FileOrValue;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -146,6 +148,24 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateAdded
 
+  @Override
+  public List<CertificateInfo> certificatesAdded(List<CertificateInfo> certInfos) {
+    if (certInfos.size() < 2) {
+      return super.certificatesAdded(certInfos);
+    }
+
+    try {
+      queryExecutor.addCerts(certInfos);
+      return Collections.emptyList();
+    } catch (Exception ex) {
+      // e.g. some certificates are already registered
+      LOG.info("could not save {} certificates in batch, save them one by one: {}",
+          certInfos.size(), ex.getMessage());
+      LOG.debug("error", ex);
+      return super.certificatesAdded(certInfos);
+    }
+  } // method certificatesAdded
+
   @Override
   public boolean certificateRevoked(X509Cert caCert, CertWithDbId cert,
       String certprofile, CertRevocationInfo revInfo) {
@@ -160,6 +180,27 @@ public class OcspCertPublisher extends CertPublisher {
     }
   } // method certificateRevoked
 
+  @Override
+  public List<RevokedCert> certificatesRevoked(X509Cert caCert, List<RevokedCert> revokedCerts) {
+    if (revokedCerts.size() < 2) {
+      return super.certificatesRevoked(caCert, revokedCerts);
+    }
+
+    List<RevokedCert> notRegistered;
+    try {
+      notRegistered = queryExecutor.revokeCerts(caCert, revokedCerts);
+    } catch (Exception ex) {
+      LOG.info("could not publish {} revoked certificates in batch, publish them one by one: {}",
+          revokedCerts.size(), ex.getMessage());
+      LOG.debug("error", ex);
+      return super.certificatesRevoked(caCert, revokedCerts);
+    }
+
+    // certificates not registered yet are added one by one
+    return notRegistered.isEmpty() ? notRegistered
+        : super.certificatesRevoked(caCert, notRegistered);
+  } // method certificatesRevoked
+
   @Override
   public boolean certificateUnrevoked(X509Cert caCert, CertWithDbId cert) {
     try {
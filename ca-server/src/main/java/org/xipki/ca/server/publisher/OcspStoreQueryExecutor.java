@@ -20,8 +20,10 @@ package org.xipki.ca.server.publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
+import org.xipki.ca.api.publisher.CertPublisher.RevokedCert;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.CertRevocationInfo;
@@ -114,6 +116,9 @@ class OcspStoreQueryExecutor {
       "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
       + "VALUES (?,?,?,?,?,?,?,?,?)";
 
+  private static final String SQL_REVOKE_CERT =
+      "UPDATE CERT SET LUPDATE=?,REV=?,RT=?,RIT=?,RR=? WHERE IID=? AND SN=?";
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
@@ -222,41 +227,10 @@ class OcspStoreQueryExecutor {
     final String sql = revoked ? SQL_ADD_REVOKED_CERT : SQL_ADD_CERT;
 
     long certId = certificate.getCertId();
-    byte[] encodedCert = certificate.getCert().getEncoded();
-    String certHash = certhashAlgo.base64Hash(encodedCert);
-
-    X509Cert cert = certificate.getCert();
-    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
-    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
-    String cuttedSubject = X509Util.cutText(certificate.getCert().getSubjectRfc4519Text(),
-                            maxX500nameLen);
-
     PreparedStatement ps = datasource.prepareStatement(sql);
 
     try {
-      // CERT
-      int idx = 1;
-      ps.setLong(idx++, certId);
-      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      ps.setString(idx++, serialNumber.toString(16));
-      ps.setLong(idx++, notBeforeSeconds);
-      ps.setLong(idx++, notAfterSeconds);
-      setBoolean(ps, idx++, revoked);
-      ps.setInt(idx++, issuerId);
-      ps.setString(idx++, certHash);
-      ps.setString(idx++, cuttedSubject);
-
-      if (revoked) {
-        long revTime = revInfo.getRevocationTime().getTime() / 1000;
-        ps.setLong(idx++, revTime);
-        if (revInfo.getInvalidityTime() != null) {
-          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
-        } else {
-          ps.setNull(idx++, Types.BIGINT);
-        }
-        int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
-        ps.setInt(idx, reasonCode);
-      }
+      setAddCertParams(ps, issuerId, certificate, revInfo);
 
       try {
         ps.executeUpdate();
@@ -280,6 +254,111 @@ class OcspStoreQueryExecutor {
     }
   } // method addOrUpdateCert
 
+  /**
+   * Adds the certificates with JDBC batches in one transaction. Since the certificates
+   * must not be registered yet, the batch fails as a whole if any of them is already
+   * contained in the database.
+   */
+  void addCerts(List<CertificateInfo> certInfos)
+      throws DataAccessException {
+    notNull(certInfos, "certInfos");
+
+    Connection conn = datasource.getConnection();
+    PreparedStatement psGood = null;
+    PreparedStatement psRevoked = null;
+    boolean origAutoCommit = true;
+    String sql = null;
+
+    try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+
+      for (CertificateInfo certInfo : certInfos) {
+        CertRevocationInfo revInfo = certInfo.getRevocationInfo();
+        PreparedStatement ps;
+        if (revInfo == null) {
+          if (psGood == null) {
+            psGood = datasource.prepareStatement(conn, SQL_ADD_CERT);
+          }
+          ps = psGood;
+        } else {
+          if (psRevoked == null) {
+            psRevoked = datasource.prepareStatement(conn, SQL_ADD_REVOKED_CERT);
+          }
+          ps = psRevoked;
+        }
+
+        setAddCertParams(ps, getIssuerId(certInfo.getIssuerCert()), certInfo.getCert(),
+            revInfo);
+        ps.addBatch();
+      }
+
+      if (psGood != null) {
+        sql = SQL_ADD_CERT;
+        psGood.executeBatch();
+      }
+
+      if (psRevoked != null) {
+        sql = SQL_ADD_REVOKED_CERT;
+        psRevoked.executeBatch();
+      }
+
+      conn.commit();
+    } catch (SQLException ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LogUtil.warn(LOG, ex2, "could not rollback the transaction");
+      }
+      throw datasource.translate(sql, ex);
+    } finally {
+      try {
+        conn.setAutoCommit(origAutoCommit);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not reset the auto-commit mode");
+      }
+      datasource.releaseResources(psGood, null, false);
+      datasource.releaseResources(psRevoked, null, false);
+      datasource.returnConnection(conn);
+    }
+  } // method addCerts
+
+  private void setAddCertParams(PreparedStatement ps, int issuerId, CertWithDbId certificate,
+      CertRevocationInfo revInfo)
+          throws SQLException {
+    boolean revoked = (revInfo != null);
+    X509Cert cert = certificate.getCert();
+    String certHash = certhashAlgo.base64Hash(cert.getEncoded());
+
+    long notBeforeSeconds = cert.getNotBefore().getTime() / 1000;
+    long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
+    String cuttedSubject = X509Util.cutText(cert.getSubjectRfc4519Text(), maxX500nameLen);
+
+    // CERT
+    int idx = 1;
+    ps.setLong(idx++, certificate.getCertId());
+    ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    ps.setString(idx++, cert.getSerialNumber().toString(16));
+    ps.setLong(idx++, notBeforeSeconds);
+    ps.setLong(idx++, notAfterSeconds);
+    setBoolean(ps, idx++, revoked);
+    ps.setInt(idx++, issuerId);
+    ps.setString(idx++, certHash);
+    ps.setString(idx++, cuttedSubject);
+
+    if (revoked) {
+      long revTime = revInfo.getRevocationTime().getTime() / 1000;
+      ps.setLong(idx++, revTime);
+      if (revInfo.getInvalidityTime() != null) {
+        ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+      } else {
+        ps.setNull(idx++, Types.BIGINT);
+      }
+      int reasonCode = (revInfo.getReason() == null) ? 0 : revInfo.getReason().getCode();
+      ps.setInt(idx, reasonCode);
+    }
+  } // method setAddCertParams
+
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
       throws DataAccessException {
     boolean revoked = (revInfo != null);
@@ -320,6 +399,74 @@ class OcspStoreQueryExecutor {
     addOrUpdateCert(caCert, cert, revInfo);
   }
 
+  /**
+   * Marks the registered certificates as revoked with one JDBC batch.
+   *
+   * @return the certificates which are not registered yet.
+   */
+  List<RevokedCert> revokeCerts(X509Cert caCert, List<RevokedCert> revokedCerts)
+      throws DataAccessException {
+    notNull(revokedCerts, "revokedCerts");
+    int issuerId = getIssuerId(caCert);
+
+    final String sql = SQL_REVOKE_CERT;
+    Connection conn = datasource.getConnection();
+    PreparedStatement ps = null;
+    boolean origAutoCommit = true;
+    int[] counts;
+
+    try {
+      origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      ps = datasource.prepareStatement(conn, sql);
+
+      long currentTimeSeconds = System.currentTimeMillis() / 1000;
+      for (RevokedCert revokedCert : revokedCerts) {
+        CertRevocationInfo revInfo = revokedCert.getRevInfo();
+        int idx = 1;
+        ps.setLong(idx++, currentTimeSeconds);
+        setBoolean(ps, idx++, true);
+        ps.setLong(idx++, revInfo.getRevocationTime().getTime() / 1000);
+        if (revInfo.getInvalidityTime() != null) {
+          ps.setLong(idx++, revInfo.getInvalidityTime().getTime() / 1000);
+        } else {
+          ps.setNull(idx++, Types.INTEGER);
+        }
+        ps.setInt(idx++, revInfo.getReason().getCode());
+        ps.setInt(idx++, issuerId);
+        ps.setString(idx, revokedCert.getCert().getCert().getSerialNumber().toString(16));
+        ps.addBatch();
+      }
+
+      counts = ps.executeBatch();
+      conn.commit();
+    } catch (SQLException ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LogUtil.warn(LOG, ex2, "could not rollback the transaction");
+      }
+      throw datasource.translate(sql, ex);
+    } finally {
+      try {
+        conn.setAutoCommit(origAutoCommit);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not reset the auto-commit mode");
+      }
+      datasource.releaseResources(ps, null, false);
+      datasource.returnConnection(conn);
+    }
+
+    List<RevokedCert> notRegistered = new LinkedList<>();
+    for (int i = 0; i < counts.length; i++) {
+      // Statement.SUCCESS_NO_INFO (-2) is considered as updated
+      if (counts[i] == 0) {
+        notRegistered.add(revokedCerts.get(i));
+      }
+    }
+    return notRegistered;
+  } // method revokeCerts
+
   void unrevokeCert(X509Cert issuer, CertWithDbId cert)
       throws DataAccessException {
     notNull(issuer, "issuer");
@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * X509CrlStreamBuilder test. The CRLs are compared with the ones built by
+ * {@link X509v2CRLBuilder}.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class X509CrlStreamBuilderTest {
+
+  /**
+   * Deterministic signer, the signature is the SHA-256 hash value of the TBSCertList.
+   */
+  private static class DigestSigner implements ContentSigner {
+
+    private final MessageDigest md;
+
+    private final OutputStream out = new OutputStream() {
+
+      @Override
+      public void write(int b) {
+        md.update((byte) b);
+      }
+
+      @Override
+      public void write(byte[] bytes, int off, int len) {
+        md.update(bytes, off, len);
+      }
+
+    };
+
+    DigestSigner() throws NoSuchAlgorithmException {
+      md = MessageDigest.getInstance("SHA-256");
+    }
+
+    @Override
+    public AlgorithmIdentifier getAlgorithmIdentifier() {
+      return new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+          DERNull.INSTANCE);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public byte[] getSignature() {
+      return md.digest();
+    }
+
+  } // class DigestSigner
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Test CA,O=xipki,C=DE");
+
+  private static final Date THIS_UPDATE = new Date(1600000000000L);
+
+  private static final Date NEXT_UPDATE = new Date(1600086400000L);
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    assertSameCrl(0, false, false);
+  }
+
+  @Test
+  public void testEmptyCrlWithoutNextUpdate() throws Exception {
+    assertSameCrl(0, true, false);
+  }
+
+  @Test
+  public void testSingleEntry() throws Exception {
+    assertSameCrl(1, false, false);
+  }
+
+  @Test
+  public void testSingleEntryWithExtensions() throws Exception {
+    assertSameCrl(1, false, true);
+  }
+
+  @Test
+  public void testMultiPageEntries() throws Exception {
+    // more than 1 MB entries, which are moved to a temporary file.
+    assertSameCrl(40000, false, true);
+  }
+
+  private static void assertSameCrl(int numEntries, boolean noNextUpdate,
+      boolean entryExtensions) throws Exception {
+    X509v2CRLBuilder refBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+
+    try (X509CrlStreamBuilder builder = new X509CrlStreamBuilder(ISSUER, THIS_UPDATE)) {
+      if (!noNextUpdate) {
+        refBuilder.setNextUpdate(NEXT_UPDATE);
+        builder.setNextUpdate(NEXT_UPDATE);
+      }
+
+      for (int i = 0; i < numEntries; i++) {
+        BigInteger serial = BigInteger.valueOf(0x7FFFFFFFL * (i + 1));
+        // revocation times before and after 2050 are encoded as UTCTime and GeneralizedTime
+        Date revocationTime = new Date(THIS_UPDATE.getTime()
+            - (i % 2 == 0 ? 1000L * i : -2000000000000L - 1000L * i));
+        Extensions extns = null;
+        if (entryExtensions) {
+          extns = new Extensions(Extension.create(Extension.reasonCode, false,
+              CRLReason.lookup(1 + i % 6)));
+        }
+
+        refBuilder.addCRLEntry(serial, revocationTime, extns);
+        builder.addEntry(serial, revocationTime, extns);
+      }
+
+      refBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries + 1));
+      builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(numEntries + 1));
+
+      Assert.assertEquals("numEntries", numEntries, builder.getNumEntries());
+
+      byte[] expected = refBuilder.build(new DigestSigner()).getEncoded();
+      byte[] actual = builder.build(new DigestSigner());
+      Assert.assertArrayEquals("encoded CRL", expected, actual);
+    }
+  } // method assertSameCrl
+
+}
@@ -583,7 +583,7 @@ public class HttpMgmtServlet extends HttpServlet {
           MgmtRequest.RepublishCertificates req =
               parse(in, MgmtRequest.RepublishCertificates.class);
           caManager.republishCertificates(req.getCaName(), req.getPublisherNames(),
-              req.getNumThreads());
+              req.getNumThreads(), req.isResume());
           resp = null;
           break;
         }
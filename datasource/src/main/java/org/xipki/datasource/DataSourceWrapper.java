@@ -22,6 +22,7 @@ import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException.Reason;
+import org.xipki.util.HealthCheckResult;
 import org.xipki.util.LogUtil;
 import org.xipki.util.LruCache;
 
@@ -384,6 +385,8 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private final LruCache<String, String> cacheSeqNameSqls;
 
+  private StatementCache statementCache;
+
   private DataSourceWrapper(String name, HikariDataSource service, DatabaseType dbType) {
     this.service = notNull(service, "service");
     this.databaseType = notNull(dbType, "dbType");
@@ -429,6 +432,14 @@ public abstract class DataSourceWrapper implements Closeable {
       return;
     }
 
+    if (statementCache != null) {
+      try {
+        statementCache.connectionReturned(conn);
+      } catch (SQLException ex) {
+        LogUtil.warn(LOG, ex, "could not rollback connection to database");
+      }
+    }
+
     try {
       conn.close();
     } catch (Exception ex) {
@@ -440,8 +451,22 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   } // method returnConnection
 
+  /**
+   * Gets the statistics of the prepared statement cache.
+   * @return the statistics, or {@code null} if the statement cache is not enabled.
+   */
+  public HealthCheckResult getStatementCacheHealth() {
+    return statementCache == null ? null : statementCache.healthCheck();
+  }
+
   @Override
   public void close() {
+    if (statementCache != null) {
+      LOG.info("statement cache of datasource {}: {}", name,
+          statementCache.healthCheck().getStatuses());
+      statementCache.close();
+    }
+
     try {
       service.close();
     } catch (RuntimeException ex) {
@@ -486,7 +511,8 @@ public abstract class DataSourceWrapper implements Closeable {
       throws DataAccessException {
     notNull(conn, "conn");
     try {
-      return conn.prepareStatement(sqlQuery);
+      return (statementCache == null) ? conn.prepareStatement(sqlQuery)
+          : statementCache.prepareStatement(conn, sqlQuery);
     } catch (SQLException ex) {
       throw translate(sqlQuery, ex);
     }
@@ -498,7 +524,8 @@ public abstract class DataSourceWrapper implements Closeable {
 
     boolean succ = false;
     try {
-      PreparedStatement ps = conn.prepareStatement(sqlQuery);
+      PreparedStatement ps = (statementCache == null) ? conn.prepareStatement(sqlQuery)
+          : statementCache.prepareStatement(conn, sqlQuery);
       succ = true;
       return ps;
     } catch (SQLException ex) {
@@ -1172,6 +1199,22 @@ public abstract class DataSourceWrapper implements Closeable {
     notNull(props, "props");
     notNull(databaseType, "databaseType");
 
+    // Optional property statementCache.size: maximal number of the prepared statements cached
+    // per physical connection, 0 (default) to disable the cache. The statements are prepared
+    // on the physical connection, and are reused across the borrows of the pooled connection.
+    String str = (String) props.remove("statementCache.size");
+    int statementCacheSize = (str == null) ? 0 : Integer.parseInt(str.trim());
+
+    DataSourceWrapper datasource = createDataSource0(name, props, databaseType);
+    if (statementCacheSize > 0) {
+      datasource.statementCache = new StatementCache(statementCacheSize);
+      LOG.info("enabled statement cache of datasource {} with size {}", name, statementCacheSize);
+    }
+    return datasource;
+  } // method createDataSource
+
+  private static DataSourceWrapper createDataSource0(String name, Properties props,
+      DatabaseType databaseType) {
     // The DB2 schema name is case-sensitive, and must be specified in uppercase characters
     String datasourceClassName = props.getProperty("dataSourceClassName");
     if (datasourceClassName != null) {
@@ -1261,6 +1304,6 @@ public abstract class DataSourceWrapper implements Closeable {
     } else {
       throw new IllegalArgumentException("unknown datasource type " + databaseType);
     }
-  } // method createDataSource
+  } // method createDataSource0
 
 }
@@ -0,0 +1,329 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LruCache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.xipki.util.Args.positive;
+
+/**
+ * Cache of the prepared statements. The statements are prepared on the physical connections
+ * unwrapped from the pooled ones, and are cached per physical connection in LRU order, keyed
+ * by the SQL text. Since the pool does not track these statements, they are not closed when the
+ * connection is returned, and are reused by the later borrowers of the same physical connection.
+ *
+ * <p>The returned statements are proxies. Closing a proxy returns the statement to the cache,
+ * unless an {@link SQLException} has been thrown by it, in which case the statement is closed.
+ * The cache of a physical connection is discarded once the connection is found closed.
+ *
+ * <p>The pool rolls back the uncommitted changes of a returned connection only if they are
+ * made by its own statements. Hence {@link #connectionReturned(Connection)} does the same for
+ * the changes made by the cached statements.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class StatementCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+  private static final Class<?>[] PROXY_INTERFACES = {PreparedStatement.class};
+
+  private final class ConnectionCache extends LruCache<String, PreparedStatement> {
+
+    ConnectionCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, PreparedStatement oldValue,
+        PreparedStatement newValue) {
+      if (evicted) {
+        evictions.incrementAndGet();
+        closeStatement(oldValue);
+      } else if (newValue != null && newValue != oldValue) {
+        // replaced by another statement of the same SQL.
+        closeStatement(oldValue);
+      }
+    }
+
+  } // class ConnectionCache
+
+  private final class CachedStatementHandler implements InvocationHandler {
+
+    private final Connection conn;
+
+    private final ConnectionCache cache;
+
+    private final String sql;
+
+    private final PreparedStatement ps;
+
+    private boolean closed;
+
+    private boolean broken;
+
+    CachedStatementHandler(Connection conn, ConnectionCache cache, String sql,
+        PreparedStatement ps) {
+      this.conn = conn;
+      this.cache = cache;
+      this.sql = sql;
+      this.ps = ps;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      String name = method.getName();
+      int argsLen = (args == null) ? 0 : args.length;
+
+      if (argsLen == 0) {
+        switch (name) {
+          case "close":
+            if (!closed) {
+              closed = true;
+              release();
+            }
+            return null;
+          case "isClosed":
+            return closed || ps.isClosed();
+          case "getConnection":
+            return conn;
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "toString":
+            return "CachedPreparedStatement[" + sql + "]";
+          default:
+            break;
+        }
+      } else if (argsLen == 1 && "equals".equals(name)) {
+        return proxy == args[0];
+      }
+
+      if (closed) {
+        throw new SQLException("statement has been closed");
+      }
+
+      if (name.startsWith("execute")) {
+        markCommitStateDirty(conn);
+      }
+
+      try {
+        return method.invoke(ps, args);
+      } catch (InvocationTargetException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof SQLException) {
+          broken = true;
+        }
+        throw cause;
+      }
+    } // method invoke
+
+    private void release() {
+      boolean reusable = !broken;
+      if (reusable) {
+        try {
+          reusable = !conn.isClosed() && !ps.isClosed();
+          if (reusable) {
+            ps.clearParameters();
+            ps.clearBatch();
+          }
+        } catch (SQLException ex) {
+          reusable = false;
+        }
+      }
+
+      if (reusable) {
+        synchronized (cache) {
+          cache.put(sql, ps);
+        }
+      } else {
+        invalidations.incrementAndGet();
+        closeStatement(ps);
+      }
+    } // method release
+
+  } // class CachedStatementHandler
+
+  private final int maxSize;
+
+  // caches of the statements, keyed by the physical connection.
+  private final Map<Connection, ConnectionCache> caches = new IdentityHashMap<>();
+
+  // borrowed connections with changes made by the cached statements in a transaction.
+  private final Set<Connection> dirtyConnections =
+      Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  private final AtomicLong invalidations = new AtomicLong(0);
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal number of cached statements per connection.
+   */
+  StatementCache(int maxSize) {
+    this.maxSize = positive(maxSize, "maxSize");
+  }
+
+  PreparedStatement prepareStatement(Connection conn, String sql)
+      throws SQLException {
+    Connection physicalConn = conn.unwrap(Connection.class);
+    ConnectionCache cache = getCache(physicalConn);
+
+    PreparedStatement ps;
+    synchronized (cache) {
+      ps = cache.remove(sql);
+    }
+
+    if (ps != null && ps.isClosed()) {
+      invalidations.incrementAndGet();
+      ps = null;
+    }
+
+    if (ps == null) {
+      misses.incrementAndGet();
+      ps = physicalConn.prepareStatement(sql);
+    } else {
+      hits.incrementAndGet();
+    }
+
+    return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+        PROXY_INTERFACES, new CachedStatementHandler(conn, cache, sql, ps));
+  } // method prepareStatement
+
+  private ConnectionCache getCache(Connection physicalConn)
+      throws SQLException {
+    synchronized (caches) {
+      ConnectionCache cache = caches.get(physicalConn);
+      if (cache != null) {
+        return cache;
+      }
+
+      // a new physical connection implies that others may have been closed by the pool.
+      Iterator<Map.Entry<Connection, ConnectionCache>> it = caches.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Connection, ConnectionCache> entry = it.next();
+        if (entry.getKey().isClosed()) {
+          it.remove();
+          evictAll(entry.getValue());
+        }
+      }
+
+      cache = new ConnectionCache(maxSize);
+      caches.put(physicalConn, cache);
+      return cache;
+    }
+  } // method getCache
+
+  private void markCommitStateDirty(Connection conn) {
+    try {
+      if (!conn.getAutoCommit()) {
+        dirtyConnections.add(conn);
+      }
+    } catch (SQLException ex) {
+      // be conservative, connectionReturned() checks the auto-commit mode again.
+      dirtyConnections.add(conn);
+    }
+  } // method markCommitStateDirty
+
+  /**
+   * Rolls back the uncommitted changes made by the cached statements, to be called before the
+   * connection is returned to the pool. The cached statements are kept open.
+   * @param conn
+   *          The pooled connection.
+   * @throws SQLException
+   *          if the rollback failed.
+   */
+  void connectionReturned(Connection conn)
+      throws SQLException {
+    if (dirtyConnections.remove(conn) && !conn.isClosed() && !conn.getAutoCommit()) {
+      conn.rollback();
+    }
+  } // method connectionReturned
+
+  private static void evictAll(ConnectionCache cache) {
+    synchronized (cache) {
+      cache.evictAll();
+    }
+  }
+
+  void close() {
+    synchronized (caches) {
+      for (ConnectionCache cache : caches.values()) {
+        evictAll(cache);
+      }
+      caches.clear();
+    }
+  } // method close
+
+  HealthCheckResult healthCheck() {
+    long numHits = hits.get();
+    long numRequests = numHits + misses.get();
+
+    int numConnections;
+    synchronized (caches) {
+      numConnections = caches.size();
+    }
+
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("StatementCache");
+    result.setHealthy(true);
+    Map<String, Object> statuses = result.getStatuses();
+    statuses.put("maxSize", maxSize);
+    statuses.put("connections", numConnections);
+    statuses.put("hits", numHits);
+    statuses.put("misses", numRequests - numHits);
+    statuses.put("hitRate", numRequests == 0 ? 0 : (double) numHits / numRequests);
+    statuses.put("evictions", evictions.get());
+    statuses.put("invalidations", invalidations.get());
+    return result;
+  } // method healthCheck
+
+  private static void closeStatement(PreparedStatement ps) {
+    try {
+      ps.close();
+    } catch (Throwable th) {
+      LOG.warn("could not close statement", th);
+    }
+  }
+
+}
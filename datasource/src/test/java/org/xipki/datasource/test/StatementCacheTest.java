@@ -0,0 +1,139 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Test of the prepared statement cache across the borrows of the pooled connection.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class StatementCacheTest {
+
+  private static final String SQL_INSERT = "INSERT INTO T1 (ID) VALUES (?)";
+
+  private static final String SQL_COUNT = "SELECT COUNT(*) FROM T1";
+
+  private DataSourceWrapper datasource;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("dataSourceClassName", "org.h2.jdbcx.JdbcDataSource");
+    props.setProperty("dataSource.url",
+        "jdbc:h2:mem:statementcache" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+    props.setProperty("dataSource.user", "sa");
+    props.setProperty("maximumPoolSize", "1");
+    props.setProperty("statementCache.size", "10");
+
+    datasource = new DataSourceFactory().createDataSource("test", props, null);
+
+    Connection conn = datasource.getConnection();
+    try {
+      Statement stmt = conn.createStatement();
+      stmt.execute("CREATE TABLE T1 (ID INT NOT NULL)");
+      stmt.close();
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (datasource != null) {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void testReuseAcrossBorrows() throws Exception {
+    PreparedStatement ps1 = insert(1);
+    PreparedStatement ps2 = insert(2);
+
+    Assert.assertSame("underlying statement", ps1, ps2);
+    Assert.assertEquals("count", 2, count());
+
+    Map<String, Object> statuses = datasource.getStatementCacheHealth().getStatuses();
+    // the first INSERT and the first SELECT are misses.
+    Assert.assertEquals("misses", 2L, statuses.get("misses"));
+    Assert.assertEquals("hits", 1L, statuses.get("hits"));
+  }
+
+  @Test
+  public void testRollbackOnReturn() throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      conn.setAutoCommit(false);
+      PreparedStatement ps = datasource.prepareStatement(conn, SQL_INSERT);
+      ps.setInt(1, 1);
+      ps.executeUpdate();
+      ps.close();
+    } finally {
+      // returned without commit
+      datasource.returnConnection(conn);
+    }
+
+    Assert.assertEquals("count", 0, count());
+  }
+
+  // returns the underlying statement.
+  private PreparedStatement insert(int id) throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      PreparedStatement ps = datasource.prepareStatement(conn, SQL_INSERT);
+      ps.setInt(1, id);
+      ps.executeUpdate();
+      PreparedStatement underlying = ps.unwrap(PreparedStatement.class);
+      ps.close();
+      return underlying;
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+  private int count() throws Exception {
+    Connection conn = datasource.getConnection();
+    try {
+      PreparedStatement ps = datasource.prepareStatement(conn, SQL_COUNT);
+      ResultSet rs = ps.executeQuery();
+      rs.next();
+      int num = rs.getInt(1);
+      rs.close();
+      ps.close();
+      return num;
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  }
+
+}
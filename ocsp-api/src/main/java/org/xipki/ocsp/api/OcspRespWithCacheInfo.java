@@ -17,6 +17,8 @@
 
 package org.xipki.ocsp.api;
 
+import org.xipki.security.HashAlgo;
+
 /**
  * OCSP response with {@link ResponseCacheInfo}.
  *
@@ -26,6 +28,9 @@ package org.xipki.ocsp.api;
 
 public class OcspRespWithCacheInfo {
 
+  /**
+   * Cache information of the response. The times are in seconds since epoch.
+   */
   public static final class ResponseCacheInfo {
 
     private final long generatedAt;
@@ -54,6 +59,8 @@ public class OcspRespWithCacheInfo {
 
   private final ResponseCacheInfo cacheInfo;
 
+  private volatile String etag;
+
   public OcspRespWithCacheInfo(byte[] response, ResponseCacheInfo cacheInfo) {
     this.response = response;
     this.cacheInfo = cacheInfo;
@@ -67,4 +74,21 @@ public class OcspRespWithCacheInfo {
     return cacheInfo;
   }
 
+  /**
+   * Gets the HTTP entity tag of the response. As recommended by RFC 5019 6.2, it is the
+   * quoted ASCII HEX representation of the SHA1 hash of the response. The value is computed
+   * only once, so that the cached responses are not hashed again for each HTTP GET request.
+   *
+   * @return the entity tag.
+   * @since 5.4.0
+   */
+  public String getETag() {
+    String tag = etag;
+    if (tag == null) {
+      tag = "\"" + HashAlgo.SHA1.hexHash(response) + "\"";
+      etag = tag;
+    }
+    return tag;
+  } // method getETag
+
 }
@@ -34,5 +34,19 @@ public interface OcspServer extends Closeable {
 
   OcspRespWithCacheInfo answer(Responder responder, byte[] request, boolean viaGet);
 
+  /**
+   * Checks whether a response to the request cached by the caller may be returned without
+   * calling {@link #answer(Responder, byte[], boolean)}. The per-request checks of the
+   * answer, e.g. of the license, are applied.
+   *
+   * @param responder
+   *          Responder.
+   * @param request
+   *          Encoded OCSP request.
+   * @return whether the cached response may be returned.
+   * @since 5.4.0
+   */
+  boolean grantCachedAnswer(Responder responder, byte[] request);
+
   HealthCheckResult healthCheck(Responder responder);
 }
@@ -24,7 +24,9 @@ import org.xipki.util.Validity;
 
 import java.io.Closeable;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import static org.xipki.util.Args.notBlank;
@@ -119,6 +121,49 @@ public abstract class OcspStore implements Closeable {
       return null;
     }
 
+    applyNextUpdatePeriodLimit(time, info);
+    return info;
+  } // method getCertStatus
+
+  /**
+   * Return the status of several certificates issued by the same issuer.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status, in the same order as the serialNumbers, or {@code null}
+   *         if the issuer is not known.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   * @since 5.4.0
+   */
+  public final List<CertStatusInfo> getCertStatus(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation)
+          throws OcspStoreException {
+    List<CertStatusInfo> infos = getCertStatus0(time, reqIssuer, serialNumbers,
+        includeCertHash, includeRit, inheritCaRevocation);
+
+    if (infos == null) {
+      return null;
+    }
+
+    for (CertStatusInfo info : infos) {
+      applyNextUpdatePeriodLimit(time, info);
+    }
+    return infos;
+  } // method getCertStatus
+
+  private void applyNextUpdatePeriodLimit(Date time, CertStatusInfo info) {
     Date nextUpdate = info.getNextUpdate();
 
     if (minNextUpdatePeriod != null) {
@@ -134,9 +179,7 @@ public abstract class OcspStore implements Closeable {
         info.setNextUpdate(maxNextUpdate);
       }
     }
-
-    return info;
-  } // method getCertStatus
+  } // method applyNextUpdatePeriodLimit
 
   /**
    * Return the certificate status.
@@ -162,6 +205,45 @@ public abstract class OcspStore implements Closeable {
       boolean inheritCaRevocation)
           throws OcspStoreException;
 
+  /**
+   * Return the status of several certificates issued by the same issuer. This default
+   * implementation retrieves the status of the certificates one by one, stores which can
+   * retrieve them in one round trip should overwrite it.
+   *
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate status, in the same order as the serialNumbers, or {@code null}
+   *         if the issuer is not known.
+   * @throws OcspStoreException
+   *           If OCSP store failed to retrieve the status.
+   * @since 5.4.0
+   */
+  protected List<CertStatusInfo> getCertStatus0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation)
+          throws OcspStoreException {
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      CertStatusInfo info = getCertStatus0(time, reqIssuer, serialNumber,
+          includeCertHash, includeRit, inheritCaRevocation);
+      if (info == null) {
+        return null;
+      }
+      infos.add(info);
+    }
+    return infos;
+  } // method getCertStatus0
+
   /**
    * Initialize the OCSP store.
    *
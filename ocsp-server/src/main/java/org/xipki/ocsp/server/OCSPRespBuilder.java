@@ -27,8 +27,8 @@ import org.xipki.util.Hex;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -43,7 +43,16 @@ public class OCSPRespBuilder {
   private static final byte[] successfulStatus = Hex.decode("0a0100");
   private static final byte[] responseTypeBasic = Hex.decode("06092b0601050507300101");
 
-  private final List<SingleResponse> list = new LinkedList<>();
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  // buffers larger than this are not retained by the thread.
+  private static final int MAX_RETAINED_BUFFER_SIZE = 65536;
+
+  // per-thread buffer to encode the tbsResponseData, which is only needed during signing.
+  private static final ThreadLocal<byte[]> tbsBuffer =
+      ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+  private final List<SingleResponse> list = new ArrayList<>(1);
   private Extensions responseExtensions = null;
   private final ResponderID responderId;
 
@@ -87,7 +96,8 @@ public class OCSPRespBuilder {
     ResponseData responseData = new ResponseData(0,
         responderId, producedAt, list, responseExtensions);
 
-    byte[] tbs = new byte[responseData.getEncodedLength()];
+    int tbsLen = responseData.getEncodedLength();
+    byte[] tbs = getTbsBuffer(tbsLen);
     responseData.write(tbs, 0);
 
     ConcurrentBagEntrySigner signer0 = signer.borrowSigner();
@@ -99,7 +109,7 @@ public class OCSPRespBuilder {
       XiContentSigner csigner0 = signer0.value();
       OutputStream sigOut = csigner0.getOutputStream();
       try {
-        sigOut.write(tbs);
+        sigOut.write(tbs, 0, tbsLen);
         sigOut.close();
       } catch (IOException ex) {
         throw new OCSPException("exception signing TBSRequest: " + ex.getMessage(), ex);
@@ -117,7 +127,7 @@ public class OCSPRespBuilder {
     int signatureLen = getLen(signatureBodyLen);
 
     // BasicOCSPResponse
-    int basicResponseBodyLen = tbs.length + sigAlgId.length + signatureLen;
+    int basicResponseBodyLen = tbsLen + sigAlgId.length + signatureLen;
     if (taggedCertSequence != null) {
       basicResponseBodyLen += taggedCertSequence.getEncodedLength();
     }
@@ -157,7 +167,8 @@ public class OCSPRespBuilder {
     // BasicOCSPResponse
     offset += ASN1Type.writeHeader((byte) 0x30, basicResponseBodyLen, out, offset);
     // BasicOCSPResponse.tbsResponseData
-    offset += arraycopy(tbs, out, offset);
+    System.arraycopy(tbs, 0, out, offset, tbsLen);
+    offset += tbsLen;
 
     // BasicOCSPResponse.signatureAlgorithm
     offset += arraycopy(sigAlgId, out, offset);
@@ -173,6 +184,19 @@ public class OCSPRespBuilder {
     return out;
   } // method buildOCSPResponse
 
+  private static byte[] getTbsBuffer(int size) {
+    byte[] buffer = tbsBuffer.get();
+    if (buffer.length >= size) {
+      return buffer;
+    }
+
+    buffer = new byte[Math.max(size, 2 * buffer.length)];
+    if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+      tbsBuffer.set(buffer);
+    }
+    return buffer;
+  } // method getTbsBuffer
+
   private static int getLen(int bodyLen) {
     return ASN1Type.getHeaderLen(bodyLen) + bodyLen;
   }
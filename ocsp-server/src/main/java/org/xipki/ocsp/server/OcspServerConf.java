@@ -408,12 +408,147 @@ public class OcspServerConf extends ValidatableConf {
 
   } // class Responder
 
+  public static class MemoryCache extends ValidatableConf {
+
+    /**
+     * Maximal size of the responses cached in memory, in bytes. Default to 64 MB.
+     */
+    private int maxSize = 64 * 1024 * 1024;
+
+    /**
+     * Whether to load the valid responses from the cache database while starting.
+     */
+    private boolean warmUp;
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public boolean isWarmUp() {
+      return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+      this.warmUp = warmUp;
+    }
+
+    @Override
+    public void validate()
+        throws InvalidConfException {
+      if (maxSize < 1) {
+        throw new InvalidConfException("maxSize must be positive: " + maxSize);
+      }
+    }
+
+  } // class MemoryCache
+
+  public static class Pregeneration extends ValidatableConf {
+
+    /**
+     * Interval between two pre-generation cycles. Default to 1 day.
+     */
+    private String interval;
+
+    /**
+     * Number of threads used to generate the responses for each signer. Default to 2.
+     */
+    private int parallelism = 2;
+
+    public String getInterval() {
+      return interval;
+    }
+
+    public void setInterval(String interval) {
+      this.interval = interval;
+    }
+
+    public Validity interval() {
+      return interval == null ? new Validity(1, Unit.DAY) : Validity.getInstance(interval);
+    }
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    @Override
+    public void validate()
+        throws InvalidConfException {
+      if (parallelism < 1) {
+        throw new InvalidConfException("parallelism must be positive: " + parallelism);
+      }
+
+      try {
+        interval();
+      } catch (IllegalArgumentException ex) {
+        throw new InvalidConfException("invalid interval: " + interval);
+      }
+    }
+
+  } // class Pregeneration
+
+  public static class WriteBehind extends ValidatableConf {
+
+    /**
+     * Maximal number of responses waiting to be written. Further responses will be
+     * dropped. Default to 10000.
+     */
+    private int queueSize = 10000;
+
+    /**
+     * Maximal number of responses written in one batch. Default to 100.
+     */
+    private int batchSize = 100;
+
+    public int getQueueSize() {
+      return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void validate()
+        throws InvalidConfException {
+      if (queueSize < 1) {
+        throw new InvalidConfException("queueSize must be positive: " + queueSize);
+      }
+
+      if (batchSize < 1) {
+        throw new InvalidConfException("batchSize must be positive: " + batchSize);
+      }
+    }
+
+  } // class WriteBehind
+
   public static class ResponseCache extends ValidatableConf {
 
     private DataSourceConf datasource;
 
     private String validity;
 
+    private MemoryCache memoryCache;
+
+    private Pregeneration pregeneration;
+
+    private WriteBehind writeBehind;
+
     public DataSourceConf getDatasource() {
       return datasource;
     }
@@ -434,10 +569,37 @@ public class OcspServerConf extends ValidatableConf {
       return validity == null ? new Validity(1, Unit.DAY) : Validity.getInstance(validity);
     }
 
+    public MemoryCache getMemoryCache() {
+      return memoryCache;
+    }
+
+    public void setMemoryCache(MemoryCache memoryCache) {
+      this.memoryCache = memoryCache;
+    }
+
+    public Pregeneration getPregeneration() {
+      return pregeneration;
+    }
+
+    public void setPregeneration(Pregeneration pregeneration) {
+      this.pregeneration = pregeneration;
+    }
+
+    public WriteBehind getWriteBehind() {
+      return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehind writeBehind) {
+      this.writeBehind = writeBehind;
+    }
+
     @Override
     public void validate()
         throws InvalidConfException {
       notNull(datasource, "datasource");
+      validate(memoryCache);
+      validate(pregeneration);
+      validate(writeBehind);
     }
 
   } // class ResponseCache
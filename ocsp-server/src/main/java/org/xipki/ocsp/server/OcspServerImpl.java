@@ -142,6 +142,10 @@ public class OcspServerImpl implements OcspServer {
 
   private ResponseCacher responseCacher;
 
+  private ResponsePregenerator responsePregenerator;
+
+  private Map<String, DataSourceWrapper> datasources = Collections.emptyMap();
+
   private final Map<String, ResponderImpl> responders = new HashMap<>();
 
   private final Map<String, ResponseSigner> signers = new HashMap<>();
@@ -271,6 +275,10 @@ public class OcspServerImpl implements OcspServer {
     initialized.set(false);
 
     // reset
+    if (responsePregenerator != null) {
+      responsePregenerator.close();
+      responsePregenerator = null;
+    }
     responseCacher = null;
     responders.clear();
     signers.clear();
@@ -426,6 +434,14 @@ public class OcspServerImpl implements OcspServer {
         closeStream(dsStream);
       }
       responseCacher = new ResponseCacher(datasource, master, cacheType.validity());
+      OcspServerConf.MemoryCache memoryCache = cacheType.getMemoryCache();
+      if (memoryCache != null) {
+        responseCacher.setMemoryCache(memoryCache.getMaxSize(), memoryCache.isWarmUp());
+      }
+      OcspServerConf.WriteBehind writeBehind = cacheType.getWriteBehind();
+      if (writeBehind != null) {
+        responseCacher.setWriteBehind(writeBehind.getQueueSize(), writeBehind.getBatchSize());
+      }
       responseCacher.init();
     }
 
@@ -466,6 +482,7 @@ public class OcspServerImpl implements OcspServer {
         datasources.put(name, datasource);
       } // end for
     } // end if
+    this.datasources = datasources;
 
     // responders
     Map<String, ResponderOption> responderOptions = new HashMap<>();
@@ -550,11 +567,27 @@ public class OcspServerImpl implements OcspServer {
     }
     this.servletPaths.clear();
     this.servletPaths.addAll(list2);
+
+    // pre-generation of responses, only in master mode
+    if (responseCacher != null && cacheType.getPregeneration() != null) {
+      if (master) {
+        OcspServerConf.Pregeneration pregenConf = cacheType.getPregeneration();
+        responsePregenerator = new ResponsePregenerator(this, responseCacher, responders,
+            pregenConf.interval().approxMinutes() * 60, pregenConf.getParallelism());
+        responsePregenerator.init();
+      } else {
+        LOG.warn("pre-generation of OCSP responses is ignored in slave mode");
+      }
+    }
   } // method init0
 
   @Override
   public void close() {
     LOG.info("stopped OCSP Responder");
+    if (responsePregenerator != null) {
+      responsePregenerator.close();
+    }
+
     if (responseCacher != null) {
       responseCacher.close();
     }
@@ -568,6 +601,56 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method close
 
+  @Override
+  public boolean grantCachedAnswer(Responder responder, byte[] request) {
+    List<CertID> requestList = null;
+    if (!license.grantAllCAs()) {
+      try {
+        requestList = OcspRequest.getInstance(request).getRequestList();
+      } catch (EncodingException ex) {
+        return false;
+      }
+    }
+
+    return checkLicense((ResponderImpl) responder, requestList);
+  } // method grantCachedAnswer
+
+  /**
+   * Checks the license for the request, and regulates the speed.
+   * @param requestList
+   *          CertIDs of the request, may be {@code null} if all CAs are granted.
+   * @return whether the request may be answered.
+   */
+  private boolean checkLicense(ResponderImpl responder, List<CertID> requestList) {
+    //-----begin license -----
+    if (!license.isValid()) {
+      LOG.error("License not valid, need new license");
+      return false;
+    }
+
+    if (!license.grantAllCAs()) {
+      for (CertID cid : requestList) {
+        for (OcspStore store : responder.getStores()) {
+          X509Cert caCert = store.getIssuerCert(cid.getIssuer());
+          if (caCert == null) {
+            continue;
+          }
+
+          String issuerSubject = caCert.getSubjectRfc4519Text();
+          boolean granted = license.grant(issuerSubject);
+          if (!granted) {
+            LOG.error("Not granted for CA {}, need new license", issuerSubject);
+            return false;
+          }
+        }
+      }
+    }
+
+    license.regulateSpeed();
+    //-----end license-----
+    return true;
+  } // method checkLicense
+
   @Override
   public OcspRespWithCacheInfo answer(Responder responder2, byte[] request, boolean viaGet) {
     ResponderImpl responder = (ResponderImpl) responder2;
@@ -609,38 +692,15 @@ public class OcspServerImpl implements OcspServer {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
       }
 
-      //-----begin license -----
-      if (!license.isValid()) {
-        LOG.error("License not valid, need new license");
+      if (!checkLicense(responder, requestList)) {
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
       }
 
-      if (!license.grantAllCAs()) {
-        for (CertID cid : requestList) {
-          for (OcspStore store : responder.getStores()) {
-            X509Cert caCert = store.getIssuerCert(cid.getIssuer());
-            if (caCert == null) {
-              continue;
-            }
-
-            String issuerSubject = caCert.getSubjectRfc4519Text();
-            boolean granted = license.grant(issuerSubject);
-            if (!granted) {
-              LOG.error("Not granted for CA {}, need new license", issuerSubject);
-              return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
-            }
-          }
-        }
-      }
-
-      license.regulateSpeed();
-      //-----end license-----
-
       OcspRespControl repControl = new OcspRespControl();
       repControl.canCacheInfo = true;
 
       List<ExtendedExtension> reqExtensions = req.getExtensions();
-      List<Extension> respExtensions = new LinkedList<>();
+      List<Extension> respExtensions = new ArrayList<>(2);
 
       ExtendedExtension ocspRespExtn = removeExtension(reqExtensions, OID.ID_PKIX_OCSP_RESPONSE);
       if (ocspRespExtn != null) {
@@ -749,6 +809,7 @@ public class OcspServerImpl implements OcspServer {
       }
 
       SignAlgo cacheDbSigAlg = null;
+      HashAlgo cacheDbCertHashAlg = null;
       BigInteger cacheDbSerialNumber = null;
       IssuerEntry cacheDbIssuer = null;
 
@@ -765,13 +826,14 @@ public class OcspServerImpl implements OcspServer {
         }
 
         cacheDbSigAlg = concurrentSigner.getAlgorithm();
+        cacheDbCertHashAlg = reqHashAlgo;
 
         cacheDbIssuer = responseCacher.getIssuer(certId.getIssuer());
         cacheDbSerialNumber = certId.getSerialNumber();
 
         if (cacheDbIssuer != null) {
           OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
-              cacheDbIssuer.getId(), cacheDbSerialNumber, cacheDbSigAlg);
+              cacheDbIssuer.getId(), cacheDbSerialNumber, cacheDbSigAlg, cacheDbCertHashAlg);
           if (cachedResp != null) {
             boolean granted = license.grant(cacheDbIssuer.getCert().getSubjectRfc4519Text());
             if (granted) {
@@ -804,40 +866,13 @@ public class OcspServerImpl implements OcspServer {
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
-      boolean unknownAsRevoked = false;
-      AtomicBoolean unknownAsRevoked0 = new AtomicBoolean(false);
-      for (CertID certID : requestList) {
-        OcspRespWithCacheInfo failureOcspResp = processCertReq(
-                unknownAsRevoked0, certID,
-                builder, responder, reqOpt, repOpt, repControl);
-
-        if (failureOcspResp != null) {
-          return failureOcspResp;
-        }
-
-        if (unknownAsRevoked0.get()) {
-          unknownAsRevoked = true;
-        }
+      OcspRespWithCacheInfo failureOcspResp = processCertReqs(requestList, builder,
+          responder, reqOpt, repOpt, repControl, respExtensions);
+      if (failureOcspResp != null) {
+        return failureOcspResp;
       }
 
-      if (unknownAsRevoked && repControl.includeExtendedRevokeExtension) {
-        respExtensions.add(extension_pkix_ocsp_extendedRevoke);
-      }
-
-      if (!respExtensions.isEmpty()) {
-        builder.setResponseExtensions(new Extensions(respExtensions));
-      }
-
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
 
       Date producedAt = new Date();
       byte[] encodeOcspResponse;
@@ -856,7 +891,8 @@ public class OcspServerImpl implements OcspServer {
         // Don't cache the response with status UNKNOWN, since this may result in DDoS
         // of storage
         responseCacher.storeOcspResponse(cacheDbIssuer.getId(), cacheDbSerialNumber,
-            producedAtSeconds, repControl.cacheNextUpdate, cacheDbSigAlg, encodeOcspResponse);
+            producedAtSeconds, repControl.cacheNextUpdate, cacheDbSigAlg, cacheDbCertHashAlg,
+            encodeOcspResponse);
       }
 
       if (viaGet && repControl.canCacheInfo) {
@@ -874,8 +910,203 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method ask
 
-  private OcspRespWithCacheInfo processCertReq(AtomicBoolean unknownAsRevoked,
-      CertID certId, OCSPRespBuilder builder,
+  /**
+   * Checks whether the responses of the certificates issued by the given issuer may be
+   * pre-generated, namely the license is valid and grants the issuer, and the signer is
+   * healthy. Unlike {@link #checkLicense(ResponderImpl, List)}, the speed is not regulated.
+   *
+   * @param responder
+   *          Responder for which the responses are generated.
+   * @param issuerCert
+   *          Issuer of the certificates.
+   * @return whether the responses may be pre-generated.
+   */
+  boolean canPregenerate(ResponderImpl responder, X509Cert issuerCert) {
+    if (!license.isValid()) {
+      LOG.error("License not valid, need new license");
+      return false;
+    }
+
+    if (!license.grantAllCAs()) {
+      String issuerSubject = issuerCert.getSubjectRfc4519Text();
+      if (!license.grant(issuerSubject)) {
+        LOG.error("Not granted for CA {}, need new license", issuerSubject);
+        return false;
+      }
+    }
+
+    if (!responder.getSigner().isHealthy()) {
+      LOG.warn("signer {} is not healthy", responder.getResponderOption().getSignerName());
+      return false;
+    }
+
+    return true;
+  } // method canPregenerate
+
+  /**
+   * Generates the response for the given certificate without nonce, and saves it in the
+   * response cache. Used to pre-generate the responses in the background, so the response
+   * is not dropped if the write-behind queue of the response cache is full.
+   *
+   * @param responder
+   *          Responder for which the response is generated.
+   * @param cacheIssuer
+   *          Issuer of the certificate in the response cache.
+   * @param certId
+   *          CertID of the certificate.
+   * @return whether the response has been generated and cached.
+   * @throws NoIdleSignerException
+   *           If no signer is available.
+   * @throws OCSPException
+   *           If error occurs while signing the response.
+   */
+  boolean pregenerateResponse(ResponderImpl responder, IssuerEntry cacheIssuer, CertID certId)
+      throws NoIdleSignerException, OCSPException {
+    if (responseCacher == null || !responseCacher.isOnService()) {
+      return false;
+    }
+
+    ResponseSigner signer = responder.getSigner();
+    OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
+
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    OCSPRespBuilder builder = new OCSPRespBuilder(
+        signer.getResponderId(repOpt.isResponderIdByName()));
+    OcspRespWithCacheInfo failureOcspResp = processCertReqs(Collections.singletonList(certId),
+        builder, responder, responder.getRequestOption(), repOpt, repControl,
+        new ArrayList<>(1));
+
+    // Don't cache the response with status UNKNOWN, see answer()
+    if (failureOcspResp != null || !repControl.canCacheInfo) {
+      return false;
+    }
+
+    // the signer used by answer() for the requests without preferred signature algorithms
+    ConcurrentContentSigner concurrentSigner = signer.getFirstSigner();
+    Date producedAt = new Date();
+    byte[] encodedOcspResponse = builder.buildOCSPResponse(concurrentSigner,
+        getCertsInResp(signer, repOpt), producedAt);
+
+    responseCacher.storeOcspResponse(cacheIssuer.getId(), certId.getSerialNumber(),
+        producedAt.getTime() / 1000, repControl.cacheNextUpdate,
+        concurrentSigner.getAlgorithm(), certId.getIssuer().hashAlgorithm(),
+        encodedOcspResponse, true);
+    return true;
+  } // method pregenerateResponse
+
+  private OcspRespWithCacheInfo processCertReqs(List<CertID> requestList,
+      OCSPRespBuilder builder, ResponderImpl responder, RequestOption reqOpt,
+      OcspServerConf.ResponseOption repOpt, OcspRespControl repControl,
+      List<Extension> respExtensions) {
+    boolean unknownAsRevoked = false;
+    AtomicBoolean unknownAsRevoked0 = new AtomicBoolean(false);
+
+    // all CertIDs of the request are resolved at the same time
+    Date now = new Date();
+    Map<OcspStore, CertStatusInfo[]> prefetchedCertStatus = (requestList.size() > 1)
+        ? prefetchCertStatus(now, requestList, responder, reqOpt, repOpt) : null;
+
+    for (int i = 0; i < requestList.size(); i++) {
+      OcspRespWithCacheInfo failureOcspResp = processCertReq(now,
+              unknownAsRevoked0, requestList.get(i), prefetchedCertStatus, i,
+              builder, responder, reqOpt, repOpt, repControl);
+
+      if (failureOcspResp != null) {
+        return failureOcspResp;
+      }
+
+      if (unknownAsRevoked0.get()) {
+        unknownAsRevoked = true;
+      }
+    }
+
+    if (unknownAsRevoked && repControl.includeExtendedRevokeExtension) {
+      respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+    }
+
+    if (!respExtensions.isEmpty()) {
+      builder.setResponseExtensions(new Extensions(respExtensions));
+    }
+
+    return null;
+  } // method processCertReqs
+
+  /**
+   * Retrieves the status of the certificates in the request with one call per issuer and
+   * store. Failures are only logged here, the status of the affected certificates will then
+   * be retrieved one by one in {@link #processCertReq}.
+   *
+   * @return the prefetched certificate status, indexed by the position in the requestList.
+   */
+  private Map<OcspStore, CertStatusInfo[]> prefetchCertStatus(Date now,
+      List<CertID> requestList, ResponderImpl responder, RequestOption reqOpt,
+      OcspServerConf.ResponseOption repOpt) {
+    // group the positions of the CertIDs by issuer
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new HashMap<>();
+    for (int i = 0; i < requestList.size(); i++) {
+      RequestIssuer reqIssuer = requestList.get(i).getIssuer();
+      if (reqOpt.allows(reqIssuer.hashAlgorithm())) {
+        issuerIndexes.computeIfAbsent(reqIssuer, k -> new ArrayList<>()).add(i);
+      }
+    }
+
+    Map<OcspStore, CertStatusInfo[]> prefetched = new HashMap<>();
+    for (Entry<RequestIssuer, List<Integer>> m : issuerIndexes.entrySet()) {
+      RequestIssuer reqIssuer = m.getKey();
+      List<Integer> indexes = m.getValue();
+      List<BigInteger> serialNumbers = new ArrayList<>(indexes.size());
+      for (Integer index : indexes) {
+        serialNumbers.add(requestList.get(index).getSerialNumber());
+      }
+
+      for (OcspStore store : responder.getStores()) {
+        if (!store.knowsIssuer(reqIssuer)) {
+          continue;
+        }
+
+        List<CertStatusInfo> infos;
+        try {
+          infos = store.getCertStatus(now, reqIssuer, serialNumbers,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+        } catch (OcspStoreException ex) {
+          LogUtil.warn(LOG, ex, "getCertStatus() of CertStatusStore " + store.getName()
+              + " for " + serialNumbers.size() + " certificates");
+          continue;
+        }
+
+        if (infos != null) {
+          CertStatusInfo[] storeInfos = prefetched.computeIfAbsent(store,
+              k -> new CertStatusInfo[requestList.size()]);
+          for (int i = 0; i < indexes.size(); i++) {
+            storeInfos[indexes.get(i)] = infos.get(i);
+          }
+          break;
+        }
+      }
+    }
+
+    return prefetched;
+  } // method prefetchCertStatus
+
+  private static TaggedCertSequence getCertsInResp(ResponseSigner signer,
+      OcspServerConf.ResponseOption repOpt) {
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  } // method getCertsInResp
+
+  private OcspRespWithCacheInfo processCertReq(Date now, AtomicBoolean unknownAsRevoked,
+      CertID certId, Map<OcspStore, CertStatusInfo[]> prefetchedCertStatus, int index,
+      OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, OcspServerConf.ResponseOption repOpt,
       OcspRespControl repControl) {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
@@ -890,16 +1121,21 @@ public class OcspServerImpl implements OcspServer {
     BigInteger serial = certId.getSerialNumber();
 
     RequestIssuer reqIssuer = certId.getIssuer();
-    Date now = new Date();
     for (OcspStore store : responder.getStores()) {
       if (!store.knowsIssuer(reqIssuer)) {
         continue;
       }
 
       try {
-        certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
-            repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
-            responder.getResponderOption().isInheritCaRevocation());
+        CertStatusInfo[] prefetchedInfos = (prefetchedCertStatus == null)
+            ? null : prefetchedCertStatus.get(store);
+        if (prefetchedInfos != null && prefetchedInfos[index] != null) {
+          certStatusInfo = prefetchedInfos[index];
+        } else {
+          certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+        }
 
         if (certStatusInfo != null) {
           CertStatus status = certStatusInfo.getCertStatus();
@@ -962,12 +1198,13 @@ public class OcspServerImpl implements OcspServer {
     // certStatusInfo may not be null in any case, since at least one store is configured
     Date thisUpdate = certStatusInfo.getThisUpdate();
     if (thisUpdate == null) {
-      thisUpdate = new Date();
+      thisUpdate = now;
     }
 
     Date nextUpdate = certStatusInfo.getNextUpdate();
 
-    List<Extension> extensions = new LinkedList<>();
+    // most responses have no single extensions, the list is only created if required.
+    List<Extension> extensions = null;
     unknownAsRevoked.set(false);
     byte[] certStatus;
     switch (certStatusInfo.getCertStatus()) {
@@ -996,6 +1233,7 @@ public class OcspServerImpl implements OcspServer {
         Date invalidityDate = revInfo.getInvalidityTime();
         if (repOpt.isIncludeInvalidityDate() && invalidityDate != null
             && !invalidityDate.equals(revInfo.getRevocationTime())) {
+          extensions = new ArrayList<>(3);
           extensions.add(Template.getInvalidityDateExtension(invalidityDate));
         }
         break;
@@ -1010,10 +1248,16 @@ public class OcspServerImpl implements OcspServer {
 
     byte[] certHash = certStatusInfo.getCertHash();
     if (certHash != null) {
+      if (extensions == null) {
+        extensions = new ArrayList<>(2);
+      }
       extensions.add(Template.getCertHashExtension(certStatusInfo.getCertHashAlgo(), certHash));
     }
 
     if (certStatusInfo.getArchiveCutOff() != null) {
+      if (extensions == null) {
+        extensions = new ArrayList<>(1);
+      }
       extensions.add(Template.getArchiveOffExtension(certStatusInfo.getArchiveCutOff()));
     }
 
@@ -1042,11 +1286,8 @@ public class OcspServerImpl implements OcspServer {
       LOG.debug(sb.toString());
     }
 
-    if (CollectionUtil.isEmpty(extensions)) {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, null);
-    } else {
-      builder.addResponse(certId, certStatus, thisUpdate, nextUpdate, new Extensions(extensions));
-    }
+    builder.addResponse(certId, certStatus, thisUpdate, nextUpdate,
+        extensions == null ? null : new Extensions(extensions));
 
     if (nextUpdate != null) {
       repControl.cacheNextUpdate =
@@ -1073,6 +1314,30 @@ public class OcspServerImpl implements OcspServer {
       result.addChildCheck(storeHealth);
     }
 
+    if (responseCacher != null) {
+      HealthCheckResult cacheHealth = responseCacher.getMemoryCacheHealth();
+      if (cacheHealth != null) {
+        result.addChildCheck(cacheHealth);
+      }
+
+      HealthCheckResult writeBehindHealth = responseCacher.getWriteBehindHealth();
+      if (writeBehindHealth != null) {
+        result.addChildCheck(writeBehindHealth);
+      }
+    }
+
+    if (responsePregenerator != null) {
+      result.addChildCheck(responsePregenerator.healthCheck());
+    }
+
+    for (Entry<String, DataSourceWrapper> entry : datasources.entrySet()) {
+      HealthCheckResult statementCacheHealth = entry.getValue().getStatementCacheHealth();
+      if (statementCacheHealth != null) {
+        statementCacheHealth.setName("StatementCache." + entry.getKey());
+        result.addChildCheck(statementCacheHealth);
+      }
+    }
+
     boolean signerHealthy = responder.getSigner().isHealthy();
     healthy &= signerHealthy;
 
@@ -0,0 +1,283 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.store.DbCertStatusStore;
+import org.xipki.ocsp.server.store.IssuerEntry;
+import org.xipki.ocsp.server.store.ResponseCacher;
+import org.xipki.ocsp.server.type.CertID;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SignAlgo;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Generates the OCSP responses of all certificates in the {@link DbCertStatusStore}s in the
+ * background, and saves them in the {@link ResponseCacher}, so that the requests can be
+ * answered by a simple lookup. Responses which will expire before the next cycle are
+ * regenerated. The responses are generated with the signer used for the requests without
+ * preferred signature algorithms, and with the CertID hash algorithm SHA-1 if allowed, otherwise
+ * another allowed one. They are served only to the requests with the same algorithms.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class ResponsePregenerator implements Closeable {
+
+  private class PregenerateService implements Runnable {
+
+    @Override
+    public void run() {
+      if (!inProcess.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        pregenerate();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while pre-generating OCSP responses");
+      } finally {
+        inProcess.set(false);
+      }
+    }
+
+  } // class PregenerateService
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePregenerator.class);
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final OcspServerImpl server;
+
+  private final ResponseCacher responseCacher;
+
+  private final Map<String, ResponderImpl> responders;
+
+  private final long intervalSeconds;
+
+  private final int parallelism;
+
+  private final Map<String, ExecutorService> signerExecutors = new HashMap<>();
+
+  private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+  private final AtomicLong numGenerated = new AtomicLong(0);
+
+  private final AtomicLong numSkipped = new AtomicLong(0);
+
+  private final AtomicLong numFailed = new AtomicLong(0);
+
+  private volatile long lastCycleStart;
+
+  private volatile long lastCycleDuration;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  ResponsePregenerator(OcspServerImpl server, ResponseCacher responseCacher,
+      Map<String, ResponderImpl> responders, long intervalSeconds, int parallelism) {
+    this.server = notNull(server, "server");
+    this.responseCacher = notNull(responseCacher, "responseCacher");
+    this.responders = notNull(responders, "responders");
+    this.intervalSeconds = positive(intervalSeconds, "intervalSeconds");
+    this.parallelism = positive(parallelism, "parallelism");
+  }
+
+  void init() {
+    for (ResponderImpl responder : responders.values()) {
+      String signerName = responder.getResponderOption().getSignerName();
+      if (!signerExecutors.containsKey(signerName)) {
+        signerExecutors.put(signerName, Executors.newFixedThreadPool(parallelism));
+      }
+    }
+
+    scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+    // start the first cycle shortly after the start, the stores need time to be initialized.
+    scheduledThreadPoolExecutor.scheduleWithFixedDelay(new PregenerateService(),
+        60, intervalSeconds, TimeUnit.SECONDS);
+  } // method init
+
+  @Override
+  public void close() {
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdownNow();
+      scheduledThreadPoolExecutor = null;
+    }
+
+    for (ExecutorService executor : signerExecutors.values()) {
+      executor.shutdownNow();
+    }
+    signerExecutors.clear();
+  } // method close
+
+  HealthCheckResult healthCheck() {
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("ResponsePregenerator");
+    result.setHealthy(true);
+    Map<String, Object> statuses = result.getStatuses();
+    statuses.put("inProcess", inProcess.get());
+    statuses.put("generated", numGenerated.get());
+    statuses.put("skipped", numSkipped.get());
+    statuses.put("failed", numFailed.get());
+    statuses.put("lastCycleStart", lastCycleStart);
+    statuses.put("lastCycleDuration", lastCycleDuration);
+    return result;
+  } // method healthCheck
+
+  private void pregenerate()
+      throws Exception {
+    long start = System.currentTimeMillis();
+    lastCycleStart = start / 1000;
+    // responses which are not valid until the next cycle will be regenerated
+    long validUntil = start / 1000 + intervalSeconds;
+
+    long oldGenerated = numGenerated.get();
+    Set<String> processed = new HashSet<>();
+    for (ResponderImpl responder : responders.values()) {
+      String signerName = responder.getResponderOption().getSignerName();
+      ExecutorService executor = signerExecutors.get(signerName);
+      if (executor == null) {
+        continue;
+      }
+
+      HashAlgo hashAlgo = getCertIdHashAlgo(responder.getRequestOption());
+      if (hashAlgo == null) {
+        continue;
+      }
+
+      for (OcspStore store : responder.getStores()) {
+        if (!(store instanceof DbCertStatusStore)) {
+          continue;
+        }
+
+        // responders with the same signer and store share the cached responses.
+        if (!processed.add(signerName + "/" + store.getName())) {
+          continue;
+        }
+
+        for (IssuerEntry issuer : ((DbCertStatusStore) store).getIssuers()) {
+          pregenerate(responder, (DbCertStatusStore) store, issuer, hashAlgo,
+              executor, validUntil);
+        }
+      }
+    }
+
+    lastCycleDuration = System.currentTimeMillis() - start;
+    LOG.info("pre-generated {} OCSP responses in {} ms",
+        numGenerated.get() - oldGenerated, lastCycleDuration);
+  } // method pregenerate
+
+  private void pregenerate(ResponderImpl responder, DbCertStatusStore store,
+      IssuerEntry issuer, HashAlgo hashAlgo, ExecutorService executor, long validUntil)
+          throws Exception {
+    if (!server.canPregenerate(responder, issuer.getCert())) {
+      return;
+    }
+
+    RequestIssuer reqIssuer = new RequestIssuer(hashAlgo, issuer.getEncodedHash(hashAlgo));
+    IssuerEntry cacheIssuer = responseCacher.getIssuer(reqIssuer);
+    if (cacheIssuer == null) {
+      cacheIssuer = responseCacher.storeIssuer(issuer.getCert());
+    }
+
+    // same signer as in OcspServerImpl.pregenerateResponse()
+    SignAlgo sigAlgo = responder.getSigner().getFirstSigner().getAlgorithm();
+    List<BigInteger> serialNumbers = new ArrayList<>(PAGE_SIZE);
+    long startId = 0;
+    while (true) {
+      serialNumbers.clear();
+      startId = store.getSerialNumbers(issuer, startId, PAGE_SIZE, serialNumbers);
+      if (serialNumbers.isEmpty()) {
+        break;
+      }
+
+      // split the page into parallelism chunks
+      int chunkSize = (serialNumbers.size() + parallelism - 1) / parallelism;
+      List<Callable<Void>> tasks = new ArrayList<>(parallelism);
+      for (int from = 0; from < serialNumbers.size(); from += chunkSize) {
+        List<BigInteger> chunk = serialNumbers.subList(from,
+            Math.min(from + chunkSize, serialNumbers.size()));
+        final IssuerEntry cacheIssuer0 = cacheIssuer;
+        tasks.add(() -> {
+          for (BigInteger serialNumber : chunk) {
+            pregenerate(responder, reqIssuer, cacheIssuer0, serialNumber, sigAlgo, hashAlgo,
+                validUntil);
+          }
+          return null;
+        });
+      }
+
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+
+      if (serialNumbers.size() < PAGE_SIZE) {
+        break;
+      }
+    }
+  } // method pregenerate
+
+  private void pregenerate(ResponderImpl responder, RequestIssuer reqIssuer,
+      IssuerEntry cacheIssuer, BigInteger serialNumber, SignAlgo sigAlgo, HashAlgo hashAlgo,
+      long validUntil) {
+    try {
+      if (responseCacher.isCachedUntil(cacheIssuer.getId(), serialNumber, sigAlgo, hashAlgo,
+          validUntil)) {
+        numSkipped.incrementAndGet();
+        return;
+      }
+
+      CertID certId = new CertID(reqIssuer, serialNumber);
+      if (server.pregenerateResponse(responder, cacheIssuer, certId)) {
+        numGenerated.incrementAndGet();
+      } else {
+        numSkipped.incrementAndGet();
+      }
+    } catch (Exception ex) {
+      numFailed.incrementAndGet();
+      LogUtil.warn(LOG, ex, "could not pre-generate OCSP response for serial number "
+          + LogUtil.formatCsn(serialNumber));
+    }
+  } // method pregenerate
+
+  private static HashAlgo getCertIdHashAlgo(RequestOption reqOpt) {
+    // SHA-1 is used by most of the clients
+    if (reqOpt.allows(HashAlgo.SHA1)) {
+      return HashAlgo.SHA1;
+    }
+
+    Set<HashAlgo> hashAlgos = reqOpt.getHashAlgos();
+    return hashAlgos.isEmpty() ? null : hashAlgos.iterator().next();
+  }
+
+}
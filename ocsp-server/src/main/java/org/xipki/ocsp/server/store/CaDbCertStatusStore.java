@@ -77,6 +77,8 @@ public class CaDbCertStatusStore extends OcspStore {
 
   private final StoreUpdateService storeUpdateService = new StoreUpdateService();
 
+  private static final int MAX_SERIALS_PER_QUERY = 64;
+
   private final Object lock = new Object();
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
@@ -238,6 +240,11 @@ public class CaDbCertStatusStore extends OcspStore {
     }
 
     String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCs : sqlCsNoRit;
+    }
 
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
@@ -245,24 +252,8 @@ public class CaDbCertStatusStore extends OcspStore {
         return null;
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
-
-      Date thisUpdate = new Date();
-
+      CertStatusEntry entry = null;
       ResultSet rs = null;
-
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-
       PreparedStatement ps = datasource.prepareStatement(sql);
 
       try {
@@ -271,122 +262,241 @@ public class CaDbCertStatusStore extends OcspStore {
         rs = ps.executeQuery();
 
         if (rs.next()) {
-          unknown = false;
-
-          long timeInSec = time.getTime() / 1000;
-          if (ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
-
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("SHA1");
-            }
-
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+          entry = toStatusEntry(rs, includeCertHash, includeRit);
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
 
-      final Date nextUpdate = null;
+      return buildCertStatusInfo(time, issuer, entry, includeRit, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      CertStatusInfo certStatusInfo;
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
-        }
+  } // method getCertStatus0
+
+  @Override
+  protected List<CertStatusInfo> getCertStatus0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation)
+          throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    List<BigInteger> serials = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1 && !serials.contains(serialNumber)) {
+        serials.add(serialNumber);
       }
+    }
+
+    Map<BigInteger, CertStatusEntry> entries = new HashMap<>();
+    try {
+      // the number of placeholders is rounded up to a power of 2, so that only a few
+      // distinct SQL statements are used.
+      for (int from = 0; from < serials.size(); from += MAX_SERIALS_PER_QUERY) {
+        List<BigInteger> chunk = serials.subList(from,
+            Math.min(from + MAX_SERIALS_PER_QUERY, serials.size()));
+        int numPlaceholders = Math.min(MAX_SERIALS_PER_QUERY,
+            Integer.highestOneBit(chunk.size() * 2 - 1));
+
+        StringBuilder sb = new StringBuilder(200 + 2 * numPlaceholders);
+        sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+        if (includeRit) {
+          sb.append(",RIT");
+        }
+        if (includeCertHash) {
+          sb.append(",SHA1");
+        }
+        sb.append(" FROM CERT WHERE CA_ID=? AND SN IN (?");
+        for (int i = 1; i < numPlaceholders; i++) {
+          sb.append(",?");
+        }
+        sb.append(")");
+        final String sql = sb.toString();
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
+        ResultSet rs = null;
+        PreparedStatement ps = datasource.prepareStatement(sql);
+        try {
+          int idx = 1;
+          ps.setInt(idx++, issuer.getId());
+          for (int i = 0; i < numPlaceholders; i++) {
+            BigInteger serial = chunk.get(Math.min(i, chunk.size() - 1));
+            ps.setString(idx++, serial.toString(16));
           }
 
-          certStatusInfo.setArchiveCutOff(date);
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            entries.put(new BigInteger(rs.getString("SN"), 16),
+                toStatusEntry(rs, includeCertHash, includeRit));
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
         }
       }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        infos.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+      } else {
+        infos.add(buildCertStatusInfo(time, issuer, entries.get(serialNumber),
+            includeRit, inheritCaRevocation));
       }
+    }
+    return infos;
+  } // method getCertStatus0
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
+  private static CertStatusEntry toStatusEntry(ResultSet rs, boolean includeCertHash,
+      boolean includeRit)
+          throws SQLException {
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      if (includeRit) {
+        invalTime = rs.getLong("RIT");
+      }
+    }
+
+    String b64CertHash = includeCertHash ? rs.getString("SHA1") : null;
+    return new CertStatusEntry(revoked, reason, revTime, invalTime,
+        rs.getLong("NBEFORE"), rs.getLong("NAFTER"), 0,
+        b64CertHash == null ? null : Base64.decodeFast(b64CertHash));
+  } // method toStatusEntry
+
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer,
+      CertStatusEntry entry, boolean includeRit, boolean inheritCaRevocation) {
+    Date thisUpdate = new Date();
+
+    boolean unknown = true;
+    boolean ignore = false;
+    byte[] certHash = null;
+    boolean revoked = false;
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+
+    if (entry != null) {
+      unknown = false;
+
+      long timeInSec = time.getTime() / 1000;
+      if (ignoreNotYetValidCert) {
+        long notBeforeInSec = entry.getNotBefore();
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
         }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = entry.getNotAfter();
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
         }
       }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+      if (!ignore) {
+        certHash = entry.getCertHash();
+        revoked = entry.isRevoked();
+        if (revoked) {
+          reason = entry.getReason();
+          revTime = entry.getRevTime();
+          if (includeRit) {
+            invalTime = entry.getInvalidityTime();
+          }
+        }
+      }
+    }
+
+    final Date nextUpdate = null;
+
+    CertStatusInfo certStatusInfo;
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      if (revoked) {
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
+      }
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus0
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+/**
+ * Status of a certificate read from the memory-resident index or from the database, shared
+ * by the database-based certificate status stores.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+final class CertStatusEntry {
+
+  private final boolean revoked;
+
+  private final int reason;
+
+  private final long revTime;
+
+  private final long invalidityTime;
+
+  private final long notBefore;
+
+  private final long notAfter;
+
+  private final int crlId;
+
+  private final byte[] certHash;
+
+  CertStatusEntry(boolean revoked, int reason, long revTime, long invalidityTime,
+      long notBefore, long notAfter, int crlId, byte[] certHash) {
+    this.revoked = revoked;
+    this.reason = reason;
+    this.revTime = revTime;
+    this.invalidityTime = invalidityTime;
+    this.notBefore = notBefore;
+    this.notAfter = notAfter;
+    this.crlId = crlId;
+    this.certHash = certHash;
+  }
+
+  boolean isRevoked() {
+    return revoked;
+  }
+
+  int getReason() {
+    return reason;
+  }
+
+  long getRevTime() {
+    return revTime;
+  }
+
+  long getInvalidityTime() {
+    return invalidityTime;
+  }
+
+  long getNotBefore() {
+    return notBefore;
+  }
+
+  long getNotAfter() {
+    return notAfter;
+  }
+
+  /**
+   * Gets the ID of the CRL from which the status has been imported.
+   * @return the CRL ID, or 0 if the status has not been imported from a CRL.
+   */
+  int getCrlId() {
+    return crlId;
+  }
+
+  byte[] getCertHash() {
+    return certHash;
+  }
+
+}
@@ -0,0 +1,291 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-resident index of the certificate status of one issuer. The entries are held in
+ * primitive arrays, and are accessed via an open-addressing hash table keyed by the
+ * serial number.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class CertStatusIndex {
+
+  // a serial number has at most 20 octets, plus one byte for the length.
+  private static final int SERIAL_SLOT = 21;
+
+  // notBefore, notAfter, revTime, invalidityTime, flags
+  private static final int NUM_LONGS = 5;
+
+  private static final int IDX_NBEFORE = 0;
+
+  private static final int IDX_NAFTER = 1;
+
+  private static final int IDX_RT = 2;
+
+  private static final int IDX_RIT = 3;
+
+  private static final int IDX_FLAGS = 4;
+
+  private static final long FLAG_REVOKED = 1L;
+
+  private static final long FLAG_HASH = 2L;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final int hashLen;
+
+  private int size;
+
+  private byte[] serials;
+
+  private long[] values;
+
+  private byte[] hashes;
+
+  // index + 1 of the entries, 0 for empty slot.
+  private int[] table;
+
+  /**
+   * Constructor.
+   *
+   * @param hashLen
+   *          Length of the certificate hash.
+   * @param expectedSize
+   *          Expected number of certificates.
+   */
+  CertStatusIndex(int hashLen, int expectedSize) {
+    this.hashLen = hashLen;
+    int capacity = Math.max(16, expectedSize);
+    this.serials = new byte[capacity * SERIAL_SLOT];
+    this.values = new long[capacity * NUM_LONGS];
+    this.hashes = new byte[capacity * hashLen];
+    this.table = new int[tableSize(capacity)];
+  }
+
+  int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the status of the certificate.
+   *
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param includeCertHash
+   *          Whether to return the certificate hash.
+   * @return the status of the certificate, or {@code null} if not indexed. The caller has
+   *     to read the status of a certificate not indexed from the database.
+   */
+  CertStatusEntry get(BigInteger serialNumber, boolean includeCertHash) {
+    byte[] sn = encodeSerial(serialNumber);
+    if (sn == null) {
+      return null;
+    }
+
+    lock.readLock().lock();
+    try {
+      int idx = find(sn);
+      if (idx == -1) {
+        return null;
+      }
+
+      int off = idx * NUM_LONGS;
+      long flags = values[off + IDX_FLAGS];
+      byte[] certHash = null;
+      if (includeCertHash && (flags & FLAG_HASH) != 0) {
+        certHash = Arrays.copyOfRange(hashes, idx * hashLen, (idx + 1) * hashLen);
+      }
+
+      return new CertStatusEntry((flags & FLAG_REVOKED) != 0, (int) ((flags >> 8) & 0xFF),
+          values[off + IDX_RT], values[off + IDX_RIT], values[off + IDX_NBEFORE],
+          values[off + IDX_NAFTER], (int) (flags >>> 32), certHash);
+    } finally {
+      lock.readLock().unlock();
+    }
+  } // method get
+
+  /**
+   * Adds the certificate status, or replaces it if the certificate is already known.
+   * Certificates with serial number longer than 20 octets are not indexed.
+   *
+   * @param serialNumber
+   *          Serial number.
+   * @param revoked
+   *          Whether the certificate is revoked.
+   * @param reason
+   *          Revocation reason.
+   * @param revTime
+   *          Revocation time in seconds.
+   * @param invalidityTime
+   *          Invalidity time in seconds.
+   * @param notBefore
+   *          notBefore in seconds, 0 if unknown.
+   * @param notAfter
+   *          notAfter in seconds, 0 if unknown.
+   * @param crlId
+   *          CRL ID, 0 if not present.
+   * @param certHash
+   *          Hash of the certificate, may be {@code null}.
+   */
+  void put(BigInteger serialNumber, boolean revoked, int reason, long revTime,
+      long invalidityTime, long notBefore, long notAfter, int crlId, byte[] certHash) {
+    byte[] sn = encodeSerial(serialNumber);
+    if (sn == null) {
+      return;
+    }
+
+    lock.writeLock().lock();
+    try {
+      int idx = find(sn);
+      if (idx == -1) {
+        if (size == values.length / NUM_LONGS) {
+          grow();
+        }
+
+        idx = size++;
+        System.arraycopy(sn, 0, serials, idx * SERIAL_SLOT, sn.length);
+        insertIntoTable(idx, sn);
+      }
+
+      int off = idx * NUM_LONGS;
+      values[off + IDX_NBEFORE] = notBefore;
+      values[off + IDX_NAFTER] = notAfter;
+      values[off + IDX_RT] = revTime;
+      values[off + IDX_RIT] = invalidityTime;
+
+      long flags = ((long) crlId << 32) | ((reason & 0xFFL) << 8);
+      if (revoked) {
+        flags |= FLAG_REVOKED;
+      }
+
+      if (certHash != null && certHash.length == hashLen) {
+        flags |= FLAG_HASH;
+        System.arraycopy(certHash, 0, hashes, idx * hashLen, hashLen);
+      }
+      values[off + IDX_FLAGS] = flags;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  } // method put
+
+  private int find(byte[] sn) {
+    int mask = table.length - 1;
+    int pos = hash(sn, 0, sn.length) & mask;
+    while (true) {
+      int v = table[pos];
+      if (v == 0) {
+        return -1;
+      }
+
+      int idx = v - 1;
+      if (serialEquals(idx, sn)) {
+        return idx;
+      }
+      pos = (pos + 1) & mask;
+    }
+  } // method find
+
+  private boolean serialEquals(int idx, byte[] sn) {
+    int off = idx * SERIAL_SLOT;
+    int len = serials[off];
+    if (len != sn[0]) {
+      return false;
+    }
+
+    for (int i = 1; i <= len; i++) {
+      if (serials[off + i] != sn[i]) {
+        return false;
+      }
+    }
+    return true;
+  } // method serialEquals
+
+  private void insertIntoTable(int idx, byte[] sn) {
+    int mask = table.length - 1;
+    int pos = hash(sn, 0, sn.length) & mask;
+    while (table[pos] != 0) {
+      pos = (pos + 1) & mask;
+    }
+    table[pos] = idx + 1;
+  } // method insertIntoTable
+
+  private void grow() {
+    int capacity = values.length / NUM_LONGS;
+    int newCapacity = capacity + (capacity >> 1);
+    serials = Arrays.copyOf(serials, newCapacity * SERIAL_SLOT);
+    values = Arrays.copyOf(values, newCapacity * NUM_LONGS);
+    hashes = Arrays.copyOf(hashes, newCapacity * hashLen);
+
+    table = new int[tableSize(newCapacity)];
+    for (int idx = 0; idx < size; idx++) {
+      int off = idx * SERIAL_SLOT;
+      int mask = table.length - 1;
+      int pos = hash(serials, off, 1 + serials[off]) & mask;
+      while (table[pos] != 0) {
+        pos = (pos + 1) & mask;
+      }
+      table[pos] = idx + 1;
+    }
+  } // method grow
+
+  private static int tableSize(int capacity) {
+    // load factor at most 0.5
+    int n = Integer.highestOneBit(capacity) << 1;
+    return n < capacity * 2 ? n << 1 : n;
+  }
+
+  private static int hash(byte[] bytes, int off, int len) {
+    int h = 1;
+    for (int i = off; i < off + len; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // spread the bits
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Encodes the serial number as length-prefixed unsigned big-endian bytes.
+   * @return the encoded serial number, or {@code null} if it is too large.
+   */
+  private static byte[] encodeSerial(BigInteger serialNumber) {
+    byte[] bytes = serialNumber.toByteArray();
+    int from = (bytes.length > 1 && bytes[0] == 0) ? 1 : 0;
+    int len = bytes.length - from;
+    if (len > SERIAL_SLOT - 1) {
+      return null;
+    }
+
+    byte[] sn = new byte[1 + len];
+    sn[0] = (byte) len;
+    System.arraycopy(bytes, from, sn, 1, len);
+    return sn;
+  } // method encodeSerial
+
+}
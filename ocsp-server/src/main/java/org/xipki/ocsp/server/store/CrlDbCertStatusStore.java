@@ -138,6 +138,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   private int sqlBatchCommit;
 
+  private int importWriters;
+
   private boolean ignoreExpiredCrls;
 
   private boolean crlUpdated;
@@ -158,6 +160,12 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
    * <li>sqlBatchCommit:
    *   <p>
    *   Number of SQL queries before next commit, default to be 1000.</li>
+   * <li>importWriters:
+   *   <p>
+   *   Number of threads writing the revoked certificates to the database while
+   *   importing a CRL, default to be 1. Each thread uses its own database connection,
+   *   the maximal pool size of the datasource must be greater than this value, otherwise
+   *   the OCSP requests and the import wait for free connections.</li>
    * <li>ignoreExpiredCrls:
    *   <p>
    *   Whether expired CRLs are ignored, default to true.</li>
@@ -202,6 +210,9 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     String value = getStrValue(sourceConf, "sqlBatchCommit", false);
     this.sqlBatchCommit = StringUtil.isBlank(value) ? 1000 : Integer.parseInt(value);
 
+    value = getStrValue(sourceConf, "importWriters", false);
+    this.importWriters = StringUtil.isBlank(value) ? 1 : Integer.parseInt(value);
+
     value = getStrValue(sourceConf, "ignoreExpiredCrls", false);
     this.ignoreExpiredCrls = StringUtil.isBlank(value) || Boolean.parseBoolean(value);
 
@@ -308,7 +319,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
         }
 
         if (updateMe) {
-          ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit, ignoreExpiredCrls);
+          ImportCrl importCrl = new ImportCrl(datasource, dir, sqlBatchCommit,
+              importWriters, ignoreExpiredCrls);
 
           if (importCrl.importCrlToOcspDb()) {
             LOG.info("updated CertStore {} successfully", name);
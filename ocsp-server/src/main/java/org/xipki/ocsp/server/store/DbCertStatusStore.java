@@ -78,6 +78,14 @@ public class DbCertStatusStore extends OcspStore {
 
   private static final long MS_PER_5MIN = 300L * 1000;
 
+  // overlap of two refreshes of the status index, to tolerate the clock skew between the
+  // writers of the database.
+  private static final long SEC_STATUS_INDEX_OVERLAP = 300;
+
+  private static final int STATUS_INDEX_PAGE_SIZE = 10000;
+
+  private static final int MAX_SERIALS_PER_QUERY = 64;
+
   private final Object lock = new Object();
 
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
@@ -102,6 +110,13 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private boolean statusIndexEnabled;
+
+  private volatile Map<Integer, CertStatusIndex> statusIndexes = Collections.emptyMap();
+
+  // entries with LUPDATE not before it will be read in the next refresh of the status index.
+  private long statusIndexSince;
+
   protected List<Runnable> getScheduledServices() {
     return Collections.singletonList(storeUpdateService);
   }
@@ -136,6 +151,9 @@ public class DbCertStatusStore extends OcspStore {
       try {
         updateIssuers();
         updateCrls();
+        if (statusIndexEnabled) {
+          updateStatusIndex();
+        }
       } finally {
         initialized = true;
         storeUpdateInProcess.set(false);
@@ -281,6 +299,112 @@ public class DbCertStatusStore extends OcspStore {
     }
   } // method updateCrls
 
+  private void updateStatusIndex() {
+    try {
+      long start = System.currentTimeMillis();
+      Set<Integer> issuerIds = issuerStore.getIds();
+      Map<Integer, CertStatusIndex> indexes = statusIndexes;
+
+      boolean fullLoad = !indexes.keySet().equals(issuerIds);
+      if (!fullLoad) {
+        int num = loadStatusIndex(indexes, statusIndexSince);
+        statusIndexSince = start / 1000 - SEC_STATUS_INDEX_OVERLAP;
+
+        // entries have been deleted from or inserted into the database in between.
+        for (Map.Entry<Integer, CertStatusIndex> entry : indexes.entrySet()) {
+          if (entry.getValue().size() != getCountOfCerts(entry.getKey())) {
+            fullLoad = true;
+            break;
+          }
+        }
+
+        if (!fullLoad) {
+          LOG.info("refreshed status index of store {} with {} entries in {} ms",
+              name, num, System.currentTimeMillis() - start);
+          return;
+        }
+      }
+
+      Map<Integer, CertStatusIndex> newIndexes = new HashMap<>();
+      for (Integer id : issuerIds) {
+        newIndexes.put(id, new CertStatusIndex(certHashAlgo.getLength(), getCountOfCerts(id)));
+      }
+
+      int num = loadStatusIndex(newIndexes, 0);
+      this.statusIndexes = newIndexes;
+      statusIndexSince = start / 1000 - SEC_STATUS_INDEX_OVERLAP;
+      LOG.info("loaded status index of store {} with {} entries in {} ms",
+          name, num, System.currentTimeMillis() - start);
+    } catch (Throwable th) {
+      // fall back to the database queries
+      this.statusIndexes = Collections.emptyMap();
+      LogUtil.error(LOG, th, "error while executing updateStatusIndex()");
+    }
+  } // method updateStatusIndex
+
+  private int loadStatusIndex(Map<Integer, CertStatusIndex> indexes, long since)
+      throws DataAccessException {
+    final String sql = datasource.buildSelectFirstSql(STATUS_INDEX_PAGE_SIZE, "ID ASC",
+        "ID,IID,SN,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH,CRL_ID FROM CERT WHERE ID>? AND LUPDATE>=?");
+
+    int num = 0;
+    long lastId = 0;
+    PreparedStatement ps = preparedStatement(sql);
+    ResultSet rs = null;
+    try {
+      while (true) {
+        ps.setLong(1, lastId);
+        ps.setLong(2, since);
+        rs = ps.executeQuery();
+
+        int numInPage = 0;
+        while (rs.next()) {
+          numInPage++;
+          lastId = rs.getLong("ID");
+          CertStatusIndex index = indexes.get(rs.getInt("IID"));
+          if (index == null) {
+            continue;
+          }
+
+          String b64CertHash = rs.getString("HASH");
+          index.put(new BigInteger(rs.getString("SN"), 16), rs.getBoolean("REV"),
+              rs.getInt("RR"), rs.getLong("RT"), rs.getLong("RIT"), rs.getLong("NBEFORE"),
+              rs.getLong("NAFTER"), rs.getInt("CRL_ID"),
+              b64CertHash == null ? null : Base64.decodeFast(b64CertHash));
+          num++;
+        }
+        datasource.releaseResources(null, rs, false);
+        rs = null;
+
+        if (numInPage < STATUS_INDEX_PAGE_SIZE) {
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+
+    return num;
+  } // method loadStatusIndex
+
+  private int getCountOfCerts(int issuerId)
+      throws DataAccessException {
+    final String sql = "SELECT COUNT(*) FROM CERT WHERE IID=?";
+    PreparedStatement ps = preparedStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, issuerId);
+      rs = ps.executeQuery();
+      return rs.next() ? rs.getInt(1) : 0;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method getCountOfCerts
+
   @Override
   protected CertStatusInfo getCertStatus0(Date time, RequestIssuer reqIssuer,
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
@@ -294,8 +418,6 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException("initialization of CertStore is still in process");
     }
 
-    String sql;
-
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
       if (issuer == null) {
@@ -306,183 +428,349 @@ public class DbCertStatusStore extends OcspStore {
       if (issuer.getCrlId() != 0) {
         crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
         // check whether CRL is expired
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
-          }
+        if (isCrlExpired(crlInfo, time)) {
+          return CertStatusInfo.getCrlExpiredStatusInfo();
         }
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
+      CertStatusIndex statusIndex = statusIndexes.get(issuer.getId());
+      CertStatusEntry entry = (statusIndex != null)
+          ? statusIndex.get(serialNumber, includeCertHash) : null;
+      if (entry == null) {
+        // not indexed, e.g. published after the last update of the index.
+        entry = queryCertStatus(issuer, serialNumber, includeCertHash, includeRit);
       }
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo;
+      return buildCertStatusInfo(time, issuer, crlInfo, entry, includeRit, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
-      int crlId = 0;
+  } // method getCertStatus0
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+  @Override
+  protected List<CertStatusInfo> getCertStatus0(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation)
+          throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+    try {
+      IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+      if (issuer == null) {
+        return null;
+      }
 
-        if (rs.next()) {
-          unknown = false;
-          crlId = rs.getInt("CRL_ID");
+      List<CertStatusInfo> infos = new ArrayList<>(serialNumbers.size());
 
-          long timeInSec = time.getTime() / 1000;
-          if (ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
+      CrlInfo crlInfo = null;
+      if (issuer.getCrlId() != 0) {
+        crlInfo = issuerStore.getCrlInfo(issuer.getCrlId());
+        // check whether CRL is expired
+        if (isCrlExpired(crlInfo, time)) {
+          for (int i = 0; i < serialNumbers.size(); i++) {
+            infos.add(CertStatusInfo.getCrlExpiredStatusInfo());
           }
+          return infos;
+        }
+      }
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
+      Map<BigInteger, CertStatusEntry> entries;
+      CertStatusIndex statusIndex = statusIndexes.get(issuer.getId());
+      if (statusIndex != null) {
+        entries = new HashMap<>();
+        List<BigInteger> notIndexed = new ArrayList<>(0);
+        for (BigInteger serialNumber : serialNumbers) {
+          if (serialNumber.signum() == 1) {
+            CertStatusEntry entry = statusIndex.get(serialNumber, includeCertHash);
+            if (entry != null) {
+              entries.put(serialNumber, entry);
+            } else {
+              notIndexed.add(serialNumber);
             }
           }
+        }
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+        if (!notIndexed.isEmpty()) {
+          // not indexed, e.g. published after the last update of the index.
+          entries.putAll(
+              queryCertStatuses(issuer, notIndexed, includeCertHash, includeRit));
+        }
+      } else {
+        entries = queryCertStatuses(issuer, serialNumbers, includeCertHash, includeRit);
+      }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+      for (BigInteger serialNumber : serialNumbers) {
+        if (serialNumber.signum() != 1) { // non-positive serial number
+          infos.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
+        } else {
+          infos.add(buildCertStatusInfo(time, issuer, crlInfo, entries.get(serialNumber),
+              includeRit, inheritCaRevocation));
+        }
+      }
+      return infos;
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+  } // method getCertStatus0
+
+  private CertStatusEntry queryCertStatus(IssuerEntry issuer, BigInteger serialNumber,
+      boolean includeCertHash, boolean includeRit)
+          throws DataAccessException {
+    String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCs : sqlCsNoRit;
+    }
+
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      ps.setInt(1, issuer.getId());
+      ps.setString(2, serialNumber.toString(16));
+      rs = ps.executeQuery();
+      return rs.next() ? toStatusEntry(rs, includeCertHash, includeRit) : null;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method queryCertStatus
+
+  /**
+   * Retrieves the status of the certificates with IN-list queries. The number of the
+   * placeholders is rounded up to a power of 2 (the list is padded with the last serial
+   * number), so that only a few distinct SQL statements are used.
+   */
+  private Map<BigInteger, CertStatusEntry> queryCertStatuses(IssuerEntry issuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit)
+          throws DataAccessException {
+    List<BigInteger> serials = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1 && !serials.contains(serialNumber)) {
+        serials.add(serialNumber);
+      }
+    }
+
+    Map<BigInteger, CertStatusEntry> entries = new HashMap<>();
+    for (int from = 0; from < serials.size(); from += MAX_SERIALS_PER_QUERY) {
+      List<BigInteger> chunk = serials.subList(from,
+          Math.min(from + MAX_SERIALS_PER_QUERY, serials.size()));
+      int numPlaceholders = Math.min(MAX_SERIALS_PER_QUERY,
+          Integer.highestOneBit(chunk.size() * 2 - 1));
+
+      StringBuilder sb = new StringBuilder(200 + 2 * numPlaceholders);
+      sb.append("SELECT SN,NBEFORE,NAFTER,REV,RR,RT");
+      if (includeRit) {
+        sb.append(",RIT");
+      }
+      if (includeCertHash) {
+        sb.append(",HASH");
+      }
+      sb.append(",CRL_ID FROM CERT WHERE IID=? AND SN IN (?");
+      for (int i = 1; i < numPlaceholders; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+      final String sql = sb.toString();
+
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(sql);
+      try {
+        int idx = 1;
+        ps.setInt(idx++, issuer.getId());
+        for (int i = 0; i < numPlaceholders; i++) {
+          BigInteger serial = chunk.get(Math.min(i, chunk.size() - 1));
+          ps.setString(idx++, serial.toString(16));
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          entries.put(new BigInteger(rs.getString("SN"), 16),
+              toStatusEntry(rs, includeCertHash, includeRit));
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+    }
 
-      if (crlId == 0) {
-        crlId = issuer.getCrlId();
+    return entries;
+  } // method queryCertStatuses
+
+  private static CertStatusEntry toStatusEntry(ResultSet rs, boolean includeCertHash,
+      boolean includeRit)
+          throws SQLException {
+    boolean revoked = rs.getBoolean("REV");
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    if (revoked) {
+      reason = rs.getInt("RR");
+      revTime = rs.getLong("RT");
+      if (includeRit) {
+        invalTime = rs.getLong("RIT");
       }
+    }
 
-      if (crlInfo == null && crlId != 0) {
-        crlInfo = issuerStore.getCrlInfo(crlId);
-      }
+    String b64CertHash = includeCertHash ? rs.getString("HASH") : null;
+    return new CertStatusEntry(revoked, reason, revTime, invalTime,
+        rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getInt("CRL_ID"),
+        b64CertHash == null ? null : Base64.decodeFast(b64CertHash));
+  } // method toStatusEntry
 
-      Date thisUpdate;
-      Date nextUpdate;
-      if (crlInfo == null) {
-        thisUpdate = new Date();
-        nextUpdate = null;
-      } else {
-        thisUpdate = crlInfo.getThisUpdate();
-        nextUpdate = crlInfo.getNextUpdate();
+  private boolean isCrlExpired(CrlInfo crlInfo, Date time) {
+    // CRL will expire in 5 minutes
+    return isIgnoreExpiredCrls()
+        && crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN;
+  }
 
-        if (isIgnoreExpiredCrls()) {
-          // CRL will expire in 5 minutes
-          if (crlInfo.getNextUpdate().getTime() < time.getTime() + MS_PER_5MIN) {
-            return CertStatusInfo.getCrlExpiredStatusInfo();
-          }
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CrlInfo crlInfo,
+      CertStatusEntry entry, boolean includeRit, boolean inheritCaRevocation) {
+    CertStatusInfo certStatusInfo;
+
+    boolean unknown = true;
+    boolean ignore = false;
+    byte[] certHash = null;
+    boolean revoked = false;
+    int reason = 0;
+    long revTime = 0;
+    long invalTime = 0;
+    int crlId = 0;
+
+    if (entry != null) {
+      unknown = false;
+      crlId = entry.getCrlId();
+
+      long timeInSec = time.getTime() / 1000;
+      if (ignoreNotYetValidCert) {
+        long notBeforeInSec = entry.getNotBefore();
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
         }
       }
 
-      if (unknown) {
-        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-      } else if (ignore) {
-        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-      } else {
-        byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-        if (revoked) {
-          Date invTime = (invalTime == 0 || invalTime == revTime)
-              ? null : new Date(invalTime * 1000);
-          CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-              new Date(revTime * 1000), invTime);
-          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-              certHashAlgo, certHash, thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-              certHash, thisUpdate, nextUpdate, null);
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = entry.getNotAfter();
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
         }
       }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
-      }
-
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
+      if (!ignore) {
+        certHash = entry.getCertHash();
+        revoked = entry.isRevoked();
+        if (revoked) {
+          reason = entry.getReason();
+          revTime = entry.getRevTime();
+          if (includeRit) {
+            invalTime = entry.getInvalidityTime();
           }
-
-          certStatusInfo.setArchiveCutOff(date);
         }
       }
+    }
+
+    if (crlId == 0) {
+      crlId = issuer.getCrlId();
+    }
+
+    if (crlInfo == null && crlId != 0) {
+      crlInfo = issuerStore.getCrlInfo(crlId);
+    }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+    Date thisUpdate;
+    Date nextUpdate;
+    if (crlInfo == null) {
+      thisUpdate = new Date();
+      nextUpdate = null;
+    } else {
+      thisUpdate = crlInfo.getThisUpdate();
+      nextUpdate = crlInfo.getNextUpdate();
+
+      if (isCrlExpired(crlInfo, time)) {
+        return CertStatusInfo.getCrlExpiredStatusInfo();
       }
+    }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD) {
-        replaced = true;
-      } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
-        if (unknownCertBehaviour == UnknownCertBehaviour.good) {
-          replaced = true;
-        }
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
-        }
+    if (unknown) {
+      certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+    } else if (ignore) {
+      certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+    } else {
+      if (revoked) {
+        Date invTime = (invalTime == 0 || invalTime == revTime)
+            ? null : new Date(invalTime * 1000);
+        CertRevocationInfo revInfo = new CertRevocationInfo(reason,
+            new Date(revTime * 1000), invTime);
+        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+            certHashAlgo, certHash, thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+            certHash, thisUpdate, nextUpdate, null);
       }
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
-    } catch (DataAccessException ex) {
-      throw new OcspStoreException(ex.getMessage(), ex);
     }
 
-  } // method getCertStatus0
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD) {
+      replaced = true;
+    } else if (certStatus == CertStatus.UNKNOWN || certStatus == CertStatus.IGNORE) {
+      if (unknownCertBehaviour == UnknownCertBehaviour.good) {
+        replaced = true;
+      }
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
 
   /**
    * Borrow Prepared Statement.
@@ -530,6 +818,11 @@ public class DbCertStatusStore extends OcspStore {
    * <li>caCerts: optional
    *   <p>
    *   CA certificate files to be included / excluded.</li>
+   * <li>statusIndex: optional
+   *   <p>
+   *   Whether to hold the status of all certificates in memory, default to false. The index
+   *   is refreshed incrementally, based on the column CERT.LUPDATE, every updateInterval.
+   *   The status of the certificates not in the index is read from the database.</li>
    *  </ul>
    * @param datasource DataSource.
    */
@@ -542,6 +835,11 @@ public class DbCertStatusStore extends OcspStore {
       if (objValue != null) {
         caCerts = JSON.parseObject(JSON.toJSONBytes(objValue), OcspServerConf.CaCerts.class);
       }
+
+      objValue = sourceConf.get("statusIndex");
+      if (objValue != null) {
+        this.statusIndexEnabled = Boolean.parseBoolean(objValue.toString());
+      }
     }
 
     this.datasource = notNull(datasource, "datasource");
@@ -615,6 +913,72 @@ public class DbCertStatusStore extends OcspStore {
     }
   }
 
+  /**
+   * Gets the issuers known by this store.
+   *
+   * @return the issuers.
+   */
+  public List<IssuerEntry> getIssuers() {
+    List<IssuerEntry> issuers = new ArrayList<>(issuerStore.size());
+    for (Integer id : issuerStore.getIds()) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(id);
+      if (issuer != null) {
+        issuers.add(issuer);
+      }
+    }
+    return issuers;
+  } // method getIssuers
+
+  /**
+   * Gets the serial numbers of the certificates issued by the given issuer, ordered by the
+   * database ID.
+   *
+   * @param issuer
+   *          The issuer.
+   * @param startId
+   *          Only certificates with database ID greater than it will be considered.
+   * @param numEntries
+   *          Maximal number of serial numbers to be returned.
+   * @param serialNumbers
+   *          List to which the serial numbers will be added.
+   * @return the database ID of the last returned certificate, or {@code startId} if no
+   *         more certificate is available.
+   * @throws OcspStoreException
+   *           If error occurs while reading the database.
+   */
+  public long getSerialNumbers(IssuerEntry issuer, long startId, int numEntries,
+      List<BigInteger> serialNumbers)
+          throws OcspStoreException {
+    notNull(issuer, "issuer");
+    notNull(serialNumbers, "serialNumbers");
+
+    final String sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN FROM CERT WHERE IID=? AND ID>?");
+
+    long lastId = startId;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      ResultSet rs = null;
+      try {
+        ps.setInt(1, issuer.getId());
+        ps.setLong(2, startId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          lastId = rs.getLong("ID");
+          serialNumbers.add(new BigInteger(rs.getString("SN"), 16));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+    return lastId;
+  } // method getSerialNumbers
+
   @Override
   public boolean knowsIssuer(RequestIssuer reqIssuer) {
     return null != issuerStore.getIssuerForFp(reqIssuer);
@@ -48,8 +48,10 @@ import java.security.cert.CertificateException;
 import java.sql.*;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.xipki.util.Args.min;
 import static org.xipki.util.Args.notNull;
@@ -175,6 +177,71 @@ class ImportCrl {
 
   } // class ImportCrlException
 
+  /**
+   * Progress of the import of the revoked certificates of a CRL.
+   */
+  private static class ImportCheckpoint {
+
+    private final File file;
+
+    private final BigInteger crlNumber;
+
+    private final long thisUpdate;
+
+    // start time (in seconds) of the first import of this CRL.
+    private final long startTime;
+
+    // number of CRL entries which have been written.
+    private long numEntries;
+
+    private ImportCheckpoint(File file, BigInteger crlNumber, long thisUpdate, long startTime,
+        long numEntries) {
+      this.file = file;
+      this.crlNumber = crlNumber;
+      this.thisUpdate = thisUpdate;
+      this.startTime = startTime;
+      this.numEntries = numEntries;
+    }
+
+    /**
+     * Loads the checkpoint of the interrupted import of the same CRL, or returns a new one.
+     */
+    static ImportCheckpoint load(File file, CrlStreamParser crl, long startTime) {
+      long thisUpdate = crl.getThisUpdate().getTime();
+      if (file.exists()) {
+        try {
+          Properties props = CrlDbCertStatusStore.loadProperties(file);
+          if (crl.getCrlNumber().equals(new BigInteger(props.getProperty("crlnumber")))
+              && thisUpdate == Long.parseLong(props.getProperty("thisupdate"))) {
+            return new ImportCheckpoint(file, crl.getCrlNumber(), thisUpdate,
+                Long.parseLong(props.getProperty("starttime")),
+                Long.parseLong(props.getProperty("entries")));
+          }
+        } catch (IOException | RuntimeException ex) {
+          LOG.warn("could not read the checkpoint {}, ignore it: {}",
+              file.getPath(), ex.getMessage());
+        }
+      }
+
+      return new ImportCheckpoint(file, crl.getCrlNumber(), thisUpdate, startTime, 0);
+    } // method load
+
+    void save() {
+      String text = "crlnumber=" + crlNumber + "\nthisupdate=" + thisUpdate
+          + "\nstarttime=" + startTime + "\nentries=" + numEntries;
+      try {
+        IoUtil.save(file, text.getBytes(StandardCharsets.UTF_8));
+      } catch (IOException ex) {
+        LOG.warn("could not save the checkpoint {}: {}", file.getPath(), ex.getMessage());
+      }
+    } // method save
+
+    void delete() {
+      IoUtil.deleteFile(file);
+    }
+
+  } // class ImportCheckpoint
+
   private static final Logger LOG = LoggerFactory.getLogger(ImportCrl.class);
 
   private static final String KEY_CA_REVOCATION_TIME = "ca.revocation.time";
@@ -207,38 +274,43 @@ class ImportCrl {
   private static final String CORE_SQL_SELECT_ID_CERT
       = "ID,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND SN=?";
 
+  private static final int NUM_SERIALS_PER_SELECT = 100;
+
+  private static final long MS_CHECKPOINT_INTERVAL = 10000;
+
+  private static final String CHECKPOINT_FILENAME = "import.checkpoint";
+
   private final String basedir;
 
   private final String sqlSelectIdCert;
 
+  private final String sqlSelectCertInfos;
+
   private final DataSourceWrapper datasource;
 
   private final HashAlgo certhashAlgo;
 
   private final int sqlBatchCommit;
 
-  private final boolean ignoreExpiredCrls;
+  private final int numWriters;
 
-  private PreparedStatement psDeleteCert;
+  private final boolean ignoreExpiredCrls;
 
   private PreparedStatement psInsertCert;
 
-  private PreparedStatement psInsertCertRev;
-
   private PreparedStatement psSelectIdCert;
 
   private PreparedStatement psUpdateCert;
 
-  private PreparedStatement psUpdateCertRev;
-
   private PreparedStatement psUpdateCertLastupdate;
 
   private final AtomicInteger cachedIssuerId = new AtomicInteger(0);
 
   public ImportCrl(DataSourceWrapper datasource, String basedir, int sqlBatchCommit,
-      boolean ignoreExpiredCrls)
+      int numWriters, boolean ignoreExpiredCrls)
           throws DataAccessException, NoSuchAlgorithmException {
     this.sqlBatchCommit = min(sqlBatchCommit, "sqlBatchCommit", 1);
+    this.numWriters = min(numWriters, "numWriters", 1);
     this.ignoreExpiredCrls = ignoreExpiredCrls;
     this.datasource = notNull(datasource, "datasource");
     this.basedir = notNull(basedir, "basedir");
@@ -246,6 +318,13 @@ class ImportCrl {
 
     LOG.info("UPDATE_CERTSTORE");
     this.sqlSelectIdCert = datasource.buildSelectFirstSql(1, CORE_SQL_SELECT_ID_CERT);
+
+    StringBuilder sb = new StringBuilder(100 + 2 * NUM_SERIALS_PER_SELECT);
+    sb.append("SELECT ID,SN,REV,RR,RT,RIT,CRL_ID FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < NUM_SERIALS_PER_SELECT; i++) {
+      sb.append(",?");
+    }
+    this.sqlSelectCertInfos = sb.append(")").toString();
   }
 
   public boolean importCrlToOcspDb() {
@@ -388,12 +467,9 @@ class ImportCrl {
         autoCommitChanged = true;
       }
 
-      psDeleteCert = datasource.prepareStatement(conn, SQL_DELETE_CERT);
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
-      psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
-      psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
       psUpdateCertLastupdate = datasource.prepareStatement(conn, SQL_UPDATE_CERT_LUPDATE);
 
       for (CrlDirInfo crlDirInfo : crlDirInfos) {
@@ -421,12 +497,9 @@ class ImportCrl {
         }
       }
 
-      releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
-      releaseResources(psInsertCertRev, null);
       releaseResources(psSelectIdCert, null);
       releaseResources(psUpdateCert, null);
-      releaseResources(psUpdateCertRev, null);
       releaseResources(psUpdateCertLastupdate, null);
 
       if (conn != null) {
@@ -453,6 +526,7 @@ class ImportCrl {
 
     boolean updateSucc = false;
     CertWrapper caCert = null;
+    ImportCheckpoint checkpoint = null;
 
     try {
       LOG.info("Importing CRL (id={}, name={}) in the folder {}",
@@ -469,6 +543,8 @@ class ImportCrl {
 
       CrlStreamParser crl = null;
       CrlInfo crlInfo = null;
+      // whether the CRL with the same number has been imported.
+      boolean sameCrlNumber = false;
 
       if (!crlDirInfo.deleteMe && crlDirInfo.revocationinfo == null) {
         crl = new CrlStreamParser(crlDirInfo.crlFile);
@@ -564,6 +640,8 @@ class ImportCrl {
             return;
           }
 
+          sameCrlNumber = crlNumber.equals(oldCrlInfo.getCrlNumber());
+
           if (crl.isDeltaCrl()) {
             BigInteger lastFullCrlNumber = oldCrlInfo.getBaseCrlNumber();
             if (lastFullCrlNumber == null) {
@@ -601,15 +679,34 @@ class ImportCrl {
         LOG.info("Ignored CRL (name={}) in the folder {}: CA is revoked",
             crlName, crlDir.getPath());
       } else {
+        // The checkpoint exists until the import is finished. If the CRL number equals the
+        // one in the database and there is no checkpoint, the entries are already imported.
+        File checkpointFile = new File(generatedDir, CHECKPOINT_FILENAME);
+        boolean entriesImported = sameCrlNumber && !checkpointFile.exists();
+
+        checkpoint = ImportCheckpoint.load(checkpointFile, crl, startTimeSec);
+        if (checkpoint.numEntries > 0) {
+          LOG.info("resume importing CRL (id={}) after {} entries", id, checkpoint.numEntries);
+        }
+        checkpoint.save();
+
         importCrlInfo(conn, id, crlName, crlInfo,
             crlDirInfo.shareCaWithOtherCrl, caCert.base64Sha1Fp);
         commit(conn);
 
-        importCrlRevokedCertificates(conn, id, caCert, crl, crlDir, startTimeSec);
+        if (entriesImported) {
+          LOG.info("entries of the CRL (id={}, crlNumber={}) are already imported, skip them",
+              id, crl.getCrlNumber());
+        }
+
+        long[] unchangedIds = importCrlRevokedCertificates(conn, id, caCert, crl, crlDir,
+            checkpoint, entriesImported);
         commit(conn);
 
         if (!crl.isDeltaCrl()) {
-          deleteEntriesNotUpdatedSince(conn, id, startTimeSec);
+          // the entries written before the resume have LUPDATE not before the startTime
+          // of the interrupted import.
+          deleteEntriesNotUpdatedSince(conn, id, checkpoint.startTime, unchangedIds);
           commit(conn);
         }
       }
@@ -626,6 +723,10 @@ class ImportCrl {
         newCrlFpFile.delete();
       }
 
+      if (checkpoint != null) {
+        checkpoint.delete();
+      }
+
       updateSucc = true;
       LOG.info("Imported CRL (id={}) in the folder {}", id, crlDir.getPath());
     } catch (Throwable th) {
@@ -792,113 +893,22 @@ class ImportCrl {
     }
   } // method importCrlInfo
 
-  private void importCrlRevokedCertificates(Connection conn, int crlInfoId, CertWrapper caCert,
-      CrlStreamParser crl, File crlDir, long startTimeSec)
+  /**
+   * Imports the revoked certificates and the certificates in the folder certs.
+   *
+   * @return the sorted IDs of the entries of a full CRL which are not changed and
+   *     therefore not written, or {@code null} for delta CRL or if the revoked certificates
+   *     are skipped.
+   */
+  private long[] importCrlRevokedCertificates(Connection conn, int crlInfoId,
+      CertWrapper caCert, CrlStreamParser crl, File crlDir, ImportCheckpoint checkpoint,
+      boolean skipRevokedCerts)
           throws DataAccessException, ImportCrlException, IOException {
     int caId = caCert.databaseId;
     AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
 
-    boolean isDeltaCrl = crl.isDeltaCrl();
-
-    // import the revoked information
-    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
-      int num = 0;
-      while (revokedCertList.hasNext()) {
-        num++;
-
-        // If the system time is adjusted to a previous time point during the
-        // import process, System.currentTime...() may be before startTime.
-        // Since all entries in the database whose Last-Update is before
-        // startTime will be deleted, we must ensure that the Last-Update is
-        // not before startTime.
-        long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
-
-        RevokedCert revCert = revokedCertList.next();
-        BigInteger serial = revCert.getSerialNumber();
-        long rt = revCert.getRevocationDate();
-        long rit = revCert.getInvalidityDate();
-        int reason = revCert.getReason();
-        X500Name issuer = revCert.getCertificateIssuer();
-        if (issuer != null && !issuer.equals(caCert.subject)) {
-          throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-        }
-
-        String sql = null;
-        try {
-          if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
-            if (isDeltaCrl) {
-              // delete the entry
-              sql = SQL_DELETE_CERT;
-              psDeleteCert.setInt(1, caId);
-              psDeleteCert.setString(2, serial.toString(16));
-              psDeleteCert.executeUpdate();
-            } else {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-            continue;
-          }
-
-          CertInfo existingCertInfo = getCertInfo(caId, serial);
-          PreparedStatement ps;
-
-          if (existingCertInfo == null) {
-            sql = SQL_INSERT_CERT_REV;
-            long id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            int offset = 1;
-
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-            ps.setInt(offset++, 1);
-            ps.setInt(offset++, reason);
-            ps.setLong(offset++, rt);
-            if (rit != 0) {
-              ps.setLong(offset++, rit);
-            } else {
-              ps.setNull(offset++, Types.BIGINT);
-            }
-            ps.setLong(offset++, updateTimeSec);
-            ps.setInt(offset, crlInfoId);
-          } else {
-            if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
-              sql = SQL_UPDATE_CERT_REV;
-              ps = psUpdateCertRev;
-              int offset = 1;
-
-              ps.setInt(offset++, 1);
-              ps.setInt(offset++, reason);
-              ps.setLong(offset++, rt);
-              if (rit != 0) {
-                ps.setLong(offset++, rit);
-              } else {
-                ps.setNull(offset++, Types.BIGINT);
-              }
-              ps.setLong(offset++, updateTimeSec);
-              ps.setInt(offset++, crlInfoId);
-              ps.setLong(offset, existingCertInfo.id);
-            } else {
-              sql = SQL_UPDATE_CERT_LUPDATE;
-              ps = psUpdateCertLastupdate;
-              ps.setLong(1, updateTimeSec);
-              ps.setLong(2, existingCertInfo.id);
-            }
-          }
-
-          ps.executeUpdate();
-
-          if (num % sqlBatchCommit == 0) {
-            commit(conn);
-          }
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
-        }
-      }
-
-      LOG.info("imported {} revoked certificates", num);
-    }
-
-    commit(conn);
+    long[] unchangedIds = skipRevokedCerts ? null
+        : importRevokedCertificates(caCert, crlInfoId, crl, maxId, checkpoint);
 
     // import the certificates
     // cert dirs
@@ -906,17 +916,17 @@ class ImportCrl {
 
     if (!certsDir.exists()) {
       LOG.info("the folder {} does not exist, ignore it", certsDir.getPath());
-      return;
+      return unchangedIds;
     }
 
     if (!certsDir.isDirectory()) {
       LOG.warn("the path {} does not point to a folder, ignore it", certsDir.getPath());
-      return;
+      return unchangedIds;
     }
 
     if (!certsDir.canRead()) {
       LOG.warn("the folder {} may not be read, ignore it", certsDir.getPath());
-      return;
+      return unchangedIds;
     }
 
     // import certificates
@@ -974,8 +984,367 @@ class ImportCrl {
 
       commit(conn);
     }
+
+    return unchangedIds;
   } // method importCrlRevokedCertificates
 
+  /**
+   * Imports the revoked certificates in a pipeline: the calling thread parses the CRL and
+   * splits the entries into chunks, which are sorted by serial number and written by the
+   * writer threads with JDBC batches. Since the serial numbers in a CRL are unique, the
+   * chunks do not overlap.
+   *
+   * <p>Only the entries which differ from the database are written. The IDs of the unchanged
+   * entries of a full CRL are returned, so that the entries removed from the CRL can be
+   * found afterwards.
+   *
+   * <p>The number of entries whose chunks (and all chunks before them) have been written is
+   * saved in the checkpoint. An interrupted import of a delta CRL is resumed after these
+   * entries. For a full CRL all entries are read again, the ones written before the
+   * interruption are now unchanged and will not be written again.
+   *
+   * @return the sorted IDs of the unchanged entries of a full CRL, {@code null} for a
+   *     delta CRL.
+   */
+  private long[] importRevokedCertificates(CertWrapper caCert, int crlInfoId,
+      CrlStreamParser crl, AtomicLong maxId, ImportCheckpoint checkpoint)
+          throws DataAccessException, ImportCrlException, IOException {
+    final long start = System.currentTimeMillis();
+    final boolean isDeltaCrl = crl.isDeltaCrl();
+    final long skip = isDeltaCrl ? checkpoint.numEntries : 0;
+    // IDs of the unchanged entries, one array per chunk
+    final Queue<long[]> unchangedIdsList = isDeltaCrl ? null : new ConcurrentLinkedQueue<>();
+
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+    // limit the number of chunks in memory
+    Semaphore semaphore = new Semaphore(2 * numWriters);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    // chunks not yet confirmed in the checkpoint, and the number of entries up to them
+    Deque<Future<Boolean>> pendingChunks = new LinkedList<>();
+    Deque<Long> pendingChunkEnds = new LinkedList<>();
+
+    long num = 0;
+    long lastCheckpointSave = start;
+
+    try (RevokedCertsIterator revokedCertList = crl.revokedCertificates()) {
+      List<RevokedCert> chunk = new ArrayList<>(sqlBatchCommit);
+      while (revokedCertList.hasNext()) {
+        RevokedCert revCert = revokedCertList.next();
+        num++;
+        if (num <= skip) {
+          continue;
+        }
+
+        X500Name issuer = revCert.getCertificateIssuer();
+        if (issuer != null && !issuer.equals(caCert.subject)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number "
+              + revCert.getSerialNumber());
+        }
+
+        chunk.add(revCert);
+        if (chunk.size() < sqlBatchCommit && revokedCertList.hasNext()) {
+          continue;
+        }
+
+        if (failure.get() != null) {
+          break;
+        }
+
+        try {
+          semaphore.acquire();
+        } catch (InterruptedException ex) {
+          throw new ImportCrlException("interrupted", ex);
+        }
+
+        final List<RevokedCert> chunk0 = chunk;
+        chunk = new ArrayList<>(sqlBatchCommit);
+        pendingChunks.add(executor.submit(() -> {
+          try {
+            writeRevokedCertificates(caCert.databaseId, crlInfoId, isDeltaCrl,
+                chunk0, maxId, checkpoint.startTime, unchangedIdsList);
+            return true;
+          } catch (Throwable th) {
+            failure.compareAndSet(null, th);
+            return false;
+          } finally {
+            semaphore.release();
+          }
+        }));
+        pendingChunkEnds.add(num);
+
+        // confirm the written chunks in the checkpoint
+        long confirmed = confirmChunks(pendingChunks, pendingChunkEnds);
+        if (confirmed != -1) {
+          checkpoint.numEntries = confirmed;
+          long now = System.currentTimeMillis();
+          if (now - lastCheckpointSave > MS_CHECKPOINT_INTERVAL) {
+            checkpoint.save();
+            lastCheckpointSave = now;
+            LOG.info("imported {} revoked certificates, {} entries/s", confirmed,
+                (confirmed - skip) * 1000 / Math.max(1, now - start));
+          }
+        }
+      }
+
+      // wait for the remaining chunks
+      for (Future<Boolean> future : pendingChunks) {
+        try {
+          future.get();
+        } catch (InterruptedException | ExecutionException ex) {
+          failure.compareAndSet(null, ex);
+        }
+      }
+
+      if (failure.get() == null) {
+        checkpoint.numEntries = num;
+      } else {
+        long confirmed = confirmChunks(pendingChunks, pendingChunkEnds);
+        if (confirmed != -1) {
+          checkpoint.numEntries = confirmed;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      checkpoint.save();
+    }
+
+    Throwable th = failure.get();
+    if (th != null) {
+      if (th instanceof DataAccessException) {
+        throw (DataAccessException) th;
+      }
+      throw new ImportCrlException("error importing revoked certificates: " + th.getMessage(),
+          th);
+    }
+
+    long duration = Math.max(1, System.currentTimeMillis() - start);
+    LOG.info("imported {} revoked certificates ({} resumed) in {} ms, {} entries/s",
+        num, skip, duration, (num - skip) * 1000 / duration);
+
+    if (unchangedIdsList == null) {
+      return null;
+    }
+
+    int numUnchanged = 0;
+    for (long[] ids : unchangedIdsList) {
+      numUnchanged += ids.length;
+    }
+
+    long[] unchangedIds = new long[numUnchanged];
+    int offset = 0;
+    for (long[] ids : unchangedIdsList) {
+      System.arraycopy(ids, 0, unchangedIds, offset, ids.length);
+      offset += ids.length;
+    }
+    Arrays.sort(unchangedIds);
+
+    LOG.info("{} of {} revoked certificates are not changed", numUnchanged, num);
+    return unchangedIds;
+  } // method importRevokedCertificates
+
+  /**
+   * Removes the successfully written chunks from the head of the queue.
+   * @return number of entries up to the last removed chunk, or -1 if no chunk is removed.
+   */
+  private static long confirmChunks(Deque<Future<Boolean>> pendingChunks,
+      Deque<Long> pendingChunkEnds) {
+    long confirmed = -1;
+    while (!pendingChunks.isEmpty() && pendingChunks.peekFirst().isDone()) {
+      try {
+        if (!pendingChunks.peekFirst().get()) {
+          break;
+        }
+      } catch (InterruptedException | ExecutionException ex) {
+        break;
+      }
+
+      pendingChunks.pollFirst();
+      confirmed = pendingChunkEnds.pollFirst();
+    }
+    return confirmed;
+  } // method confirmChunks
+
+  private void writeRevokedCertificates(int caId, int crlInfoId, boolean isDeltaCrl,
+      List<RevokedCert> revokedCerts, AtomicLong maxId, long startTimeSec,
+      Queue<long[]> unchangedIdsList)
+          throws DataAccessException {
+    revokedCerts.sort(Comparator.comparing(RevokedCert::getSerialNumber));
+
+    // If the system time is adjusted to a previous time point during the
+    // import process, System.currentTime...() may be before startTime.
+    // Since all entries in the database whose Last-Update is before
+    // startTime will be deleted, we must ensure that the Last-Update is
+    // not before startTime.
+    long updateTimeSec = Math.max(System.currentTimeMillis() / 1000, startTimeSec);
+
+    Connection conn = datasource.getConnection();
+    PreparedStatement psDelete = null;
+    PreparedStatement psInsert = null;
+    PreparedStatement psUpdate = null;
+    long[] unchangedIds = new long[revokedCerts.size()];
+    int numUnchanged = 0;
+
+    String sql = null;
+    boolean autoCommitChanged = false;
+    try {
+      if (conn.getAutoCommit()) {
+        conn.setAutoCommit(false);
+        autoCommitChanged = true;
+      }
+
+      Map<BigInteger, CertInfo> existingCertInfos = getCertInfos(conn, caId, revokedCerts);
+
+      for (RevokedCert revCert : revokedCerts) {
+        BigInteger serial = revCert.getSerialNumber();
+        int reason = revCert.getReason();
+        long rt = revCert.getRevocationDate();
+        long rit = revCert.getInvalidityDate();
+
+        if (reason == CrlReason.REMOVE_FROM_CRL.getCode()) {
+          if (isDeltaCrl) {
+            // delete the entry
+            sql = SQL_DELETE_CERT;
+            if (psDelete == null) {
+              psDelete = datasource.prepareStatement(conn, sql);
+            }
+            psDelete.setInt(1, caId);
+            psDelete.setString(2, serial.toString(16));
+            psDelete.addBatch();
+          } else {
+            LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+          }
+          continue;
+        }
+
+        CertInfo existingCertInfo = existingCertInfos.get(serial);
+
+        if (existingCertInfo == null) {
+          sql = SQL_INSERT_CERT_REV;
+          if (psInsert == null) {
+            psInsert = datasource.prepareStatement(conn, sql);
+          }
+          PreparedStatement ps = psInsert;
+          int offset = 1;
+
+          ps.setLong(offset++, maxId.incrementAndGet());
+          ps.setInt(offset++, caId);
+          ps.setString(offset++, serial.toString(16));
+          ps.setInt(offset++, 1);
+          ps.setInt(offset++, reason);
+          ps.setLong(offset++, rt);
+          if (rit != 0) {
+            ps.setLong(offset++, rit);
+          } else {
+            ps.setNull(offset++, Types.BIGINT);
+          }
+          ps.setLong(offset++, updateTimeSec);
+          ps.setInt(offset, crlInfoId);
+          ps.addBatch();
+        } else if (existingCertInfo.isDifferent(revCert, crlInfoId)) {
+          sql = SQL_UPDATE_CERT_REV;
+          if (psUpdate == null) {
+            psUpdate = datasource.prepareStatement(conn, sql);
+          }
+          PreparedStatement ps = psUpdate;
+          int offset = 1;
+
+          ps.setInt(offset++, 1);
+          ps.setInt(offset++, reason);
+          ps.setLong(offset++, rt);
+          if (rit != 0) {
+            ps.setLong(offset++, rit);
+          } else {
+            ps.setNull(offset++, Types.BIGINT);
+          }
+          ps.setLong(offset++, updateTimeSec);
+          ps.setInt(offset++, crlInfoId);
+          ps.setLong(offset, existingCertInfo.id);
+          ps.addBatch();
+        } else {
+          // not changed, no need to write it
+          unchangedIds[numUnchanged++] = existingCertInfo.id;
+        }
+      }
+
+      sql = "executeBatch";
+      for (PreparedStatement ps : new PreparedStatement[]{psDelete, psInsert, psUpdate}) {
+        if (ps != null) {
+          ps.executeBatch();
+        }
+      }
+      conn.commit();
+
+      if (unchangedIdsList != null && numUnchanged > 0) {
+        unchangedIdsList.add(Arrays.copyOf(unchangedIds, numUnchanged));
+      }
+    } catch (SQLException ex) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex2) {
+        LOG.warn("could not rollback: {}", ex2.getMessage());
+      }
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(psDelete, null);
+      releaseResources(psInsert, null);
+      releaseResources(psUpdate, null);
+
+      if (autoCommitChanged) {
+        try {
+          conn.setAutoCommit(true);
+        } catch (SQLException ex) {
+          LOG.warn("could not set autoCommit: {}", ex.getMessage());
+        }
+      }
+      datasource.returnConnection(conn);
+    }
+  } // method writeRevokedCertificates
+
+  /**
+   * Retrieves the existing entries of the certificates with IN-list queries. The list is
+   * padded to {@link #NUM_SERIALS_PER_SELECT} placeholders, so that only one SQL statement
+   * is used.
+   */
+  private Map<BigInteger, CertInfo> getCertInfos(Connection conn, int caId,
+      List<RevokedCert> revokedCerts)
+          throws DataAccessException {
+    Map<BigInteger, CertInfo> certInfos = new HashMap<>();
+    final String sql = sqlSelectCertInfos;
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+    ResultSet rs = null;
+    try {
+      for (int from = 0; from < revokedCerts.size(); from += NUM_SERIALS_PER_SELECT) {
+        int to = Math.min(from + NUM_SERIALS_PER_SELECT, revokedCerts.size());
+        int idx = 1;
+        ps.setInt(idx++, caId);
+        for (int i = 0; i < NUM_SERIALS_PER_SELECT; i++) {
+          BigInteger serial = revokedCerts.get(Math.min(from + i, to - 1)).getSerialNumber();
+          ps.setString(idx++, serial.toString(16));
+        }
+
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          CertInfo ci = new CertInfo();
+          ci.crlId = rs.getInt("CRL_ID");
+          ci.id = rs.getLong("ID");
+          ci.invalidityTime = rs.getLong("RIT");
+          ci.revocationReason = rs.getInt("RR");
+          ci.revocationTime = rs.getLong("RT");
+          ci.revoked = rs.getBoolean("REV");
+          certInfos.put(new BigInteger(rs.getString("SN"), 16), ci);
+        }
+        releaseResources(null, rs);
+        rs = null;
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(ps, rs);
+    }
+
+    return certInfos;
+  } // method getCertInfos
+
   private static X509Cert parseCert(File certFile)
       throws ImportCrlException {
     try {
@@ -1182,10 +1551,23 @@ class ImportCrl {
     LOG.info(" Imported certificate by serial number {}", serialNumber);
   } // method addCertificateBySerialNumber
 
-  private void deleteEntriesNotUpdatedSince(Connection conn, int crlInfoId, long timeSec)
-      throws DataAccessException {
-    // remove the unmodified entries
-    String sql = "DELETE FROM CERT WHERE CRL_ID=" + crlInfoId + " AND LUPDATE<" + timeSec;
+  /**
+   * Deletes the entries of the CRL which are neither refreshed nor unchanged.
+   *
+   * @param conn The database connection.
+   * @param crlInfoId ID of the CRL.
+   * @param timeSec Start time of the import.
+   * @param unchangedIds Sorted IDs of the unchanged revoked entries, or {@code null} if the
+   *     revoked entries have not been imported.
+   * @throws DataAccessException
+   *         If database exception occurs.
+   */
+  private void deleteEntriesNotUpdatedSince(Connection conn, int crlInfoId, long timeSec,
+      long[] unchangedIds)
+          throws DataAccessException {
+    // remove the unmodified entries of the certificates which are not revoked.
+    String sql = "DELETE FROM CERT WHERE CRL_ID=" + crlInfoId + " AND REV=0 AND LUPDATE<"
+        + timeSec;
     Statement stmt = datasource.createStatement(conn);
     try {
       stmt.executeUpdate(sql);
@@ -1194,6 +1576,52 @@ class ImportCrl {
     } finally {
       releaseResources(stmt, null);
     }
+
+    if (unchangedIds == null) {
+      return;
+    }
+
+    // the revoked entries which are not written are either unchanged or removed from CRL.
+    // The set difference is always computed, since the unchanged IDs may contain entries
+    // with LUPDATE not before timeSec, e.g. if a resumed import has written them.
+    List<Long> removedIds = new LinkedList<>();
+    sql = "SELECT ID FROM CERT WHERE CRL_ID=" + crlInfoId + " AND REV=1 AND LUPDATE<" + timeSec;
+    stmt = datasource.createStatement(conn);
+    ResultSet rs = null;
+    try {
+      rs = stmt.executeQuery(sql);
+      while (rs.next()) {
+        long id = rs.getLong(1);
+        if (Arrays.binarySearch(unchangedIds, id) < 0) {
+          removedIds.add(id);
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(stmt, rs);
+    }
+
+    sql = "DELETE FROM CERT WHERE ID=?";
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+    try {
+      int num = 0;
+      for (Long id : removedIds) {
+        ps.setLong(1, id);
+        ps.addBatch();
+        if (++num % sqlBatchCommit == 0) {
+          ps.executeBatch();
+          commit(conn);
+        }
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseResources(ps, null);
+    }
+
+    LOG.info("deleted {} entries removed from the CRL", removedIds.size());
   } // method deleteEntriesNotUpdatedSince
 
   private void releaseResources(Statement ps, ResultSet rs) {
@@ -31,6 +31,7 @@ import org.xipki.security.SignAlgo;
 import org.xipki.security.X509Cert;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Base64;
+import org.xipki.util.HealthCheckResult;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 import org.xipki.util.Validity;
@@ -44,8 +45,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -83,6 +86,28 @@ public class ResponseCacher implements Closeable {
   private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET GENERATED_AT=?,"
       + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
 
+  private static final int WARMUP_PAGE_SIZE = 1000;
+
+  // number of the IDs in the query of the existing responses, unused places are padded.
+  private static final int SELECT_IDS_SIZE = 50;
+
+  private static final String SQL_SELECT_IDS;
+
+  // maximal time to wait for free space in the write-behind queue for blocking callers.
+  private static final long MS_OFFER_TIMEOUT = 10000;
+
+  // a dropped response is logged only once for so many dropped responses.
+  private static final long DROPPED_LOG_INTERVAL = 1000;
+
+  static {
+    StringBuilder sb = new StringBuilder(40 + 2 * SELECT_IDS_SIZE);
+    sb.append("SELECT ID FROM OCSP WHERE ID IN (?");
+    for (int i = 1; i < SELECT_IDS_SIZE; i++) {
+      sb.append(",?");
+    }
+    SQL_SELECT_IDS = sb.append(")").toString();
+  }
+
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
   private class IssuerUpdater implements Runnable {
@@ -117,6 +142,14 @@ public class ResponseCacher implements Closeable {
         long minNextUpdate = now + SEC_NEXT_UPDATE_BUFFER;
 
         try {
+          if (memoryCache != null) {
+            int num0 = memoryCache.removeExpired(maxGeneratedAt, minNextUpdate);
+            if (num0 > 0) {
+              LOG.info("removed {} from the memory cache", num0 == 1 ? "1 response"
+                  : num0 + " responses");
+            }
+          }
+
           int num1 = removeExpiredResponses(maxGeneratedAt, minNextUpdate);
           if (num1 > 0 && LOG.isInfoEnabled()) {
             LOG.info("removed {} with thisUpdate < {} ({}) OR nextUpdate < {} ({})",
@@ -138,6 +171,8 @@ public class ResponseCacher implements Closeable {
 
   private final String sqlSelectOcsp;
 
+  private final String sqlSelectOcspValidity;
+
   private final boolean master;
 
   // validity in seconds
@@ -157,6 +192,12 @@ public class ResponseCacher implements Closeable {
 
   private final AtomicInteger cachedIssuerId = new AtomicInteger(0);
 
+  private ResponseMemoryCache memoryCache;
+
+  private boolean warmUpMemoryCache;
+
+  private ResponseWriteBehind writeBehind;
+
   public ResponseCacher(DataSourceWrapper datasource, boolean master, Validity validity) {
     this.datasource = notNull(datasource, "datasource");
     this.master = master;
@@ -164,6 +205,8 @@ public class ResponseCacher implements Closeable {
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,GENERATED_AT,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
+    this.sqlSelectOcspValidity = datasource.buildSelectFirstSql(1,
+        "IID,IDENT,GENERATED_AT,NEXT_UPDATE FROM OCSP WHERE ID=?");
     this.onService = new AtomicBoolean(false);
 
     this.idDigesters = new ConcurrentBag<>();
@@ -177,9 +220,49 @@ public class ResponseCacher implements Closeable {
     return onService.get();
   }
 
+  /**
+   * Activates the in-memory tier in front of the cache database. Must be called before
+   * {@link #init()}.
+   *
+   * @param maxSize
+   *          Maximal size of the responses cached in memory, in bytes.
+   * @param warmUp
+   *          Whether to load the valid responses from the cache database during the
+   *          initialization.
+   */
+  public void setMemoryCache(int maxSize, boolean warmUp) {
+    this.memoryCache = new ResponseMemoryCache(maxSize);
+    this.warmUpMemoryCache = warmUp;
+  }
+
+  /**
+   * Activates the asynchronous writing of the responses to the cache database. Must be
+   * called before {@link #init()}.
+   *
+   * @param queueSize
+   *          Maximal number of pending responses. Further responses will be dropped.
+   * @param batchSize
+   *          Maximal number of responses written in one batch.
+   */
+  public void setWriteBehind(int queueSize, int batchSize) {
+    this.writeBehind = new ResponseWriteBehind(this, queueSize, batchSize);
+  }
+
   public void init() {
     updateCacheStore();
 
+    if (writeBehind != null) {
+      writeBehind.start();
+    }
+
+    if (memoryCache != null && warmUpMemoryCache) {
+      try {
+        warmUpMemoryCache();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not warm up the memory cache");
+      }
+    }
+
     scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
     scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
 
@@ -194,6 +277,15 @@ public class ResponseCacher implements Closeable {
 
   @Override
   public void close() {
+    if (writeBehind != null) {
+      // write the pending responses before the datasource is closed
+      writeBehind.close();
+    }
+
+    if (memoryCache != null) {
+      memoryCache.clear();
+    }
+
     if (datasource != null) {
       datasource.close();
       datasource = null;
@@ -275,11 +367,47 @@ public class ResponseCacher implements Closeable {
     }
   } // method storeIssuer
 
+  public HealthCheckResult getMemoryCacheHealth() {
+    return memoryCache == null ? null : memoryCache.healthCheck();
+  }
+
+  public HealthCheckResult getWriteBehindHealth() {
+    return writeBehind == null ? null : writeBehind.healthCheck();
+  }
+
+  /**
+   * Gets the cached response.
+   *
+   * @param issuerId
+   *          Issuer ID in the cache database.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param sigAlgo
+   *          Signature algorithm of the response.
+   * @param certHashAlgo
+   *          Hash algorithm of the CertID in the request, the response contains the CertID
+   *          with the same algorithm.
+   * @return the cached response, or {@code null} if not cached or outdated.
+   * @throws DataAccessException
+   *           If error occurs while reading the database.
+   */
   public OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
-      SignAlgo sigAlgo)
+      SignAlgo sigAlgo, HashAlgo certHashAlgo)
           throws DataAccessException {
+    byte[] identBytes = buildIdent(serialNumber, sigAlgo, certHashAlgo);
+
+    ResponseMemoryCache.Key memKey = null;
+    if (memoryCache != null) {
+      long nowInSec = System.currentTimeMillis() / 1000;
+      memKey = new ResponseMemoryCache.Key(issuerId, identBytes);
+      OcspRespWithCacheInfo resp = memoryCache.get(memKey,
+          nowInSec + SEC_NEXT_UPDATE_BUFFER, nowInSec - validity);
+      if (resp != null) {
+        return resp;
+      }
+    }
+
     final String sql = sqlSelectOcsp;
-    byte[] identBytes = buildIdent(serialNumber, sigAlgo);
     long id = deriveId(issuerId, identBytes);
     PreparedStatement ps = datasource.prepareStatement(sql);
     ResultSet rs = null;
@@ -315,6 +443,10 @@ public class ResponseCacher implements Closeable {
       long generatedAt = rs.getLong("GENERATED_AT");
       String b64Resp = rs.getString("RESP");
       byte[] resp = Base64.decodeFast(b64Resp);
+      if (memKey != null) {
+        return memoryCache.put(memKey, generatedAt, nextUpdate == 0 ? null : nextUpdate, resp);
+      }
+
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(generatedAt);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
@@ -327,8 +459,88 @@ public class ResponseCacher implements Closeable {
     }
   } // method getOcspResponse
 
+  /**
+   * Checks whether a cached response, which will still be valid at the given time, exists.
+   *
+   * @param issuerId
+   *          Issuer ID in the cache database.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param sigAlgo
+   *          Signature algorithm of the response.
+   * @param certHashAlgo
+   *          Hash algorithm of the CertID in the response.
+   * @param time
+   *          Time in seconds since January 1, 1970, 00:00:00 GMT.
+   * @return whether a cached response valid at the given time exists.
+   * @throws DataAccessException
+   *           If error occurs while reading the database.
+   */
+  public boolean isCachedUntil(int issuerId, BigInteger serialNumber, SignAlgo sigAlgo,
+      HashAlgo certHashAlgo, long time)
+          throws DataAccessException {
+    final String sql = sqlSelectOcspValidity;
+    byte[] identBytes = buildIdent(serialNumber, sigAlgo, certHashAlgo);
+    long id = deriveId(issuerId, identBytes);
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+
+    try {
+      ps.setLong(1, id);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return false;
+      }
+
+      if (rs.getInt("IID") != issuerId
+          || !Base64.encodeToString(identBytes).equals(rs.getString("IDENT"))) {
+        return false;
+      }
+
+      long nextUpdate = rs.getLong("NEXT_UPDATE");
+      if (nextUpdate != 0 && nextUpdate < time + SEC_NEXT_UPDATE_BUFFER) {
+        return false;
+      }
+
+      return rs.getLong("GENERATED_AT") >= time - validity;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method isCachedUntil
+
   public void storeOcspResponse(int issuerId, BigInteger serialNumber, long generatedAt,
-      Long nextUpdate, SignAlgo sigAlgo, byte[] response) {
+      Long nextUpdate, SignAlgo sigAlgo, HashAlgo certHashAlgo, byte[] response) {
+    storeOcspResponse(issuerId, serialNumber, generatedAt, nextUpdate, sigAlgo, certHashAlgo,
+        response, false);
+  }
+
+  /**
+   * Saves the response in the cache.
+   *
+   * @param issuerId
+   *          Issuer ID in the cache database.
+   * @param serialNumber
+   *          Serial number of the certificate.
+   * @param generatedAt
+   *          Time in seconds since January 1, 1970, 00:00:00 GMT when the response is generated.
+   * @param nextUpdate
+   *          Time in seconds since January 1, 1970, 00:00:00 GMT of the nextUpdate, may be null.
+   * @param sigAlgo
+   *          Signature algorithm of the response.
+   * @param certHashAlgo
+   *          Hash algorithm of the CertID in the response.
+   * @param response
+   *          The encoded response.
+   * @param blocking
+   *          Whether to wait for free space if the write-behind queue is full, and to write
+   *          the response directly if there is still no free space, instead of dropping it.
+   *          Used by the callers which can be slowed down, e.g. the pre-generation.
+   */
+  public void storeOcspResponse(int issuerId, BigInteger serialNumber, long generatedAt,
+      Long nextUpdate, SignAlgo sigAlgo, HashAlgo certHashAlgo, byte[] response,
+      boolean blocking) {
     long nowInSec = System.currentTimeMillis() / 1000;
     if (nextUpdate == null) {
       nextUpdate = nowInSec + SEC_DFLT_NEXT_UPDATE_DURATION;
@@ -338,67 +550,220 @@ public class ResponseCacher implements Closeable {
       return;
     }
 
-    byte[] identBytes = buildIdent(serialNumber, sigAlgo);
+    byte[] identBytes = buildIdent(serialNumber, sigAlgo, certHashAlgo);
+    if (memoryCache != null) {
+      memoryCache.put(new ResponseMemoryCache.Key(issuerId, identBytes),
+          generatedAt, nextUpdate, response);
+    }
+
     String ident = Base64.encodeToString(identBytes);
+    long id = deriveId(issuerId, identBytes);
+
+    if (writeBehind != null) {
+      ResponseWriteBehind.PendingResponse pending = new ResponseWriteBehind.PendingResponse(
+          id, issuerId, ident, generatedAt, nextUpdate, response);
+      if (writeBehind.offer(pending, blocking ? MS_OFFER_TIMEOUT : 0)) {
+        return;
+      }
+
+      if (!blocking) {
+        long dropped = writeBehind.getDropped();
+        if (dropped % DROPPED_LOG_INTERVAL == 1) {
+          LOG.warn("write-behind queue is full, dropped OCSP response iid={}, ident={}, "
+              + "{} responses dropped in total", issuerId, ident, dropped);
+        }
+        return;
+      }
+      // write the response directly
+    }
+
     try {
-      long id = deriveId(issuerId, identBytes);
+      storeOcspResponse0(id, issuerId, ident, generatedAt, nextUpdate, response);
+    } catch (DataAccessException ex) {
+      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
+      }
+    }
+  } // method storeOcspResponse
 
-      Connection conn = datasource.getConnection();
+  private void storeOcspResponse0(long id, int issuerId, String ident, long generatedAt,
+      long nextUpdate, byte[] response)
+          throws DataAccessException {
+    Connection conn = datasource.getConnection();
+    try {
+      storeOcspResponse0(conn, id, issuerId, ident, generatedAt, nextUpdate, response);
+    } finally {
+      datasource.returnConnection(conn);
+    }
+  } // method storeOcspResponse0
+
+  private void storeOcspResponse0(Connection conn, long id, int issuerId, String ident,
+      long generatedAt, long nextUpdate, byte[] response)
+          throws DataAccessException {
+    String sql = SQL_ADD_RESP;
+    PreparedStatement ps = datasource.prepareStatement(conn, sql);
+
+    String b64Response = Base64.encodeToString(response);
+    Boolean dataIntegrityViolationException = null;
+    try {
+      int idx = 1;
+      ps.setLong(idx++, id);
+      ps.setInt(idx++, issuerId);
+      ps.setString(idx++, ident);
+      ps.setLong(idx++, generatedAt);
+      ps.setLong(idx++, nextUpdate);
+      ps.setString(idx, b64Response);
+      ps.execute();
+    } catch (SQLException ex) {
+      DataAccessException dex = datasource.translate(sql, ex);
+      if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
+        dataIntegrityViolationException = Boolean.TRUE;
+      } else {
+        throw dex;
+      }
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+
+    if (dataIntegrityViolationException == null) {
+      LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
+      return;
+    }
+
+    sql = SQL_UPDATE_RESP;
+    ps = datasource.prepareStatement(conn, sql);
+    try {
+      int idx = 1;
+      ps.setLong(idx++, generatedAt);
+      ps.setLong(idx++, nextUpdate);
+      ps.setString(idx++, b64Response);
+      ps.setLong(idx, id);
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null, false);
+    }
+  } // method storeOcspResponse0
+
+  /**
+   * Writes the responses in batches: the existing responses are updated, and the others
+   * are inserted. Used by the {@link ResponseWriteBehind}.
+   *
+   * @param responses
+   *          Responses to be written, with distinct IDs.
+   * @throws DataAccessException
+   *           If database error occurs.
+   */
+  void writeOcspResponses(List<ResponseWriteBehind.PendingResponse> responses)
+      throws DataAccessException {
+    if (responses.isEmpty()) {
+      return;
+    }
+
+    Connection conn = datasource.getConnection();
+    try {
+      // find the responses which are already in the database. The query has always
+      // SELECT_IDS_SIZE places, so that only one statement is prepared.
+      String sql = SQL_SELECT_IDS;
+      Set<Long> existingIds = new HashSet<>();
+      PreparedStatement ps = datasource.prepareStatement(conn, sql);
+      ResultSet rs = null;
       try {
-        String sql = SQL_ADD_RESP;
-        PreparedStatement ps = datasource.prepareStatement(conn, sql);
+        final int size = responses.size();
+        for (int off = 0; off < size; off += SELECT_IDS_SIZE) {
+          int end = Math.min(size, off + SELECT_IDS_SIZE);
+          for (int i = 0; i < SELECT_IDS_SIZE; i++) {
+            // pad with the last ID
+            ps.setLong(i + 1, responses.get(Math.min(off + i, end - 1)).id);
+          }
 
-        String b64Response = Base64.encodeToString(response);
-        Boolean dataIntegrityViolationException = null;
-        try {
-          int idx = 1;
-          ps.setLong(idx++, id);
-          ps.setInt(idx++, issuerId);
-          ps.setString(idx++, ident);
-          ps.setLong(idx++, generatedAt);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx, b64Response);
-          ps.execute();
-        } catch (SQLException ex) {
-          DataAccessException dex = datasource.translate(sql, ex);
-          if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
-            dataIntegrityViolationException = Boolean.TRUE;
-          } else {
-            throw dex;
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            existingIds.add(rs.getLong(1));
           }
-        } finally {
-          datasource.releaseResources(ps, null, false);
+          rs.close();
+          rs = null;
         }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs, false);
+      }
 
-        if (dataIntegrityViolationException == null) {
-          LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
-          return;
+      List<ResponseWriteBehind.PendingResponse> newResponses = new ArrayList<>(responses.size());
+      List<ResponseWriteBehind.PendingResponse> updatedResponses = new ArrayList<>();
+      for (ResponseWriteBehind.PendingResponse m : responses) {
+        if (existingIds.contains(m.id)) {
+          updatedResponses.add(m);
+        } else {
+          newResponses.add(m);
         }
+      }
 
+      if (!updatedResponses.isEmpty()) {
         sql = SQL_UPDATE_RESP;
         ps = datasource.prepareStatement(conn, sql);
         try {
-          int idx = 1;
-          ps.setLong(idx++, generatedAt);
-          ps.setLong(idx++, nextUpdate);
-          ps.setString(idx++, b64Response);
-          ps.setLong(idx, id);
-          ps.executeUpdate();
+          for (ResponseWriteBehind.PendingResponse m : updatedResponses) {
+            int idx = 1;
+            ps.setLong(idx++, m.generatedAt);
+            ps.setLong(idx++, m.nextUpdate);
+            ps.setString(idx++, Base64.encodeToString(m.response));
+            ps.setLong(idx, m.id);
+            ps.addBatch();
+          }
+          ps.executeBatch();
         } catch (SQLException ex) {
           throw datasource.translate(sql, ex);
         } finally {
           datasource.releaseResources(ps, null, false);
         }
-      } finally {
-        datasource.returnConnection(conn);
       }
-    } catch (DataAccessException ex) {
-      LOG.info("could not cache OCSP response iid={}, ident={}", issuerId, ident);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("could not cache OCSP response iid=" + issuerId + ", ident=" + ident, ex);
+
+      if (!newResponses.isEmpty()) {
+        sql = SQL_ADD_RESP;
+        ps = datasource.prepareStatement(conn, sql);
+        boolean batchFailed = false;
+        try {
+          for (ResponseWriteBehind.PendingResponse m : newResponses) {
+            int idx = 1;
+            ps.setLong(idx++, m.id);
+            ps.setInt(idx++, m.issuerId);
+            ps.setString(idx++, m.ident);
+            ps.setLong(idx++, m.generatedAt);
+            ps.setLong(idx++, m.nextUpdate);
+            ps.setString(idx, Base64.encodeToString(m.response));
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        } catch (SQLException ex) {
+          DataAccessException dex = datasource.translate(sql, ex);
+          if (dex.getReason().isDescendantOrSelfOf(Reason.DataIntegrityViolation)) {
+            // some responses have been added in the meantime
+            batchFailed = true;
+          } else {
+            throw dex;
+          }
+        } finally {
+          datasource.releaseResources(ps, null, false);
+        }
+
+        if (batchFailed) {
+          for (ResponseWriteBehind.PendingResponse m : newResponses) {
+            storeOcspResponse0(conn, m.id, m.issuerId, m.ident, m.generatedAt, m.nextUpdate,
+                m.response);
+          }
+        }
       }
+
+      LOG.debug("wrote {} cached OCSP responses ({} updated)",
+          responses.size(), updatedResponses.size());
+    } finally {
+      datasource.returnConnection(conn);
     }
-  } // method storeOcspResponse
+  } // method writeOcspResponses
 
   private int removeExpiredResponses(long maxGeneratedAt, long minNextUpdate)
       throws DataAccessException {
@@ -416,6 +781,68 @@ public class ResponseCacher implements Closeable {
     }
   } // method removeExpiredResponses
 
+  private void warmUpMemoryCache()
+      throws DataAccessException {
+    long start = System.currentTimeMillis();
+    long nowInSec = start / 1000;
+    long minNextUpdate = nowInSec + SEC_NEXT_UPDATE_BUFFER;
+    long minGeneratedAt = nowInSec - validity;
+
+    final String sql = datasource.buildSelectFirstSql(WARMUP_PAGE_SIZE, "ID ASC",
+        "ID,IID,IDENT,GENERATED_AT,NEXT_UPDATE,RESP FROM OCSP WHERE ID>? AND NEXT_UPDATE>?");
+
+    int num = 0;
+    long lastId = -1;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      while (true) {
+        ps.setLong(1, lastId);
+        ps.setLong(2, minNextUpdate);
+        rs = ps.executeQuery();
+
+        int numInPage = 0;
+        while (rs.next()) {
+          numInPage++;
+          lastId = rs.getLong("ID");
+          long generatedAt = rs.getLong("GENERATED_AT");
+          if (generatedAt < minGeneratedAt) {
+            continue;
+          }
+
+          byte[] identBytes = Base64.decodeFast(rs.getString("IDENT"));
+          if (identBytes.length < 2 || (identBytes[1] & 0x80) == 0) {
+            // identifier without the CertID hash algorithm, written by older versions.
+            continue;
+          }
+
+          byte[] resp = Base64.decodeFast(rs.getString("RESP"));
+          memoryCache.put(new ResponseMemoryCache.Key(rs.getInt("IID"), identBytes),
+              generatedAt, rs.getLong("NEXT_UPDATE"), resp);
+          num++;
+        }
+        datasource.releaseResources(null, rs, false);
+        rs = null;
+
+        if (numInPage < WARMUP_PAGE_SIZE) {
+          break;
+        }
+
+        if (memoryCache.isFull()) {
+          LOG.info("memory cache is full, stop warming up");
+          break;
+        }
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    LOG.info("warmed up the memory cache with {} responses in {} ms, {} bytes in use",
+        num, System.currentTimeMillis() - start, memoryCache.size());
+  } // method warmUpMemoryCache
+
   private void updateCacheStore() {
     boolean stillOnService = updateCacheStore0();
     this.onService.set(stillOnService);
@@ -498,13 +925,53 @@ public class ResponseCacher implements Closeable {
     return true;
   } // method updateCacheStore0
 
-  private static byte[] buildIdent(BigInteger serialNumber, SignAlgo sigAlgo) {
+  /**
+   * Builds the identifier SIG_ALG | CERTHASH_ALG | serial number of the response.
+   * The codes of CERTHASH_ALG have the highest bit set. Since the encoded positive serial
+   * number never starts with such a byte, the identifiers without CERTHASH_ALG written by
+   * older versions cannot equal any identifier built here.
+   */
+  private static byte[] buildIdent(BigInteger serialNumber, SignAlgo sigAlgo,
+      HashAlgo certHashAlgo) {
     byte[] snBytes = serialNumber.toByteArray();
-    byte[] bytes = new byte[1 + snBytes.length];
+    byte[] bytes = new byte[2 + snBytes.length];
     bytes[0] = sigAlgo.getCode();
-    System.arraycopy(snBytes, 0, bytes, 1, snBytes.length);
+    bytes[1] = getCertHashAlgoCode(certHashAlgo);
+    System.arraycopy(snBytes, 0, bytes, 2, snBytes.length);
     return bytes;
-  }
+  } // method buildIdent
+
+  private static byte getCertHashAlgoCode(HashAlgo hashAlgo) {
+    notNull(hashAlgo, "hashAlgo");
+    switch (hashAlgo) {
+      case SHA1:
+        return (byte) 0x81;
+      case SHA224:
+        return (byte) 0x82;
+      case SHA256:
+        return (byte) 0x83;
+      case SHA384:
+        return (byte) 0x84;
+      case SHA512:
+        return (byte) 0x85;
+      case SHA3_224:
+        return (byte) 0x86;
+      case SHA3_256:
+        return (byte) 0x87;
+      case SHA3_384:
+        return (byte) 0x88;
+      case SHA3_512:
+        return (byte) 0x89;
+      case SM3:
+        return (byte) 0x8A;
+      case SHAKE128:
+        return (byte) 0x8B;
+      case SHAKE256:
+        return (byte) 0x8C;
+      default:
+        throw new IllegalArgumentException("unknown HashAlgo " + hashAlgo);
+    }
+  } // method getCertHashAlgoCode
 
   private long deriveId(int issuerId, byte[] identBytes) {
     ConcurrentBagEntry<Digest> digest0 = null;
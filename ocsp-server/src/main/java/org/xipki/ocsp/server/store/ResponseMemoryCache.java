@@ -0,0 +1,264 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo.ResponseCacheInfo;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * In-memory tier of the {@link ResponseCacher}. The entries are bounded by the total size
+ * of the encoded responses, and are evicted in LRU order or once they are expired.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class ResponseMemoryCache {
+
+  static final class Key {
+
+    private final int issuerId;
+
+    private final byte[] ident;
+
+    private final int hashCode;
+
+    Key(int issuerId, byte[] ident) {
+      this.issuerId = issuerId;
+      this.ident = notNull(ident, "ident");
+      this.hashCode = 31 * issuerId + Arrays.hashCode(ident);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return issuerId == other.issuerId && Arrays.equals(ident, other.ident);
+    }
+
+  } // class Key
+
+  private static final class Entry {
+
+    private final long generatedAt;
+
+    // 0 if not present
+    private final long nextUpdate;
+
+    // shared by all hits, so that the ETag is computed only once.
+    private final OcspRespWithCacheInfo response;
+
+    Entry(long generatedAt, long nextUpdate, OcspRespWithCacheInfo response) {
+      this.generatedAt = generatedAt;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class Entry
+
+  private static final class Segment extends LruCache<Key, Entry> {
+
+    Segment(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(Key key, Entry value) {
+      // approximated memory footprint of the key and value objects
+      return 64 + key.ident.length + value.response.getResponse().length;
+    }
+
+  } // class Segment
+
+  private static final int NUM_SEGMENTS = 16;
+
+  private final Segment[] segments;
+
+  private final int maxSize;
+
+  private final AtomicLong hits = new AtomicLong(0);
+
+  private final AtomicLong misses = new AtomicLong(0);
+
+  private final AtomicLong expired = new AtomicLong(0);
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal size of the cached responses in bytes.
+   */
+  ResponseMemoryCache(int maxSize) {
+    this.maxSize = positive(maxSize, "maxSize");
+    int segmentSize = Math.max(1, maxSize / NUM_SEGMENTS);
+    this.segments = new Segment[NUM_SEGMENTS];
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+  }
+
+  /**
+   * Gets the cached response.
+   * @param key
+   *          Key of the response.
+   * @param minNextUpdate
+   *          Minimal nextUpdate (in seconds). Responses with nextUpdate before it are
+   *          considered as expired.
+   * @param minGeneratedAt
+   *          Minimal generatedAt (in seconds). Responses generated before it are considered
+   *          as expired.
+   * @return the cached response, or {@code null} if not cached or expired.
+   */
+  OcspRespWithCacheInfo get(Key key, long minNextUpdate, long minGeneratedAt) {
+    Segment segment = segment(key);
+    Entry entry = segment.get(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    if (isExpired(entry, minNextUpdate, minGeneratedAt)) {
+      segment.remove(key);
+      expired.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry.response;
+  } // method get
+
+  /**
+   * Adds the response to the cache.
+   * @return the cached response.
+   */
+  OcspRespWithCacheInfo put(Key key, long generatedAt, Long nextUpdate, byte[] response) {
+    ResponseCacheInfo cacheInfo = new ResponseCacheInfo(generatedAt);
+    if (nextUpdate != null && nextUpdate != 0) {
+      cacheInfo.setNextUpdate(nextUpdate);
+    }
+
+    OcspRespWithCacheInfo cachedResponse = new OcspRespWithCacheInfo(response, cacheInfo);
+    Entry entry = new Entry(generatedAt, nextUpdate == null ? 0 : nextUpdate, cachedResponse);
+    segment(key).put(key, entry);
+    return cachedResponse;
+  } // method put
+
+  /**
+   * Removes the expired responses.
+   * @param maxGeneratedAt
+   *          Responses generated before it will be removed.
+   * @param minNextUpdate
+   *          Responses with nextUpdate before it will be removed.
+   * @return number of removed responses.
+   */
+  int removeExpired(long maxGeneratedAt, long minNextUpdate) {
+    int num = 0;
+    for (Segment segment : segments) {
+      for (Map.Entry<Key, Entry> m : segment.snapshot().entrySet()) {
+        if (isExpired(m.getValue(), minNextUpdate, maxGeneratedAt)) {
+          segment.remove(m.getKey());
+          num++;
+        }
+      }
+    }
+
+    expired.addAndGet(num);
+    return num;
+  } // method removeExpired
+
+  void clear() {
+    for (Segment segment : segments) {
+      segment.evictAll();
+    }
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * Whether the cache is (nearly) full, so that adding further entries would only evict the
+   * existing ones.
+   * @return whether the cache is full.
+   */
+  boolean isFull() {
+    return size() >= (int) (maxSize * 0.9);
+  }
+
+  HealthCheckResult healthCheck() {
+    int evictions = 0;
+    for (Segment segment : segments) {
+      evictions += segment.evictionCount();
+    }
+
+    long hitCount = hits.get();
+    long missCount = misses.get();
+    long accesses = hitCount + missCount;
+
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("ResponseMemoryCache");
+    result.setHealthy(true);
+    Map<String, Object> statuses = result.getStatuses();
+    statuses.put("maxSize", maxSize);
+    statuses.put("size", size());
+    statuses.put("hits", hitCount);
+    statuses.put("misses", missCount);
+    statuses.put("hitRate", accesses == 0 ? 0 : (100 * hitCount / accesses));
+    statuses.put("expired", expired.get());
+    statuses.put("evictions", evictions);
+    return result;
+  } // method healthCheck
+
+  private Segment segment(Key key) {
+    int hash = key.hashCode;
+    hash ^= (hash >>> 16);
+    return segments[hash & (NUM_SEGMENTS - 1)];
+  }
+
+  private static boolean isExpired(Entry entry, long minNextUpdate, long minGeneratedAt) {
+    if (entry.generatedAt < minGeneratedAt) {
+      return true;
+    }
+
+    return entry.nextUpdate != 0 && entry.nextUpdate < minNextUpdate;
+  }
+
+}
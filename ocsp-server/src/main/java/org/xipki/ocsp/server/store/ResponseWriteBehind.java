@@ -0,0 +1,284 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.util.HealthCheckResult;
+import org.xipki.util.LogUtil;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Write-behind queue of the {@link ResponseCacher}. The responses are saved in the cache
+ * database by a dedicated thread in batches. Pending responses with the same key (issuer,
+ * serial number and signature algorithm) are coalesced. If the queue is full, new responses
+ * are dropped, or the caller waits for free space if it uses {@link #offer(PendingResponse,
+ * long)}.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class ResponseWriteBehind implements Runnable, Closeable {
+
+  static final class PendingResponse {
+
+    final long id;
+
+    final int issuerId;
+
+    final String ident;
+
+    final long generatedAt;
+
+    final long nextUpdate;
+
+    final byte[] response;
+
+    PendingResponse(long id, int issuerId, String ident, long generatedAt,
+        long nextUpdate, byte[] response) {
+      this.id = id;
+      this.issuerId = issuerId;
+      this.ident = ident;
+      this.generatedAt = generatedAt;
+      this.nextUpdate = nextUpdate;
+      this.response = response;
+    }
+
+  } // class PendingResponse
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseWriteBehind.class);
+
+  // maximal time to wait for the pending responses to be written while closing.
+  private static final long MS_CLOSE_TIMEOUT = 10000;
+
+  private final ResponseCacher cacher;
+
+  private final int queueSize;
+
+  private final int batchSize;
+
+  // pending responses, keyed by the ID in the table OCSP.
+  private final LinkedHashMap<Long, PendingResponse> pending = new LinkedHashMap<>();
+
+  private final AtomicLong coalesced = new AtomicLong(0);
+
+  private final AtomicLong dropped = new AtomicLong(0);
+
+  private final AtomicLong written = new AtomicLong(0);
+
+  private final AtomicLong failed = new AtomicLong(0);
+
+  private final AtomicLong batches = new AtomicLong(0);
+
+  private final AtomicLong totalBatchLatency = new AtomicLong(0);
+
+  private volatile long lastBatchLatency;
+
+  private volatile boolean closed;
+
+  private Thread writerThread;
+
+  ResponseWriteBehind(ResponseCacher cacher, int queueSize, int batchSize) {
+    this.cacher = notNull(cacher, "cacher");
+    this.queueSize = positive(queueSize, "queueSize");
+    this.batchSize = positive(batchSize, "batchSize");
+  }
+
+  void start() {
+    writerThread = new Thread(this, "ocsp-response-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Adds the response to the queue.
+   * @param response
+   *          Response to be written.
+   * @return whether the response has been accepted.
+   */
+  boolean offer(PendingResponse response) {
+    return offer(response, 0);
+  }
+
+  /**
+   * Adds the response to the queue, waits for free space if the queue is full.
+   * @param response
+   *          Response to be written.
+   * @param timeoutMs
+   *          Maximal time in milliseconds to wait for free space, 0 to not wait.
+   * @return whether the response has been accepted.
+   */
+  boolean offer(PendingResponse response, long timeoutMs) {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (pending) {
+      if (closed) {
+        dropped.incrementAndGet();
+        return false;
+      }
+
+      PendingResponse existing = pending.get(response.id);
+      if (existing != null) {
+        coalesced.incrementAndGet();
+        if (response.generatedAt >= existing.generatedAt) {
+          pending.put(response.id, response);
+        }
+        return true;
+      }
+
+      while (pending.size() >= queueSize) {
+        long waitMs = deadline - System.currentTimeMillis();
+        if (closed || waitMs <= 0) {
+          dropped.incrementAndGet();
+          return false;
+        }
+
+        try {
+          pending.wait(waitMs);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          dropped.incrementAndGet();
+          return false;
+        }
+      }
+
+      pending.put(response.id, response);
+      pending.notifyAll();
+      return true;
+    }
+  } // method offer
+
+  @Override
+  public void run() {
+    while (true) {
+      List<PendingResponse> batch;
+      try {
+        batch = takeBatch();
+      } catch (InterruptedException ex) {
+        LOG.warn("interrupted, {} pending responses are not written", pendingSize());
+        return;
+      }
+
+      if (batch == null) {
+        // closed and all pending responses have been written.
+        return;
+      }
+
+      long start = System.nanoTime();
+      try {
+        cacher.writeOcspResponses(batch);
+        written.addAndGet(batch.size());
+      } catch (Throwable th) {
+        failed.addAndGet(batch.size());
+        LogUtil.warn(LOG, th, "could not write " + batch.size() + " cached OCSP responses");
+      }
+
+      long latency = (System.nanoTime() - start) / 1000000;
+      lastBatchLatency = latency;
+      totalBatchLatency.addAndGet(latency);
+      batches.incrementAndGet();
+    }
+  } // method run
+
+  private List<PendingResponse> takeBatch()
+      throws InterruptedException {
+    synchronized (pending) {
+      while (pending.isEmpty()) {
+        if (closed) {
+          return null;
+        }
+        pending.wait();
+      }
+
+      List<PendingResponse> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+      Iterator<Map.Entry<Long, PendingResponse>> it = pending.entrySet().iterator();
+      while (it.hasNext() && batch.size() < batchSize) {
+        batch.add(it.next().getValue());
+        it.remove();
+      }
+      // wake up the callers waiting for free space
+      pending.notifyAll();
+      return batch;
+    }
+  } // method takeBatch
+
+  long getDropped() {
+    return dropped.get();
+  }
+
+  int pendingSize() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * Stops accepting new responses, and waits until the pending responses are written.
+   */
+  @Override
+  public void close() {
+    synchronized (pending) {
+      closed = true;
+      pending.notifyAll();
+    }
+
+    if (writerThread != null) {
+      try {
+        writerThread.join(MS_CLOSE_TIMEOUT);
+      } catch (InterruptedException ex) {
+        LOG.error("interrupted: {}", ex.getMessage());
+      }
+
+      if (writerThread.isAlive()) {
+        LOG.warn("{} pending responses are not written", pendingSize());
+        writerThread.interrupt();
+      }
+      writerThread = null;
+    }
+  } // method close
+
+  HealthCheckResult healthCheck() {
+    long numBatches = batches.get();
+
+    HealthCheckResult result = new HealthCheckResult();
+    result.setName("ResponseWriteBehind");
+    result.setHealthy(!closed);
+    Map<String, Object> statuses = result.getStatuses();
+    statuses.put("queueSize", queueSize);
+    statuses.put("queueDepth", pendingSize());
+    statuses.put("coalesced", coalesced.get());
+    statuses.put("dropped", dropped.get());
+    statuses.put("written", written.get());
+    statuses.put("failed", failed.get());
+    statuses.put("batches", numBatches);
+    statuses.put("lastBatchLatency", lastBatchLatency);
+    statuses.put("avgBatchLatency", numBatches == 0 ? 0 : totalBatchLatency.get() / numBatches);
+    return result;
+  } // method healthCheck
+
+}
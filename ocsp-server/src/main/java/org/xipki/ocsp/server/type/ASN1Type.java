@@ -17,8 +17,6 @@
 
 package org.xipki.ocsp.server.type;
 
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.util.Date;
 
 /**
@@ -81,35 +79,48 @@ public abstract class ASN1Type {
   } // method writeHeader
 
   public static int writeGeneralizedTime(Date time, byte[] out, int offset) {
-    OffsetDateTime offsetTime = time.toInstant().atOffset(ZoneOffset.UTC);
+    // compute the UTC fields directly from the epoch, without allocating temporal objects.
+    long epochSecond = Math.floorDiv(time.getTime(), 1000L);
+    long epochDay = Math.floorDiv(epochSecond, 86400L);
+    int secondOfDay = (int) Math.floorMod(epochSecond, 86400L);
+
+    // civil date from the days since 1970-01-01, with era of 400 years starting at 0000-03-01
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097L);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+    int hour = secondOfDay / 3600;
+    int minute = secondOfDay / 60 % 60;
+    int second = secondOfDay % 60;
+
     int idx = offset;
     out[idx++] = 0x18;
     out[idx++] = 15;
     // yyyyMMddhhmmssZ
     // year
-    int year = offsetTime.getYear();
     out[idx++] = (byte) (0x30 + year / 1000);
     out[idx++] = (byte) (0x30 + year / 100 % 10);
     out[idx++] = (byte) (0x30 + year / 10 % 10);
     out[idx++] = (byte) (0x30 + year % 10);
     // month
-    int month = offsetTime.getMonthValue();
     out[idx++] = (byte) (0x30 + month / 10);
     out[idx++] = (byte) (0x30 + month % 10);
     // day
-    int day = offsetTime.getDayOfMonth();
     out[idx++] = (byte) (0x30 + day / 10);
     out[idx++] = (byte) (0x30 + day % 10);
     // hour
-    int hour = offsetTime.getHour();
     out[idx++] = (byte) (0x30 + hour / 10);
     out[idx++] = (byte) (0x30 + hour % 10);
     // minute
-    int minute = offsetTime.getMinute();
     out[idx++] = (byte) (0x30 + minute / 10);
     out[idx++] = (byte) (0x30 + minute % 10);
     // second
-    int second = offsetTime.getSecond();
     out[idx++] = (byte) (0x30 + second / 10);
     out[idx++] = (byte) (0x30 + second % 10);
     out[idx++] = 'Z';
@@ -0,0 +1,108 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.type.test;
+
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.ocsp.server.type.ASN1Type;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * ASN1Type test.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+public class ASN1TypeTest {
+
+  private static final DateTimeFormatter GENERALIZED_TIME =
+      DateTimeFormatter.ofPattern("uuuuMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+
+  // 0001-01-01T00:00:00Z
+  private static final long MIN_SECOND = -62135596800L;
+
+  // 9999-12-31T23:59:59Z
+  private static final long MAX_SECOND = 253402300799L;
+
+  @Test
+  public void testGeneralizedTimeBoundaries() {
+    long[] seconds = {MIN_SECOND, MAX_SECOND, 0, -1, 1, 86399, 86400,
+      951782400L, // 2000-02-29T00:00:00Z
+      951868799L, // 2000-02-29T23:59:59Z
+      4107456000L, // 2100-02-28T00:00:00Z
+      4107542400L, // 2100-03-01T00:00:00Z
+      -2208988800L, // 1900-01-01T00:00:00Z
+      -12219292800L, // 1582-10-15T00:00:00Z
+      2147483647L, 2147483648L};
+
+    for (long second : seconds) {
+      assertGeneralizedTime(second * 1000);
+    }
+
+    // milliseconds are truncated, also for times before 1970
+    assertGeneralizedTime(-1);
+    assertGeneralizedTime(-999);
+    assertGeneralizedTime(-1001);
+    assertGeneralizedTime(1599999999999L);
+  }
+
+  @Test
+  public void testGeneralizedTimeRandom() {
+    Random random = new Random(12345);
+    for (int i = 0; i < 100000; i++) {
+      long second = MIN_SECOND + (long) (random.nextDouble() * (MAX_SECOND - MIN_SECOND));
+      assertGeneralizedTime(second * 1000 + random.nextInt(1000));
+    }
+  }
+
+  @Test
+  public void testGeneralizedTimeEqualsBouncyCastle() throws Exception {
+    // the Julian calendar used by BouncyCastle before 1582 is not tested.
+    long[] millis = {0, 951782400000L, 1600000000000L, 4107456000000L, 253402300799000L};
+    for (long m : millis) {
+      Date date = new Date(m);
+      byte[] out = new byte[17];
+      ASN1Type.writeGeneralizedTime(date, out, 0);
+      Assert.assertArrayEquals("GeneralizedTime of " + m,
+          new DERGeneralizedTime(date).getEncoded(), out);
+    }
+  }
+
+  private static void assertGeneralizedTime(long millis) {
+    byte[] out = new byte[20];
+    int offset = 2;
+    int len = ASN1Type.writeGeneralizedTime(new Date(millis), out, offset);
+    Assert.assertEquals("length", 17, len);
+    Assert.assertEquals("tag", 0x18, out[offset]);
+    Assert.assertEquals("body length", 15, out[offset + 1]);
+
+    String expected = GENERALIZED_TIME.format(Instant.ofEpochMilli(millis));
+    String actual = new String(out, offset + 2, 15, StandardCharsets.US_ASCII);
+    Assert.assertEquals("GeneralizedTime of " + millis, expected, actual);
+    Assert.assertEquals("byte after the GeneralizedTime", 0, out[offset + len]);
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.servlet;
+
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.util.LruCache;
+
+import java.util.Arrays;
+
+import static org.xipki.util.Args.notNull;
+import static org.xipki.util.Args.positive;
+
+/**
+ * Cache of the responses to the HTTP GET requests, keyed by the responder and the decoded
+ * request. Only cacheable responses, namely responses to requests without nonce, are
+ * cached. The entries are bounded by the total size of the requests and responses, and are
+ * evicted in LRU order or once they are expired.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class GetResponseCache {
+
+  static final class Key {
+
+    private final String servletPath;
+
+    private final byte[] request;
+
+    private final int hashCode;
+
+    Key(String servletPath, byte[] request) {
+      this.servletPath = notNull(servletPath, "servletPath");
+      this.request = notNull(request, "request");
+      this.hashCode = 31 * servletPath.hashCode() + Arrays.hashCode(request);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key) obj;
+      return hashCode == other.hashCode && servletPath.equals(other.servletPath)
+          && Arrays.equals(request, other.request);
+    }
+
+  } // class Key
+
+  /**
+   * Cached response with its validators. All times are in milliseconds.
+   */
+  static final class Entry {
+
+    private final OcspRespWithCacheInfo response;
+
+    private final String etag;
+
+    private final long lastModified;
+
+    private final Long nextUpdate;
+
+    // time until which the response may be returned.
+    private final long validUntil;
+
+    Entry(OcspRespWithCacheInfo response, long lastModified, Long nextUpdate,
+        long validUntil) {
+      this(notNull(response, "response"), response.getETag(), lastModified, nextUpdate,
+          validUntil);
+    }
+
+    private Entry(OcspRespWithCacheInfo response, String etag, long lastModified,
+        Long nextUpdate, long validUntil) {
+      this.response = response;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.nextUpdate = nextUpdate;
+      this.validUntil = validUntil;
+    }
+
+    /**
+     * Gets the validators of this entry without the response, to answer only the
+     * conditional requests.
+     * @return the entry without response.
+     */
+    Entry toValidator() {
+      return new Entry(null, etag, lastModified, nextUpdate, validUntil);
+    }
+
+    /**
+     * Gets the response.
+     * @return the response, or {@code null} if this entry contains only the validators.
+     */
+    byte[] getResponse() {
+      return response == null ? null : response.getResponse();
+    }
+
+    String getETag() {
+      return etag;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    Long getNextUpdate() {
+      return nextUpdate;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() >= validUntil;
+    }
+
+  } // class Entry
+
+  private static final class Cache extends LruCache<Key, Entry> {
+
+    Cache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(Key key, Entry value) {
+      // approximated memory footprint of the key and value objects
+      return 128 + key.request.length + value.getResponse().length;
+    }
+
+  } // class Cache
+
+  private final Cache cache;
+
+  /**
+   * Constructor.
+   * @param maxSize
+   *          Maximal size of the cached requests and responses in bytes.
+   */
+  GetResponseCache(int maxSize) {
+    this.cache = new Cache(positive(maxSize, "maxSize"));
+  }
+
+  /**
+   * Gets the cached response.
+   * @param key
+   *          Key of the response.
+   * @return the cached response, or {@code null} if not cached or expired.
+   */
+  Entry get(Key key) {
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.isExpired()) {
+      cache.remove(key);
+      return null;
+    }
+
+    return entry;
+  } // method get
+
+  void put(Key key, Entry entry) {
+    cache.put(key, entry);
+  }
+
+  void clear() {
+    cache.evictAll();
+  }
+
+}
@@ -74,6 +74,8 @@ public class HttpMgmtServlet extends HttpServlet {
 
   private OcspServerImpl ocspServer;
 
+  private OcspServlet ocspServlet;
+
   public void setMgmtCerts(Set<X509Cert> mgmtCerts) {
     this.mgmtCerts = new HashSet<>(notEmpty(mgmtCerts, "mgmtCerts"));
   }
@@ -82,6 +84,10 @@ public class HttpMgmtServlet extends HttpServlet {
     this.ocspServer = notNull(ocspServer, "ocspServer");
   }
 
+  public void setOcspServlet(OcspServlet ocspServlet) {
+    this.ocspServlet = ocspServlet;
+  }
+
   @Override
   protected void doPost(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
@@ -116,6 +122,10 @@ public class HttpMgmtServlet extends HttpServlet {
         case restartServer: {
           try {
             ocspServer.init(true);
+            if (ocspServlet != null) {
+              // the responses of the previous configuration shall not be returned.
+              ocspServlet.clearGetResponseCache();
+            }
           } catch (InvalidConfException | PasswordResolverException ex) {
             LOG.warn(action + ": could not restart OCSP server", ex);
             throw new MyException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
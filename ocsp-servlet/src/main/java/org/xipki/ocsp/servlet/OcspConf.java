@@ -74,6 +74,12 @@ public class OcspConf extends ValidatableConf {
 
   private SecurityConf security;
 
+  /**
+   * Maximal size in bytes of the cached responses to the HTTP GET requests without nonce.
+   * The default is 0, namely the responses are not cached.
+   */
+  private int httpGetCacheSize;
+
   public static OcspConf readConfFromFile(String fileName)
       throws IOException, InvalidConfException {
     notBlank(fileName, "fileName");
@@ -110,9 +116,20 @@ public class OcspConf extends ValidatableConf {
     this.security = security;
   }
 
+  public int getHttpGetCacheSize() {
+    return httpGetCacheSize;
+  }
+
+  public void setHttpGetCacheSize(int httpGetCacheSize) {
+    this.httpGetCacheSize = httpGetCacheSize;
+  }
+
   @Override
   public void validate()
       throws InvalidConfException {
+    if (httpGetCacheSize < 0) {
+      throw new InvalidConfException("httpGetCacheSize must not be negative");
+    }
     validate(remoteMgmt);
     validate(security);
   }
@@ -23,7 +23,6 @@ import org.xipki.ocsp.api.OcspRespWithCacheInfo;
 import org.xipki.ocsp.api.OcspServer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
-import org.xipki.security.HashAlgo;
 import org.xipki.util.*;
 
 import javax.servlet.ServletException;
@@ -46,8 +45,14 @@ public class OcspServlet extends HttpServlet {
 
   private static final Logger LOG = LoggerFactory.getLogger(OcspServlet.class);
 
+  // maximal number of GET requests whose validators are kept if the responses are not cached.
+  private static final int MAX_VALIDATORS = 10000;
+
   private static final long DFLT_CACHE_MAX_AGE = 60; // 1 minute
 
+  // cached GET responses are not returned in the last 10 minutes before the nextUpdate.
+  private static final long MS_NEXT_UPDATE_BUFFER = 600000;
+
   private static final long serialVersionUID = 1L;
 
   private static final String CT_REQUEST = "application/ocsp-request";
@@ -58,10 +63,34 @@ public class OcspServlet extends HttpServlet {
 
   private OcspServer server;
 
+  // null if the responses to GET requests are not cached.
+  private GetResponseCache getResponseCache;
+
+  // validators of the cacheable GET responses, used only if the responses are not cached.
+  private final LruCache<GetResponseCache.Key, GetResponseCache.Entry> validators =
+      new LruCache<>(MAX_VALIDATORS);
+
   public void setLogReqResp(boolean logReqResp) {
     this.logReqResp = logReqResp;
   }
 
+  /**
+   * Sets the size of the cache of the responses to GET requests.
+   * @param cacheSize
+   *          Maximal size of the cached requests and responses in bytes, 0 to disable the
+   *          cache.
+   */
+  public void setGetResponseCacheSize(int cacheSize) {
+    this.getResponseCache = cacheSize > 0 ? new GetResponseCache(cacheSize) : null;
+  }
+
+  public void clearGetResponseCache() {
+    if (getResponseCache != null) {
+      getResponseCache.clear();
+    }
+    validators.evictAll();
+  }
+
   public void setServer(OcspServer server) {
     this.server = notNull(server, "server");
   }
@@ -172,6 +201,35 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
+      String ifNoneMatch = req.getHeader("If-None-Match");
+      long ifModifiedSince = (ifNoneMatch != null) ? -1 : getIfModifiedSince(req);
+
+      boolean conditional = ifNoneMatch != null || ifModifiedSince != -1;
+      GetResponseCache.Key cacheKey = new GetResponseCache.Key(servletPath, ocsReqBytes);
+      if (getResponseCache != null) {
+        GetResponseCache.Entry cacheEntry = getResponseCache.get(cacheKey);
+        if (cacheEntry != null && server.grantCachedAnswer(responder, ocsReqBytes)) {
+          if (logReqResp && LOG.isDebugEnabled()) {
+            LOG.debug("HTTP GET OCSP path: {}\nResponse (cached):\n{}", req.getRequestURI(),
+                LogUtil.base64Encode(cacheEntry.getResponse()));
+          }
+          sendCachedResponse(resp, responder, cacheEntry, ifNoneMatch, ifModifiedSince);
+          return;
+        }
+      } else if (conditional) {
+        // conditional GET: answer 304 if the client has still the current response
+        GetResponseCache.Entry validator = validators.get(cacheKey);
+        if (validator != null) {
+          if (validator.isExpired()) {
+            validators.remove(cacheKey);
+          } else if (isNotModified(validator, ifNoneMatch, ifModifiedSince)
+              && server.grantCachedAnswer(responder, ocsReqBytes)) {
+            sendCachedResponse(resp, responder, validator, ifNoneMatch, ifModifiedSince);
+            return;
+          }
+        }
+      }
+
       OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocsReqBytes, true);
       if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
         LOG.error("processRequest returned null, this should not happen");
@@ -186,52 +244,34 @@ public class OcspServlet extends HttpServlet {
       }
 
       OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
-      if (cacheInfo != null) {
-        encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-        long now = System.currentTimeMillis();
-
-        // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
-        // the HTTP response.
-        resp.addDateHeader("Date", now);
-        // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
-        // last modified the response.
-        resp.addDateHeader("Last-Modified", cacheInfo.getGeneratedAt());
-        // RFC 5019 6.2: Expires: This date and time will be the same as the
-        // nextUpdate time-stamp in the OCSP
-        // response itself.
-        // This is overridden by max-age on HTTP/1.1 compatible components
-
-        Long nextUpdate = cacheInfo.getNextUpdate();
-
-        if (nextUpdate != null) {
-          resp.addDateHeader("Expires", nextUpdate);
-        }
-        // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
-        // HEX representation of the SHA1 hash of the OCSPResponse structure.
-        resp.addHeader("ETag",
-            StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
-
-        // Max age must be in seconds in the cache-control header
-        long maxAge;
-        if (responder.getCacheMaxAge() != null) {
-          maxAge = responder.getCacheMaxAge();
-        } else {
-          maxAge = DFLT_CACHE_MAX_AGE;
-        }
+      if (cacheInfo == null) {
+        // not cacheable, e.g. with nonce
+        resp.setContentLength(encodedOcspResp.length);
+        resp.setContentType(CT_RESPONSE);
+        resp.getOutputStream().write(encodedOcspResp);
+        return;
+      }
 
-        if (nextUpdate != null) {
-          maxAge = Math.min(maxAge,
-              (nextUpdate - cacheInfo.getGeneratedAt()) / 1000);
+      // the times in the cacheInfo are in seconds
+      long lastModified = cacheInfo.getGeneratedAt() * 1000;
+      Long nextUpdate = cacheInfo.getNextUpdate() == null
+          ? null : cacheInfo.getNextUpdate() * 1000;
+
+      // the response may be returned until shortly before it expires, or if the response has
+      // no nextUpdate, as long as the clients may cache it.
+      long validUntil = (nextUpdate != null) ? nextUpdate - MS_NEXT_UPDATE_BUFFER
+          : lastModified + getMaxAge(responder, lastModified, null) * 1000;
+      GetResponseCache.Entry cacheEntry = new GetResponseCache.Entry(ocspRespWithCacheInfo,
+          lastModified, nextUpdate, validUntil);
+      if (validUntil > System.currentTimeMillis()) {
+        if (getResponseCache != null) {
+          getResponseCache.put(cacheKey, cacheEntry);
+        } else {
+          validators.put(cacheKey, cacheEntry.toValidator());
         }
+      }
 
-        resp.addHeader("Cache-Control",
-            StringUtil.concat("max-age=", Long.toString(maxAge),
-              ",public,no-transform,must-revalidate"));
-      } // end if (ocspRespWithCacheInfo)
-
-      resp.setContentLength(encodedOcspResp.length);
-      resp.setContentType(CT_RESPONSE);
-      resp.getOutputStream().write(encodedOcspResp);
+      sendCachedResponse(resp, responder, cacheEntry, ifNoneMatch, ifModifiedSince);
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -245,6 +285,104 @@ public class OcspServlet extends HttpServlet {
     }
   } // method doGet
 
+  /**
+   * Sends the cacheable response, or 304 (Not Modified) if the client has still the same
+   * response. An entry without response may be used only if the client has still the same
+   * response.
+   */
+  private static void sendCachedResponse(HttpServletResponse resp, Responder responder,
+      GetResponseCache.Entry cacheEntry, String ifNoneMatch, long ifModifiedSince)
+      throws IOException {
+    long maxAge = getMaxAge(responder, cacheEntry.getLastModified(), cacheEntry.getNextUpdate());
+    if ((ifNoneMatch != null || ifModifiedSince != -1)
+        && isNotModified(cacheEntry, ifNoneMatch, ifModifiedSince)) {
+      resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      addCacheHeaders(resp, cacheEntry, maxAge);
+      return;
+    }
+
+    addCacheHeaders(resp, cacheEntry, maxAge);
+    byte[] encodedOcspResp = cacheEntry.getResponse();
+    resp.setContentLength(encodedOcspResp.length);
+    resp.setContentType(CT_RESPONSE);
+    resp.getOutputStream().write(encodedOcspResp);
+  } // method sendCachedResponse
+
+  private static void addCacheHeaders(HttpServletResponse resp,
+      GetResponseCache.Entry cacheEntry, long maxAge) {
+    // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+    // the HTTP response.
+    resp.addDateHeader("Date", System.currentTimeMillis());
+    // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+    // last modified the response.
+    resp.addDateHeader("Last-Modified", cacheEntry.getLastModified());
+    // RFC 5019 6.2: Expires: This date and time will be the same as the
+    // nextUpdate time-stamp in the OCSP
+    // response itself.
+    // This is overridden by max-age on HTTP/1.1 compatible components
+    if (cacheEntry.getNextUpdate() != null) {
+      resp.addDateHeader("Expires", cacheEntry.getNextUpdate());
+    }
+
+    // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+    // HEX representation of the SHA1 hash of the OCSPResponse structure.
+    resp.addHeader("ETag", cacheEntry.getETag());
+
+    resp.addHeader("Cache-Control",
+        StringUtil.concat("max-age=", Long.toString(maxAge),
+          ",public,no-transform,must-revalidate"));
+  } // method addCacheHeaders
+
+  /**
+   * Gets the max-age in seconds.
+   */
+  private static long getMaxAge(Responder responder, long lastModified, Long nextUpdate) {
+    // Max age must be in seconds in the cache-control header
+    long maxAge;
+    if (responder.getCacheMaxAge() != null) {
+      maxAge = responder.getCacheMaxAge();
+    } else {
+      maxAge = DFLT_CACHE_MAX_AGE;
+    }
+
+    if (nextUpdate != null) {
+      maxAge = Math.min(maxAge, (nextUpdate - lastModified) / 1000);
+    }
+    return maxAge;
+  } // method getMaxAge
+
+  private static boolean isNotModified(GetResponseCache.Entry cacheEntry, String ifNoneMatch,
+      long ifModifiedSince) {
+    if (ifNoneMatch != null) {
+      // RFC 7232 3.2: If-None-Match uses the weak comparison, and takes precedence over
+      // If-Modified-Since.
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+
+        if ("*".equals(tag) || cacheEntry.getETag().equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // HTTP dates have the precision of seconds
+    return ifModifiedSince != -1
+        && cacheEntry.getLastModified() / 1000 <= ifModifiedSince / 1000;
+  } // method isNotModified
+
+  private static long getIfModifiedSince(HttpServletRequest req) {
+    try {
+      return req.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException ex) {
+      // RFC 7232 3.3: invalid dates are ignored
+      return -1;
+    }
+  } // method getIfModifiedSince
+
   private static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
     resp.setContentLength(0);
@@ -116,6 +116,8 @@ public class OcspServletFilter implements Filter {
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
     this.ocspServlet.setLogReqResp(logReqResp);
+    this.ocspServlet.setGetResponseCacheSize(conf.getHttpGetCacheSize());
+    LOG.info("httpGetCacheSize: {}", conf.getHttpGetCacheSize());
 
     RemoteMgmt remoteMgmt = conf.getRemoteMgmt();
     this.remoteMgmtEnabled = remoteMgmt != null && remoteMgmt.isEnabled();
@@ -144,6 +146,7 @@ public class OcspServletFilter implements Filter {
           mgmtServlet = new HttpMgmtServlet();
           mgmtServlet.setMgmtCerts(certs);
           mgmtServlet.setOcspServer(server);
+          mgmtServlet.setOcspServlet(ocspServlet);
         }
       }
     }
@@ -51,7 +51,11 @@ public class HttpProxyServlet extends HttpServlet {
   private boolean logReqResp;
 
   public HttpProxyServlet() {
-    responder = new P11ProxyResponder();
+    this(1);
+  }
+
+  public HttpProxyServlet(int signParallelism) {
+    responder = new P11ProxyResponder(signParallelism);
   }
 
   public void setLogReqResp(boolean logReqResp) {
@@ -94,6 +98,12 @@ public class HttpProxyServlet extends HttpServlet {
     }
   } // method doPost
 
+  @Override
+  public void destroy() {
+    responder.close();
+    super.destroy();
+  }
+
   public void setLocalP11CryptServicePool(LocalP11CryptServicePool localP11CryptServicePool) {
     this.localP11CryptServicePool = localP11CryptServicePool;
   }
@@ -36,6 +36,11 @@ public class P11ProxyConf extends ValidatableConf {
 
   private SecurityConf security;
 
+  /**
+   * Maximal number of messages of one multi-sign request signed in parallel.
+   */
+  private int signParallelism = 32;
+
   public static P11ProxyConf readConfFromFile(String fileName)
       throws IOException, InvalidConfException {
     notBlank(fileName, "fileName");
@@ -55,10 +60,21 @@ public class P11ProxyConf extends ValidatableConf {
     this.security = security;
   }
 
+  public int getSignParallelism() {
+    return signParallelism;
+  }
+
+  public void setSignParallelism(int signParallelism) {
+    this.signParallelism = signParallelism;
+  }
+
   @Override
   public void validate()
       throws InvalidConfException {
     validate(security);
+    if (signParallelism < 1) {
+      throw new InvalidConfException("signParallelism must not be less than 1");
+    }
   }
 
 }
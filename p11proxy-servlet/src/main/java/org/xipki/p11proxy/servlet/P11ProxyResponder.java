@@ -34,12 +34,18 @@ import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.StringUtil;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.xipki.security.pkcs11.proxy.P11ProxyConstants.*;
 
@@ -50,7 +56,7 @@ import static org.xipki.security.pkcs11.proxy.P11ProxyConstants.*;
  * @since 2.0.0
  */
 
-public class P11ProxyResponder {
+public class P11ProxyResponder implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(P11ProxyResponder.class);
 
   private static final String version;
@@ -61,6 +67,9 @@ public class P11ProxyResponder {
 
   private final Set<Short> versions;
 
+  // executor to sign the messages of ACTION_SIGN_MULTI in parallel, null if sequentially.
+  private final ExecutorService signExecutor;
+
   static {
     Set<Short> actions = new HashSet<>();
     actions.add(ACTION_GET_SERVER_CAPS);
@@ -93,6 +102,7 @@ public class P11ProxyResponder {
     actions.add(ACTION_REMOVE_IDENTITY);
     actions.add(ACTION_REMOVE_OBJECTS);
     actions.add(ACTION_SIGN);
+    actions.add(ACTION_SIGN_MULTI);
     actions.add(ACTION_UPDATE_CERT);
     actions.add(ACTION_DIGEST_SECRETKEY);
     actionsRequireNonNullRequest = Collections.unmodifiableSet(actions);
@@ -108,10 +118,39 @@ public class P11ProxyResponder {
   } // method static
 
   public P11ProxyResponder() {
+    this(1);
+  }
+
+  /**
+   * Constructor.
+   * @param signParallelism
+   *          Maximal number of messages of one ACTION_SIGN_MULTI request signed in parallel.
+   * @since 5.4.0
+   */
+  public P11ProxyResponder(int signParallelism) {
     LOG.info("XiPKI PKCS#11 Proxy Responder version {}", version);
     Set<Short> tmpVersions = new HashSet<>();
     tmpVersions.add(VERSION_V1_0);
+    tmpVersions.add(VERSION_V1_1);
     this.versions = Collections.unmodifiableSet(tmpVersions);
+
+    if (signParallelism > 1) {
+      AtomicInteger threadNo = new AtomicInteger(0);
+      this.signExecutor = Executors.newFixedThreadPool(signParallelism, r -> {
+        Thread thread = new Thread(r, "p11proxy-sign-" + threadNo.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.signExecutor = null;
+    }
+  } // constructor
+
+  @Override
+  public void close() {
+    if (signExecutor != null) {
+      signExecutor.shutdownNow();
+    }
   }
 
   public Set<Short> versions() {
@@ -397,41 +436,44 @@ public class P11ProxyResponder {
         }
         case ACTION_SIGN: {
           SignTemplate signTemplate = SignTemplate.getInstance(content);
-          long mechanism = signTemplate.getMechanism().getMechanism();
-          org.xipki.security.pkcs11.proxy.asn1.P11Params asn1Params =
-              signTemplate.getMechanism().getParams();
-
-          P11Params params = null;
-
-          if (asn1Params != null) {
-            switch (asn1Params.getTagNo()) {
-              case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_RSA_PKCS_PSS:
-                params = RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
-                break;
-              case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_OPAQUE:
-                params = new P11ByteArrayParams(
-                    ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_IV:
-                params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              default:
-                throw new BadAsn1ObjectException(
-                    "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
-            }
-          }
-
-          byte[] message = signTemplate.getMessage();
           P11Identity identity = p11CryptService.getIdentity(signTemplate.getSlotId().getValue(),
               signTemplate.getObjectId().getValue());
           if (identity == null) {
             return getResp(version, transactionId, RC_UNKNOWN_ENTITY, action);
           }
 
-          byte[] signature = identity.sign(mechanism, params, message);
+          byte[] signature = sign(identity, signTemplate);
           ASN1Object obj = new DEROctetString(signature);
           return getSuccessResp(version, transactionId, action, obj);
         }
+        case ACTION_SIGN_MULTI: {
+          List<SignTemplate> templates = SignTemplates.getInstance(content).getTemplates();
+          final int n = templates.size();
+          byte[][] signatures = new byte[n][];
+          short[] returnCodes = new short[n];
+
+          List<Future<?>> futures = new ArrayList<>(n);
+          for (int i = 1; i < n; i++) {
+            final int idx = i;
+            Runnable task = () -> signatures[idx] = signOne(p11CryptService,
+                templates.get(idx), returnCodes, idx, transactionId);
+            if (signExecutor == null) {
+              task.run();
+            } else {
+              futures.add(signExecutor.submit(task));
+            }
+          }
+
+          // the first message is signed by the current thread.
+          signatures[0] = signOne(p11CryptService, templates.get(0), returnCodes, 0,
+              transactionId);
+          for (Future<?> future : futures) {
+            future.get();
+          }
+
+          ASN1Object obj = new SignResults(signatures, returnCodes);
+          return getSuccessResp(version, transactionId, action, obj);
+        }
         case ACTION_UPDATE_CERT: {
           ObjectIdAndCert asn1 = ObjectIdAndCert.getInstance(content);
           P11Slot slot = getSlot(p11CryptService, asn1.getSlotId().getValue());
@@ -450,24 +492,82 @@ public class P11ProxyResponder {
       return getResp(version, transactionId, RC_BAD_REQUEST, action);
     } catch (P11TokenException ex) {
       LogUtil.error(LOG, ex, buildErrorMsg(action, transactionId));
-      short rc;
-      if (ex instanceof P11UnknownEntityException) {
-        rc = RC_UNKNOWN_ENTITY;
-      } else if (ex instanceof P11DuplicateEntityException) {
-        rc = RC_DUPLICATE_ENTITY;
-      } else if (ex instanceof P11UnsupportedMechanismException) {
-        rc = RC_UNSUPPORTED_MECHANISM;
-      } else {
-        rc = RC_P11_TOKENERROR;
-      }
-
-      return getResp(version, transactionId, rc, action);
+      return getResp(version, transactionId, getReturnCode(ex), action);
     } catch (Throwable th) {
       LogUtil.error(LOG, th, buildErrorMsg(action, transactionId));
       return getResp(version, transactionId, RC_INTERNAL_ERROR, action);
     }
   } // method processRequest
 
+  /**
+   * Signs the message of one template of ACTION_SIGN_MULTI.
+   * @return the signature, or {@code null} if failed. In the latter case the return code
+   *         is set in {@code returnCodes}.
+   */
+  private static byte[] signOne(P11CryptService p11CryptService, SignTemplate template,
+      short[] returnCodes, int index, byte[] transactionId) {
+    try {
+      P11Identity identity = p11CryptService.getIdentity(template.getSlotId().getValue(),
+          template.getObjectId().getValue());
+      if (identity == null) {
+        returnCodes[index] = RC_UNKNOWN_ENTITY;
+        return null;
+      }
+      return sign(identity, template);
+    } catch (BadAsn1ObjectException ex) {
+      LogUtil.error(LOG, ex, buildErrorMsg(ACTION_SIGN_MULTI, transactionId));
+      returnCodes[index] = RC_BAD_REQUEST;
+    } catch (P11TokenException ex) {
+      LogUtil.error(LOG, ex, buildErrorMsg(ACTION_SIGN_MULTI, transactionId));
+      returnCodes[index] = getReturnCode(ex);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, buildErrorMsg(ACTION_SIGN_MULTI, transactionId));
+      returnCodes[index] = RC_INTERNAL_ERROR;
+    }
+    return null;
+  } // method signOne
+
+  private static byte[] sign(P11Identity identity, SignTemplate signTemplate)
+      throws BadAsn1ObjectException, P11TokenException {
+    long mechanism = signTemplate.getMechanism().getMechanism();
+    org.xipki.security.pkcs11.proxy.asn1.P11Params asn1Params =
+        signTemplate.getMechanism().getParams();
+
+    P11Params params = null;
+
+    if (asn1Params != null) {
+      switch (asn1Params.getTagNo()) {
+        case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_RSA_PKCS_PSS:
+          params = RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
+          break;
+        case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_OPAQUE:
+          params = new P11ByteArrayParams(
+              ASN1OctetString.getInstance(asn1Params).getOctets());
+          break;
+        case org.xipki.security.pkcs11.proxy.asn1.P11Params.TAG_IV:
+          params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+          break;
+        default:
+          throw new BadAsn1ObjectException(
+              "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
+      }
+    }
+
+    return identity.sign(mechanism, params, signTemplate.getMessage());
+  } // method sign
+
+  private static short getReturnCode(P11TokenException ex) {
+    if (ex instanceof P11UnknownEntityException) {
+      return RC_UNKNOWN_ENTITY;
+    } else if (ex instanceof P11DuplicateEntityException) {
+      return RC_DUPLICATE_ENTITY;
+    } else if (ex instanceof P11UnsupportedMechanismException) {
+      return RC_UNSUPPORTED_MECHANISM;
+    } else {
+      return RC_P11_TOKENERROR;
+    }
+  } // method getReturnCode
+
   private static String buildErrorMsg(short action, byte[] transactionId) {
     return "could not process action " + getActionName(action)
         + " (tid=" + Hex.encode(transactionId) + ")";
@@ -84,13 +84,18 @@ public class ProxyServletFilter implements Filter {
           "could not initialize LocalP11CryptServicePool: " + ex.getMessage(), ex);
     }
 
-    servlet = new HttpProxyServlet();
+    LOG.info("signParallelism: {}", conf.getSignParallelism());
+    servlet = new HttpProxyServlet(conf.getSignParallelism());
     servlet.setLogReqResp(logReqResp);
     servlet.setLocalP11CryptServicePool(pool);
   } // method init
 
   @Override
   public void destroy() {
+    if (servlet != null) {
+      servlet.destroy();
+    }
+
     if (securities != null) {
       securities.close();
     }
@@ -31,6 +31,12 @@ public class P11ProxyConstants {
 
   public static final short VERSION_V1_0             = 0x0100;
 
+  /**
+   * Version 1.0 plus the action {@link #ACTION_SIGN_MULTI}. Servers supporting this action
+   * announce this version in the server capability. The requests still use the version 1.0.
+   */
+  public static final short VERSION_V1_1             = 0x0101;
+
   /* Return Code */
   public static final short RC_SUCCESS               = 0x0000;
 
@@ -76,6 +82,8 @@ public class P11ProxyConstants {
 
   public static final short ACTION_SIGN              = 0x0120;
 
+  public static final short ACTION_SIGN_MULTI        = 0x0121;
+
   public static final short ACTION_GEN_KEYPAIR_RSA   = 0x0130;
 
   public static final short ACTION_GEN_KEYPAIR_DSA   = 0x0131;
@@ -145,6 +153,7 @@ public class P11ProxyConstants {
     actionMap.put(ACTION_GET_CERT_IDS,      "ACTION_GET_CERT_IDS");
     actionMap.put(ACTION_GET_MECHANISMS,    "ACTION_GET_MECHANISMS");
     actionMap.put(ACTION_SIGN,              "ACTION_SIGN");
+    actionMap.put(ACTION_SIGN_MULTI,        "ACTION_SIGN_MULTI");
     actionMap.put(ACTION_GEN_KEYPAIR_RSA,   "ACTION_GEN_KEYPAIR_RSA");
     actionMap.put(ACTION_GEN_KEYPAIR_DSA,   "ACTION_GEN_KEYPAIR_DSA");
     actionMap.put(ACTION_GEN_KEYPAIR_EC,    "ACTION_GEN_KEYPAIR_EC");
@@ -73,6 +73,14 @@ public class ProxyP11Module extends P11Module {
 
   private static final String PROP_SSL_HOStNAMEVERIFIER = "ssl.hostnameVerifier";
 
+  private static final String PROP_SIGN_BATCHSIZE = "sign.batchSize";
+
+  private static final String PROP_SIGN_MAXCONCURRENT = "sign.maxConcurrent";
+
+  // equals the default number of idle connections per destination kept alive by the JDK
+  // (http.maxConnections).
+  private static final int DFLT_SIGN_MAXCONCURRENT = 5;
+
   private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
 
   private static final String REQUEST_MIMETYPE = "application/x-xipki-pkcs11";
@@ -91,6 +99,12 @@ public class ProxyP11Module extends P11Module {
 
   private boolean readOnly;
 
+  private boolean multiSignSupported;
+
+  private final int signBatchSize;
+
+  private final int signMaxConcurrent;
+
   private final SSLSocketFactory sslSocketFactory;
 
   private final HostnameVerifier hostnameVerifier;
@@ -138,6 +152,15 @@ public class ProxyP11Module extends P11Module {
       throw new P11TokenException("invalid module: " + moduleStr);
     }
 
+    String str = confPairs.value(PROP_SIGN_BATCHSIZE);
+    signBatchSize = (str == null) ? 1 : Integer.parseInt(str);
+    str = confPairs.value(PROP_SIGN_MAXCONCURRENT);
+    signMaxConcurrent = (str == null) ? DFLT_SIGN_MAXCONCURRENT : Integer.parseInt(str);
+    if (signBatchSize < 1 || signMaxConcurrent < 1) {
+      throw new P11TokenException("invalid " + PROP_SIGN_BATCHSIZE + " or "
+          + PROP_SIGN_MAXCONCURRENT);
+    }
+
     String sslStoreType = confPairs.value(PROP_SSL_STORETYPE);
     String sslKeystore = confPairs.value(PROP_SSL_KEYSTORE);
     String sslKeystorePassword = confPairs.value(PROP_SSL_KEYSTOREPASSWORD);
@@ -213,6 +236,11 @@ public class ProxyP11Module extends P11Module {
       throw new P11TokenException("Server does not support any version supported by the client");
     }
     this.readOnly = caps.isReadOnly();
+    this.multiSignSupported = caps.getVersions().contains(P11ProxyConstants.VERSION_V1_1);
+    if (signBatchSize > 1 && !multiSignSupported) {
+      LOG.warn("server does not support multiple signatures per request, ignore {}",
+          PROP_SIGN_BATCHSIZE);
+    }
 
     resp = send(P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
 
@@ -253,6 +281,19 @@ public class ProxyP11Module extends P11Module {
     setSlots(slots);
   } // method refresh
 
+  /**
+   * Gets the maximal number of sign requests sent in one request.
+   * @return the maximal number of sign requests in one request, 1 if the batching is disabled
+   *         or not supported by the server.
+   */
+  int getSignBatchSize() {
+    return multiSignSupported ? signBatchSize : 1;
+  }
+
+  int getSignMaxConcurrent() {
+    return signMaxConcurrent;
+  }
+
   @Override
   public String getDescription() {
     return description;
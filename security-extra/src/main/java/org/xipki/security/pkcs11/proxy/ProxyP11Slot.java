@@ -18,9 +18,11 @@
 package org.xipki.security.pkcs11.proxy;
 
 import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Object;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.xipki.security.BadAsn1ObjectException;
@@ -54,6 +56,9 @@ public class ProxyP11Slot extends P11Slot {
 
   private final SlotIdentifier asn1SlotId;
 
+  // coalescer of the concurrent sign requests, null if the batching is disabled.
+  private final SignCoalescer signCoalescer;
+
   ProxyP11Slot(ProxyP11Module module, P11SlotIdentifier slotId, boolean readOnly,
       P11MechanismFilter mechanismFilter, Integer numSessions,
       List<Long> secretKeyTypes, List<Long> keypairTypes)
@@ -63,6 +68,9 @@ public class ProxyP11Slot extends P11Slot {
     this.module = module;
     this.slotId = slotId;
     this.asn1SlotId = new SlotIdentifier(slotId);
+    int signBatchSize = module.getSignBatchSize();
+    this.signCoalescer = (signBatchSize > 1)
+        ? new SignCoalescer(this, signBatchSize, module.getSignMaxConcurrent()) : null;
     refresh();
   }
 
@@ -433,6 +441,25 @@ public class ProxyP11Slot extends P11Slot {
     }
   }
 
+  byte[] sign(SignTemplate template)
+      throws P11TokenException {
+    return (signCoalescer == null) ? signSingle(template) : signCoalescer.sign(template);
+  }
+
+  byte[] signSingle(SignTemplate template)
+      throws P11TokenException {
+    byte[] result = module.send(P11ProxyConstants.ACTION_SIGN, template);
+
+    ASN1OctetString octetString;
+    try {
+      octetString = DEROctetString.getInstance(result);
+    } catch (IllegalArgumentException ex) {
+      throw new P11TokenException("the returned result is not OCTET STRING");
+    }
+
+    return (octetString == null) ? null : octetString.getOctets();
+  } // method signSingle
+
   ProxyP11Module getModule() {
     return module;
   }
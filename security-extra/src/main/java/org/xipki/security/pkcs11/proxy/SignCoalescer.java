@@ -0,0 +1,182 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import org.xipki.security.BadAsn1ObjectException;
+import org.xipki.security.pkcs11.P11TokenException;
+import org.xipki.security.pkcs11.proxy.asn1.SignResults;
+import org.xipki.security.pkcs11.proxy.asn1.SignTemplate;
+import org.xipki.security.pkcs11.proxy.asn1.SignTemplates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.xipki.util.Args.positive;
+
+/**
+ * Gathers the concurrent sign requests into one request with the action
+ * {@link P11ProxyConstants#ACTION_SIGN_MULTI}.
+ * <p>
+ * At most {@code maxConcurrent} requests are sent at the same time. A sign request is sent
+ * immediately if this limit is not reached, otherwise it is queued and sent together with
+ * the other queued requests (at most {@code maxBatchSize}) in the next free request.
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+
+class SignCoalescer {
+
+  private static final class PendingSign {
+
+    private final SignTemplate template;
+
+    private byte[] signature;
+
+    private P11TokenException error;
+
+    private boolean done;
+
+    private PendingSign(SignTemplate template) {
+      this.template = template;
+    }
+
+  } // class PendingSign
+
+  private final ProxyP11Slot slot;
+
+  private final int maxBatchSize;
+
+  private final int maxConcurrent;
+
+  private final ArrayDeque<PendingSign> queue = new ArrayDeque<>();
+
+  private int inFlight;
+
+  SignCoalescer(ProxyP11Slot slot, int maxBatchSize, int maxConcurrent) {
+    this.slot = slot;
+    this.maxBatchSize = positive(maxBatchSize, "maxBatchSize");
+    this.maxConcurrent = positive(maxConcurrent, "maxConcurrent");
+  }
+
+  byte[] sign(SignTemplate template)
+      throws P11TokenException {
+    PendingSign pending = new PendingSign(template);
+
+    synchronized (this) {
+      queue.add(pending);
+    }
+
+    boolean interrupted = false;
+    while (true) {
+      List<PendingSign> batch;
+      synchronized (this) {
+        while (!pending.done && (inFlight >= maxConcurrent || queue.isEmpty())) {
+          try {
+            wait();
+          } catch (InterruptedException ex) {
+            interrupted = true;
+            if (queue.remove(pending)) {
+              Thread.currentThread().interrupt();
+              throw new P11TokenException("interrupted while waiting for the signature");
+            }
+            // the request has been sent by another thread, wait for its result.
+          }
+        }
+
+        if (pending.done) {
+          if (interrupted) {
+            Thread.currentThread().interrupt();
+          }
+
+          if (pending.error != null) {
+            throw new P11TokenException(pending.error.getMessage(), pending.error);
+          }
+          return pending.signature;
+        }
+
+        // send the queued requests, including the ones of other threads.
+        int n = Math.min(maxBatchSize, queue.size());
+        batch = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          batch.add(queue.poll());
+        }
+        inFlight++;
+      }
+
+      try {
+        send(batch);
+      } finally {
+        synchronized (this) {
+          for (PendingSign m : batch) {
+            m.done = true;
+          }
+          inFlight--;
+          notifyAll();
+        }
+      }
+    }
+  } // method sign
+
+  private void send(List<PendingSign> batch) {
+    if (batch.size() == 1) {
+      PendingSign m = batch.get(0);
+      try {
+        m.signature = slot.signSingle(m.template);
+      } catch (P11TokenException ex) {
+        m.error = ex;
+      } catch (RuntimeException ex) {
+        m.error = new P11TokenException(ex.getMessage(), ex);
+      }
+      return;
+    }
+
+    List<SignTemplate> templates = new ArrayList<>(batch.size());
+    for (PendingSign m : batch) {
+      templates.add(m.template);
+    }
+
+    SignResults results;
+    try {
+      byte[] resp = slot.getModule().send(P11ProxyConstants.ACTION_SIGN_MULTI,
+          new SignTemplates(templates));
+      results = SignResults.getInstance(resp);
+      if (results == null || results.size() != batch.size()) {
+        throw new P11TokenException("number of results and requests unmatch");
+      }
+    } catch (P11TokenException | BadAsn1ObjectException | RuntimeException ex) {
+      P11TokenException error = (ex instanceof P11TokenException) ? (P11TokenException) ex
+          : new P11TokenException(ex.getMessage(), ex);
+      for (PendingSign m : batch) {
+        m.error = error;
+      }
+      return;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      PendingSign m = batch.get(i);
+      m.signature = results.getSignature(i);
+      if (m.signature == null) {
+        m.error = new P11TokenException("server returned RC "
+            + P11ProxyConstants.getReturnCodeName(results.getReturnCode(i)));
+      }
+    }
+  } // method send
+
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy.asn1;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.xipki.security.BadAsn1ObjectException;
+import org.xipki.util.Args;
+
+import java.io.IOException;
+
+/**
+ * Results of the {@link SignTemplates}, in the same order as the templates.
+ *
+ * <pre>
+ * SignResults ::= SEQUENCE OF SignResult
+ *
+ * SignResult ::= CHOICE {
+ *     signature      OCTET STRING,
+ *     returnCode     INTEGER }
+ * </pre>
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+public class SignResults extends ProxyMessage {
+
+  // signature, or null if the signing failed.
+  private final byte[][] signatures;
+
+  // return code, only used if the corresponding signature is null.
+  private final short[] returnCodes;
+
+  public SignResults(byte[][] signatures, short[] returnCodes) {
+    this.signatures = Args.notNull(signatures, "signatures");
+    this.returnCodes = Args.notNull(returnCodes, "returnCodes");
+    if (signatures.length != returnCodes.length) {
+      throw new IllegalArgumentException("signatures.length != returnCodes.length");
+    }
+  }
+
+  private SignResults(ASN1Sequence seq)
+      throws BadAsn1ObjectException {
+    final int size = seq.size();
+    this.signatures = new byte[size][];
+    this.returnCodes = new short[size];
+    for (int i = 0; i < size; i++) {
+      ASN1Encodable obj = seq.getObjectAt(i);
+      if (obj instanceof ASN1OctetString) {
+        signatures[i] = ((ASN1OctetString) obj).getOctets();
+      } else if (obj instanceof ASN1Integer) {
+        returnCodes[i] = ((ASN1Integer) obj).getValue().shortValue();
+      } else {
+        throw new BadAsn1ObjectException("invalid SignResult: " + obj.getClass().getName());
+      }
+    }
+  }
+
+  public static SignResults getInstance(Object obj)
+      throws BadAsn1ObjectException {
+    if (obj == null || obj instanceof SignResults) {
+      return (SignResults) obj;
+    }
+
+    try {
+      if (obj instanceof ASN1Sequence) {
+        return new SignResults((ASN1Sequence) obj);
+      } else if (obj instanceof byte[]) {
+        return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+      } else {
+        throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(), ex);
+    }
+  }
+
+  @Override
+  public ASN1Primitive toASN1Primitive() {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    for (int i = 0; i < signatures.length; i++) {
+      if (signatures[i] != null) {
+        vec.add(new DEROctetString(signatures[i]));
+      } else {
+        vec.add(new ASN1Integer(returnCodes[i]));
+      }
+    }
+    return new DERSequence(vec);
+  }
+
+  public int size() {
+    return signatures.length;
+  }
+
+  public byte[] getSignature(int index) {
+    return signatures[index];
+  }
+
+  public short getReturnCode(int index) {
+    return returnCodes[index];
+  }
+
+} // class SignResults
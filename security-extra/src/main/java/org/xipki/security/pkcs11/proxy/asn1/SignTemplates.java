@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (c) 2013 - 2020 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy.asn1;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
+import org.xipki.security.BadAsn1ObjectException;
+import org.xipki.util.Args;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List of {@link SignTemplate}s.
+ *
+ * <pre>
+ * SignTemplates ::= SEQUENCE OF SignTemplate
+ * </pre>
+ *
+ * @author Lijun Liao
+ * @since 5.4.0
+ */
+public class SignTemplates extends ProxyMessage {
+
+  private final List<SignTemplate> templates;
+
+  public SignTemplates(List<SignTemplate> templates) {
+    this.templates = Args.notEmpty(templates, "templates");
+  }
+
+  private SignTemplates(ASN1Sequence seq)
+      throws BadAsn1ObjectException {
+    final int size = seq.size();
+    if (size == 0) {
+      throw new BadAsn1ObjectException("seq.size() must not be 0");
+    }
+
+    this.templates = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      templates.add(SignTemplate.getInstance(seq.getObjectAt(i)));
+    }
+  }
+
+  public static SignTemplates getInstance(Object obj)
+      throws BadAsn1ObjectException {
+    if (obj == null || obj instanceof SignTemplates) {
+      return (SignTemplates) obj;
+    }
+
+    try {
+      if (obj instanceof ASN1Sequence) {
+        return new SignTemplates((ASN1Sequence) obj);
+      } else if (obj instanceof byte[]) {
+        return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+      } else {
+        throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(), ex);
+    }
+  }
+
+  @Override
+  public ASN1Primitive toASN1Primitive() {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    for (SignTemplate template : templates) {
+      vec.add(template);
+    }
+    return new DERSequence(vec);
+  }
+
+  public List<SignTemplate> getTemplates() {
+    return templates;
+  }
+
+} // class SignTemplates
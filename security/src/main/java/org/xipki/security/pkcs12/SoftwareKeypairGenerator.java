@@ -24,6 +24,8 @@ import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.DSAParameter;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.password.PasswordResolver;
 import org.xipki.security.EdECConstants;
 import org.xipki.security.KeypairGenerator;
@@ -31,23 +33,118 @@ import org.xipki.security.XiSecurityException;
 import org.xipki.security.util.DSAParameterCache;
 import org.xipki.security.util.KeyUtil;
 import org.xipki.util.ConfPairs;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
 
 import java.io.IOException;
 import java.security.KeyPair;
 import java.security.SecureRandom;
 import java.security.interfaces.*;
 import java.security.spec.DSAParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Software-based keypair generator.
+ *
+ * <p>If the property pregen-size is positive, the keypairs of each requested keyspec are
+ * pre-generated by pregen-threads (default 1) background threads with the minimal priority.
+ * The number of pre-generated keypairs of a keyspec follows the consumption observed in the
+ * last minutes, and is bounded by pregen-size. If no pre-generated keypair is available, the
+ * keypair is generated inline.
+ *
  * @author Lijun Liao
  * @since 5.4.0
  */
 public class SoftwareKeypairGenerator extends KeypairGenerator {
 
+  private static final class KeyPool {
+
+    private final String keyspec;
+
+    private final BlockingQueue<PrivateKeyInfo> keys;
+
+    // number of keypairs consumed in the current sizing interval.
+    private final AtomicInteger consumed = new AtomicInteger(0);
+
+    // number of keypairs being generated.
+    private final AtomicInteger inProgress = new AtomicInteger(0);
+
+    private double avgConsumed;
+
+    private volatile int target = 1;
+
+    KeyPool(String keyspec, int capacity) {
+      this.keyspec = keyspec;
+      this.keys = new LinkedBlockingQueue<>(capacity);
+    }
+
+  } // class KeyPool
+
+  private class PregenWorker implements Runnable {
+
+    @Override
+    public void run() {
+      while (!closed) {
+        KeyPool pool;
+        try {
+          pool = nextPoolToFill();
+        } catch (InterruptedException ex) {
+          return;
+        }
+
+        if (pool == null) {
+          continue;
+        }
+
+        try {
+          PrivateKeyInfo key = generateKeypair0(pool.keyspec);
+          pool.keys.offer(key);
+        } catch (Exception ex) {
+          LogUtil.warn(LOG, ex, "could not pre-generate keypair of keyspec " + pool.keyspec);
+        } finally {
+          pool.inProgress.decrementAndGet();
+        }
+      }
+    } // method run
+
+  } // class PregenWorker
+
+  private static final Logger LOG = LoggerFactory.getLogger(SoftwareKeypairGenerator.class);
+
+  // interval to adapt the number of pre-generated keypairs to the consumption.
+  private static final long MS_SIZING_INTERVAL = 60000;
+
+  // maximal time to wait before checking the pools again.
+  private static final long MS_PREGEN_INTERVAL = 1000;
+
+  // maximal time to wait for the pre-generation threads to terminate while closing.
+  private static final long MS_CLOSE_TIMEOUT = 10000;
+
   private final SecureRandom random;
 
+  private final ConcurrentHashMap<String, KeyPool> pools = new ConcurrentHashMap<>();
+
+  private final Object pregenLock = new Object();
+
+  private final AtomicLong poolHits = new AtomicLong(0);
+
+  private final AtomicLong poolMisses = new AtomicLong(0);
+
+  private int pregenSize;
+
+  private long lastSizing;
+
+  private volatile boolean closed;
+
+  private List<Thread> pregenThreads;
+
   public SoftwareKeypairGenerator(SecureRandom random) {
     this.random = random == null ? new SecureRandom() : random;
   }
@@ -55,7 +152,31 @@ public class SoftwareKeypairGenerator extends KeypairGenerator {
   @Override
   public void initialize0(ConfPairs conf, PasswordResolver passwordResolver)
       throws XiSecurityException {
-  }
+    String str = (conf == null) ? null : conf.value("pregen-size");
+    pregenSize = StringUtil.isBlank(str) ? 0 : Integer.parseInt(str);
+    if (pregenSize < 1) {
+      return;
+    }
+
+    str = conf.value("pregen-threads");
+    int numThreads = StringUtil.isBlank(str) ? 1 : Integer.parseInt(str);
+    if (numThreads < 1) {
+      throw new XiSecurityException("invalid pregen-threads " + numThreads);
+    }
+
+    closed = false;
+    lastSizing = System.currentTimeMillis();
+    pregenThreads = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      Thread thread = new Thread(new PregenWorker(), "keypair-pregen-" + (i + 1));
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      thread.start();
+      pregenThreads.add(thread);
+    }
+
+    LOG.info("pre-generate keypairs: pregen-size={}, pregen-threads={}", pregenSize, numThreads);
+  } // method initialize0
 
   @Override
   public PrivateKeyInfo generateKeypair(String keyspec)
@@ -64,6 +185,22 @@ public class SoftwareKeypairGenerator extends KeypairGenerator {
       throw new XiSecurityException(name + " cannot generate keypair of keyspec " + keyspec);
     }
 
+    if (pregenSize > 0) {
+      KeyPool pool = pools.computeIfAbsent(keyspec, k -> new KeyPool(keyspec, pregenSize));
+      pool.consumed.incrementAndGet();
+      PrivateKeyInfo key = pool.keys.poll();
+
+      synchronized (pregenLock) {
+        pregenLock.notifyAll();
+      }
+
+      if (key != null) {
+        poolHits.incrementAndGet();
+        return key;
+      }
+      poolMisses.incrementAndGet();
+    }
+
     try {
       return generateKeypair0(keyspec);
     } catch (XiSecurityException ex) {
@@ -73,6 +210,47 @@ public class SoftwareKeypairGenerator extends KeypairGenerator {
     }
   }
 
+  /**
+   * Gets the pool with the largest shortfall of pre-generated keypairs, and reserves the
+   * generation of one keypair for it.
+   * @return the pool, or {@code null} if no pool needs to be filled within the waiting time.
+   * @throws InterruptedException
+   *           if interrupted.
+   */
+  private KeyPool nextPoolToFill()
+      throws InterruptedException {
+    synchronized (pregenLock) {
+      long now = System.currentTimeMillis();
+      if (now - lastSizing >= MS_SIZING_INTERVAL) {
+        lastSizing = now;
+        for (KeyPool pool : pools.values()) {
+          pool.avgConsumed = (pool.avgConsumed + pool.consumed.getAndSet(0)) / 2;
+          pool.target = Math.max(1, Math.min(pregenSize, (int) Math.ceil(pool.avgConsumed)));
+        }
+      }
+
+      KeyPool selected = null;
+      int maxShortfall = 0;
+      for (KeyPool pool : pools.values()) {
+        int shortfall = pool.target - pool.keys.size() - pool.inProgress.get();
+        if (shortfall > maxShortfall) {
+          maxShortfall = shortfall;
+          selected = pool;
+        }
+      }
+
+      if (selected == null) {
+        if (!closed) {
+          pregenLock.wait(MS_PREGEN_INTERVAL);
+        }
+        return null;
+      }
+
+      selected.inProgress.incrementAndGet();
+      return selected;
+    }
+  } // method nextPoolToFill
+
   private PrivateKeyInfo generateKeypair0(String keyspec) throws Exception {
     String[] tokens = keyspec.split("/");
     String type = tokens[0].toUpperCase(Locale.ROOT);
@@ -154,6 +332,29 @@ public class SoftwareKeypairGenerator extends KeypairGenerator {
 
   @Override
   public void close() throws IOException {
-  }
+    synchronized (pregenLock) {
+      closed = true;
+      pregenLock.notifyAll();
+    }
+
+    if (pregenThreads != null) {
+      for (Thread thread : pregenThreads) {
+        try {
+          thread.join(MS_CLOSE_TIMEOUT);
+        } catch (InterruptedException ex) {
+          LOG.error("interrupted: {}", ex.getMessage());
+        }
+
+        if (thread.isAlive()) {
+          thread.interrupt();
+        }
+      }
+      pregenThreads = null;
+
+      LOG.info("keypair pre-generation: {} hits, {} misses", poolHits.get(), poolMisses.get());
+    }
+
+    pools.clear();
+  } // method close
 
 }
@@ -229,6 +229,11 @@ public class MiscCaActions {
     @Completion(CaCompleters.PublisherNamePlusAllCompleter.class)
     private List<String> publisherNames;
 
+    @Option(name = "--restart",
+        description = "republish all certificates instead of resuming an interrupted\n"
+            + "republishing to the same publishers")
+    private Boolean restart = Boolean.FALSE;
+
     @Override
     protected Object execute0()
         throws Exception {
@@ -253,7 +258,7 @@ public class MiscCaActions {
 
       String msg = "certificates";
       try {
-        caManager.republishCertificates(caName, publisherNames, numThreads);
+        caManager.republishCertificates(caName, publisherNames, numThreads, !restart);
         println("republished " + msg);
         return null;
       } catch (CaMgmtException ex) {